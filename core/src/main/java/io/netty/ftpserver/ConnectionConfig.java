@@ -68,4 +68,69 @@ public interface ConnectionConfig {
      *         processing client requests.
      */
     int getMaxThreads();
+
+    /**
+     * Returns the maximum number of tasks each thread processing client
+     * requests will queue before rejecting new ones.
+     *
+     * @return the maximum number of queued tasks per thread, 0 for no limit
+     */
+    int getMaxQueuedTasks();
+
+    /**
+     * Returns what happens to a client request when the queue of the thread
+     * processing it is full.
+     *
+     * @return the rejection policy
+     */
+    TransferRejectionPolicy getTransferRejectionPolicy();
+
+    /**
+     * Are the commands of each session run on a virtual thread of its own,
+     * when the JVM supports them, instead of the shared transfer threads?
+     *
+     * @return true if the commands are run on virtual threads
+     */
+    boolean isVirtualThreadsEnabled();
+
+    /**
+     * The maximum upload rate of the whole server, in bytes per second.
+     * @return The maximum upload rate, 0 for no limit
+     */
+    int getMaxUploadRate();
+
+    /**
+     * The maximum download rate of the whole server, in bytes per second.
+     * @return The maximum download rate, 0 for no limit
+     */
+    int getMaxDownloadRate();
+
+    /**
+     * The maximum upload rate of all the data connections from one client
+     * IP address, in bytes per second.
+     * @return The maximum upload rate per IP address, 0 for no limit
+     */
+    int getMaxUploadRatePerIp();
+
+    /**
+     * The maximum download rate of all the data connections to one client
+     * IP address, in bytes per second.
+     * @return The maximum download rate per IP address, 0 for no limit
+     */
+    int getMaxDownloadRatePerIp();
+
+    /**
+     * The checksum algorithms computed while files are uploaded and
+     * downloaded, so that HASH, XCRC, XMD5, XSHA1 and XSHA256 can be
+     * answered without reading the files again.
+     * @return The algorithms, empty if no checksum is computed inline
+     */
+    String[] getChecksumAlgorithms();
+
+    /**
+     * The file the checksums of the files are kept in across restarts.
+     * @return The path of the checksum store file, null to keep the
+     *         checksums in memory only
+     */
+    String getChecksumStoreFile();
 }
@@ -20,7 +20,7 @@
 package io.netty.ftpserver;
 
 import io.netty.ftpserver.impl.DefaultConnectionConfig;
-import io.netty.ftpserver.impl.DefaultConnectionConfig;
+import io.netty.ftpserver.impl.TransferChecksum;
 
 /**
  * Factory for creating connection configurations
@@ -42,6 +42,24 @@ public class ConnectionConfigFactory {
 
     private int maxThreads = 0;
 
+    private int maxQueuedTasks = 0;
+
+    private TransferRejectionPolicy transferRejectionPolicy = TransferRejectionPolicy.ABORT;
+
+    private boolean virtualThreadsEnabled = false;
+
+    private int maxUploadRate = 0;
+
+    private int maxDownloadRate = 0;
+
+    private int maxUploadRatePerIp = 0;
+
+    private int maxDownloadRatePerIp = 0;
+
+    private String[] checksumAlgorithms = new String[0];
+
+    private String checksumStoreFile = null;
+
     /**
      * Create a connection configuration instances based on the configuration on this factory
      * @return The {@link ConnectionConfig} instance
@@ -49,7 +67,11 @@ public class ConnectionConfigFactory {
     public ConnectionConfig createConnectionConfig() {
         return new DefaultConnectionConfig(anonymousLoginEnabled,
                 loginFailureDelay, maxLogins, maxAnonymousLogins,
-                maxLoginFailures, maxThreads);
+                maxLoginFailures, maxThreads, maxQueuedTasks,
+                transferRejectionPolicy, virtualThreadsEnabled,
+                maxUploadRate, maxDownloadRate,
+                maxUploadRatePerIp, maxDownloadRatePerIp,
+                checksumAlgorithms, checksumStoreFile);
     }
 
     /**
@@ -126,6 +148,182 @@ public class ConnectionConfigFactory {
         this.maxThreads = maxThreads;
     }
 
+    /**
+     * Returns the maximum number of tasks each thread processing client
+     * requests will queue before rejecting new ones.
+     *
+     * @return the maximum number of queued tasks per thread, 0 for no limit
+     */
+    public int getMaxQueuedTasks() {
+        return maxQueuedTasks;
+    }
+
+    /**
+     * Sets the maximum number of tasks each thread processing client
+     * requests will queue before rejecting new ones.
+     *
+     * @param maxQueuedTasks
+     *            the maximum number of queued tasks per thread, 0 for no limit
+     */
+    public void setMaxQueuedTasks(int maxQueuedTasks) {
+        this.maxQueuedTasks = maxQueuedTasks;
+    }
+
+    /**
+     * Returns what happens to a client request when the queue of the thread
+     * processing it is full.
+     *
+     * @return the rejection policy
+     */
+    public TransferRejectionPolicy getTransferRejectionPolicy() {
+        return transferRejectionPolicy;
+    }
+
+    /**
+     * Sets what happens to a client request when the queue of the thread
+     * processing it is full.
+     *
+     * @param transferRejectionPolicy
+     *            the rejection policy
+     */
+    public void setTransferRejectionPolicy(TransferRejectionPolicy transferRejectionPolicy) {
+        this.transferRejectionPolicy = transferRejectionPolicy;
+    }
+
+    /**
+     * Are the commands of each session run on a virtual thread of its own,
+     * when the JVM supports them, instead of the shared transfer threads?
+     *
+     * @return true if the commands are run on virtual threads
+     */
+    public boolean isVirtualThreadsEnabled() {
+        return virtualThreadsEnabled;
+    }
+
+    /**
+     * Sets if the commands of each session are run on a virtual thread of
+     * its own. The setting is ignored, with a warning, on the JVMs without
+     * virtual threads.
+     *
+     * @param virtualThreadsEnabled
+     *            true if the commands should be run on virtual threads
+     */
+    public void setVirtualThreadsEnabled(boolean virtualThreadsEnabled) {
+        this.virtualThreadsEnabled = virtualThreadsEnabled;
+    }
+
+    /**
+     * The maximum upload rate of the whole server, in bytes per second.
+     * @return The maximum upload rate, 0 for no limit
+     */
+    public int getMaxUploadRate() {
+        return maxUploadRate;
+    }
+
+    /**
+     * Set the maximum upload rate, in bytes per second.
+     * @param maxUploadRate The maximum upload rate, 0 for no limit
+     */
+    public void setMaxUploadRate(final int maxUploadRate) {
+        this.maxUploadRate = maxUploadRate;
+    }
+
+    /**
+     * The maximum download rate of the whole server, in bytes per second.
+     * @return The maximum download rate, 0 for no limit
+     */
+    public int getMaxDownloadRate() {
+        return maxDownloadRate;
+    }
+
+    /**
+     * Set the maximum download rate, in bytes per second.
+     * @param maxDownloadRate The maximum download rate, 0 for no limit
+     */
+    public void setMaxDownloadRate(final int maxDownloadRate) {
+        this.maxDownloadRate = maxDownloadRate;
+    }
+
+    /**
+     * The maximum upload rate of all the data connections from one client
+     * IP address, in bytes per second.
+     * @return The maximum upload rate per IP address, 0 for no limit
+     */
+    public int getMaxUploadRatePerIp() {
+        return maxUploadRatePerIp;
+    }
+
+    /**
+     * Set the maximum upload rate per IP address, in bytes per second.
+     * @param maxUploadRatePerIp The maximum upload rate per IP address, 0 for no limit
+     */
+    public void setMaxUploadRatePerIp(final int maxUploadRatePerIp) {
+        this.maxUploadRatePerIp = maxUploadRatePerIp;
+    }
+
+    /**
+     * The maximum download rate of all the data connections to one client
+     * IP address, in bytes per second.
+     * @return The maximum download rate per IP address, 0 for no limit
+     */
+    public int getMaxDownloadRatePerIp() {
+        return maxDownloadRatePerIp;
+    }
+
+    /**
+     * Set the maximum download rate per IP address, in bytes per second.
+     * @param maxDownloadRatePerIp The maximum download rate per IP address, 0 for no limit
+     */
+    public void setMaxDownloadRatePerIp(final int maxDownloadRatePerIp) {
+        this.maxDownloadRatePerIp = maxDownloadRatePerIp;
+    }
+
+    /**
+     * The checksum algorithms computed while files are transferred.
+     * @return The algorithms, empty if no checksum is computed inline
+     */
+    public String[] getChecksumAlgorithms() {
+        return checksumAlgorithms.clone();
+    }
+
+    /**
+     * Set the checksum algorithms computed while files are transferred, as a
+     * comma separated list of CRC32, CRC32C, MD5, SHA-1 and SHA-256.
+     * @param checksumAlgorithms The algorithms, empty to compute no checksum inline
+     */
+    public void setChecksumAlgorithms(final String checksumAlgorithms) {
+        if (checksumAlgorithms == null || checksumAlgorithms.trim().length() == 0) {
+            this.checksumAlgorithms = new String[0];
+            return;
+        }
+        String[] names = checksumAlgorithms.split(",");
+        String[] algorithms = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            algorithms[i] = TransferChecksum.getAlgorithm(names[i]);
+            if (algorithms[i] == null) {
+                throw new IllegalArgumentException("Invalid checksum algorithm: " + names[i].trim());
+            }
+        }
+        this.checksumAlgorithms = algorithms;
+    }
+
+    /**
+     * The file the checksums of the files are kept in across restarts.
+     * @return The path of the checksum store file, null if none
+     */
+    public String getChecksumStoreFile() {
+        return checksumStoreFile;
+    }
+
+    /**
+     * Set the file the checksums of the files are kept in across restarts.
+     * @param checksumStoreFile The path of the checksum store file, null to
+     *            keep the checksums in memory only
+     */
+    public void setChecksumStoreFile(final String checksumStoreFile) {
+        this.checksumStoreFile = checksumStoreFile;
+    }
+
     /**
      * Set if anonymous logins are allowed at the server
      * @param anonymousLoginEnabled true if anonymous logins should be enabled
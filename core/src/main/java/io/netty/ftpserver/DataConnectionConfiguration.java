@@ -37,6 +37,20 @@ public interface DataConnectionConfiguration {
      */
     int getIdleTime();
 
+    /**
+     * Get the maximum upload rate of all the data connections of this
+     * listener together, in bytes per second.
+     * @return The maximum upload rate, 0 for no limit
+     */
+    int getMaxUploadRate();
+
+    /**
+     * Get the maximum download rate of all the data connections of this
+     * listener together, in bytes per second.
+     * @return The maximum download rate, 0 for no limit
+     */
+    int getMaxDownloadRate();
+
     /**
      * Is active data connection enabled?
      * @return true if active data connections are enabled
@@ -105,6 +119,15 @@ public interface DataConnectionConfiguration {
 	 */
 	boolean isPassiveIpCheck();
 
+    /**
+     * Tells whether or not the passive data connections of all the sessions
+     * are accepted on a few long-lived channels, rather than on a channel
+     * opened for each PASV command.
+     *
+     * @return <code>true</code>, if the passive channels are shared
+     */
+    boolean isPassiveShared();
+
     /**
      * Request a passive port. Will block until a port is available
      * @return A free passive part
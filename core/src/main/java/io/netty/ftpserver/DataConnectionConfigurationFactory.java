@@ -53,7 +53,10 @@ public class DataConnectionConfigurationFactory {
     private String passiveExternalAddress;
     private PassivePorts passivePorts = new PassivePorts(Collections.<Integer>emptySet(), true);
     private boolean passiveIpCheck = false;
+    private boolean passiveShared = false;
     private boolean implicitSsl;
+    private int maxUploadRate = 0;
+    private int maxDownloadRate = 0;
 
     /**
      * Create a {@link DataConnectionConfiguration} instance based on the
@@ -66,7 +69,8 @@ public class DataConnectionConfigurationFactory {
                 ssl, activeEnabled, activeIpCheck,
                 activeLocalAddress, activeLocalPort,
                 passiveAddress, passivePorts,
-                passiveExternalAddress, passiveIpCheck, implicitSsl);
+                passiveExternalAddress, passiveIpCheck, passiveShared, implicitSsl,
+                maxUploadRate, maxDownloadRate);
     }
     /*
      * (Non-Javadoc)
@@ -225,7 +229,33 @@ public class DataConnectionConfigurationFactory {
 	public void setPassiveIpCheck(boolean passiveIpCheck) {
 		this.passiveIpCheck = passiveIpCheck;
 	}
-    
+
+    /**
+     * Tells whether or not the passive data connections of all the sessions
+     * are accepted on a few long-lived channels.
+     *
+     * @return <code>true</code>, if the passive channels are shared
+     */
+    public boolean isPassiveShared() {
+        return passiveShared;
+    }
+
+    /**
+     * Sets whether or not the passive data connections of all the sessions
+     * are accepted on a few long-lived channels. The data connections are
+     * then matched to the sessions by client address and by order of the
+     * PASV commands, so that one passive port serves many sessions. The
+     * sessions of one client address share a port only once the passive
+     * ports run out, their data connections then being expected in the
+     * order of their PASV commands.
+     *
+     * @param passiveShared
+     *            whether or not the passive channels are shared
+     */
+    public void setPassiveShared(boolean passiveShared) {
+        this.passiveShared = passiveShared;
+    }
+
     /**
      * Get passive data port. Data port number zero (0) means that any available
      * port will be used.
@@ -323,4 +353,40 @@ public class DataConnectionConfigurationFactory {
     public void setImplicitSsl(boolean implicitSsl) {
         this.implicitSsl = implicitSsl;
     }
+
+    /**
+     * Get the maximum upload rate of all the data connections of the
+     * listener together, in bytes per second.
+     * @return The maximum upload rate, 0 for no limit
+     */
+    public int getMaxUploadRate() {
+        return maxUploadRate;
+    }
+
+    /**
+     * Set the maximum upload rate of all the data connections of the
+     * listener together, in bytes per second.
+     * @param maxUploadRate The maximum upload rate, 0 for no limit
+     */
+    public void setMaxUploadRate(int maxUploadRate) {
+        this.maxUploadRate = maxUploadRate;
+    }
+
+    /**
+     * Get the maximum download rate of all the data connections of the
+     * listener together, in bytes per second.
+     * @return The maximum download rate, 0 for no limit
+     */
+    public int getMaxDownloadRate() {
+        return maxDownloadRate;
+    }
+
+    /**
+     * Set the maximum download rate of all the data connections of the
+     * listener together, in bytes per second.
+     * @param maxDownloadRate The maximum download rate, 0 for no limit
+     */
+    public void setMaxDownloadRate(int maxDownloadRate) {
+        this.maxDownloadRate = maxDownloadRate;
+    }
 }
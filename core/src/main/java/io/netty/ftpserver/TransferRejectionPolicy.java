@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver;
+
+/**
+ * Defines what happens to a command when the queue of the transfer threads
+ * is full.
+ *
+ * @author Io Netty Project
+ *
+ */
+public enum TransferRejectionPolicy {
+
+    /**
+     * the command is refused right away and the client is told to try again
+     * later.
+     */
+    ABORT,
+
+    /**
+     * the command is queued all the same, and the control connection stops
+     * reading the next commands until the transfer threads drained their
+     * queue.
+     */
+    BACKOFF;
+
+    /**
+     * Parses the given string into its equivalent enum.
+     *
+     * @param value
+     *            the string value to parse.
+     * @return the equivalent enum
+     */
+    public static TransferRejectionPolicy parse(String value) {
+        for (TransferRejectionPolicy policy : values()) {
+            if (policy.name().equalsIgnoreCase(value)) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("Invalid TransferRejectionPolicy: " + value);
+    }
+
+}
@@ -29,6 +29,7 @@ package io.netty.ftpserver.command;
 
 import io.netty.ftpserver.command.impl.ABOR;
 import io.netty.ftpserver.command.impl.ACCT;
+import io.netty.ftpserver.command.impl.ALLO;
 import io.netty.ftpserver.command.impl.APPE;
 import io.netty.ftpserver.command.impl.AUTH;
 import io.netty.ftpserver.command.impl.AbstractCommand;
@@ -42,6 +43,7 @@ import io.netty.ftpserver.command.impl.FEAT;
 import io.netty.ftpserver.command.impl.HELP;
 import io.netty.ftpserver.command.impl.LANG;
 import io.netty.ftpserver.command.impl.LIST;
+import io.netty.ftpserver.command.impl.HASH;
 import io.netty.ftpserver.command.impl.MD5;
 import io.netty.ftpserver.command.impl.MDTM;
 import io.netty.ftpserver.command.impl.MFMT;
@@ -52,7 +54,10 @@ import io.netty.ftpserver.command.impl.MODE;
 import io.netty.ftpserver.command.impl.NLST;
 import io.netty.ftpserver.command.impl.NOOP;
 import io.netty.ftpserver.command.impl.OPTS;
+import io.netty.ftpserver.command.impl.OPTS_HASH;
 import io.netty.ftpserver.command.impl.OPTS_MLST;
+import io.netty.ftpserver.command.impl.OPTS_MODE;
+import io.netty.ftpserver.command.impl.OPTS_RETR;
 import io.netty.ftpserver.command.impl.OPTS_UTF8;
 import io.netty.ftpserver.command.impl.PASS;
 import io.netty.ftpserver.command.impl.PASV;
@@ -61,6 +66,7 @@ import io.netty.ftpserver.command.impl.PORT;
 import io.netty.ftpserver.command.impl.PROT;
 import io.netty.ftpserver.command.impl.PWD;
 import io.netty.ftpserver.command.impl.QUIT;
+import io.netty.ftpserver.command.impl.RANG;
 import io.netty.ftpserver.command.impl.REIN;
 import io.netty.ftpserver.command.impl.REST;
 import io.netty.ftpserver.command.impl.RETR;
@@ -68,12 +74,17 @@ import io.netty.ftpserver.command.impl.RMD;
 import io.netty.ftpserver.command.impl.RNFR;
 import io.netty.ftpserver.command.impl.RNTO;
 import io.netty.ftpserver.command.impl.SITE;
+import io.netty.ftpserver.command.impl.SITE_CPFR;
+import io.netty.ftpserver.command.impl.SITE_CPTO;
 import io.netty.ftpserver.command.impl.SITE_DESCUSER;
 import io.netty.ftpserver.command.impl.SITE_HELP;
 import io.netty.ftpserver.command.impl.SITE_STAT;
+import io.netty.ftpserver.command.impl.SITE_UNPACK;
 import io.netty.ftpserver.command.impl.SITE_WHO;
 import io.netty.ftpserver.command.impl.SITE_ZONE;
 import io.netty.ftpserver.command.impl.SIZE;
+import io.netty.ftpserver.command.impl.SPAS;
+import io.netty.ftpserver.command.impl.SPOR;
 import io.netty.ftpserver.command.impl.STAT;
 import io.netty.ftpserver.command.impl.STOR;
 import io.netty.ftpserver.command.impl.STOU;
@@ -142,6 +153,7 @@ public class CommandFactoryFactory {
         // first populate the default command list
         DEFAULT_COMMAND_MAP.put("ABOR", new ABOR());
         DEFAULT_COMMAND_MAP.put("ACCT", new ACCT());
+        DEFAULT_COMMAND_MAP.put("ALLO", new ALLO());
         DEFAULT_COMMAND_MAP.put("APPE", new APPE());
         DEFAULT_COMMAND_MAP.put("AUTH", new AUTH());
         DEFAULT_COMMAND_MAP.put("CDUP", new CDUP());
@@ -150,6 +162,7 @@ public class CommandFactoryFactory {
         DEFAULT_COMMAND_MAP.put("EPRT", new EPRT());
         DEFAULT_COMMAND_MAP.put("EPSV", new EPSV());
         DEFAULT_COMMAND_MAP.put("FEAT", new FEAT());
+        DEFAULT_COMMAND_MAP.put("HASH", new HASH());
         DEFAULT_COMMAND_MAP.put("HELP", new HELP());
         DEFAULT_COMMAND_MAP.put("LANG", new LANG());
         DEFAULT_COMMAND_MAP.put("LIST", new LIST());
@@ -164,7 +177,10 @@ public class CommandFactoryFactory {
         DEFAULT_COMMAND_MAP.put("NLST", new NLST());
         DEFAULT_COMMAND_MAP.put("NOOP", new NOOP());
         DEFAULT_COMMAND_MAP.put("OPTS", new OPTS());
+        DEFAULT_COMMAND_MAP.put("OPTS_HASH", new OPTS_HASH());
         DEFAULT_COMMAND_MAP.put("OPTS_MLST", new OPTS_MLST());
+        DEFAULT_COMMAND_MAP.put("OPTS_MODE", new OPTS_MODE());
+        DEFAULT_COMMAND_MAP.put("OPTS_RETR", new OPTS_RETR());
         DEFAULT_COMMAND_MAP.put("OPTS_UTF8", new OPTS_UTF8());
         DEFAULT_COMMAND_MAP.put("PASS", new PASS());
         DEFAULT_COMMAND_MAP.put("PASV", new PASV());
@@ -173,6 +189,7 @@ public class CommandFactoryFactory {
         DEFAULT_COMMAND_MAP.put("PROT", new PROT());
         DEFAULT_COMMAND_MAP.put("PWD", new PWD());
         DEFAULT_COMMAND_MAP.put("QUIT", new QUIT());
+        DEFAULT_COMMAND_MAP.put("RANG", new RANG());
         DEFAULT_COMMAND_MAP.put("REIN", new REIN());
         DEFAULT_COMMAND_MAP.put("REST", new REST());
         DEFAULT_COMMAND_MAP.put("RETR", new RETR());
@@ -181,9 +198,14 @@ public class CommandFactoryFactory {
         DEFAULT_COMMAND_MAP.put("RNTO", new RNTO());
         DEFAULT_COMMAND_MAP.put("SITE", new SITE());
         DEFAULT_COMMAND_MAP.put("SIZE", new SIZE());
+        DEFAULT_COMMAND_MAP.put("SPAS", new SPAS());
+        DEFAULT_COMMAND_MAP.put("SPOR", new SPOR());
+        DEFAULT_COMMAND_MAP.put("SITE_CPFR", new SITE_CPFR());
+        DEFAULT_COMMAND_MAP.put("SITE_CPTO", new SITE_CPTO());
         DEFAULT_COMMAND_MAP.put("SITE_DESCUSER", new SITE_DESCUSER());
         DEFAULT_COMMAND_MAP.put("SITE_HELP", new SITE_HELP());
         DEFAULT_COMMAND_MAP.put("SITE_STAT", new SITE_STAT());
+        DEFAULT_COMMAND_MAP.put("SITE_UNPACK", new SITE_UNPACK());
         DEFAULT_COMMAND_MAP.put("SITE_WHO", new SITE_WHO());
         DEFAULT_COMMAND_MAP.put("SITE_ZONE", new SITE_ZONE());
         DEFAULT_COMMAND_MAP.put("STAT", new STAT());
@@ -193,6 +215,10 @@ public class CommandFactoryFactory {
         DEFAULT_COMMAND_MAP.put("SYST", new SYST());
         DEFAULT_COMMAND_MAP.put("TYPE", new TYPE());
         DEFAULT_COMMAND_MAP.put("USER", new USER());
+        DEFAULT_COMMAND_MAP.put("XCRC", new HASH());
+        DEFAULT_COMMAND_MAP.put("XMD5", new HASH());
+        DEFAULT_COMMAND_MAP.put("XSHA1", new HASH());
+        DEFAULT_COMMAND_MAP.put("XSHA256", new HASH());
     }
 
     private Map<String, AbstractCommand> commandMap = new HashMap<>();
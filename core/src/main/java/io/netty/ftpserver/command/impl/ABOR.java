@@ -19,13 +19,16 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.ftpserver.ftplet.FtpException;
 import io.netty.ftpserver.ftplet.FtpReply;
 import io.netty.ftpserver.ftplet.FtpRequest;
+import io.netty.ftpserver.impl.NettyDataConnectionFactory;
+import io.netty.ftpserver.impl.ServerDataConnectionFactory;
 import io.netty.ftpserver.impl.reply.LocalizedFtpReply;
 import io.netty.ftpserver.listener.nio.channel.FtpChannel;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
 
 import java.io.IOException;
 
@@ -38,21 +41,36 @@ import java.io.IOException;
  * any associated transfer of data. No action is to be taken if the previous
  * command has been completed (including data transfer). The control connection
  * is not to be closed by the server, but the data connection must be closed.
- * Current implementation does not do anything. As here data transfers are not
- * multi-threaded.
+ * An ABOR received during a transfer closes its data connection right away,
+ * and runs once the 426 reply of the transfer was sent.
  *
  * @author Io Netty Project
  */
-@Sharable
 public class ABOR extends AbstractCommand {
     @Override
-    public void execute(ChannelHandlerContext context, FtpChannel channel, FtpRequest request) throws IOException, FtpException {
+    public void execute(ChannelHandlerContext context, final FtpChannel channel, final FtpRequest request) throws IOException, FtpException {
         // reset state variables
         channel.resetState();
 
-        // and abort any data connection
-        channel.getDataConnection().closeDataConnection();
-        channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
-                FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "ABOR", null));
+        // and abort any data connection, the 426 reply of a running
+        // transfer must precede the ABOR reply
+        ServerDataConnectionFactory connFactory = channel.getDataConnection();
+        Future<Long> transfer = null;
+        if (connFactory instanceof NettyDataConnectionFactory) {
+            transfer = ((NettyDataConnectionFactory) connFactory).getTransferFuture();
+        }
+        connFactory.dispose();
+        if (transfer == null) {
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "ABOR", null));
+            return;
+        }
+        channel.deferReply();
+        transfer.addListener(new FutureListener<Long>() {
+            public void operationComplete(Future<Long> future) {
+                channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "ABOR", null));
+            }
+        });
     }
 }
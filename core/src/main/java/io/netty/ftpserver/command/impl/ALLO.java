@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.ftpserver.command.impl;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.ftpserver.ftplet.FtpException;
+import io.netty.ftpserver.ftplet.FtpReply;
+import io.netty.ftpserver.ftplet.FtpRequest;
+import io.netty.ftpserver.impl.reply.LocalizedFtpReply;
+import io.netty.ftpserver.listener.nio.channel.FtpChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.StringTokenizer;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * <code>ALLO &lt;SP&gt; &lt;decimal-integer&gt; [&lt;SP&gt; R &lt;SP&gt; &lt;decimal-integer&gt;] &lt;CRLF&gt;</code><br>
+ *
+ * Gives the size of the file to be stored. No storage is reserved, but the
+ * size is required by a STOR of a byte range set with RANG, so that the
+ * segments uploaded by several sessions are published as one file once they
+ * all arrived.
+ *
+ * @author Io Netty Project
+ */
+public class ALLO extends AbstractCommand {
+    private final Logger LOG = LoggerFactory.getLogger(ALLO.class);
+
+    @Override
+    public void execute(ChannelHandlerContext context, FtpChannel channel, FtpRequest request) throws IOException, FtpException {
+        // argument check, the record size is ignored
+        String argument = request.getArgument();
+        StringTokenizer st = new StringTokenizer(argument == null ? "" : argument, " ");
+        long size = -1L;
+        if (st.hasMoreTokens()) {
+            try {
+                size = Long.parseLong(st.nextToken());
+            } catch (NumberFormatException ex) {
+                LOG.debug("Invalid allocated size: " + argument, ex);
+            }
+        }
+
+        if (size < 0L) {
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "ALLO", null));
+            return;
+        }
+
+        channel.setAllocatedSize(size);
+        channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                FtpReply.REPLY_200_COMMAND_OKAY, "ALLO", null));
+    }
+}
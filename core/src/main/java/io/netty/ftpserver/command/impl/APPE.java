@@ -19,27 +19,26 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.ftpserver.ftplet.DataConnection;
-import io.netty.ftpserver.ftplet.DataConnectionFactory;
 import io.netty.ftpserver.ftplet.DefaultFtpReply;
 import io.netty.ftpserver.ftplet.FtpException;
 import io.netty.ftpserver.ftplet.FtpFile;
 import io.netty.ftpserver.ftplet.FtpReply;
 import io.netty.ftpserver.ftplet.FtpRequest;
-import io.netty.ftpserver.impl.IODataConnectionFactory;
+import io.netty.ftpserver.impl.AsyncDataConnection;
+import io.netty.ftpserver.impl.ServerDataConnectionFactory;
 import io.netty.ftpserver.impl.ServerFtpStatistics;
 import io.netty.ftpserver.impl.reply.LocalizedDataTransferFtpReply;
 import io.netty.ftpserver.impl.reply.LocalizedFtpReply;
 import io.netty.ftpserver.listener.nio.channel.FtpChannel;
 import io.netty.ftpserver.util.IoUtils;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.net.InetAddress;
 import java.net.SocketException;
 
 /**
@@ -55,12 +54,12 @@ import java.net.SocketException;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class APPE extends AbstractCommand {
     private final Logger LOG = LoggerFactory.getLogger(APPE.class);
 
     @Override
-    public void execute(ChannelHandlerContext context, FtpChannel channel, FtpRequest request) throws IOException, FtpException {
+    public void execute(ChannelHandlerContext context, final FtpChannel channel, final FtpRequest request) throws IOException, FtpException {
+        boolean async = false;
         try {
 
             // reset state variables
@@ -77,16 +76,12 @@ public class APPE extends AbstractCommand {
 
             // 24-10-2007 - added check if PORT or PASV is issued, see
             // https://issues.apache.org/jira/browse/FTPSERVER-110
-            DataConnectionFactory connFactory = channel.getDataConnection();
-            if (connFactory instanceof IODataConnectionFactory) {
-                InetAddress address = ((IODataConnectionFactory) connFactory)
-                        .getInetAddress();
-                if (address == null) {
-                    channel.writeAndFlush(new DefaultFtpReply(
-                            FtpReply.REPLY_503_BAD_SEQUENCE_OF_COMMANDS,
-                            "PORT or PASV must be issued first"));
-                    return;
-                }
+            ServerDataConnectionFactory connFactory = channel.getDataConnection();
+            if (connFactory.getInetAddress() == null) {
+                channel.writeAndFlush(new DefaultFtpReply(
+                        FtpReply.REPLY_503_BAD_SEQUENCE_OF_COMMANDS,
+                        "PORT or PASV must be issued first"));
+                return;
             }
 
             // get filenames
@@ -124,71 +119,105 @@ public class APPE extends AbstractCommand {
             channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
                     FtpReply.REPLY_150_FILE_STATUS_OKAY, "APPE", fileName));
 
-            DataConnection dataConnection;
-            try {
-                dataConnection = channel.getDataConnection().openConnection();
-            } catch (Exception e) {
-                LOG.debug("Exception when getting data input stream", e);
-                channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
-                        FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION, "APPE",
-                        fileName, file));
-                return;
-            }
-
-            // get data from client
-            boolean failure = false;
-            OutputStream os = null;
-            long transSz = 0L;
-            try {
-
-                // find offset
-                long offset = 0L;
-                if (file.doesExist()) {
-                    offset = file.getSize();
-                }
-
-                // open streams
-                os = file.createOutputStream(offset);
-
-                // transfer data
-                transSz = dataConnection.transferFromClient(os);
-
-                // attempt to close the output stream so that errors in
-                // closing it will return an error to the client (FTPSERVER-119)
-                if(os != null) {
-                    os.close();
+            // receive file data from client once the data connection is opened,
+            // the transfer replies are sent when it completes
+            final FtpFile appeFile = file;
+            connFactory.openConnectionAsync().addListener(new FutureListener<AsyncDataConnection>() {
+                public void operationComplete(Future<AsyncDataConnection> future) {
+                    if (!future.isSuccess()) {
+                        LOG.debug("Exception getting the input data stream", future.cause());
+                        channel.getDataConnection().closeDataConnection();
+                        channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                                FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION, "APPE",
+                                appeFile.getAbsolutePath(), appeFile));
+                        return;
+                    }
+                    transfer(channel, request, future.getNow(), appeFile);
                 }
-
-                // notify the statistics component
-                ServerFtpStatistics ftpStat = (ServerFtpStatistics) channel.getContext()
-                        .getFtpStatistics();
-                ftpStat.setUpload(channel, file, transSz);
-
-            } catch (SocketException e) {
-                LOG.debug("SocketException during file upload", e);
-                failure = true;
-                channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
-                        FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
-                        "APPE", fileName, file));
-            } catch (IOException e) {
-                LOG.debug("IOException during file upload", e);
-                failure = true;
-                channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
-                        FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
-                        "APPE", fileName, file));
-            } finally {
-                // make sure we really close the output stream
-                IoUtils.close(os);
+            });
+            async = true;
+        } finally {
+            if (!async) {
+                channel.getDataConnection().closeDataConnection();
             }
+        }
+    }
 
-            // if data transfer ok - send transfer complete message
-            if (!failure) {
-                channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "APPE",
-                        fileName, file, transSz));
+    /**
+     * Receive the file data and reply once the transfer is completed.
+     */
+    private void transfer(final FtpChannel channel, final FtpRequest request,
+                          AsyncDataConnection dataConnection, final FtpFile file) {
+        final String fileName = file.getAbsolutePath();
+        final OutputStream os;
+        try {
+            // find offset
+            long offset = 0L;
+            if (file.doesExist()) {
+                offset = file.getSize();
             }
-        } finally {
+
+            // open streams
+            os = file.createOutputStream(offset);
+            channel.getContext().getAsciiOffsetIndex().invalidate(file);
+            channel.getContext().getChecksumStore().invalidate(file);
+        } catch (IOException ex) {
+            LOG.debug("IOException during file upload", ex);
             channel.getDataConnection().closeDataConnection();
+            channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                    FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                    "APPE", fileName, file));
+            return;
         }
+
+        // transfer data
+        dataConnection.transferFromClientAsync(os).addListener(new FutureListener<Long>() {
+            public void operationComplete(Future<Long> future) {
+                // release the data connection before replying, the client
+                // may open the next one as soon as it reads the reply
+                channel.getDataConnection().closeDataConnection();
+                try {
+                    Throwable cause = future.cause();
+                    if (cause == null) {
+                        // attempt to close the output stream so that errors in
+                        // closing it will return an error to the client (FTPSERVER-119)
+                        try {
+                            os.close();
+                        } catch (IOException ex) {
+                            cause = ex;
+                        }
+                    }
+
+                    if (cause == null) {
+                        long transSz = future.getNow();
+
+                        // notify the statistics component
+                        ServerFtpStatistics ftpStat = (ServerFtpStatistics) channel.getContext()
+                                .getFtpStatistics();
+                        if (ftpStat != null) {
+                            ftpStat.setUpload(channel, file, transSz);
+                        }
+
+                        // if data transfer ok - send transfer complete message
+                        channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                                FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "APPE",
+                                fileName, file, transSz));
+                    } else if (cause instanceof SocketException) {
+                        LOG.debug("SocketException during file upload", cause);
+                        channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                                FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
+                                "APPE", fileName, file));
+                    } else {
+                        LOG.debug("IOException during file upload", cause);
+                        channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                                FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                                "APPE", fileName, file));
+                    }
+                } finally {
+                    // make sure we really close the output stream
+                    IoUtils.close(os);
+                }
+            }
+        });
     }
 }
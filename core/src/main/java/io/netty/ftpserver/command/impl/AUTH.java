@@ -19,7 +19,6 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.ftpserver.ftplet.FtpException;
 import io.netty.ftpserver.ftplet.FtpReply;
@@ -45,7 +44,6 @@ import java.util.List;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class AUTH extends AbstractCommand {
 
     private final Logger LOG = LoggerFactory.getLogger(AUTH.class);
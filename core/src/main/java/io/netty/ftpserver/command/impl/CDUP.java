@@ -19,7 +19,6 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.ftpserver.ftplet.FileSystemView;
 import io.netty.ftpserver.ftplet.FtpException;
@@ -45,7 +44,6 @@ import java.io.IOException;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class CDUP extends AbstractCommand {
     private final Logger LOG = LoggerFactory.getLogger(CDUP.class);
 
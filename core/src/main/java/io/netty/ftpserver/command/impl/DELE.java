@@ -19,7 +19,6 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.ftpserver.ftplet.FtpException;
 import io.netty.ftpserver.ftplet.FtpFile;
@@ -43,7 +42,6 @@ import java.io.IOException;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class DELE extends AbstractCommand {
     private final Logger LOG = LoggerFactory.getLogger(DELE.class);
 
@@ -95,6 +93,8 @@ public class DELE extends AbstractCommand {
 
         // now delete
         if (file.delete()) {
+            channel.getContext().getAsciiOffsetIndex().invalidate(file);
+            channel.getContext().getChecksumStore().invalidate(file);
             channel.writeAndFlush(LocalizedFileActionFtpReply.translate(channel, request,
                     FtpReply.REPLY_250_REQUESTED_FILE_ACTION_OKAY, "DELE",
                     fileName, file));
@@ -51,13 +51,20 @@ public class DefaultCommandFactory implements CommandFactory {
     private final Map<String, AbstractCommand> commandMap;
 
     /**
-     * Get command. Returns null if not found.
+     * Get command. Returns null if not found. The requests already carry
+     * their command in upper case, it is only converted if not found.
      */
     public AbstractCommand getCommand(final String cmdName) {
-        if (cmdName == null || cmdName.equals("")) {
+        if (cmdName == null || cmdName.isEmpty()) {
             return null;
         }
-        String upperCaseCmdName = cmdName.toUpperCase();
-        return commandMap.get(upperCaseCmdName);
+        AbstractCommand command = commandMap.get(cmdName);
+        if (command == null) {
+            String upperCaseCmdName = cmdName.toUpperCase();
+            if (!upperCaseCmdName.equals(cmdName)) {
+                command = commandMap.get(upperCaseCmdName);
+            }
+        }
+        return command;
     }
 }
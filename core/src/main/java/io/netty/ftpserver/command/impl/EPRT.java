@@ -19,7 +19,6 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.ftpserver.DataConnectionConfiguration;
 import io.netty.ftpserver.ftplet.FtpException;
@@ -46,7 +45,6 @@ import java.net.UnknownHostException;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class EPRT extends AbstractCommand{
     private final Logger LOG = LoggerFactory.getLogger(EPRT.class);
 
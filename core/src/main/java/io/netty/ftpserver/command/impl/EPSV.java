@@ -19,7 +19,6 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.ftpserver.DataConnectionException;
 import io.netty.ftpserver.ftplet.FtpException;
@@ -47,7 +46,6 @@ import java.net.InetSocketAddress;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class EPSV extends AbstractCommand {
 
     @Override
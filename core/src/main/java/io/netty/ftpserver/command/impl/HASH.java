@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.ftpserver.command.impl;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.ftpserver.ftplet.FtpException;
+import io.netty.ftpserver.ftplet.FtpFile;
+import io.netty.ftpserver.ftplet.FtpReply;
+import io.netty.ftpserver.ftplet.FtpRequest;
+import io.netty.ftpserver.impl.TransferChecksum;
+import io.netty.ftpserver.impl.reply.LocalizedFtpReply;
+import io.netty.ftpserver.listener.nio.channel.FtpChannel;
+import io.netty.util.concurrent.Future;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * <code>HASH &lt;SP&gt; &lt;pathname&gt; &lt;CRLF&gt;</code><br>
+ * <code>XCRC &lt;SP&gt; &lt;pathname&gt; &lt;CRLF&gt;</code><br>
+ * <code>XMD5 &lt;SP&gt; &lt;pathname&gt; &lt;CRLF&gt;</code><br>
+ * <code>XSHA1 &lt;SP&gt; &lt;pathname&gt; &lt;CRLF&gt;</code><br>
+ * <code>XSHA256 &lt;SP&gt; &lt;pathname&gt; &lt;CRLF&gt;</code><br>
+ *
+ * Returns a checksum of a whole file. HASH uses the algorithm selected with
+ * OPTS HASH, SHA-1 by default, according to draft-bryan-ftpext-hash-02.txt,
+ * the other commands a fixed algorithm. The checksums computed while the file
+ * was last transferred are returned without reading the file again.
+ *
+ * @author Io Netty Project
+ */
+public class HASH extends AbstractCommand {
+    private final Logger LOG = LoggerFactory.getLogger(HASH.class);
+
+    /**
+     * The session attribute holding the algorithm selected with OPTS HASH
+     */
+    public static final String ALGORITHM = "HASH.algorithm";
+
+    /**
+     * The algorithm of HASH when none has been selected
+     */
+    public static final String DEFAULT_ALGORITHM = TransferChecksum.SHA_1;
+
+    @Override
+    public void execute(ChannelHandlerContext context, FtpChannel channel, FtpRequest request) throws IOException, FtpException {
+        // reset state variables
+        channel.resetState();
+
+        String command = request.getCommand();
+        String algorithm;
+        if ("XCRC".equals(command)) {
+            algorithm = TransferChecksum.CRC32;
+        } else if ("XMD5".equals(command)) {
+            algorithm = TransferChecksum.MD5;
+        } else if ("XSHA1".equals(command)) {
+            algorithm = TransferChecksum.SHA_1;
+        } else if ("XSHA256".equals(command)) {
+            algorithm = TransferChecksum.SHA_256;
+        } else {
+            algorithm = (String) channel.getAttribute(ALGORITHM);
+            if (algorithm == null) {
+                algorithm = DEFAULT_ALGORITHM;
+            }
+        }
+
+        String fileName = request.getArgument();
+        if (fileName == null || fileName.trim().length() == 0) {
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "HASH", null));
+            return;
+        }
+        fileName = fileName.trim();
+
+        // get file object
+        FtpFile file = null;
+        try {
+            file = channel.getFileSystemView().getFile(fileName);
+        } catch (Exception ex) {
+            LOG.debug("Exception getting the file object: " + fileName, ex);
+        }
+
+        if (file == null || !file.isFile()) {
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN,
+                    "HASH.invalid", fileName));
+            return;
+        }
+
+        if (!file.isReadable()) {
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN,
+                    "HASH.permission", fileName));
+            return;
+        }
+
+        if (TransferChecksum.getAlgorithm(algorithm) == null) {
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_504_COMMAND_NOT_IMPLEMENTED_FOR_THAT_PARAMETER,
+                    "HASH.notimplemented", algorithm));
+            return;
+        }
+
+        // answer from the checksum computed by the last transfer when the file
+        // did not change since, else read the whole file
+        long size = file.getSize();
+        Future<String> checksum = channel.getContext().getChecksumStore()
+                .compute(file, algorithm).awaitUninterruptibly();
+        if (!checksum.isSuccess()) {
+            LOG.debug("Exception computing the checksum of: " + fileName, checksum.cause());
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_451_REQUESTED_ACTION_ABORTED,
+                    "HASH", fileName));
+            return;
+        }
+        String value = checksum.getNow();
+
+        if ("HASH".equals(command)) {
+            // the end of the range is inclusive, as with RANG, an empty
+            // file has no last byte and is written 0-0
+            long last = size > 0 ? size - 1 : 0;
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_213_FILE_STATUS, "HASH",
+                    algorithm + " 0-" + last + " " + value + " " + fileName));
+        } else {
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_250_REQUESTED_FILE_ACTION_OKAY, "HASH.checksum",
+                    value));
+        }
+    }
+}
@@ -19,28 +19,27 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.ftpserver.command.impl.listing.DirectoryLister;
 import io.netty.ftpserver.command.impl.listing.LISTFileFormater;
 import io.netty.ftpserver.command.impl.listing.ListArgument;
 import io.netty.ftpserver.command.impl.listing.ListArgumentParser;
-import io.netty.ftpserver.ftplet.DataConnection;
-import io.netty.ftpserver.ftplet.DataConnectionFactory;
 import io.netty.ftpserver.ftplet.DefaultFtpReply;
 import io.netty.ftpserver.ftplet.FtpException;
 import io.netty.ftpserver.ftplet.FtpFile;
 import io.netty.ftpserver.ftplet.FtpReply;
 import io.netty.ftpserver.ftplet.FtpRequest;
-import io.netty.ftpserver.impl.IODataConnectionFactory;
+import io.netty.ftpserver.impl.AsyncDataConnection;
+import io.netty.ftpserver.impl.ServerDataConnectionFactory;
 import io.netty.ftpserver.impl.reply.LocalizedDataTransferFtpReply;
 import io.netty.ftpserver.impl.reply.LocalizedFtpReply;
 import io.netty.ftpserver.listener.nio.channel.FtpChannel;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.net.InetAddress;
 import java.net.SocketException;
 
 /**
@@ -57,7 +56,6 @@ import java.net.SocketException;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class LIST extends AbstractCommand {
     private final Logger LOG = LoggerFactory.getLogger(LIST.class);
 
@@ -66,7 +64,8 @@ public class LIST extends AbstractCommand {
     private final DirectoryLister directoryLister = new DirectoryLister();
 
     @Override
-    public void execute(ChannelHandlerContext context, FtpChannel channel, FtpRequest request) throws IOException, FtpException {
+    public void execute(ChannelHandlerContext context, final FtpChannel channel, final FtpRequest request) throws IOException, FtpException {
+        boolean async = false;
         try {
 
             // reset state variables
@@ -89,67 +88,62 @@ public class LIST extends AbstractCommand {
 
             // 24-10-2007 - added check if PORT or PASV is issued, see
             // https://issues.apache.org/jira/browse/FTPSERVER-110
-            DataConnectionFactory connFactory = channel.getDataConnection();
-            if (connFactory instanceof IODataConnectionFactory) {
-                InetAddress address = ((IODataConnectionFactory) connFactory)
-                        .getInetAddress();
-                if (address == null) {
-                    channel.writeAndFlush(new DefaultFtpReply(
-                            FtpReply.REPLY_503_BAD_SEQUENCE_OF_COMMANDS,
-                            "PORT or PASV must be issued first"));
-                    return;
-                }
+            ServerDataConnectionFactory connFactory = channel.getDataConnection();
+            if (connFactory.getInetAddress() == null) {
+                channel.writeAndFlush(new DefaultFtpReply(
+                        FtpReply.REPLY_503_BAD_SEQUENCE_OF_COMMANDS,
+                        "PORT or PASV must be issued first"));
+                return;
             }
 
             // get data connection
             channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
                     FtpReply.REPLY_150_FILE_STATUS_OKAY, "LIST", null));
 
-            DataConnection dataConnection;
-            try {
-                dataConnection = channel.getDataConnection().openConnection();
-            } catch (Exception e) {
-                LOG.debug("Exception getting the output data stream", e);
-                channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
-                        FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION, "LIST",
-                        null, file));
-                return;
-            }
-
             // transfer listing data
-            boolean failure = false;
-            String dirList = directoryLister.listFiles(parsedArg,
+            final String dirList = directoryLister.listFiles(parsedArg,
                     channel.getFileSystemView(), LIST_FILE_FORMATER);
-            try {
-                dataConnection.transferToClient(dirList);
-            } catch (SocketException ex) {
-                LOG.debug("Socket exception during list transfer", ex);
-                failure = true;
-                channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
-                        FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
-                        "LIST", null, file));
-            } catch (IOException ex) {
-                LOG.debug("IOException during list transfer", ex);
-                failure = true;
-                channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
-                        FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
-                        "LIST", null, file));
-            } catch (IllegalArgumentException e) {
-                LOG.debug("Illegal list syntax: " + request.getArgument(), e);
-                // if listing syntax error - send message
-                channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
-                        FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
-                        "LIST", null, file));
-            }
-
-            // if data transfer ok - send transfer complete message
-            if (!failure) {
-                channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "LIST",
-                        null, file, dirList.length()));
-            }
+            final FtpFile listFile = file;
+            connFactory.openConnectionAsync().addListener(new FutureListener<AsyncDataConnection>() {
+                public void operationComplete(Future<AsyncDataConnection> future) {
+                    if (!future.isSuccess()) {
+                        LOG.debug("Exception getting the output data stream", future.cause());
+                        channel.getDataConnection().closeDataConnection();
+                        channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                                FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION, "LIST",
+                                null, listFile));
+                        return;
+                    }
+                    future.getNow().transferToClientAsync(dirList).addListener(new FutureListener<Long>() {
+                        public void operationComplete(Future<Long> future) {
+                            // release the data connection before replying, the client
+                            // may open the next one as soon as it reads the reply
+                            channel.getDataConnection().closeDataConnection();
+                            if (future.isSuccess()) {
+                                // if data transfer ok - send transfer complete message
+                                channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "LIST",
+                                        null, listFile, dirList.length()));
+                            } else if (future.cause() instanceof SocketException) {
+                                LOG.debug("Socket exception during list transfer", future.cause());
+                                channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                                        FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED, "LIST",
+                                        null, listFile));
+                            } else {
+                                LOG.debug("IOException during list transfer", future.cause());
+                                channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                                        FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN, "LIST",
+                                        null, listFile));
+                            }
+                        }
+                    });
+                }
+            });
+            async = true;
         } finally {
-            channel.getDataConnection().closeDataConnection();
+            if (!async) {
+                channel.getDataConnection().closeDataConnection();
+            }
         }
     }
 }
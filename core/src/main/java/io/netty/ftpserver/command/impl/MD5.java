@@ -19,23 +19,22 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.ftpserver.ftplet.FtpException;
 import io.netty.ftpserver.ftplet.FtpFile;
 import io.netty.ftpserver.ftplet.FtpReply;
 import io.netty.ftpserver.ftplet.FtpRequest;
+import io.netty.ftpserver.impl.ChecksumStore;
+import io.netty.ftpserver.impl.TransferChecksum;
 import io.netty.ftpserver.impl.reply.LocalizedFtpReply;
 import io.netty.ftpserver.listener.nio.channel.FtpChannel;
-import io.netty.ftpserver.util.IoUtils;
+import io.netty.util.concurrent.Future;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.security.DigestInputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
@@ -48,7 +47,6 @@ import java.security.NoSuchAlgorithmException;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class MD5 extends AbstractCommand {
     private final Logger LOG = LoggerFactory.getLogger(MD5.class);
 
@@ -80,7 +78,10 @@ public class MD5 extends AbstractCommand {
             fileNames = new String[] { argument };
         }
 
-        StringBuilder sb = new StringBuilder();
+        // check all the files first, then compute the missing checksums of
+        // all of them in parallel
+        ChecksumStore store = channel.getContext().getChecksumStore();
+        List<Future<String>> hashes = new ArrayList<Future<String>>(fileNames.length);
         for (int i = 0; i < fileNames.length; i++) {
             String fileName = fileNames[i].trim();
 
@@ -93,78 +94,54 @@ public class MD5 extends AbstractCommand {
                 LOG.debug("Exception getting the file object: " + fileName, ex);
             }
 
-            if (file == null) {
-                channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
-                        FtpReply.REPLY_504_COMMAND_NOT_IMPLEMENTED_FOR_THAT_PARAMETER,
-                        "MD5.invalid", fileName));
-                return;
-            }
-
             // check file
-            if (!file.isFile()) {
+            if (file == null || !file.isFile()) {
                 channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
                         FtpReply.REPLY_504_COMMAND_NOT_IMPLEMENTED_FOR_THAT_PARAMETER,
                         "MD5.invalid", fileName));
                 return;
             }
 
-            InputStream is = null;
-            try {
-                is = file.createInputStream(0);
-                String md5Hash = md5(is);
+            hashes.add(store.compute(file, TransferChecksum.MD5));
+        }
 
-                if (i > 0) {
-                    sb.append(", ");
-                }
-                boolean nameHasSpaces = fileName.indexOf(' ') >= 0;
-                if(nameHasSpaces) {
-                    sb.append('"');
-                }
-                sb.append(fileName);
-                if(nameHasSpaces) {
-                    sb.append('"');
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < fileNames.length; i++) {
+            String fileName = fileNames[i].trim();
+            Future<String> hash = hashes.get(i).awaitUninterruptibly();
+            if (!hash.isSuccess()) {
+                LOG.debug("Exception computing the MD5 of: " + fileName, hash.cause());
+                if (hash.cause() instanceof IOException) {
+                    throw (IOException) hash.cause();
                 }
-                sb.append(' ');
-                sb.append(md5Hash);
-
-            } catch (NoSuchAlgorithmException e) {
-                LOG.debug("MD5 algorithm not available", e);
                 channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
                         FtpReply.REPLY_502_COMMAND_NOT_IMPLEMENTED,
                         "MD5.notimplemened", null));
-            } finally {
-                if (isMMD5) {
-                    channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
-                            252, "MMD5", sb.toString()));
-                } else {
-                    channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
-                            251, "MD5", sb.toString()));
-                }
-                IoUtils.close(is);
+                return;
             }
-        }
-    }
-
-    /**
-     * @param is
-     *            InputStream for which the MD5 hash is calculated
-     * @return The hash of the content in the input stream
-     * @throws IOException
-     * @throws NoSuchAlgorithmException
-     */
-    private String md5(InputStream is) throws IOException,
-            NoSuchAlgorithmException {
-        MessageDigest digest = MessageDigest.getInstance("MD5");
-        DigestInputStream dis = new DigestInputStream(is, digest);
 
-        byte[] buffer = new byte[1024];
-
-        int read = dis.read(buffer);
-        while (read > -1) {
-            read = dis.read(buffer);
+            if (i > 0) {
+                sb.append(", ");
+            }
+            boolean nameHasSpaces = fileName.indexOf(' ') >= 0;
+            if(nameHasSpaces) {
+                sb.append('"');
+            }
+            sb.append(fileName);
+            if(nameHasSpaces) {
+                sb.append('"');
+            }
+            sb.append(' ');
+            sb.append(hash.getNow());
         }
 
-        return new String(encodeHex(dis.getMessageDigest().digest()));
+        if (isMMD5) {
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    252, "MMD5", sb.toString()));
+        } else {
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    251, "MD5", sb.toString()));
+        }
     }
 
     /**
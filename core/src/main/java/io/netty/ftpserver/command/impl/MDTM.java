@@ -19,7 +19,6 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.ftpserver.ftplet.FtpException;
 import io.netty.ftpserver.ftplet.FtpFile;
@@ -42,7 +41,6 @@ import java.io.IOException;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class MDTM extends AbstractCommand {
 
     private final Logger LOG = LoggerFactory.getLogger(MDTM.class);
@@ -19,7 +19,6 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.ftpserver.ftplet.FtpException;
 import io.netty.ftpserver.ftplet.FtpFile;
@@ -44,7 +43,6 @@ import java.util.Date;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class MFMT extends AbstractCommand {
     private final Logger LOG = LoggerFactory.getLogger(MFMT.class);
 
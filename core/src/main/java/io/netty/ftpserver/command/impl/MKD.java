@@ -19,7 +19,6 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.ftpserver.ftplet.FtpException;
 import io.netty.ftpserver.ftplet.FtpFile;
@@ -44,7 +43,6 @@ import java.io.IOException;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class MKD extends AbstractCommand {
     private final Logger LOG = LoggerFactory.getLogger(MKD.class);
 
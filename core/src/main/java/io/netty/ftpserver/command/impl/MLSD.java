@@ -19,27 +19,26 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.ftpserver.command.impl.listing.DirectoryLister;
 import io.netty.ftpserver.command.impl.listing.FileFormater;
 import io.netty.ftpserver.command.impl.listing.ListArgument;
 import io.netty.ftpserver.command.impl.listing.ListArgumentParser;
 import io.netty.ftpserver.command.impl.listing.MLSTFileFormater;
-import io.netty.ftpserver.ftplet.DataConnection;
-import io.netty.ftpserver.ftplet.DataConnectionFactory;
 import io.netty.ftpserver.ftplet.DefaultFtpReply;
 import io.netty.ftpserver.ftplet.FtpException;
 import io.netty.ftpserver.ftplet.FtpReply;
 import io.netty.ftpserver.ftplet.FtpRequest;
-import io.netty.ftpserver.impl.IODataConnectionFactory;
+import io.netty.ftpserver.impl.AsyncDataConnection;
+import io.netty.ftpserver.impl.ServerDataConnectionFactory;
 import io.netty.ftpserver.impl.reply.LocalizedFtpReply;
 import io.netty.ftpserver.listener.nio.channel.FtpChannel;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.net.InetAddress;
 import java.net.SocketException;
 
 /**
@@ -54,14 +53,14 @@ import java.net.SocketException;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class MLSD extends AbstractCommand {
     private final Logger LOG = LoggerFactory.getLogger(MLSD.class);
 
     private final DirectoryLister directoryLister = new DirectoryLister();
 
     @Override
-    public void execute(ChannelHandlerContext context, FtpChannel channel, FtpRequest request) throws IOException, FtpException {
+    public void execute(ChannelHandlerContext context, final FtpChannel channel, final FtpRequest request) throws IOException, FtpException {
+        boolean async = false;
         try {
 
             // reset state
@@ -69,16 +68,12 @@ public class MLSD extends AbstractCommand {
 
             // 24-10-2007 - added check if PORT or PASV is issued, see
             // https://issues.apache.org/jira/browse/FTPSERVER-110
-            DataConnectionFactory connFactory = channel.getDataConnection();
-            if (connFactory instanceof IODataConnectionFactory) {
-                InetAddress address = ((IODataConnectionFactory) connFactory)
-                        .getInetAddress();
-                if (address == null) {
-                    channel.writeAndFlush(new DefaultFtpReply(
-                            FtpReply.REPLY_503_BAD_SEQUENCE_OF_COMMANDS,
-                            "PORT or PASV must be issued first"));
-                    return;
-                }
+            ServerDataConnectionFactory connFactory = channel.getDataConnection();
+            if (connFactory.getInetAddress() == null) {
+                channel.writeAndFlush(new DefaultFtpReply(
+                        FtpReply.REPLY_503_BAD_SEQUENCE_OF_COMMANDS,
+                        "PORT or PASV must be issued first"));
+                return;
             }
 
             // get data connection
@@ -86,18 +81,7 @@ public class MLSD extends AbstractCommand {
                     FtpReply.REPLY_150_FILE_STATUS_OKAY, "MLSD", null));
 
             // print listing data
-            DataConnection dataConnection;
-            try {
-                dataConnection = channel.getDataConnection().openConnection();
-            } catch (Exception e) {
-                LOG.debug("Exception getting the output data stream", e);
-                channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
-                        FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION, "MLSD",
-                        null));
-                return;
-            }
-
-            boolean failure = false;
+            final String dirList;
             try {
                 // parse argument
                 ListArgument parsedArg = ListArgumentParser.parse(request
@@ -106,36 +90,63 @@ public class MLSD extends AbstractCommand {
                 FileFormater formater = new MLSTFileFormater((String[]) channel
                         .getAttribute("MLST.types"));
 
-                dataConnection.transferToClient( directoryLister.listFiles(
-                        parsedArg, channel.getFileSystemView(), formater));
-            } catch (SocketException ex) {
-                LOG.debug("Socket exception during data transfer", ex);
-                failure = true;
-                channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
-                        FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
-                        "MLSD", null));
+                dirList =  directoryLister.listFiles(
+                        parsedArg, channel.getFileSystemView(), formater);
             } catch (IOException ex) {
                 LOG.debug("IOException during data transfer", ex);
-                failure = true;
                 channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
                         FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
                         "MLSD", null));
+                return;
             } catch (IllegalArgumentException e) {
                 LOG.debug("Illegal listing syntax: " + request.getArgument(), e);
                 // if listing syntax error - send message
                 channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
                         FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
                         "MLSD", null));
+                return;
             }
 
-            // if data transfer ok - send transfer complete message
-            if (!failure) {
-                channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "MLSD",
-                        null));
-            }
+            connFactory.openConnectionAsync().addListener(new FutureListener<AsyncDataConnection>() {
+                public void operationComplete(Future<AsyncDataConnection> future) {
+                    if (!future.isSuccess()) {
+                        LOG.debug("Exception getting the output data stream", future.cause());
+                        channel.getDataConnection().closeDataConnection();
+                        channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                                FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION, "MLSD",
+                                null));
+                        return;
+                    }
+                    future.getNow().transferToClientAsync(dirList).addListener(new FutureListener<Long>() {
+                        public void operationComplete(Future<Long> future) {
+                            // release the data connection before replying, the client
+                            // may open the next one as soon as it reads the reply
+                            channel.getDataConnection().closeDataConnection();
+                            if (future.isSuccess()) {
+                                // if data transfer ok - send transfer complete message
+                                channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "MLSD",
+                                        null));
+                            } else if (future.cause() instanceof SocketException) {
+                                LOG.debug("Socket exception during data transfer", future.cause());
+                                channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                                        FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED, "MLSD",
+                                        null));
+                            } else {
+                                LOG.debug("IOException during data transfer", future.cause());
+                                channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                                        FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN, "MLSD",
+                                        null));
+                            }
+                        }
+                    });
+                }
+            });
+            async = true;
         } finally {
-            channel.getDataConnection().closeDataConnection();
+            if (!async) {
+                channel.getDataConnection().closeDataConnection();
+            }
         }
     }
 }
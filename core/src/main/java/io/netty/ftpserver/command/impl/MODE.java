@@ -19,11 +19,11 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.ftpserver.ftplet.FtpException;
 import io.netty.ftpserver.ftplet.FtpReply;
 import io.netty.ftpserver.ftplet.FtpRequest;
+import io.netty.ftpserver.impl.ServerDataConnectionFactory;
 import io.netty.ftpserver.impl.reply.LocalizedFtpReply;
 import io.netty.ftpserver.listener.nio.channel.FtpChannel;
 
@@ -35,11 +35,13 @@ import java.io.IOException;
  * <code>MODE &lt;SP&gt; <mode-code> &lt;CRLF&gt;</code><br>
  *
  * The argument is a single Telnet character code specifying the data transfer
- * modes described in the Section on Transmission Modes.
+ * modes described in the Section on Transmission Modes: S for stream mode,
+ * B for block mode keeping the data connection open across the transfers,
+ * Z for compressed mode and E for the extended block mode spreading the
+ * transfers over parallel data connections.
  *
  * @author Io Netty Project
  */
-@Sharable
 public class MODE extends AbstractCommand {
     @Override
     public void execute(ChannelHandlerContext context, FtpChannel channel, FtpRequest request) throws IOException, FtpException {
@@ -57,18 +59,51 @@ public class MODE extends AbstractCommand {
         // set mode
         char md = request.getArgument().charAt(0);
         md = Character.toUpperCase(md);
+        ServerDataConnectionFactory dataCon = channel.getDataConnection();
         if (md == 'S') {
-            channel.getDataConnection().setZipMode(false);
+            dataCon.setZipMode(false);
+            dataCon.setExtendedBlockMode(false);
+            dataCon.setBlockMode(false);
             channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
                     FtpReply.REPLY_200_COMMAND_OKAY, "MODE", "S"));
         } else if (md == 'Z') {
-            channel.getDataConnection().setZipMode(true);
+            dataCon.setZipMode(true);
+            dataCon.setExtendedBlockMode(false);
+            dataCon.setBlockMode(false);
             channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
                     FtpReply.REPLY_200_COMMAND_OKAY, "MODE", "Z"));
+        } else if (md == 'E' && enableExtendedBlockMode(dataCon)) {
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_200_COMMAND_OKAY, "MODE", "E"));
+        } else if (md == 'B' && enableBlockMode(dataCon)) {
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_200_COMMAND_OKAY, "MODE", "B"));
         } else {
             channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
                     FtpReply.REPLY_504_COMMAND_NOT_IMPLEMENTED_FOR_THAT_PARAMETER,
                     "MODE", null));
         }
     }
+
+    private boolean enableExtendedBlockMode(ServerDataConnectionFactory dataCon) {
+        try {
+            dataCon.setExtendedBlockMode(true);
+        } catch (UnsupportedOperationException ex) {
+            return false;
+        }
+        dataCon.setZipMode(false);
+        dataCon.setBlockMode(false);
+        return true;
+    }
+
+    private boolean enableBlockMode(ServerDataConnectionFactory dataCon) {
+        try {
+            dataCon.setBlockMode(true);
+        } catch (UnsupportedOperationException ex) {
+            return false;
+        }
+        dataCon.setZipMode(false);
+        dataCon.setExtendedBlockMode(false);
+        return true;
+    }
 }
@@ -19,7 +19,6 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.ftpserver.ftplet.FtpException;
 import io.netty.ftpserver.ftplet.FtpReply;
@@ -41,7 +40,6 @@ import java.io.IOException;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class OPTS extends AbstractCommand {
     private final Logger LOG = LoggerFactory.getLogger(OPTS.class);
 
@@ -71,8 +69,7 @@ public class OPTS extends AbstractCommand {
         AbstractCommand command = channel.getContext().getCommandFactory().getCommand(optsRequest);
         try {
             if (command != null) {
-                channel.pipeline().addLast(optsRequest,command);
-                context.fireChannelRead(request);
+                command.execute(context, channel, request);
             } else {
                 channel.resetState();
                 channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
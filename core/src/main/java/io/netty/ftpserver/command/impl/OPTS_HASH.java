@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.ftpserver.command.impl;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.ftpserver.ftplet.FtpException;
+import io.netty.ftpserver.ftplet.FtpReply;
+import io.netty.ftpserver.ftplet.FtpRequest;
+import io.netty.ftpserver.impl.TransferChecksum;
+import io.netty.ftpserver.impl.reply.LocalizedFtpReply;
+import io.netty.ftpserver.listener.nio.channel.FtpChannel;
+
+import java.io.IOException;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * <code>OPTS HASH [&lt;SP&gt; &lt;algorithm&gt;] &lt;CRLF&gt;</code><br>
+ *
+ * Selects the algorithm used by the HASH command of the session, or returns
+ * the selected one when no algorithm is given.
+ *
+ * @author Io Netty Project
+ */
+public class OPTS_HASH extends AbstractCommand {
+    @Override
+    public void execute(ChannelHandlerContext context, FtpChannel channel, FtpRequest request) throws IOException, FtpException {
+        // reset state
+        channel.resetState();
+
+        // the argument is "HASH [<algorithm>]"
+        String argument = request.getArgument().trim();
+        int spIndex = argument.indexOf(' ');
+        if (spIndex == -1) {
+            String algorithm = (String) channel.getAttribute(HASH.ALGORITHM);
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_200_COMMAND_OKAY, "OPTS.HASH",
+                    algorithm == null ? HASH.DEFAULT_ALGORITHM : algorithm));
+            return;
+        }
+
+        String algorithm = TransferChecksum.getAlgorithm(argument.substring(spIndex + 1));
+        if (algorithm == null) {
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "OPTS.HASH", null));
+            return;
+        }
+
+        channel.setAttribute(HASH.ALGORITHM, algorithm);
+        channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                FtpReply.REPLY_200_COMMAND_OKAY, "OPTS.HASH", algorithm));
+    }
+}
@@ -19,7 +19,6 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.ftpserver.ftplet.FtpException;
 import io.netty.ftpserver.ftplet.FtpReply;
@@ -40,7 +39,6 @@ import java.util.StringTokenizer;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class OPTS_MLST extends AbstractCommand {
 
     private final static String[] AVAILABLE_TYPES = { "Size", "Modify", "Type",
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.ftpserver.command.impl;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.ftpserver.ftplet.FtpException;
+import io.netty.ftpserver.ftplet.FtpReply;
+import io.netty.ftpserver.ftplet.FtpRequest;
+import io.netty.ftpserver.impl.reply.LocalizedFtpReply;
+import io.netty.ftpserver.listener.nio.channel.FtpChannel;
+
+import java.io.IOException;
+import java.util.StringTokenizer;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * <code>OPTS MODE Z LEVEL &lt;SP&gt; &lt;level&gt; &lt;CRLF&gt;</code><br>
+ *
+ * Sets the compression level, from 0 to 9, of the MODE Z transfers of the
+ * session.
+ *
+ * @author Io Netty Project
+ */
+public class OPTS_MODE extends AbstractCommand {
+    @Override
+    public void execute(ChannelHandlerContext context, FtpChannel channel, FtpRequest request) throws IOException, FtpException {
+        // reset state
+        channel.resetState();
+
+        // the argument is "MODE Z LEVEL <level>"
+        String argument = request.getArgument();
+        StringTokenizer st = new StringTokenizer(argument, " ");
+        int level = -1;
+        if (st.countTokens() == 4) {
+            st.nextToken();
+            String mode = st.nextToken();
+            String option = st.nextToken();
+            String value = st.nextToken();
+            if ("Z".equalsIgnoreCase(mode) && "LEVEL".equalsIgnoreCase(option)) {
+                try {
+                    level = Integer.parseInt(value);
+                } catch (NumberFormatException ex) {
+                    level = -1;
+                }
+            }
+        }
+
+        if (level < 0 || level > 9) {
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "OPTS.MODE", null));
+            return;
+        }
+
+        channel.getDataConnection().setZipLevel(level);
+        channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                FtpReply.REPLY_200_COMMAND_OKAY, "OPTS.MODE", String.valueOf(level)));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.command.impl;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.ftpserver.ftplet.FtpException;
+import io.netty.ftpserver.ftplet.FtpReply;
+import io.netty.ftpserver.ftplet.FtpRequest;
+import io.netty.ftpserver.impl.reply.LocalizedFtpReply;
+import io.netty.ftpserver.listener.nio.channel.FtpChannel;
+
+import java.io.IOException;
+import java.util.StringTokenizer;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * <code>OPTS RETR &lt;SP&gt; Parallelism=&lt;n&gt;,&lt;min&gt;,&lt;max&gt;; &lt;CRLF&gt;</code><br>
+ *
+ * Sets the number of parallel data connections the server opens for the
+ * extended block mode transfers of the session in active mode. The minimum
+ * and maximum are accepted but not used, and other options are ignored.
+ *
+ * @author Io Netty Project
+ */
+public class OPTS_RETR extends AbstractCommand {
+
+    /**
+     * The most parallel data connections of a session.
+     */
+    public static final int MAX_PARALLELISM = 32;
+
+    @Override
+    public void execute(ChannelHandlerContext context, FtpChannel channel, FtpRequest request) throws IOException, FtpException {
+        // reset state
+        channel.resetState();
+
+        // the argument is "RETR <option>=<value>;..."
+        String argument = request.getArgument().trim();
+        int spIndex = argument.indexOf(' ');
+        int parallelism = -1;
+        if (spIndex != -1) {
+            StringTokenizer st = new StringTokenizer(argument.substring(spIndex + 1), ";");
+            while (st.hasMoreTokens()) {
+                String option = st.nextToken().trim();
+                int eqIndex = option.indexOf('=');
+                if (eqIndex != -1 && "Parallelism".equalsIgnoreCase(option.substring(0, eqIndex))) {
+                    parallelism = parseParallelism(option.substring(eqIndex + 1));
+                }
+            }
+        }
+
+        if (parallelism < 1 || parallelism > MAX_PARALLELISM) {
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "OPTS.RETR", null));
+            return;
+        }
+
+        channel.getDataConnection().setParallelism(parallelism);
+        channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                FtpReply.REPLY_200_COMMAND_OKAY, "OPTS.RETR", String.valueOf(parallelism)));
+    }
+
+    private int parseParallelism(String value) {
+        int commaIndex = value.indexOf(',');
+        try {
+            return Integer.parseInt((commaIndex == -1 ? value : value.substring(0, commaIndex)).trim());
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+}
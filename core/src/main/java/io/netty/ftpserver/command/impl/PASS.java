@@ -19,7 +19,6 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.ftpserver.ftplet.Authentication;
 import io.netty.ftpserver.ftplet.AuthenticationFailedException;
@@ -51,7 +50,6 @@ import java.io.IOException;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class PASS extends AbstractCommand {
     private final Logger LOG = LoggerFactory.getLogger(PASS.class);
 
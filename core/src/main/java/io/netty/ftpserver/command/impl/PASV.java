@@ -19,7 +19,6 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.ftpserver.DataConnectionException;
 import io.netty.ftpserver.ftplet.FtpException;
@@ -71,7 +70,6 @@ import java.net.UnknownHostException;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class PASV extends AbstractCommand {
     private final Logger LOG = LoggerFactory.getLogger(PASV.class);
 
@@ -19,7 +19,6 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.ftpserver.ftplet.FileSystemView;
 import io.netty.ftpserver.ftplet.FtpException;
@@ -40,7 +39,6 @@ import java.io.IOException;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class PWD extends AbstractCommand {
     @Override
     public void execute(ChannelHandlerContext context, FtpChannel channel, FtpRequest request) throws IOException, FtpException {
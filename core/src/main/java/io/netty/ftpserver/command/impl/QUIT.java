@@ -19,7 +19,6 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.ftpserver.ftplet.FtpException;
 import io.netty.ftpserver.ftplet.FtpReply;
@@ -41,7 +40,6 @@ import java.io.IOException;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class QUIT extends AbstractCommand {
     private final Logger LOG = LoggerFactory.getLogger(QUIT.class);
 
@@ -53,6 +51,6 @@ public class QUIT extends AbstractCommand {
 
         LOG.debug("QUIT received, closing session");
         channel.close().awaitUninterruptibly(10000);
-        channel.getDataConnection().closeDataConnection();
+        channel.getDataConnection().dispose();
     }
 }
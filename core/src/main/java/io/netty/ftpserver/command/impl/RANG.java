@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.ftpserver.command.impl;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.ftpserver.ftplet.FtpException;
+import io.netty.ftpserver.ftplet.FtpReply;
+import io.netty.ftpserver.ftplet.FtpRequest;
+import io.netty.ftpserver.impl.reply.LocalizedFtpReply;
+import io.netty.ftpserver.listener.nio.channel.FtpChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.StringTokenizer;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * <code>RANG &lt;SP&gt; &lt;start-point&gt; &lt;SP&gt; &lt;end-point&gt; &lt;CRLF&gt;</code><br>
+ *
+ * Sets the byte range, both ends included, of the file transferred by the
+ * next RETR or STOR, according to draft-bryan-ftp-range-08.txt.
+ * <code>RANG 1 0</code> resets the range. A STOR of a range writes one
+ * segment of a file, whose size is given by ALLO, uploaded by several
+ * sessions. Like REST, the range only applies to the next transfer
+ * command, and a REST replaces it.
+ *
+ * @author Io Netty Project
+ */
+public class RANG extends AbstractCommand {
+    private final Logger LOG = LoggerFactory.getLogger(RANG.class);
+
+    @Override
+    public void execute(ChannelHandlerContext context, FtpChannel channel, FtpRequest request) throws IOException, FtpException {
+        // argument check
+        String argument = request.getArgument();
+        StringTokenizer st = new StringTokenizer(argument == null ? "" : argument, " ");
+        if (st.countTokens() != 2) {
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "RANG", null));
+            return;
+        }
+
+        // get the range
+        channel.resetState();
+        long start;
+        long end;
+        try {
+            start = Long.parseLong(st.nextToken());
+            end = Long.parseLong(st.nextToken());
+        } catch (NumberFormatException ex) {
+            LOG.debug("Invalid byte range: " + argument, ex);
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "RANG", null));
+            return;
+        }
+
+        if (start == 1L && end == 0L) {
+            // already reset with the state
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_350_REQUESTED_FILE_ACTION_PENDING_FURTHER_INFORMATION,
+                    "RANG.reset", null));
+            return;
+        }
+        if (start < 0L || end < start) {
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "RANG", null));
+            return;
+        }
+
+        channel.setFileOffset(start);
+        channel.setFileRangeEnd(end);
+        channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                FtpReply.REPLY_350_REQUESTED_FILE_ACTION_PENDING_FURTHER_INFORMATION,
+                "RANG", null));
+    }
+}
@@ -19,29 +19,32 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.ftpserver.ftplet.DataConnection;
-import io.netty.ftpserver.ftplet.DataConnectionFactory;
 import io.netty.ftpserver.ftplet.DataType;
 import io.netty.ftpserver.ftplet.DefaultFtpReply;
 import io.netty.ftpserver.ftplet.FtpException;
 import io.netty.ftpserver.ftplet.FtpFile;
 import io.netty.ftpserver.ftplet.FtpReply;
 import io.netty.ftpserver.ftplet.FtpRequest;
-import io.netty.ftpserver.impl.IODataConnectionFactory;
+import io.netty.ftpserver.filesystem.nativefs.impl.ArchiveFtpFile;
+import io.netty.ftpserver.filesystem.nativefs.impl.NativeFtpFile;
+import io.netty.ftpserver.impl.AsyncDataConnection;
+import io.netty.ftpserver.impl.ServerDataConnectionFactory;
+import io.netty.ftpserver.impl.ChecksumStore;
 import io.netty.ftpserver.impl.ServerFtpStatistics;
+import io.netty.ftpserver.impl.TransferChecksum;
+import io.netty.ftpserver.impl.TransferChecksum.ChecksumInputStream;
 import io.netty.ftpserver.impl.reply.LocalizedDataTransferFtpReply;
 import io.netty.ftpserver.impl.reply.LocalizedFtpReply;
 import io.netty.ftpserver.listener.nio.channel.FtpChannel;
 import io.netty.ftpserver.util.IoUtils;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.InetAddress;
 import java.net.SocketException;
 
 /**
@@ -56,16 +59,17 @@ import java.net.SocketException;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class RETR extends AbstractCommand {
     private final Logger LOG = LoggerFactory.getLogger(RETR.class);
 
     @Override
-    public void execute(ChannelHandlerContext context, FtpChannel channel, FtpRequest request) throws IOException, FtpException {
+    public void execute(ChannelHandlerContext context, final FtpChannel channel, final FtpRequest request) throws IOException, FtpException {
+        boolean async = false;
         try {
 
             // get state variable
             long skipLen = channel.getFileOffset();
+            long rangeEnd = channel.getFileRangeEnd();
 
             // argument check
             String fileName = request.getArgument();
@@ -115,114 +119,210 @@ public class RETR extends AbstractCommand {
                 return;
             }
 
+            // check the byte range set by RANG, in the file bytes
+            long count = -1L;
+            if (rangeEnd >= 0L) {
+                if (channel.getDataType() != DataType.BINARY) {
+                    channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                            FtpReply.REPLY_504_COMMAND_NOT_IMPLEMENTED_FOR_THAT_PARAMETER,
+                            "RETR.range", fileName, file));
+                    return;
+                }
+                if (skipLen >= file.getSize()) {
+                    channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                            FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                            "RETR.range", fileName, file));
+                    return;
+                }
+                count = rangeEnd - skipLen + 1;
+            }
+
             // 24-10-2007 - added check if PORT or PASV is issued, see
             // https://issues.apache.org/jira/browse/FTPSERVER-110
             //TODO move this block of code into the super class. Also, it makes
             //sense to have this as the first check before checking everything
             //else such as the file and its permissions.
-            DataConnectionFactory connFactory = channel.getDataConnection();
-            if (connFactory instanceof IODataConnectionFactory) {
-                InetAddress address = ((IODataConnectionFactory) connFactory)
-                        .getInetAddress();
-                if (address == null) {
-                    channel.writeAndFlush(new DefaultFtpReply(
-                            FtpReply.REPLY_503_BAD_SEQUENCE_OF_COMMANDS,
-                            "PORT or PASV must be issued first"));
-                    return;
-                }
+            ServerDataConnectionFactory connFactory = channel.getDataConnection();
+            if (connFactory.getInetAddress() == null) {
+                channel.writeAndFlush(new DefaultFtpReply(
+                        FtpReply.REPLY_503_BAD_SEQUENCE_OF_COMMANDS,
+                        "PORT or PASV must be issued first"));
+                return;
             }
 
             // get data connection
             channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
                     FtpReply.REPLY_150_FILE_STATUS_OKAY, "RETR", null));
 
-            // send file data to client
-            boolean failure = false;
-            InputStream is = null;
-
-            DataConnection dataConnection;
+            // open the stream on the thread of the command, not on the data
+            // event loop, as a REST in ASCII may read the file to extend the
+            // index of its offsets
+            final String[] algorithms = getMissingChecksums(channel, file, skipLen, count);
+            final InputStream in;
             try {
-                dataConnection = channel.getDataConnection().openConnection();
-            } catch (Exception e) {
-                LOG.debug("Exception getting the output data stream", e);
+                in = isSentAsFile(channel, file, algorithms) ? null
+                        : openInputStream(channel, file, skipLen, count, algorithms);
+            } catch (IOException ex) {
+                LOG.debug("IOException during data transfer", ex);
                 channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
-                        FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION, "RETR",
-                        null, file));
+                        FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                        "RETR", fileName, file, 0L));
                 return;
             }
 
-            long transSz = 0L;
-            try {
+            // send file data to client once the data connection is opened,
+            // the transfer replies are sent when it completes
+            final FtpFile retrFile = file;
+            final long offset = skipLen;
+            final long length = count;
+            connFactory.openConnectionAsync().addListener(new FutureListener<AsyncDataConnection>() {
+                public void operationComplete(Future<AsyncDataConnection> future) {
+                    if (!future.isSuccess()) {
+                        LOG.debug("Exception getting the output data stream", future.cause());
+                        IoUtils.close(in);
+                        channel.getDataConnection().closeDataConnection();
+                        channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                                FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION, "RETR",
+                                null, retrFile));
+                        return;
+                    }
+                    transfer(channel, request, future.getNow(), retrFile, offset, length, in);
+                }
+            });
+            async = true;
+        } finally {
+            channel.resetState();
+            if (!async) {
+                channel.getDataConnection().closeDataConnection();
+            }
+        }
+    }
 
-                // open streams
-                is = openInputStream(channel, file, skipLen);
+    /**
+     * Send the file data and reply once the transfer is completed.
+     *
+     * @param is The stream of the file data, null to let the data connection
+     *            send the file itself
+     */
+    private void transfer(final FtpChannel channel, final FtpRequest request,
+                          AsyncDataConnection dataConnection, final FtpFile file, long skipLen,
+                          long count, final InputStream is) {
+        final String fileName = file.getAbsolutePath();
+        final Future<Long> transferFuture;
+        if (is == null) {
+            // without copy when possible
+            transferFuture = dataConnection.transferToClientAsync(
+                    ((NativeFtpFile) file).getPhysicalFile(), skipLen, count);
+        } else {
+            transferFuture = dataConnection.transferToClientAsync(is);
+        }
 
-                // transfer data
-                transSz = dataConnection.transferToClient(is);
-                // attempt to close the input stream so that errors in
-                // closing it will return an error to the client (FTPSERVER-119)
-                if(is != null) {
-                    is.close();
-                }
+        // transfer data
+        transferFuture.addListener(new FutureListener<Long>() {
+            public void operationComplete(Future<Long> future) {
+                // release the data connection before replying, the client
+                // may open the next one as soon as it reads the reply
+                channel.getDataConnection().closeDataConnection();
+                long transSz = future.isSuccess() ? future.getNow() : 0L;
+                try {
+                    Throwable cause = future.cause();
+                    if (cause == null && is != null) {
+                        // attempt to close the input stream so that errors in
+                        // closing it will return an error to the client (FTPSERVER-119)
+                        try {
+                            is.close();
+                        } catch (IOException ex) {
+                            cause = ex;
+                        }
+                    }
 
-                // notify the statistics component
-                ServerFtpStatistics ftpStat = (ServerFtpStatistics) channel.getContext()
-                        .getFtpStatistics();
-                if (ftpStat != null) {
-                    ftpStat.setDownload(channel, file, transSz);
-                }
+                    if (cause == null) {
+                        if (is instanceof ChecksumInputStream
+                                && ((ChecksumInputStream) is).isEndOfStream()) {
+                            channel.getContext().getChecksumStore().put(file,
+                                    ((ChecksumInputStream) is).getChecksum());
+                        }
 
-            } catch (SocketException ex) {
-                LOG.debug("Socket exception during data transfer", ex);
-                failure = true;
-                channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
-                        FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
-                        "RETR", fileName, file, transSz));
-            } catch (IOException ex) {
-                LOG.debug("IOException during data transfer", ex);
-                failure = true;
-                channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
-                        FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
-                        "RETR", fileName, file, transSz));
-            } finally {
-                // if data transfer ok - send transfer complete message
-                if (!failure) {
-                    channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
-                            FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "RETR",
-                            fileName, file, transSz));
+                        // notify the statistics component
+                        ServerFtpStatistics ftpStat = (ServerFtpStatistics) channel.getContext()
+                                .getFtpStatistics();
+                        if (ftpStat != null) {
+                            ftpStat.setDownload(channel, file, transSz);
+                        }
 
+                        // if data transfer ok - send transfer complete message
+                        channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                                FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "RETR",
+                                fileName, file, transSz));
+                    } else if (cause instanceof SocketException) {
+                        LOG.debug("Socket exception during data transfer", cause);
+                        channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                                FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
+                                "RETR", fileName, file, transSz));
+                    } else {
+                        LOG.debug("IOException during data transfer", cause);
+                        channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                                FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                                "RETR", fileName, file, transSz));
+                    }
+                } finally {
+                    // make sure we really close the input stream
+                    IoUtils.close(is);
                 }
+            }
+        });
+    }
 
-                // make sure we really close the input stream
-                IoUtils.close(is);
+    /**
+     * The configured checksum algorithms not yet known for the file. The
+     * checksums are only computed when the whole file is sent, and never for
+     * a generated archive.
+     */
+    private String[] getMissingChecksums(FtpChannel channel, FtpFile file, long skipLen,
+                                         long count) {
+        String[] algorithms = channel.getContext().getConnectionConfig().getChecksumAlgorithms();
+        if (skipLen != 0 || count >= 0L || algorithms.length == 0
+                || file instanceof ArchiveFtpFile) {
+            // the archives are generated, their checksums are not kept
+            return new String[0];
+        }
+        ChecksumStore store = channel.getContext().getChecksumStore();
+        for (String algorithm : algorithms) {
+            if (store.get(file, algorithm) == null) {
+                return algorithms;
             }
-        } finally {
-            channel.resetState();
-            channel.getDataConnection().closeDataConnection();
         }
+        return new String[0];
+    }
+
+    /**
+     * Can the data connection send the file itself, without a stream?
+     */
+    private boolean isSentAsFile(FtpChannel channel, FtpFile file, String[] algorithms) {
+        return channel.getDataType() == DataType.BINARY && file instanceof NativeFtpFile
+                && !(file instanceof ArchiveFtpFile) && algorithms.length == 0;
     }
 
     /**
-     * Skip length and open input stream.
+     * Skip length and open input stream, computing the missing checksums of
+     * the file on the way out.
      */
     public InputStream openInputStream(FtpChannel channel, FtpFile file,
-                                       long skipLen) throws IOException {
+                                       long skipLen, long count, String[] algorithms) throws IOException {
         InputStream in;
-        if (channel.getDataType() == DataType.ASCII) {
-            int c;
-            long offset = 0L;
-            in = new BufferedInputStream(file.createInputStream(0L));
-            while (offset++ < skipLen) {
-                if ((c = in.read()) == -1) {
-                    throw new IOException("Cannot skip");
-                }
-                if (c == '\n') {
-                    offset++;
-                }
-            }
+        if (channel.getDataType() == DataType.ASCII && !(file instanceof ArchiveFtpFile)) {
+            // seek with the index of the ASCII offsets rather than reading
+            // the file from its start
+            in = channel.getContext().getAsciiOffsetIndex().openInputStream(file, skipLen);
         } else {
             in = file.createInputStream(skipLen);
         }
+        if (count >= 0L) {
+            in = IoUtils.getBoundedInputStream(in, count);
+        }
+        if (algorithms.length > 0) {
+            in = new ChecksumInputStream(in, new TransferChecksum(algorithms));
+        }
         return in;
     }
 }
@@ -19,7 +19,6 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.ftpserver.ftplet.FtpException;
 import io.netty.ftpserver.ftplet.FtpFile;
@@ -43,7 +42,6 @@ import java.io.IOException;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class RNTO extends AbstractCommand {
     private final Logger LOG = LoggerFactory.getLogger(RNTO.class);
 
@@ -105,6 +103,9 @@ public class RNTO extends AbstractCommand {
 
             // now rename
             if (frFile.move(toFile)) {
+                channel.getContext().getAsciiOffsetIndex().invalidate(frFile);
+                channel.getContext().getAsciiOffsetIndex().invalidate(toFile);
+                channel.getContext().getChecksumStore().renamed(frFile, toFile);
                 channel.writeAndFlush(LocalizedRenameFtpReply.translate(channel, request,
                         FtpReply.REPLY_250_REQUESTED_FILE_ACTION_OKAY, "RNTO",
                         toFileStr, frFile, toFile));
@@ -19,28 +19,38 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.AbstractChannel;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.ftpserver.ftplet.FileSystemView;
+import io.netty.ftpserver.ftplet.FtpException;
 import io.netty.ftpserver.ftplet.FtpReply;
 import io.netty.ftpserver.ftplet.FtpRequest;
 import io.netty.ftpserver.ftplet.FtpletResult;
 import io.netty.ftpserver.ftpletcontainer.FtpletContainer;
+import io.netty.ftpserver.impl.FileCopier;
 import io.netty.ftpserver.impl.ServerDataConnectionFactory;
 import io.netty.ftpserver.impl.ServerFtpStatistics;
 import io.netty.ftpserver.impl.reply.LocalizedFtpReply;
-import io.netty.ftpserver.listener.nio.channel.FtpIoChannel;
+import io.netty.ftpserver.listener.nio.channel.FtpSession;
+import io.netty.util.concurrent.EventExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
+ * Checks the login of each request and runs its command, looked up in the
+ * {@link io.netty.ftpserver.command.CommandFactory}, between the ftplet hooks,
+ * either on the event loop or on the executor of the session. The requests
+ * received while a command is in progress, until its final reply, wait for
+ * it in the {@link FtpSession}.
+ *
  * @author Io Netty Project
  */
 @Sharable
@@ -54,6 +64,26 @@ public class RegisterCommand extends SimpleChannelInboundHandler<FtpRequest> {
         add("USER");add("PASS");add("AUTH");add("QUIT");add("PROT");add("PBSZ");
     }};
 
+    /**
+     * The commands blocking on the file system, run by the transfer threads
+     */
+    private final static Set<String> TRANSFER_COMMANDS = new HashSet<String>(){{
+        add("RETR");add("STOR");add("APPE");add("STOU");add("LIST");add("NLST");add("MLSD");
+        add("MD5");add("MMD5");add("HASH");add("XCRC");add("XMD5");add("XSHA1");add("XSHA256");
+    }};
+
+    /**
+     * The SITE commands blocking on the file system, run by the transfer threads
+     */
+    private final static Set<String> TRANSFER_SITE_COMMANDS = new HashSet<String>(){{
+        add("UNPACK");add("CPFR");add("CPTO");
+    }};
+
+    /**
+     * The name of the logging handler, right before this one
+     */
+    public final static String LOGGER = "logger";
+
     public RegisterCommand (ChannelGroup channels){
         this.channels = channels;
     }
@@ -61,7 +91,11 @@ public class RegisterCommand extends SimpleChannelInboundHandler<FtpRequest> {
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
         channels.add(ctx.channel());
-        FtpIoChannel<AbstractChannel> ftpChannel= new FtpIoChannel<>(ctx.channel());
+        FtpSession ftpChannel = FtpSession.get(ctx.channel());
+        EventExecutor sessionExecutor = ftpChannel.getContext().newSessionExecutor();
+        if (sessionExecutor != null) {
+            ftpChannel.setSessionExecutor(sessionExecutor);
+        }
         FtpletContainer ftplets = ftpChannel.getContext().getFtpletContainer();
 
         FtpletResult ftpletRet;
@@ -85,8 +119,103 @@ public class RegisterCommand extends SimpleChannelInboundHandler<FtpRequest> {
     @Override
     protected void channelRead0(ChannelHandlerContext context, FtpRequest request) throws Exception {
 
-        FtpIoChannel<AbstractChannel> ftpChannel= new FtpIoChannel<>(context.channel());
+        FtpSession ftpChannel = FtpSession.get(context.channel());
+
+        // a STAT during a copy reports its progress right away
+        FileCopier copier = ftpChannel.getCopier();
+        if (copier != null && "STAT".equals(request.getCommand()) && !request.hasArgument()
+                && ftpChannel.isLoggedIn()
+                && ftpChannel.writeAside(LocalizedFtpReply.translate(ftpChannel, request,
+                        FtpReply.REPLY_211_SYSTEM_STATUS_REPLY, "STAT.copy",
+                        copier.getProgress()))) {
+            return;
+        }
+
+        // the requests received while a command is in progress wait for it
+        // to complete, transfer included, so that the replies keep the order
+        // of the requests; an ABOR still aborts the running transfer right
+        // away, its own reply following the 426 of the transfer
+        if (!ftpChannel.offerRequest(request)) {
+            if ("ABOR".equals(request.getCommand())) {
+                ftpChannel.getDataConnection().closeDataConnection();
+            }
+            return;
+        }
+        process(context, ftpChannel, request);
+    }
 
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt != FtpSession.NEXT_REQUEST) {
+            ctx.fireUserEventTriggered(evt);
+            return;
+        }
+        FtpSession ftpChannel = FtpSession.get(ctx.channel());
+        FtpRequest request = ftpChannel.pollRequest();
+        if (request != null) {
+            process(ctx, ftpChannel, request);
+        }
+    }
+
+    /**
+     * Run the command of a request, now in progress for the session.
+     */
+    private void process(ChannelHandlerContext context, FtpSession ftpChannel, FtpRequest request) {
+
+        // a session with a virtual thread of its own runs all its commands
+        // there, else only the blocking ones leave the event loop
+        EventExecutor executor = ftpChannel.getSessionExecutor();
+        if (executor == null && isTransferCommand(request)) {
+            executor = ftpChannel.getTransferExecutor();
+        }
+        if (executor == null) {
+            try {
+                dispatch(context, ftpChannel, request);
+            } finally {
+                ftpChannel.commandReturned();
+            }
+            return;
+        }
+
+        // a full queue of the transfer threads either refuses the command or
+        // stops reading the next ones until it drains
+        if (executor != ftpChannel.getSessionExecutor()
+                && !ftpChannel.getContext().getTransferExecutorGroup().accept(context.channel())) {
+            rejectBusy(ftpChannel, request);
+            return;
+        }
+
+        final ChannelHandlerContext ctx = context;
+        final FtpSession session = ftpChannel;
+        final FtpRequest req = request;
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        dispatch(ctx, session, req);
+                    } finally {
+                        session.commandReturned();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectBusy(ftpChannel, request);
+        }
+    }
+
+    private void rejectBusy(FtpSession ftpChannel, FtpRequest request) {
+        LOG.warn("Transfer threads are busy, rejecting {}", request.getCommand());
+        ftpChannel.writeAndFlush(LocalizedFtpReply.translate(ftpChannel, request,
+                FtpReply.REPLY_450_REQUESTED_FILE_ACTION_NOT_TAKEN,
+                "busy", null));
+        ftpChannel.commandReturned();
+    }
+
+    /**
+     * Check the login and run the command of a request.
+     */
+    private void dispatch(ChannelHandlerContext context, FtpSession ftpChannel, FtpRequest request) {
         if (!ftpChannel.isLoggedIn()
                 && !isCommandOkWithoutAuthentication(request.getCommand())) {
             ftpChannel.writeAndFlush(LocalizedFtpReply.translate(ftpChannel, request, FtpReply.REPLY_530_NOT_LOGGED_IN,
@@ -94,14 +223,60 @@ public class RegisterCommand extends SimpleChannelInboundHandler<FtpRequest> {
             return;
         }
 
-        AbstractCommand command =ftpChannel.getContext().getCommandFactory().getCommand(request.getCommand());
+        AbstractCommand command = ftpChannel.getContext().getCommandFactory().getCommand(request.getCommand());
         if (command == null){
-            context.writeAndFlush(LocalizedFtpReply.translate(ftpChannel, request,
+            ftpChannel.writeAndFlush(LocalizedFtpReply.translate(ftpChannel, request,
                     FtpReply.REPLY_502_COMMAND_NOT_IMPLEMENTED,
                     "not.implemented", null));
-        } else {
-            context.pipeline().addLast(request.getCommand(),command);
-            context.fireChannelRead(request);
+            return;
+        }
+        execute(context, ftpChannel, command, request);
+    }
+
+    /**
+     * Run a command between the ftplet hooks, closing the session if the
+     * ftplets ask for it or the command fails.
+     */
+    private void execute(ChannelHandlerContext context, FtpSession ftpChannel,
+            AbstractCommand command, FtpRequest request) {
+        try {
+            ftpChannel.updateLastAccessTime();
+            FtpletContainer ftplet = ftpChannel.getContext().getFtpletContainer();
+            FtpletResult ftpletRet;
+            try {
+                ftpletRet = ftplet.beforeCommand(ftpChannel, request);
+            } catch (Exception e) {
+                LOG.debug("Ftplet container threw exception", e);
+                ftpletRet = FtpletResult.DISCONNECT;
+            }
+
+            if (ftpletRet == FtpletResult.DISCONNECT) {
+                LOG.debug("Ftplet returned DISCONNECT, session will be closed");
+                ftpChannel.close();
+                return;
+            } else if (ftpletRet != FtpletResult.SKIP) {
+                command.execute(context, ftpChannel, request);
+            }
+
+            try {
+                ftpletRet = ftplet.afterCommand(ftpChannel, request, ftpChannel.getCommandReply());
+            } catch (Exception e) {
+                LOG.debug("Ftplet container threw exception", e);
+                ftpletRet = FtpletResult.DISCONNECT;
+            }
+            if (ftpletRet == FtpletResult.DISCONNECT) {
+                LOG.debug("Ftplet returned DISCONNECT, session will be closed");
+                ftpChannel.close();
+            }
+        } catch (FtpException e) {
+            LOG.debug("Ftp threw exception", e);
+            ftpChannel.close();
+        } catch (IOException e) {
+            LOG.debug("Ftp IO threw exception", e);
+            ftpChannel.close();
+        } catch (RuntimeException e) {
+            LOG.error("Exception caught, closing session", e);
+            ftpChannel.close();
         }
     }
 
@@ -109,7 +284,7 @@ public class RegisterCommand extends SimpleChannelInboundHandler<FtpRequest> {
     public void channelInactive(ChannelHandlerContext ctx)throws Exception {
         channels.remove(ctx.channel());
         LOG.debug("Closing session");
-        FtpIoChannel<AbstractChannel> ftpChannel= new FtpIoChannel<>(ctx.channel());
+        FtpSession ftpChannel = FtpSession.get(ctx.channel());
         try {
             ftpChannel.getContext().getFtpletContainer().onDisconnect(ftpChannel);
         } catch (Exception e) {
@@ -121,7 +296,7 @@ public class RegisterCommand extends SimpleChannelInboundHandler<FtpRequest> {
         try {
             ServerDataConnectionFactory dc = ftpChannel.getDataConnection();
             if(dc != null) {
-                dc.closeDataConnection();
+                dc.dispose();
             }
         } catch (Exception e) {
             // swallow the exception, we're closing down the session anyways
@@ -146,6 +321,11 @@ public class RegisterCommand extends SimpleChannelInboundHandler<FtpRequest> {
         } else {
             LOG.warn("Statistics not available in session, can not decrease login and connection count");
         }
+        // let the commands still queued on the virtual thread end
+        EventExecutor sessionExecutor = ftpChannel.getSessionExecutor();
+        if (sessionExecutor != null) {
+            sessionExecutor.shutdownGracefully();
+        }
         LOG.debug("Session closed");
     }
 
@@ -155,6 +335,27 @@ public class RegisterCommand extends SimpleChannelInboundHandler<FtpRequest> {
         ctx.channel().close().awaitUninterruptibly(10000);
     }
 
+    /**
+     * Does the command of the request block on the file system? The SITE
+     * commands are told apart by their first argument, the same way
+     * {@link SITE} looks them up.
+     */
+    static boolean isTransferCommand(FtpRequest request) {
+        String command = request.getCommand();
+        if (!"SITE".equals(command)) {
+            return TRANSFER_COMMANDS.contains(command);
+        }
+        String argument = request.getArgument();
+        if (argument == null) {
+            return false;
+        }
+        int spaceIndex = argument.indexOf(' ');
+        if (spaceIndex != -1) {
+            argument = argument.substring(0, spaceIndex);
+        }
+        return TRANSFER_SITE_COMMANDS.contains(argument.toUpperCase());
+    }
+
     private boolean isCommandOkWithoutAuthentication(String command) {
         boolean okay = false;
         if(NON_AUTHENTICATED_COMMANDS.contains(command)){
@@ -19,7 +19,6 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.ftpserver.ftplet.FtpException;
 import io.netty.ftpserver.ftplet.FtpReply;
@@ -38,7 +37,6 @@ import java.io.IOException;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class SITE extends AbstractCommand {
     private final Logger LOG = LoggerFactory.getLogger(SITE.class);
 
@@ -67,8 +65,7 @@ public class SITE extends AbstractCommand {
         AbstractCommand command = channel.getContext().getCommandFactory().getCommand(siteRequest);
         try {
             if (command != null) {
-                channel.pipeline().addLast(siteRequest, command);
-                context.fireChannelRead(request);
+                command.execute(context, channel, request);
             } else {
                 channel.resetState();
                 channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
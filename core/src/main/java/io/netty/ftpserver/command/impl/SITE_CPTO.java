@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.command.impl;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.ftpserver.ftplet.FtpException;
+import io.netty.ftpserver.ftplet.FtpFile;
+import io.netty.ftpserver.ftplet.FtpReply;
+import io.netty.ftpserver.ftplet.FtpRequest;
+import io.netty.ftpserver.impl.FileCopier;
+import io.netty.ftpserver.impl.TransferExecutorGroup;
+import io.netty.ftpserver.impl.reply.LocalizedFtpReply;
+import io.netty.ftpserver.listener.nio.channel.FtpChannel;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * <code>SITE CPTO &lt;SP&gt; &lt;pathname&gt; &lt;CRLF&gt;</code><br>
+ *
+ * Copies the file or directory given by SITE CPFR on the server. The copy
+ * runs on the transfer threads and is replied to once completed, its
+ * progress being shown by STAT meanwhile.
+ *
+ * @author Io Netty Project
+ */
+public class SITE_CPTO extends AbstractCommand {
+    private final Logger LOG = LoggerFactory.getLogger(SITE_CPTO.class);
+
+    /**
+     * The maximum number of files of a directory copied at once
+     */
+    private static final int MAX_PARALLEL_COPIES = 4;
+
+    @Override
+    public void execute(ChannelHandlerContext context, final FtpChannel channel, final FtpRequest request) throws IOException, FtpException {
+        // get the "copy from" file object
+        FtpFile frFile = channel.getCopyFrom();
+
+        // reset state variable
+        channel.resetState();
+
+        // argument check
+        String argument = request.getArgument();
+        int spIndex = argument.indexOf(' ');
+        String toFileStr = spIndex == -1 ? "" : argument.substring(spIndex + 1).trim();
+        if (toFileStr.length() == 0) {
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "SITE.CPTO", null));
+            return;
+        }
+
+        // check the from file
+        if (frFile == null) {
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_503_BAD_SEQUENCE_OF_COMMANDS, "SITE.CPTO",
+                    null));
+            return;
+        }
+
+        // one copy at a time
+        if (channel.getCopier() != null) {
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_450_REQUESTED_FILE_ACTION_NOT_TAKEN, "SITE.CPTO.busy",
+                    null));
+            return;
+        }
+
+        // get the "copy to" file object
+        FtpFile toFile = null;
+        try {
+            toFile = channel.getFileSystemView().getFile(toFileStr);
+        } catch (Exception ex) {
+            LOG.debug("Exception getting file object", ex);
+        }
+        if (toFile == null || !isValidCopy(frFile, toFile)) {
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_553_REQUESTED_ACTION_NOT_TAKEN_FILE_NAME_NOT_ALLOWED,
+                    "SITE.CPTO.invalid", toFileStr));
+            return;
+        }
+
+        // check permission
+        if (!toFile.isWritable()) {
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_553_REQUESTED_ACTION_NOT_TAKEN_FILE_NAME_NOT_ALLOWED,
+                    "SITE.CPTO.permission", toFile.getAbsolutePath()));
+            return;
+        }
+
+        // copy on the transfer threads and reply once done
+        TransferExecutorGroup executors = channel.getContext().getTransferExecutorGroup();
+        final FileCopier copier = new FileCopier(channel, frFile, toFile, executors,
+                Math.min(MAX_PARALLEL_COPIES, executors.getThreads()));
+        final String fromName = frFile.getAbsolutePath();
+        channel.setCopier(copier);
+        channel.deferReply();
+        copier.start().addListener(new FutureListener<Long>() {
+            public void operationComplete(Future<Long> future) {
+                channel.setCopier(null);
+                if (future.isSuccess()) {
+                    channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                            FtpReply.REPLY_250_REQUESTED_FILE_ACTION_OKAY, "SITE.CPTO",
+                            copier.getCopiedFiles() + " files, " + future.getNow() + " bytes"));
+                } else {
+                    LOG.debug("Exception copying " + fromName, future.cause());
+                    channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                            FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "SITE.CPTO",
+                            fromName));
+                }
+            }
+        });
+    }
+
+    /**
+     * A file is copied to a file, a directory to a directory, which must not
+     * be inside it.
+     */
+    private boolean isValidCopy(FtpFile from, FtpFile to) {
+        String fromPath = from.getAbsolutePath();
+        String toPath = to.getAbsolutePath();
+        if (fromPath.equals(toPath)) {
+            return false;
+        }
+        if (from.isDirectory()) {
+            String prefix = fromPath.endsWith("/") ? fromPath : fromPath + '/';
+            return !toPath.startsWith(prefix) && (!to.doesExist() || to.isDirectory());
+        }
+        return !to.isDirectory();
+    }
+}
@@ -19,7 +19,6 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.ftpserver.ftplet.DefaultFtpReply;
 import io.netty.ftpserver.ftplet.FtpException;
@@ -27,6 +26,7 @@ import io.netty.ftpserver.ftplet.FtpReply;
 import io.netty.ftpserver.ftplet.FtpRequest;
 import io.netty.ftpserver.ftplet.FtpStatistics;
 import io.netty.ftpserver.ftplet.UserManager;
+import io.netty.ftpserver.impl.TransferExecutorGroup;
 import io.netty.ftpserver.impl.reply.LocalizedFtpReply;
 import io.netty.ftpserver.listener.nio.channel.FtpChannel;
 import io.netty.ftpserver.util.DateUtils;
@@ -40,7 +40,6 @@ import java.io.IOException;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class SITE_STAT extends AbstractCommand {
     @Override
     public void execute(ChannelHandlerContext context, FtpChannel channel, FtpRequest request) throws IOException, FtpException {
@@ -89,6 +88,14 @@ public class SITE_STAT extends AbstractCommand {
                 stat.getCurrentConnectionNumber()).append('\n');
         sb.append("Total Connections        : ").append(
                 stat.getTotalConnectionNumber()).append('\n');
+
+        TransferExecutorGroup transfers = channel.getContext().getTransferExecutorGroup();
+        sb.append("Transfer Threads         : ").append(
+                transfers.getThreads()).append('\n');
+        sb.append("Active Transfer Threads  : ").append(
+                transfers.getActiveThreads()).append('\n');
+        sb.append("Transfer Queue Depth     : ").append(
+                transfers.getQueueDepth()).append('\n');
         sb.append('\n');
         channel.writeAndFlush(new DefaultFtpReply(FtpReply.REPLY_200_COMMAND_OKAY, sb
                 .toString()));
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.command.impl;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.ftpserver.ftplet.DataType;
+import io.netty.ftpserver.ftplet.DefaultFtpReply;
+import io.netty.ftpserver.ftplet.FtpException;
+import io.netty.ftpserver.ftplet.FtpFile;
+import io.netty.ftpserver.ftplet.FtpReply;
+import io.netty.ftpserver.ftplet.FtpRequest;
+import io.netty.ftpserver.impl.ArchiveExtractor;
+import io.netty.ftpserver.impl.AsyncDataConnection;
+import io.netty.ftpserver.impl.ServerDataConnectionFactory;
+import io.netty.ftpserver.impl.reply.LocalizedDataTransferFtpReply;
+import io.netty.ftpserver.impl.reply.LocalizedFtpReply;
+import io.netty.ftpserver.listener.nio.channel.FtpChannel;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.SocketException;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * <code>SITE UNPACK &lt;SP&gt; &lt;pathname&gt; &lt;CRLF&gt;</code><br>
+ *
+ * Receives a tar, tar.gz or zip archive on the data connection, as STOR
+ * does, and extracts its entries into the given directory while it is
+ * received, so that many small files are uploaded with a single transfer.
+ * The entries are written on a transfer thread, each with the write
+ * permission of the user, and are counted as uploads.
+ *
+ * @author Io Netty Project
+ */
+public class SITE_UNPACK extends AbstractCommand {
+    private final Logger LOG = LoggerFactory.getLogger(SITE_UNPACK.class);
+
+    @Override
+    public void execute(ChannelHandlerContext context, final FtpChannel channel, final FtpRequest request) throws IOException, FtpException {
+        boolean async = false;
+        try {
+
+            // argument check
+            String argument = request.getArgument();
+            int spIndex = argument.indexOf(' ');
+            if (spIndex == -1 || argument.substring(spIndex + 1).trim().length() == 0) {
+                channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                        FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                        "SITE.UNPACK", null));
+                return;
+            }
+            String dirName = argument.substring(spIndex + 1).trim();
+
+            ServerDataConnectionFactory connFactory = channel.getDataConnection();
+            if (connFactory.getInetAddress() == null) {
+                channel.writeAndFlush(new DefaultFtpReply(
+                        FtpReply.REPLY_503_BAD_SEQUENCE_OF_COMMANDS,
+                        "PORT or PASV must be issued first"));
+                return;
+            }
+
+            // the archive is binary
+            if (channel.getDataType() != DataType.BINARY) {
+                channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                        FtpReply.REPLY_504_COMMAND_NOT_IMPLEMENTED_FOR_THAT_PARAMETER,
+                        "SITE.UNPACK.type", null));
+                return;
+            }
+
+            // get the directory
+            FtpFile dir = null;
+            try {
+                dir = channel.getFileSystemView().getFile(dirName);
+            } catch (Exception ex) {
+                LOG.debug("Exception getting file object", ex);
+            }
+            if (dir == null || !dir.isDirectory()) {
+                channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                        FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN,
+                        "SITE.UNPACK.invalid", dirName, dir));
+                return;
+            }
+            if (!dir.isWritable()) {
+                channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                        FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN,
+                        "SITE.UNPACK.permission", dir.getAbsolutePath(), dir));
+                return;
+            }
+
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_150_FILE_STATUS_OKAY, "SITE.UNPACK",
+                    dir.getAbsolutePath()));
+
+            // the executor of the session extracts the archive, in order with
+            // its other blocking work
+            final EventExecutor executor = channel.getTransferExecutor();
+            final FtpFile unpackDir = dir;
+            connFactory.openConnectionAsync().addListener(new FutureListener<AsyncDataConnection>() {
+                public void operationComplete(Future<AsyncDataConnection> future) {
+                    if (!future.isSuccess()) {
+                        LOG.debug("Exception getting the input data stream", future.cause());
+                        channel.getDataConnection().closeDataConnection();
+                        channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                                FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION, "SITE.UNPACK",
+                                unpackDir.getAbsolutePath(), unpackDir));
+                        return;
+                    }
+                    transfer(channel, request, future.getNow(), unpackDir, executor);
+                }
+            });
+            async = true;
+        } finally {
+            channel.resetState();
+            if (!async) {
+                channel.getDataConnection().closeDataConnection();
+            }
+        }
+    }
+
+    /**
+     * Receive the archive and reply once it is extracted.
+     */
+    private void transfer(final FtpChannel channel, final FtpRequest request,
+                          AsyncDataConnection dataConnection, final FtpFile dir,
+                          EventExecutor executor) {
+        final String dirName = dir.getAbsolutePath();
+        final ArchiveExtractor extractor = new ArchiveExtractor(channel, dir, executor);
+        dataConnection.transferFromClientAsync(extractor).addListener(new FutureListener<Long>() {
+            public void operationComplete(Future<Long> future) {
+                // release the data connection before replying, the client
+                // may open the next one as soon as it reads the reply
+                channel.getDataConnection().closeDataConnection();
+                final long transSz = future.isSuccess() ? future.getNow() : 0L;
+                Throwable cause = future.cause();
+                if (cause != null) {
+                    extractor.abort();
+                    if (cause instanceof SocketException) {
+                        LOG.debug("Socket exception during data transfer", cause);
+                        channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                                FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
+                                "SITE.UNPACK", dirName, dir, transSz));
+                    } else {
+                        LOG.debug("IOException during data transfer", cause);
+                        channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                                FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                                "SITE.UNPACK", dirName, dir, transSz));
+                    }
+                    return;
+                }
+
+                // reply once the last entries are extracted
+                extractor.finish().addListener(new FutureListener<Integer>() {
+                    public void operationComplete(Future<Integer> future) {
+                        if (future.isSuccess()) {
+                            channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                                    FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "SITE.UNPACK",
+                                    future.getNow() + " files extracted, "
+                                            + extractor.getRefusedCount() + " refused",
+                                    dir, transSz));
+                        } else {
+                            LOG.debug("Exception extracting the archive", future.cause());
+                            channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                                    FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                                    "SITE.UNPACK", dirName, dir, transSz));
+                        }
+                    }
+                });
+            }
+        });
+    }
+}
@@ -19,7 +19,6 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.ftpserver.ftplet.DefaultFtpReply;
 import io.netty.ftpserver.ftplet.FtpException;
@@ -38,7 +37,6 @@ import java.util.Date;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class SITE_ZONE extends AbstractCommand {
     private final static SimpleDateFormat TIMEZONE_FMT = new SimpleDateFormat(
             "Z");
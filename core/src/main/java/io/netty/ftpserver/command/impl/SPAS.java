@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.command.impl;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.ftpserver.DataConnectionException;
+import io.netty.ftpserver.ftplet.FtpException;
+import io.netty.ftpserver.ftplet.FtpReply;
+import io.netty.ftpserver.ftplet.FtpRequest;
+import io.netty.ftpserver.impl.ServerDataConnectionFactory;
+import io.netty.ftpserver.impl.reply.LocalizedFtpReply;
+import io.netty.ftpserver.listener.nio.channel.FtpChannel;
+import io.netty.ftpserver.util.SocketAddressEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * <code>SPAS &lt;CRLF&gt;</code><br>
+ *
+ * Striped passive mode, as PASV but answering with one host-port per line,
+ * one for each stripe of the server. The server has a single stripe, whose
+ * port accepts the parallel data connections of extended block mode.
+ *
+ * @author Io Netty Project
+ */
+public class SPAS extends AbstractCommand {
+    private final Logger LOG = LoggerFactory.getLogger(SPAS.class);
+
+    @Override
+    public void execute(ChannelHandlerContext context, FtpChannel channel, FtpRequest request) throws IOException, FtpException {
+        // reset state variables
+        channel.resetState();
+
+        // set data connection
+        ServerDataConnectionFactory dataCon = channel.getDataConnection();
+        String externalPassiveAddress = channel.getListener()
+                .getDataConnectionConfiguration().getPassiveExernalAddress();
+
+        try {
+            InetSocketAddress dataConAddress = dataCon.initPassiveDataConnection();
+
+            // get connection info
+            InetAddress servAddr;
+            if (externalPassiveAddress != null) {
+                servAddr = resolveAddress(externalPassiveAddress);
+            } else {
+                servAddr = dataConAddress.getAddress();
+            }
+
+            // send the stripes to the client
+            String addrStr = SocketAddressEncoder.encode(new InetSocketAddress(
+                    servAddr, dataConAddress.getPort()));
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    229, "SPAS", addrStr));
+        } catch (DataConnectionException e) {
+            LOG.warn("Failed to open striped passive data connection", e);
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION,
+                    "SPAS", null));
+        }
+    }
+
+    private InetAddress resolveAddress(String host) throws DataConnectionException {
+        try {
+            return InetAddress.getByName(host);
+        } catch (UnknownHostException ex) {
+            throw new DataConnectionException(ex.getLocalizedMessage(), ex);
+        }
+    }
+}
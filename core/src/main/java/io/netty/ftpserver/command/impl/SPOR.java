@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.command.impl;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.ftpserver.ftplet.FtpException;
+import io.netty.ftpserver.ftplet.FtpReply;
+import io.netty.ftpserver.ftplet.FtpRequest;
+import io.netty.ftpserver.impl.DefaultFtpRequest;
+import io.netty.ftpserver.impl.reply.LocalizedFtpReply;
+import io.netty.ftpserver.listener.nio.channel.FtpChannel;
+
+import java.io.IOException;
+import java.util.StringTokenizer;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * <code>SPOR &lt;SP&gt; &lt;host-port&gt; [&lt;SP&gt; &lt;host-port&gt;]... &lt;CRLF&gt;</code><br>
+ *
+ * Striped active mode, as PORT but with one host-port for each stripe of the
+ * client. The server has a single stripe, so it opens the parallel data
+ * connections of extended block mode to the first host-port, with the same
+ * checks as PORT.
+ *
+ * @author Io Netty Project
+ */
+public class SPOR extends AbstractCommand {
+
+    private final PORT port = new PORT();
+
+    @Override
+    public void execute(ChannelHandlerContext context, FtpChannel channel, FtpRequest request) throws IOException, FtpException {
+        // argument check
+        StringTokenizer st = request.hasArgument()
+                ? new StringTokenizer(request.getArgument(), " ") : null;
+        if (st == null || !st.hasMoreTokens()) {
+            channel.resetState();
+            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "SPOR", null));
+            return;
+        }
+
+        port.execute(context, channel, new DefaultFtpRequest("PORT " + st.nextToken()));
+    }
+}
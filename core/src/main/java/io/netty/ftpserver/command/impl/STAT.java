@@ -19,7 +19,6 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.ftpserver.command.impl.listing.DirectoryLister;
 import io.netty.ftpserver.command.impl.listing.LISTFileFormater;
@@ -29,6 +28,7 @@ import io.netty.ftpserver.ftplet.FtpException;
 import io.netty.ftpserver.ftplet.FtpFile;
 import io.netty.ftpserver.ftplet.FtpReply;
 import io.netty.ftpserver.ftplet.FtpRequest;
+import io.netty.ftpserver.impl.FileCopier;
 import io.netty.ftpserver.impl.reply.LocalizedDataTransferFtpReply;
 import io.netty.ftpserver.impl.reply.LocalizedFileActionFtpReply;
 import io.netty.ftpserver.impl.reply.LocalizedFtpReply;
@@ -46,7 +46,6 @@ import java.io.IOException;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class STAT extends AbstractCommand {
     private static final LISTFileFormater LIST_FILE_FORMATER = new LISTFileFormater();
 
@@ -92,9 +91,16 @@ public class STAT extends AbstractCommand {
             }
 
         } else {
-            // write the status info
-            channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
-                    FtpReply.REPLY_211_SYSTEM_STATUS_REPLY, "STAT", null));
+            // write the status info, with the progress of the running copy
+            FileCopier copier = channel.getCopier();
+            if (copier != null) {
+                channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                        FtpReply.REPLY_211_SYSTEM_STATUS_REPLY, "STAT.copy",
+                        copier.getProgress()));
+            } else {
+                channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
+                        FtpReply.REPLY_211_SYSTEM_STATUS_REPLY, "STAT", null));
+            }
         }
     }
 }
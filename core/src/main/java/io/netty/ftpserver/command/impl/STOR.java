@@ -19,28 +19,33 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.ftpserver.ftplet.DataConnection;
-import io.netty.ftpserver.ftplet.DataConnectionFactory;
+import io.netty.ftpserver.filesystem.nativefs.impl.NativeFtpFile;
+import io.netty.ftpserver.ftplet.DataType;
 import io.netty.ftpserver.ftplet.DefaultFtpReply;
 import io.netty.ftpserver.ftplet.FtpException;
 import io.netty.ftpserver.ftplet.FtpFile;
 import io.netty.ftpserver.ftplet.FtpReply;
 import io.netty.ftpserver.ftplet.FtpRequest;
-import io.netty.ftpserver.impl.IODataConnectionFactory;
+import io.netty.ftpserver.impl.AsyncDataConnection;
+import io.netty.ftpserver.impl.ServerDataConnectionFactory;
 import io.netty.ftpserver.impl.ServerFtpStatistics;
+import io.netty.ftpserver.impl.TransferChecksum;
+import io.netty.ftpserver.impl.TransferChecksum.ChecksumOutputStream;
 import io.netty.ftpserver.impl.reply.LocalizedDataTransferFtpReply;
 import io.netty.ftpserver.impl.reply.LocalizedFtpReply;
 import io.netty.ftpserver.listener.nio.channel.FtpChannel;
 import io.netty.ftpserver.util.IoUtils;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.net.InetAddress;
 import java.net.SocketException;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
@@ -55,16 +60,19 @@ import java.net.SocketException;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class STOR extends AbstractCommand {
     private final Logger LOG = LoggerFactory.getLogger(STOR.class);
 
     @Override
-    public void execute(ChannelHandlerContext context, FtpChannel channel, FtpRequest request) throws IOException, FtpException {
+    public void execute(ChannelHandlerContext context, final FtpChannel channel, final FtpRequest request) throws IOException, FtpException {
+        boolean async = false;
         try {
 
             // get state variable
             long skipLen = channel.getFileOffset();
+            long rangeEnd = channel.getFileRangeEnd();
+            long allocatedSize = channel.getAllocatedSize();
+            channel.setAllocatedSize(-1L);
 
             // argument check
             String fileName = request.getArgument();
@@ -77,14 +85,12 @@ public class STOR extends AbstractCommand {
 
             // 24-10-2007 - added check if PORT or PASV is issued, see
             // https://issues.apache.org/jira/browse/FTPSERVER-110
-            DataConnectionFactory connFactory = channel.getDataConnection();
-            if (connFactory instanceof IODataConnectionFactory) {
-                InetAddress address = ((IODataConnectionFactory) connFactory).getInetAddress();
-                if (address == null) {
-                    channel.writeAndFlush(new DefaultFtpReply(FtpReply.REPLY_503_BAD_SEQUENCE_OF_COMMANDS,
-                            "PORT or PASV must be issued first"));
-                    return;
-                }
+            ServerDataConnectionFactory connFactory = channel.getDataConnection();
+            if (connFactory.getInetAddress() == null) {
+                channel.writeAndFlush(new DefaultFtpReply(
+                        FtpReply.REPLY_503_BAD_SEQUENCE_OF_COMMANDS,
+                        "PORT or PASV must be issued first"));
+                return;
             }
 
             // get filename
@@ -110,66 +116,171 @@ public class STOR extends AbstractCommand {
                 return;
             }
 
+            // a byte range set by RANG is one segment of a file uploaded by
+            // several sessions, its size given by ALLO
+            if (rangeEnd >= 0L && (!(file instanceof NativeFtpFile)
+                    || channel.getDataType() != DataType.BINARY || rangeEnd >= allocatedSize)) {
+                channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                        FtpReply.REPLY_503_BAD_SEQUENCE_OF_COMMANDS,
+                        "STOR.range", fileName, file));
+                return;
+            }
+
             // get data connection
             channel.writeAndFlush(LocalizedFtpReply.translate(channel, request,
                     FtpReply.REPLY_150_FILE_STATUS_OKAY, "STOR",
-                    fileName)).awaitUninterruptibly(10000);
+                    fileName));
 
-            DataConnection dataConnection;
-            try {
-                dataConnection = channel.getDataConnection().openConnection();
-            } catch (Exception e) {
-                LOG.debug("Exception getting the input data stream", e);
-                channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
-                        FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION, "STOR",
-                        fileName, file));
-                return;
+            // the executor of the session closes a segment of a ranged
+            // upload, which publishes the file once it is the last one
+            EventExecutor closeExecutor = null;
+            if (rangeEnd >= 0L) {
+                closeExecutor = channel.getTransferExecutor();
             }
 
-            // transfer data
-            boolean failure = false;
-            OutputStream outStream = null;
-            long transSz = 0L;
-            try {
-                outStream = file.createOutputStream(skipLen);
-                transSz = dataConnection.transferFromClient(outStream);
+            // receive file data from client once the data connection is opened,
+            // the transfer replies are sent when it completes
+            final FtpFile storFile = file;
+            final long offset = skipLen;
+            final long end = rangeEnd;
+            final long size = allocatedSize;
+            final EventExecutor executor = closeExecutor;
+            connFactory.openConnectionAsync().addListener(new FutureListener<AsyncDataConnection>() {
+                public void operationComplete(Future<AsyncDataConnection> future) {
+                    if (!future.isSuccess()) {
+                        LOG.debug("Exception getting the input data stream", future.cause());
+                        channel.getDataConnection().closeDataConnection();
+                        channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                                FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION, "STOR",
+                                storFile.getAbsolutePath(), storFile));
+                        return;
+                    }
+                    transfer(channel, request, future.getNow(), storFile, offset, end, size, executor);
+                }
+            });
+            async = true;
+        } finally {
+            channel.resetState();
+            if (!async) {
+                channel.getDataConnection().closeDataConnection();
+            }
+        }
+    }
+
+    /**
+     * Receive the file data and reply once the transfer is completed.
+     *
+     * @param executor The executor closing the stream and replying, null to
+     *            do it on the data event loop
+     */
+    private void transfer(final FtpChannel channel, final FtpRequest request,
+                          AsyncDataConnection dataConnection, final FtpFile file, long skipLen,
+                          long rangeEnd, long size, final EventExecutor executor) {
+        final String fileName = file.getAbsolutePath();
+        final OutputStream os;
+        try {
+            // open streams, a segment is written in place without
+            // truncating the file
+            OutputStream out;
+            if (rangeEnd >= 0L) {
+                out = channel.getContext().getRangedUploads().begin(
+                        ((NativeFtpFile) file).getPhysicalFile(), size, skipLen, rangeEnd);
+            } else {
+                out = file.createOutputStream(skipLen);
+            }
+            channel.getContext().getAsciiOffsetIndex().invalidate(file);
+            channel.getContext().getChecksumStore().invalidate(file);
+
+            // compute the checksums of whole files while they are received
+            String[] algorithms = channel.getContext().getConnectionConfig().getChecksumAlgorithms();
+            if (skipLen == 0 && rangeEnd < 0L && algorithms.length > 0) {
+                out = new ChecksumOutputStream(out, new TransferChecksum(algorithms));
+            }
+            os = out;
+        } catch (IOException ex) {
+            LOG.debug("IOException during data transfer", ex);
+            channel.getDataConnection().closeDataConnection();
+            channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                    FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                    "STOR", fileName, file));
+            return;
+        }
+
+        // transfer data
+        dataConnection.transferFromClientAsync(os).addListener(new FutureListener<Long>() {
+            public void operationComplete(final Future<Long> future) {
+                if (executor != null) {
+                    try {
+                        executor.execute(new Runnable() {
+                            public void run() {
+                                transferred(channel, request, file, os, future);
+                            }
+                        });
+                        return;
+                    } catch (RejectedExecutionException ex) {
+                        LOG.debug("Transfer threads are busy, closing {} on the event loop", fileName);
+                    }
+                }
+                transferred(channel, request, file, os, future);
+            }
+        });
+    }
+
+    /**
+     * Close the stream and reply once the transfer is completed.
+     */
+    private void transferred(FtpChannel channel, FtpRequest request, FtpFile file,
+                             OutputStream os, Future<Long> future) {
+        String fileName = file.getAbsolutePath();
 
+        // release the data connection before replying, the client
+        // may open the next one as soon as it reads the reply
+        channel.getDataConnection().closeDataConnection();
+        try {
+            Throwable cause = future.cause();
+            if (cause == null) {
                 // attempt to close the output stream so that errors in
                 // closing it will return an error to the client (FTPSERVER-119)
-                if(outStream != null) {
-                    outStream.close();
+                try {
+                    os.close();
+                } catch (IOException ex) {
+                    cause = ex;
+                }
+            }
+
+            if (cause == null) {
+                long transSz = future.getNow();
+
+                if (os instanceof ChecksumOutputStream) {
+                    channel.getContext().getChecksumStore().put(file,
+                            ((ChecksumOutputStream) os).getChecksum());
                 }
 
                 // notify the statistics component
                 ServerFtpStatistics ftpStat = (ServerFtpStatistics) channel.getContext()
                         .getFtpStatistics();
-                ftpStat.setUpload(channel, file, transSz);
+                if (ftpStat != null) {
+                    ftpStat.setUpload(channel, file, transSz);
+                }
 
-            } catch (SocketException ex) {
-                LOG.debug("Socket exception during data transfer", ex);
-                failure = true;
+                // if data transfer ok - send transfer complete message
+                channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "STOR",
+                        fileName, file, transSz));
+            } else if (cause instanceof SocketException) {
+                LOG.debug("Socket exception during data transfer", cause);
                 channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
                         FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
                         "STOR", fileName, file));
-            } catch (IOException ex) {
-                LOG.debug("IOException during data transfer", ex);
-                failure = true;
+            } else {
+                LOG.debug("IOException during data transfer", cause);
                 channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
                         FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
                         "STOR", fileName, file));
-            } finally {
-                // make sure we really close the output stream
-                // if data transfer ok - send transfer complete message
-                if (!failure) {
-                    channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
-                            FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "STOR",
-                            fileName, file, transSz));
-                }
-                IoUtils.close(outStream);
             }
         } finally {
-            channel.resetState();
-            channel.getDataConnection().closeDataConnection();
+            // make sure we really close the output stream
+            IoUtils.close(os);
         }
     }
 }
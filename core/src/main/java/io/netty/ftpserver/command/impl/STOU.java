@@ -19,27 +19,26 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.ftpserver.ftplet.DataConnection;
-import io.netty.ftpserver.ftplet.DataConnectionFactory;
 import io.netty.ftpserver.ftplet.DefaultFtpReply;
 import io.netty.ftpserver.ftplet.FileSystemView;
 import io.netty.ftpserver.ftplet.FtpException;
 import io.netty.ftpserver.ftplet.FtpFile;
 import io.netty.ftpserver.ftplet.FtpReply;
 import io.netty.ftpserver.ftplet.FtpRequest;
-import io.netty.ftpserver.impl.IODataConnectionFactory;
+import io.netty.ftpserver.impl.AsyncDataConnection;
+import io.netty.ftpserver.impl.ServerDataConnectionFactory;
 import io.netty.ftpserver.impl.ServerFtpStatistics;
 import io.netty.ftpserver.impl.reply.LocalizedDataTransferFtpReply;
 import io.netty.ftpserver.listener.nio.channel.FtpChannel;
 import io.netty.ftpserver.util.IoUtils;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.net.InetAddress;
 import java.net.SocketException;
 
 /**
@@ -54,25 +53,21 @@ import java.net.SocketException;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class STOU extends AbstractCommand {
     private final Logger LOG = LoggerFactory.getLogger(STOU.class);
 
     @Override
-    public void execute(ChannelHandlerContext context, FtpChannel channel, FtpRequest request) throws IOException, FtpException {
+    public void execute(ChannelHandlerContext context, final FtpChannel channel, final FtpRequest request) throws IOException, FtpException {
+        boolean async = false;
         try {
             // 24-10-2007 - added check if PORT or PASV is issued, see
             // https://issues.apache.org/jira/browse/FTPSERVER-110
-            DataConnectionFactory connFactory = channel.getDataConnection();
-            if (connFactory instanceof IODataConnectionFactory) {
-                InetAddress address = ((IODataConnectionFactory) connFactory)
-                        .getInetAddress();
-                if (address == null) {
-                    channel.writeAndFlush(new DefaultFtpReply(
-                            FtpReply.REPLY_503_BAD_SEQUENCE_OF_COMMANDS,
-                            "PORT or PASV must be issued first"));
-                    return;
-                }
+            ServerDataConnectionFactory connFactory = channel.getDataConnection();
+            if (connFactory.getInetAddress() == null) {
+                channel.writeAndFlush(new DefaultFtpReply(
+                        FtpReply.REPLY_503_BAD_SEQUENCE_OF_COMMANDS,
+                        "PORT or PASV must be issued first"));
+                return;
             }
 
             // reset state variables
@@ -123,70 +118,98 @@ public class STOU extends AbstractCommand {
             // get data connection
             channel.writeAndFlush(new DefaultFtpReply(FtpReply.REPLY_150_FILE_STATUS_OKAY, "FILE: " + fileName));
 
-            // get data from client
-            boolean failure = false;
-            OutputStream os = null;
-
-            DataConnection dataConnection;
-            try {
-                dataConnection = channel.getDataConnection().openConnection();
-            } catch (Exception e) {
-                LOG.debug("Exception getting the input data stream", e);
-                channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
-                        FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION, "STOU",
-                        fileName, file));
-                return;
+            // receive file data from client once the data connection is opened,
+            // the transfer replies are sent when it completes
+            final FtpFile stouFile = file;
+            connFactory.openConnectionAsync().addListener(new FutureListener<AsyncDataConnection>() {
+                public void operationComplete(Future<AsyncDataConnection> future) {
+                    if (!future.isSuccess()) {
+                        LOG.debug("Exception getting the input data stream", future.cause());
+                        channel.getDataConnection().closeDataConnection();
+                        channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                                FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION, "STOU",
+                                stouFile.getAbsolutePath(), stouFile));
+                        return;
+                    }
+                    transfer(channel, request, future.getNow(), stouFile);
+                }
+            });
+            async = true;
+        } finally {
+            if (!async) {
+                channel.getDataConnection().closeDataConnection();
             }
+        }
+    }
 
-            long transSz = 0L;
-            try {
-
-                // open streams
-                os = file.createOutputStream(0L);
-
-                // transfer data
-                transSz = dataConnection.transferFromClient(os);
+    /**
+     * Receive the file data and reply once the transfer is completed.
+     */
+    private void transfer(final FtpChannel channel, final FtpRequest request,
+                          AsyncDataConnection dataConnection, final FtpFile file) {
+        final String fileName = file.getAbsolutePath();
+        final OutputStream os;
+        try {
+            // open streams
+            os = file.createOutputStream(0L);
+        } catch (IOException ex) {
+            LOG.debug("IOException during data transfer", ex);
+            channel.getDataConnection().closeDataConnection();
+            channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                    FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                    "STOU", fileName, file));
+            return;
+        }
 
-                // attempt to close the output stream so that errors in
-                // closing it will return an error to the client (FTPSERVER-119)
-                if(os != null) {
-                    os.close();
-                }
+        // transfer data
+        dataConnection.transferFromClientAsync(os).addListener(new FutureListener<Long>() {
+            public void operationComplete(Future<Long> future) {
+                // release the data connection before replying, the client
+                // may open the next one as soon as it reads the reply
+                channel.getDataConnection().closeDataConnection();
+                try {
+                    Throwable cause = future.cause();
+                    if (cause == null) {
+                        // attempt to close the output stream so that errors in
+                        // closing it will return an error to the client (FTPSERVER-119)
+                        try {
+                            os.close();
+                        } catch (IOException ex) {
+                            cause = ex;
+                        }
+                    }
 
-                // notify the statistics component
-                ServerFtpStatistics ftpStat = (ServerFtpStatistics) channel.getContext()
-                        .getFtpStatistics();
-                if (ftpStat != null) {
-                    ftpStat.setUpload(channel, file, transSz);
+                    if (cause == null) {
+                        long transSz = future.getNow();
+
+                        // notify the statistics component
+                        ServerFtpStatistics ftpStat = (ServerFtpStatistics) channel.getContext()
+                                .getFtpStatistics();
+                        if (ftpStat != null) {
+                            ftpStat.setUpload(channel, file, transSz);
+                        }
+
+                        // if data transfer ok - send transfer complete message
+                        channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                                FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "STOU",
+                                fileName, file, transSz));
+                    } else if (cause instanceof SocketException) {
+                        LOG.debug("Socket exception during data transfer", cause);
+                        channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                                FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
+                                "STOU", fileName, file));
+                    } else {
+                        LOG.debug("IOException during data transfer", cause);
+                        channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
+                                FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                                "STOU", fileName, file));
+                    }
+                } finally {
+                    // make sure we really close the output stream
+                    IoUtils.close(os);
                 }
-
-            } catch (SocketException ex) {
-                LOG.debug("Socket exception during data transfer", ex);
-                failure = true;
-                channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
-                        FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
-                        "STOU", fileName, file));
-            } catch (IOException ex) {
-                LOG.debug("IOException during data transfer", ex);
-                failure = true;
-                channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
-                        FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
-                        "STOU", fileName, file));
-            } finally {
-                // make sure we really close the output stream
-                IoUtils.close(os);
-            }
-
-            // if data transfer ok - send transfer complete message
-            if (!failure) {
-                channel.writeAndFlush(LocalizedDataTransferFtpReply.translate(channel, request,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "STOU",
-                        fileName, file, transSz));
-
             }
-        } finally {
-            channel.getDataConnection().closeDataConnection();
-        }
+        });
     }
 
     /**
@@ -19,7 +19,6 @@
 
 package io.netty.ftpserver.command.impl;
 
-import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.ftpserver.ftplet.DataType;
 import io.netty.ftpserver.ftplet.FtpException;
@@ -41,7 +40,6 @@ import java.io.IOException;
  *
  * @author Io Netty Project
  */
-@Sharable
 public class TYPE extends AbstractCommand {
     private final Logger LOG = LoggerFactory.getLogger(TYPE.class);
 
@@ -241,6 +241,8 @@ public class ListenerBeanDefinitionParser extends
             }
 
             dc.setIdleTime(SpringUtil.parseInt(element, "idle-timeout", dc.getIdleTime()));
+            dc.setMaxUploadRate(SpringUtil.parseInt(element, "max-upload-rate", 0));
+            dc.setMaxDownloadRate(SpringUtil.parseInt(element, "max-download-rate", 0));
 
             Element activeElm = SpringUtil.getChildElement(element,
                     FtpServerNamespaceHandler.FTPSERVER_NS, "active");
@@ -280,6 +282,8 @@ public class ListenerBeanDefinitionParser extends
                 }
                 dc.setPassiveIpCheck(SpringUtil.parseBoolean(passiveElm,
                     "ip-check", false));
+                dc.setPassiveShared(SpringUtil.parseBoolean(passiveElm,
+                    "shared", false));
             }
         } else {
             // no data conn config element, do we still have SSL config from the
@@ -23,6 +23,7 @@ import io.netty.ftpserver.ConnectionConfigFactory;
 import io.netty.ftpserver.FtpServer;
 import io.netty.ftpserver.FtpServerConfigurationException;
 import io.netty.ftpserver.FtpServerFactory;
+import io.netty.ftpserver.TransferRejectionPolicy;
 import io.netty.ftpserver.message.MessageResource;
 import io.netty.ftpserver.message.MessageResourceFactory;
 import org.springframework.beans.factory.config.BeanDefinition;
@@ -123,6 +124,42 @@ public class ServerBeanDefinitionParser extends
             connectionConfig.setMaxThreads(SpringUtil.parseInt(element,
                     "max-threads"));
         }
+        if (StringUtils.hasText(element.getAttribute("max-queued-tasks"))) {
+            connectionConfig.setMaxQueuedTasks(SpringUtil.parseInt(element,
+                    "max-queued-tasks"));
+        }
+        if (StringUtils.hasText(element.getAttribute("transfer-rejection-policy"))) {
+            connectionConfig.setTransferRejectionPolicy(TransferRejectionPolicy.parse(
+                    element.getAttribute("transfer-rejection-policy")));
+        }
+        if (StringUtils.hasText(element.getAttribute("virtual-threads"))) {
+            connectionConfig.setVirtualThreadsEnabled(SpringUtil.parseBoolean(
+                    element, "virtual-threads", false));
+        }
+        if (StringUtils.hasText(element.getAttribute("max-upload-rate"))) {
+            connectionConfig.setMaxUploadRate(SpringUtil.parseInt(element,
+                    "max-upload-rate"));
+        }
+        if (StringUtils.hasText(element.getAttribute("max-download-rate"))) {
+            connectionConfig.setMaxDownloadRate(SpringUtil.parseInt(element,
+                    "max-download-rate"));
+        }
+        if (StringUtils.hasText(element.getAttribute("max-upload-rate-per-ip"))) {
+            connectionConfig.setMaxUploadRatePerIp(SpringUtil.parseInt(element,
+                    "max-upload-rate-per-ip"));
+        }
+        if (StringUtils.hasText(element.getAttribute("max-download-rate-per-ip"))) {
+            connectionConfig.setMaxDownloadRatePerIp(SpringUtil.parseInt(element,
+                    "max-download-rate-per-ip"));
+        }
+        if (StringUtils.hasText(element.getAttribute("checksum-algorithms"))) {
+            connectionConfig.setChecksumAlgorithms(element.getAttribute(
+                    "checksum-algorithms"));
+        }
+        if (StringUtils.hasText(element.getAttribute("checksum-store-file"))) {
+            connectionConfig.setChecksumStoreFile(element.getAttribute(
+                    "checksum-store-file"));
+        }
         if (StringUtils.hasText(element.getAttribute("max-anon-logins"))) {
             connectionConfig.setMaxAnonymousLogins(SpringUtil.parseInt(element,
                     "max-anon-logins"));
@@ -0,0 +1,664 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.filesystem.nativefs.impl;
+
+import io.netty.ftpserver.ftplet.FtpFile;
+import io.netty.ftpserver.ftplet.User;
+import io.netty.ftpserver.impl.ModeZEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.PathMatcher;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * A virtual file standing for an archive of a directory, or of the files
+ * matching a glob, that does not exist on disk: <code>dir.tar</code>,
+ * <code>dir.tar.gz</code> or <code>dir.zip</code> for the directory
+ * <code>dir</code>, or <code>*.csv.tar</code> for the files matching
+ * <code>*.csv</code> in the directory of the archive. The archive is
+ * generated as it is read, a few blocks at a time, so that nothing is staged
+ * in memory or on disk, and a whole directory of small files is downloaded
+ * with a single RETR.
+ *
+ * The archive is written as the real file on upload, after which the real
+ * file hides the archive. Its size is not known in advance.
+ *
+ * @author Io Netty Project
+ */
+public class ArchiveFtpFile extends NativeFtpFile {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ArchiveFtpFile.class);
+
+    static final String TAR = ".tar";
+
+    static final String TAR_GZ = ".tar.gz";
+
+    static final String ZIP = ".zip";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String format;
+
+    private final File baseDir;
+
+    private final String glob;
+
+    private ArchiveFtpFile(String fileName, File file, User user, String format,
+                           File baseDir, String glob) {
+        super(fileName, file, user);
+        this.format = format;
+        this.baseDir = baseDir;
+        this.glob = glob;
+    }
+
+    /**
+     * Get the archive standing for a missing file.
+     *
+     * @return The archive, null if the file exists, if its name does not end
+     *         with an archive extension or if there is nothing to archive
+     */
+    static ArchiveFtpFile get(String fileName, File file, User user) {
+        if (file.exists()) {
+            return null;
+        }
+        String name = file.getName();
+        String lowerName = name.toLowerCase(Locale.ENGLISH);
+        String format;
+        if (lowerName.endsWith(TAR_GZ)) {
+            format = TAR_GZ;
+        } else if (lowerName.endsWith(TAR)) {
+            format = TAR;
+        } else if (lowerName.endsWith(ZIP)) {
+            format = ZIP;
+        } else {
+            return null;
+        }
+        String baseName = name.substring(0, name.length() - format.length());
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (baseName.length() == 0 || parent == null || !parent.isDirectory()) {
+            return null;
+        }
+
+        if (baseName.indexOf('*') != -1 || baseName.indexOf('?') != -1) {
+            return new ArchiveFtpFile(fileName, file, user, format, parent, baseName);
+        }
+        File baseDir = new File(parent, baseName);
+        if (!baseDir.isDirectory()) {
+            return null;
+        }
+        return new ArchiveFtpFile(fileName, file, user, format, baseDir, null);
+    }
+
+    /**
+     * The archive exists as long as its directory does.
+     */
+    @Override
+    public boolean doesExist() {
+        return baseDir.isDirectory();
+    }
+
+    @Override
+    public boolean isFile() {
+        return doesExist();
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return false;
+    }
+
+    @Override
+    public boolean isReadable() {
+        return baseDir.canRead();
+    }
+
+    /**
+     * The size is not known until the archive is generated.
+     */
+    @Override
+    public long getSize() {
+        return 0L;
+    }
+
+    @Override
+    public long getLastModified() {
+        return baseDir.lastModified();
+    }
+
+    @Override
+    public List<FtpFile> listFiles() {
+        return null;
+    }
+
+    /**
+     * Generate the archive, skipping the given number of bytes of it.
+     */
+    @Override
+    public InputStream createInputStream(final long offset) throws IOException {
+        // permission check
+        if (!isReadable()) {
+            throw new IOException("No read permission : " + baseDir.getName());
+        }
+
+        InputStream in = new ArchiveInputStream(format, newWalk());
+        long skipped = 0L;
+        while (skipped < offset) {
+            long count = in.skip(offset - skipped);
+            if (count <= 0L) {
+                in.close();
+                throw new IOException("Cannot skip past the end of the archive");
+            }
+            skipped += count;
+        }
+        return in;
+    }
+
+    private Walk newWalk() {
+        if (glob == null) {
+            // the directory itself is the root entry
+            return new Walk(new Entry(baseDir, baseDir.getName() + '/'),
+                    baseDir.getName() + '/', list(baseDir, null));
+        }
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        return new Walk(null, "", list(baseDir, matcher));
+    }
+
+    /**
+     * The files of a directory in name order, only the matching ones if a
+     * matcher is given, null if it cannot be listed.
+     */
+    private static File[] list(File dir, PathMatcher matcher) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return null;
+        }
+        if (matcher != null) {
+            List<File> matching = new ArrayList<File>();
+            for (File file : files) {
+                if (matcher.matches(file.toPath().getFileName())) {
+                    matching.add(file);
+                }
+            }
+            files = matching.toArray(new File[matching.size()]);
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                return f1.getName().compareTo(f2.getName());
+            }
+        });
+        return files;
+    }
+
+    /**
+     * A file or directory of the archive.
+     */
+    private static final class Entry {
+
+        final File file;
+
+        final String name;
+
+        Entry(File file, String name) {
+            this.file = file;
+            this.name = name;
+        }
+
+        boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+
+    /**
+     * Walks the directory tree depth first, a directory being listed only
+     * when it is entered. The links to directories are not followed, so
+     * that a link cycle cannot make the archive endless.
+     */
+    private static final class Walk {
+
+        private final Deque<Level> levels = new ArrayDeque<Level>();
+
+        private Entry first;
+
+        Walk(Entry first, String prefix, File[] files) {
+            this.first = first;
+            if (files != null) {
+                levels.push(new Level(prefix, files));
+            }
+        }
+
+        Entry next() {
+            if (first != null) {
+                Entry entry = first;
+                first = null;
+                return entry;
+            }
+            while (!levels.isEmpty()) {
+                Level level = levels.peek();
+                if (level.index == level.files.length) {
+                    levels.pop();
+                    continue;
+                }
+                File file = level.files[level.index++];
+                String name = level.prefix + file.getName();
+                if (file.isDirectory()) {
+                    if (Files.isSymbolicLink(file.toPath())) {
+                        continue;
+                    }
+                    File[] files = list(file, null);
+                    if (files == null) {
+                        continue;
+                    }
+                    levels.push(new Level(name + '/', files));
+                    return new Entry(file, name + '/');
+                }
+                if (file.isFile() && file.canRead()) {
+                    return new Entry(file, name);
+                }
+            }
+            return null;
+        }
+
+        private static final class Level {
+
+            final String prefix;
+
+            final File[] files;
+
+            int index = 0;
+
+            Level(String prefix, File[] files) {
+                this.prefix = prefix;
+                this.files = files;
+            }
+        }
+    }
+
+    /**
+     * Writes the entries of an archive.
+     */
+    private interface ArchiveWriter {
+
+        void putEntry(Entry entry, long size) throws IOException;
+
+        void write(byte[] b, int off, int len) throws IOException;
+
+        void closeEntry() throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    /**
+     * Writes a ustar archive, with the GNU extensions for the names longer
+     * than the ustar fields and for the sizes of 8 GiB and more.
+     */
+    private static final class TarWriter implements ArchiveWriter {
+
+        private static final int BLOCK = 512;
+
+        private static final int RECORD = 20 * BLOCK;
+
+        private final OutputStream out;
+
+        private long written = 0L;
+
+        private long entrySize;
+
+        private long entryWritten;
+
+        TarWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        public void putEntry(Entry entry, long size) throws IOException {
+            byte[] name = entry.name.getBytes(UTF_8);
+            int split = split(name);
+            if (split < 0) {
+                // GNU long name, followed by the entry with a truncated name
+                byte[] longName = Arrays.copyOf(name, name.length + 1);
+                writeHeader(Arrays.copyOf("././@LongLink".getBytes(UTF_8), 100), new byte[0],
+                        0, longName.length, 0L, (byte) 'L');
+                writeBlocks(longName, longName.length);
+                writeHeader(Arrays.copyOf(name, 100), new byte[0], entry, size);
+            } else if (split == 0) {
+                writeHeader(name, new byte[0], entry, size);
+            } else {
+                writeHeader(Arrays.copyOfRange(name, split + 1, name.length),
+                        Arrays.copyOf(name, split), entry, size);
+            }
+            entrySize = size;
+            entryWritten = 0L;
+        }
+
+        /**
+         * The index of the '/' splitting the name into the prefix and name
+         * fields, 0 if the name fits as is, -1 if it cannot be split.
+         */
+        private static int split(byte[] name) {
+            if (name.length <= 100) {
+                return 0;
+            }
+            for (int i = 0; i < name.length && i <= 155; i++) {
+                if (name[i] == '/' && i > 0 && name.length - i - 1 <= 100) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void writeHeader(byte[] name, byte[] prefix, Entry entry, long size)
+                throws IOException {
+            boolean dir = entry.isDirectory();
+            writeHeader(name, prefix, dir ? 0755 : 0644, dir ? 0L : size,
+                    entry.file.lastModified() / 1000L, (byte) (dir ? '5' : '0'));
+        }
+
+        private void writeHeader(byte[] name, byte[] prefix, int mode, long size,
+                                 long mtime, byte type) throws IOException {
+            byte[] header = new byte[BLOCK];
+            System.arraycopy(name, 0, header, 0, Math.min(name.length, 100));
+            octal(header, 100, 8, mode);
+            octal(header, 108, 8, 0L);
+            octal(header, 116, 8, 0L);
+            if (size > 077777777777L) {
+                // base-256, as GNU tar
+                header[124] = (byte) 0x80;
+                for (int i = 0; i < 8; i++) {
+                    header[135 - i] = (byte) (size >>> (8 * i));
+                }
+            } else {
+                octal(header, 124, 12, size);
+            }
+            octal(header, 136, 12, mtime);
+            header[156] = type;
+            System.arraycopy("ustar\000".getBytes(UTF_8), 0, header, 257, 6);
+            header[263] = '0';
+            header[264] = '0';
+            System.arraycopy(prefix, 0, header, 345, Math.min(prefix.length, 155));
+
+            // the checksum is computed with its own field as spaces
+            Arrays.fill(header, 148, 156, (byte) ' ');
+            long checksum = 0L;
+            for (byte b : header) {
+                checksum += b & 0xFF;
+            }
+            octal(header, 148, 7, checksum);
+            header[155] = ' ';
+
+            out.write(header);
+            written += BLOCK;
+        }
+
+        private static void octal(byte[] header, int offset, int length, long value) {
+            String digits = Long.toOctalString(value);
+            int zeros = length - 1 - digits.length();
+            for (int i = 0; i < zeros; i++) {
+                header[offset + i] = '0';
+            }
+            for (int i = 0; i < digits.length(); i++) {
+                header[offset + zeros + i] = (byte) digits.charAt(i);
+            }
+            header[offset + length - 1] = 0;
+        }
+
+        private void writeBlocks(byte[] data, int length) throws IOException {
+            out.write(data, 0, length);
+            written += length;
+            pad();
+        }
+
+        private void pad() throws IOException {
+            int padding = (int) ((BLOCK - written % BLOCK) % BLOCK);
+            out.write(new byte[padding]);
+            written += padding;
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            written += len;
+            entryWritten += len;
+        }
+
+        /**
+         * Pad the data of a file that shrank since its entry was written.
+         */
+        public void closeEntry() throws IOException {
+            byte[] zeros = new byte[BLOCK];
+            while (entryWritten < entrySize) {
+                int count = (int) Math.min(BLOCK, entrySize - entryWritten);
+                write(zeros, 0, count);
+            }
+            pad();
+        }
+
+        public void finish() throws IOException {
+            out.write(new byte[2 * BLOCK]);
+            written += 2 * BLOCK;
+            out.write(new byte[(int) ((RECORD - written % RECORD) % RECORD)]);
+            if (out instanceof GZIPOutputStream) {
+                ((GZIPOutputStream) out).finish();
+            }
+        }
+    }
+
+    /**
+     * Writes a zip archive, storing the already compressed files without
+     * deflating them again.
+     */
+    private static final class ZipWriter implements ArchiveWriter {
+
+        private final ZipOutputStream zip;
+
+        ZipWriter(OutputStream out) {
+            zip = new ZipOutputStream(out, UTF_8);
+        }
+
+        public void putEntry(Entry entry, long size) throws IOException {
+            ZipEntry zipEntry = new ZipEntry(entry.name);
+            zipEntry.setTime(entry.file.lastModified());
+            zip.setLevel(ModeZEncoder.isCompressedFileName(entry.name)
+                    ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+            zip.putNextEntry(zipEntry);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            zip.write(b, off, len);
+        }
+
+        public void closeEntry() throws IOException {
+            zip.closeEntry();
+        }
+
+        public void finish() throws IOException {
+            zip.finish();
+        }
+    }
+
+    /**
+     * The output of the archive writer, read back by the archive stream.
+     */
+    private static final class Sink extends OutputStream {
+
+        private byte[] buf = new byte[BUFFER_SIZE];
+
+        private int count = 0;
+
+        private int position = 0;
+
+        @Override
+        public void write(int b) {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (count + len > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + len));
+            }
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        boolean isEmpty() {
+            return position == count;
+        }
+
+        int drain(byte[] b, int off, int len) {
+            int length = Math.min(len, count - position);
+            System.arraycopy(buf, position, b, off, length);
+            position += length;
+            if (position == count) {
+                position = 0;
+                count = 0;
+            }
+            return length;
+        }
+    }
+
+    /**
+     * Generates the archive as it is read: each time the generated data is
+     * all read, the next block of the current file or the next entry is
+     * written into the sink.
+     */
+    private static final class ArchiveInputStream extends InputStream {
+
+        private final Sink sink = new Sink();
+
+        private final ArchiveWriter writer;
+
+        private final Walk walk;
+
+        private final byte[] buff = new byte[BUFFER_SIZE];
+
+        private InputStream current;
+
+        private long remaining;
+
+        private boolean finished = false;
+
+        ArchiveInputStream(String format, Walk walk) throws IOException {
+            this.walk = walk;
+            if (ZIP.equals(format)) {
+                writer = new ZipWriter(sink);
+            } else if (TAR_GZ.equals(format)) {
+                writer = new TarWriter(new GZIPOutputStream(sink, BUFFER_SIZE));
+            } else {
+                writer = new TarWriter(sink);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (sink.isEmpty() && !finished) {
+                step();
+            }
+            if (sink.isEmpty()) {
+                return -1;
+            }
+            return sink.drain(b, off, len);
+        }
+
+        private void step() throws IOException {
+            if (current != null) {
+                int count = current.read(buff, 0, (int) Math.min(buff.length, remaining));
+                if (count > 0) {
+                    writer.write(buff, 0, count);
+                    remaining -= count;
+                }
+                if (count <= 0 || remaining == 0L) {
+                    closeCurrent();
+                }
+                return;
+            }
+
+            Entry entry = walk.next();
+            if (entry == null) {
+                writer.finish();
+                finished = true;
+                return;
+            }
+            if (entry.isDirectory()) {
+                writer.putEntry(entry, 0L);
+                writer.closeEntry();
+                return;
+            }
+            InputStream in;
+            try {
+                in = new FileInputStream(entry.file);
+            } catch (IOException ex) {
+                LOG.debug("Skipping unreadable file {}", entry.file, ex);
+                return;
+            }
+            long size = entry.file.length();
+            writer.putEntry(entry, size);
+            current = in;
+            remaining = size;
+            if (size == 0L) {
+                closeCurrent();
+            }
+        }
+
+        private void closeCurrent() throws IOException {
+            current.close();
+            current = null;
+            writer.closeEntry();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+            finished = true;
+        }
+    }
+}
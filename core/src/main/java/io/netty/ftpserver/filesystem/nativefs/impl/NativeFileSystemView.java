@@ -128,6 +128,12 @@ public class NativeFileSystemView implements FileSystemView {
 
         // strip the root directory and return
         String userFileName = physicalName.substring(rootDir.length() - 1);
+
+        // a missing dir.tar, dir.tar.gz or dir.zip is generated from dir
+        ArchiveFtpFile archive = ArchiveFtpFile.get(userFileName, fileObj, user);
+        if (archive != null) {
+            return archive;
+        }
         return new NativeFtpFile(userFileName, fileObj, user);
     }
 
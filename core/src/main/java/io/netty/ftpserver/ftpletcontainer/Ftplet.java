@@ -51,6 +51,28 @@ import java.nio.channels.Channel;
  * FtpletEnum.DEFAULT will be assumed. If any ftplet callback method throws
  * exception, that particular connection will be disconnected.
  *
+ * <p>Compatibility note for the ftplets written for the blocking data
+ * connections: the transfer commands (RETR, STOR, APPE, STOU, LIST, NLST
+ * and MLSD) now return once their 150 reply is sent, the transfer completing
+ * on the data event loop. Thus:</p>
+ * <ul>
+ * <li>{@link #afterCommand} of a transfer command is called while the
+ * transfer runs, with the 150 reply, or the error reply of a transfer that
+ * did not start, and not with the 226, 426 or 551 reply ending it. A
+ * listener added to
+ * {@link io.netty.ftpserver.impl.NettyDataConnectionFactory#getTransferFuture()}
+ * is notified once the transfer is over, after its final reply.</li>
+ * <li>The commands a client sends during a transfer are queued until its
+ * final reply, so a PASV, EPSV, PORT or EPRT from the client never reaches a
+ * session with a transfer running. A ftplet calling
+ * {@link io.netty.ftpserver.impl.ServerDataConnectionFactory#initPassiveDataConnection()}
+ * or
+ * {@link io.netty.ftpserver.impl.ServerDataConnectionFactory#initActiveDataConnection(java.net.InetSocketAddress)}
+ * itself, for instance from the afterCommand of a transfer command, closes
+ * the data connection and aborts the running transfer, replied to with 426.
+ * It used to wait for the blocking transfer to end instead.</li>
+ * </ul>
+ *
  * @author Io Netty Project
  */
 public interface Ftplet {
@@ -124,7 +146,9 @@ public interface Ftplet {
 	 * @param reply
 	 *            the reply that was sent for this command. Implementations can
 	 *            use this to check the reply code and thus determine if the
-	 *            command was successfully processed or not.
+	 *            command was successfully processed or not. For a transfer
+	 *            command, it is the 150 reply of a transfer still running,
+	 *            see the compatibility note of this interface.
 	 * @return The desired action to be performed by the server
 	 * @throws FtpException
 	 * @throws IOException
@@ -0,0 +1,1057 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.ftpserver.impl;
+
+import io.netty.channel.Channel;
+import io.netty.ftpserver.ftplet.FtpException;
+import io.netty.ftpserver.ftplet.FtpFile;
+import io.netty.ftpserver.listener.nio.channel.FtpChannel;
+import io.netty.ftpserver.util.IoUtils;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Deque;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Extracts a tar, tar.gz or zip archive into a directory while the archive is
+ * received, as sent with SITE UNPACK. The data connection writes the archive
+ * to this stream and the entries are extracted on a transfer thread, as the
+ * archive is parsed without waiting for its end. The data waiting for the
+ * transfer thread is bounded: the data connection stops reading once too
+ * much of it is queued, see {@link #pause(Runnable)}.
+ *
+ * Each entry is written through the file system view of the session, so the
+ * write permission is checked per entry. The entries which are refused or
+ * which would be extracted out of the directory are skipped and counted.
+ *
+ * @author Io Netty Project
+ */
+public class ArchiveExtractor extends OutputStream {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ArchiveExtractor.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int HIGH_WATER = 4 * 1024 * 1024;
+
+    private static final int LOW_WATER = 1024 * 1024;
+
+    private static final int MAX_NAME_LENGTH = 64 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FtpChannel channel;
+
+    private final String dirPath;
+
+    private final EventExecutor executor;
+
+    private final Promise<Integer> promise;
+
+    private final Deque<byte[]> chunks = new ArrayDeque<byte[]>();
+
+    private final Runnable drainTask = new Runnable() {
+        public void run() {
+            drain();
+        }
+    };
+
+    private long queued = 0L;
+
+    private boolean draining = false;
+
+    private boolean finishing = false;
+
+    private Runnable resume;
+
+    // only used by the transfer thread
+
+    private final byte[] magic = new byte[4];
+
+    private int magicCount = 0;
+
+    private Parser parser;
+
+    private FtpFile entryFile;
+
+    private OutputStream entryOut;
+
+    private long entrySize;
+
+    private long entryTime;
+
+    private int fileCount = 0;
+
+    private volatile int refusedCount = 0;
+
+    /**
+     * Internal constructor, do not use directly.
+     *
+     * @param channel the session extracting the archive
+     * @param dir the directory to extract the archive into
+     * @param executor the transfer thread extracting the archive
+     */
+    public ArchiveExtractor(FtpChannel channel, FtpFile dir, EventExecutor executor) {
+        this.channel = channel;
+        String path = dir.getAbsolutePath();
+        this.dirPath = path.endsWith("/") ? path : path + '/';
+        this.executor = executor;
+        this.promise = executor.newPromise();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    /**
+     * Queue the data for the transfer thread, never blocking.
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return;
+        }
+        if (promise.isDone()) {
+            throw new IOException("Archive extraction failed", promise.cause());
+        }
+        synchronized (this) {
+            chunks.add(Arrays.copyOfRange(b, off, off + len));
+            queued += len;
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        executor.execute(drainTask);
+    }
+
+    /**
+     * Tell whether the writer should stop writing, in which case the given
+     * task is run once the queued data is mostly extracted.
+     */
+    public boolean pause(Runnable resume) {
+        synchronized (this) {
+            if (queued < HIGH_WATER || promise.isDone()) {
+                return false;
+            }
+            this.resume = resume;
+            return true;
+        }
+    }
+
+    /**
+     * Suspend the reads of the data channel while the extractor is behind,
+     * from the event loop of the channel.
+     */
+    public void pauseReads(final Channel dataChannel) {
+        if (pause(new Runnable() {
+            public void run() {
+                // through the event loop, after the suspension below
+                dataChannel.eventLoop().execute(new Runnable() {
+                    public void run() {
+                        ReadSuspension.resume(dataChannel, ReadSuspension.RECEIVER);
+                    }
+                });
+            }
+        })) {
+            ReadSuspension.suspend(dataChannel, ReadSuspension.RECEIVER);
+        }
+    }
+
+    /**
+     * Complete the extraction once the queued data is extracted.
+     *
+     * @return The number of extracted files
+     */
+    public Future<Integer> finish() {
+        synchronized (this) {
+            finishing = true;
+            if (draining) {
+                return promise;
+            }
+            draining = true;
+        }
+        executor.execute(drainTask);
+        return promise;
+    }
+
+    /**
+     * Stop the extraction, the file being extracted is left as is.
+     */
+    public void abort() {
+        if (promise.tryFailure(new IOException("Archive extraction aborted"))) {
+            synchronized (this) {
+                if (draining) {
+                    return;
+                }
+                draining = true;
+            }
+            executor.execute(drainTask);
+        }
+    }
+
+    /**
+     * The number of entries refused or skipped.
+     */
+    public int getRefusedCount() {
+        return refusedCount;
+    }
+
+    private void drain() {
+        for (;;) {
+            byte[] chunk;
+            Runnable toResume = null;
+            synchronized (this) {
+                chunk = chunks.poll();
+                if (chunk == null) {
+                    draining = false;
+                    if (!finishing && !promise.isDone()) {
+                        return;
+                    }
+                } else {
+                    queued -= chunk.length;
+                    if (resume != null && queued <= LOW_WATER) {
+                        toResume = resume;
+                        resume = null;
+                    }
+                }
+            }
+            if (toResume != null) {
+                toResume.run();
+            }
+
+            if (promise.isDone()) {
+                closeEntry();
+                if (chunk == null) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                if (chunk != null) {
+                    update(chunk, 0, chunk.length);
+                } else {
+                    if (parser == null) {
+                        throw new IOException("Not an archive");
+                    }
+                    parser.finish();
+                    promise.trySuccess(fileCount);
+                    return;
+                }
+            } catch (IOException ex) {
+                LOG.debug("Archive extraction failed", ex);
+                closeEntry();
+                promise.tryFailure(ex);
+            } catch (RuntimeException ex) {
+                LOG.warn("Archive extraction failed", ex);
+                closeEntry();
+                promise.tryFailure(ex);
+            }
+        }
+    }
+
+    /**
+     * Pick the parser from the first bytes of the archive.
+     */
+    private void update(byte[] b, int off, int len) throws IOException {
+        if (parser == null) {
+            int count = Math.min(len, magic.length - magicCount);
+            System.arraycopy(b, off, magic, magicCount, count);
+            magicCount += count;
+            off += count;
+            len -= count;
+            if (magicCount < magic.length) {
+                return;
+            }
+            if (magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4) {
+                parser = new ZipParser();
+            } else if ((magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B) {
+                parser = new GzipParser(new TarParser());
+            } else {
+                parser = new TarParser();
+            }
+            parser.update(magic, 0, magic.length);
+        }
+        parser.update(b, off, len);
+    }
+
+    /**
+     * Start an entry.
+     *
+     * @return true if the data of the entry is to be written
+     */
+    private boolean startEntry(String name, boolean directory, long time) throws IOException {
+        String path = normalize(name);
+        if (path == null) {
+            refusedCount++;
+            return false;
+        }
+        if (path.length() == 0) {
+            // the directory itself
+            return false;
+        }
+        if (directory) {
+            if (!mkdirs(path)) {
+                refusedCount++;
+            }
+            return false;
+        }
+
+        int slash = path.lastIndexOf('/');
+        FtpFile file = getFile(path);
+        if ((slash != -1 && !mkdirs(path.substring(0, slash)))
+                || file.isDirectory() || !file.isWritable()) {
+            refusedCount++;
+            return false;
+        }
+        channel.getContext().getAsciiOffsetIndex().invalidate(file);
+        channel.getContext().getChecksumStore().invalidate(file);
+        entryOut = file.createOutputStream(0L);
+        entryFile = file;
+        entrySize = 0L;
+        entryTime = time;
+        return true;
+    }
+
+    private void writeEntry(byte[] b, int off, int len) throws IOException {
+        entryOut.write(b, off, len);
+        entrySize += len;
+    }
+
+    private void endEntry() throws IOException {
+        OutputStream out = entryOut;
+        entryOut = null;
+        out.close();
+        if (entryTime > 0L) {
+            entryFile.setLastModified(entryTime);
+        }
+        fileCount++;
+
+        // notify the statistics component
+        ServerFtpStatistics ftpStat = (ServerFtpStatistics) channel.getContext()
+                .getFtpStatistics();
+        if (ftpStat != null) {
+            ftpStat.setUpload(channel, entryFile, entrySize);
+        }
+        entryFile = null;
+    }
+
+    private void closeEntry() {
+        IoUtils.close(entryOut);
+        entryOut = null;
+        entryFile = null;
+    }
+
+    /**
+     * The path of the entry relative to the directory, null if it would be
+     * extracted out of it.
+     */
+    private static String normalize(String name) {
+        StringBuilder path = new StringBuilder();
+        for (String part : name.replace('\\', '/').split("/")) {
+            if (part.length() == 0 || part.equals(".")) {
+                continue;
+            }
+            if (part.equals("..")) {
+                return null;
+            }
+            if (path.length() > 0) {
+                path.append('/');
+            }
+            path.append(part);
+        }
+        return path.toString();
+    }
+
+    private FtpFile getFile(String path) throws IOException {
+        FtpFile file;
+        try {
+            file = channel.getFileSystemView().getFile(dirPath + path);
+        } catch (FtpException ex) {
+            throw new IOException(ex);
+        }
+        if (file == null || !file.getAbsolutePath().startsWith(dirPath)) {
+            throw new IOException("Invalid path : " + path);
+        }
+        return file;
+    }
+
+    /**
+     * Create the missing directories of the path.
+     */
+    private boolean mkdirs(String path) throws IOException {
+        int end = -1;
+        do {
+            end = path.indexOf('/', end + 1);
+            FtpFile dir = getFile(end == -1 ? path : path.substring(0, end));
+            if (dir.isDirectory()) {
+                continue;
+            }
+            if (dir.doesExist() || !dir.isWritable() || !dir.mkdir()) {
+                return false;
+            }
+            ServerFtpStatistics ftpStat = (ServerFtpStatistics) channel.getContext()
+                    .getFtpStatistics();
+            if (ftpStat != null) {
+                ftpStat.setMkdir(channel, dir);
+            }
+        } while (end != -1);
+        return true;
+    }
+
+    private static int le16(byte[] b, int off) {
+        return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8;
+    }
+
+    private static long le32(byte[] b, int off) {
+        return le16(b, off) | (long) le16(b, off + 2) << 16;
+    }
+
+    private static long le64(byte[] b, int off) {
+        return le32(b, off) | le32(b, off + 4) << 32;
+    }
+
+    private static String cString(byte[] b, int off, int length) {
+        int end = off;
+        while (end < off + length && b[end] != 0) {
+            end++;
+        }
+        return new String(b, off, end - off, UTF_8);
+    }
+
+    /**
+     * A push parser, reading the fixed size fields of the archive into a
+     * buffer, however the data is split.
+     */
+    private abstract static class Parser {
+
+        int state;
+
+        byte[] field = new byte[512];
+
+        int fieldLength;
+
+        int fieldCount;
+
+        abstract void update(byte[] b, int off, int len) throws IOException;
+
+        abstract void finish() throws IOException;
+
+        /**
+         * The field of the current state is filled.
+         */
+        abstract void field() throws IOException;
+
+        /**
+         * Move to a state reading a field of the given length.
+         */
+        void next(int state, int length) throws IOException {
+            this.state = state;
+            if (field.length < length) {
+                field = new byte[length];
+            }
+            fieldLength = length;
+            fieldCount = 0;
+            if (length == 0) {
+                field();
+            }
+        }
+
+        /**
+         * Read the field, calling {@link #field()} once it is filled.
+         *
+         * @return The number of bytes read
+         */
+        int fill(byte[] b, int off, int len) throws IOException {
+            int count = Math.min(len, fieldLength - fieldCount);
+            System.arraycopy(b, off, field, fieldCount, count);
+            fieldCount += count;
+            if (fieldCount == fieldLength) {
+                field();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Parses a ustar archive, with the GNU long names and the pax paths.
+     */
+    private final class TarParser extends Parser {
+
+        private static final int BLOCK = 512;
+
+        private static final int HEADER = 0;
+
+        private static final int DATA = 1;
+
+        private static final int PADDING = 2;
+
+        private static final int END = 3;
+
+        private long remaining;
+
+        private int padding;
+
+        private boolean writing;
+
+        private ByteArrayOutputStream meta;
+
+        private byte metaType;
+
+        private String longName;
+
+        TarParser() throws IOException {
+            next(HEADER, BLOCK);
+        }
+
+        void update(byte[] b, int off, int len) throws IOException {
+            while (len > 0 && state != END) {
+                int count;
+                if (state == DATA) {
+                    count = (int) Math.min(len, remaining);
+                    if (meta != null) {
+                        meta.write(b, off, count);
+                    } else if (writing) {
+                        writeEntry(b, off, count);
+                    }
+                    remaining -= count;
+                    if (remaining == 0L) {
+                        endData();
+                    }
+                } else if (state == PADDING) {
+                    count = Math.min(len, padding);
+                    padding -= count;
+                    if (padding == 0) {
+                        next(HEADER, BLOCK);
+                    }
+                } else {
+                    count = fill(b, off, len);
+                }
+                off += count;
+                len -= count;
+            }
+        }
+
+        void finish() throws IOException {
+            if (state == DATA || (state == HEADER && fieldCount > 0)) {
+                throw new IOException("Truncated tar archive");
+            }
+        }
+
+        void field() throws IOException {
+            byte[] header = field;
+            boolean empty = true;
+            for (int i = 0; i < BLOCK && empty; i++) {
+                empty = header[i] == 0;
+            }
+            if (empty) {
+                // the end of the archive, the rest is ignored
+                state = END;
+                return;
+            }
+
+            long checksum = 0L;
+            for (int i = 0; i < BLOCK; i++) {
+                checksum += i >= 148 && i < 156 ? ' ' : header[i] & 0xFF;
+            }
+            if (checksum != number(header, 148, 8)) {
+                throw new IOException("Bad tar header checksum");
+            }
+
+            long size = number(header, 124, 12);
+            long time = number(header, 136, 12) * 1000L;
+            byte type = header[156];
+            String name = longName != null ? longName : name(header);
+            longName = null;
+            remaining = size;
+            padding = (int) ((BLOCK - size % BLOCK) % BLOCK);
+
+            if (type == 'L' || type == 'x') {
+                if (size > MAX_NAME_LENGTH) {
+                    throw new IOException("Tar entry name too long");
+                }
+                meta = new ByteArrayOutputStream((int) size);
+                metaType = type;
+            } else if (type == '5') {
+                startEntry(name, true, time);
+                writing = false;
+            } else {
+                // the links and the special files are skipped
+                writing = (type == '0' || type == 0 || type == '7')
+                        && startEntry(name, false, time);
+            }
+            state = DATA;
+            if (size == 0L) {
+                endData();
+            }
+        }
+
+        private void endData() throws IOException {
+            if (meta != null) {
+                byte[] data = meta.toByteArray();
+                meta = null;
+                longName = metaType == 'L' ? cString(data, 0, data.length) : paxPath(data);
+            } else if (writing) {
+                writing = false;
+                endEntry();
+            }
+            if (padding > 0) {
+                state = PADDING;
+            } else {
+                next(HEADER, BLOCK);
+            }
+        }
+
+        private String name(byte[] header) {
+            String name = cString(header, 0, 100);
+            if (new String(header, 257, 5, UTF_8).equals("ustar")) {
+                String prefix = cString(header, 345, 155);
+                if (prefix.length() > 0) {
+                    name = prefix + '/' + name;
+                }
+            }
+            return name;
+        }
+
+        /**
+         * The path of the pax records "length key=value\n", null if none.
+         */
+        private String paxPath(byte[] data) throws IOException {
+            String path = null;
+            int position = 0;
+            while (position < data.length) {
+                int space = position;
+                while (space < data.length && data[space] != ' ') {
+                    space++;
+                }
+                int length;
+                try {
+                    length = Integer.parseInt(new String(data, position, space - position, UTF_8));
+                } catch (NumberFormatException ex) {
+                    throw new IOException("Bad pax header");
+                }
+                if (length <= space - position || position + length > data.length) {
+                    throw new IOException("Bad pax header");
+                }
+                String record = new String(data, space + 1, position + length - space - 2, UTF_8);
+                if (record.startsWith("path=")) {
+                    path = record.substring(5);
+                }
+                position += length;
+            }
+            return path;
+        }
+
+        /**
+         * An octal number, or a base-256 one as written by GNU tar.
+         */
+        private long number(byte[] header, int off, int length) throws IOException {
+            if ((header[off] & 0x80) != 0) {
+                long value = 0L;
+                for (int i = Math.max(off + 1, off + length - 8); i < off + length; i++) {
+                    value = value << 8 | (header[i] & 0xFF);
+                }
+                return value;
+            }
+            long value = 0L;
+            int i = off;
+            while (i < off + length && (header[i] == ' ' || header[i] == '0')) {
+                i++;
+            }
+            for (; i < off + length && header[i] != 0 && header[i] != ' '; i++) {
+                if (header[i] < '0' || header[i] > '7') {
+                    throw new IOException("Bad tar header number");
+                }
+                value = value << 3 | (header[i] - '0');
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Parses a zip archive by its local headers, the central directory at its
+     * end being ignored.
+     */
+    private final class ZipParser extends Parser {
+
+        private static final long LOCAL_SIGNATURE = 0x04034b50L;
+
+        private static final long DESCRIPTOR_SIGNATURE = 0x08074b50L;
+
+        private static final long CENTRAL_SIGNATURE = 0x02014b50L;
+
+        private static final long END_SIGNATURE = 0x06054b50L;
+
+        private static final int SIGNATURE = 0;
+
+        private static final int LOCAL_HEADER = 1;
+
+        private static final int NAMES = 2;
+
+        private static final int STORED = 3;
+
+        private static final int DEFLATED = 4;
+
+        private static final int DESCRIPTOR = 5;
+
+        private static final int DESCRIPTOR_REST = 6;
+
+        private static final int END = 7;
+
+        private final Inflater inflater = new Inflater(true);
+
+        private final byte[] buf = new byte[BUFFER_SIZE];
+
+        private int flags;
+
+        private int method;
+
+        private long time;
+
+        private long compressedSize;
+
+        private long size;
+
+        private int nameLength;
+
+        private boolean zip64;
+
+        private boolean writing;
+
+        private long remaining;
+
+        ZipParser() throws IOException {
+            next(SIGNATURE, 4);
+        }
+
+        void update(byte[] b, int off, int len) throws IOException {
+            while (len > 0 && state != END) {
+                int count;
+                if (state == STORED) {
+                    count = (int) Math.min(len, remaining);
+                    if (writing) {
+                        writeEntry(b, off, count);
+                    }
+                    remaining -= count;
+                    if (remaining == 0L) {
+                        endData();
+                    }
+                } else if (state == DEFLATED) {
+                    count = inflate(b, off, len);
+                } else {
+                    count = fill(b, off, len);
+                }
+                off += count;
+                len -= count;
+            }
+        }
+
+        void finish() throws IOException {
+            inflater.end();
+            if (state != END && !(state == SIGNATURE && fieldCount == 0)) {
+                throw new IOException("Truncated zip archive");
+            }
+        }
+
+        void field() throws IOException {
+            switch (state) {
+            case SIGNATURE:
+                long signature = le32(field, 0);
+                if (signature == LOCAL_SIGNATURE) {
+                    next(LOCAL_HEADER, 26);
+                } else if (signature == CENTRAL_SIGNATURE || signature == END_SIGNATURE) {
+                    state = END;
+                } else {
+                    throw new IOException("Bad zip signature");
+                }
+                break;
+            case LOCAL_HEADER:
+                flags = le16(field, 2);
+                method = le16(field, 4);
+                time = dosTime(le32(field, 6));
+                compressedSize = le32(field, 14);
+                size = le32(field, 18);
+                nameLength = le16(field, 22);
+                if ((flags & 1) != 0) {
+                    throw new IOException("Encrypted zip entries are not supported");
+                }
+                next(NAMES, nameLength + le16(field, 24));
+                break;
+            case NAMES:
+                startData(new String(field, 0, nameLength, UTF_8));
+                break;
+            case DESCRIPTOR:
+                // the signature of the data descriptor is optional
+                int length = zip64 ? 16 : 8;
+                next(DESCRIPTOR_REST, le32(field, 0) == DESCRIPTOR_SIGNATURE ? length + 4 : length);
+                break;
+            default:
+                next(SIGNATURE, 4);
+                break;
+            }
+        }
+
+        private void startData(String name) throws IOException {
+            // the zip64 extra field holds the sizes too large for the header
+            zip64 = false;
+            int position = nameLength;
+            while (position + 4 <= fieldLength) {
+                int id = le16(field, position);
+                int length = le16(field, position + 2);
+                if (id == 0x0001) {
+                    zip64 = true;
+                    int data = position + 4;
+                    if (size == 0xFFFFFFFFL && data + 8 <= fieldLength) {
+                        size = le64(field, data);
+                        data += 8;
+                    }
+                    if (compressedSize == 0xFFFFFFFFL && data + 8 <= fieldLength) {
+                        compressedSize = le64(field, data);
+                    }
+                }
+                position += 4 + length;
+            }
+
+            boolean directory = name.endsWith("/");
+            writing = startEntry(name, directory, time) && !directory;
+            if (method == 8) {
+                inflater.reset();
+                state = DEFLATED;
+            } else if (method == 0) {
+                if ((flags & 8) != 0) {
+                    throw new IOException("Stored zip entries need their size in the local header");
+                }
+                remaining = compressedSize;
+                state = STORED;
+                if (remaining == 0L) {
+                    endData();
+                }
+            } else {
+                throw new IOException("Unsupported zip compression method " + method);
+            }
+        }
+
+        private int inflate(byte[] b, int off, int len) throws IOException {
+            inflater.setInput(b, off, len);
+            try {
+                while (!inflater.finished()) {
+                    int count = inflater.inflate(buf);
+                    if (count > 0) {
+                        if (writing) {
+                            writeEntry(buf, 0, count);
+                        }
+                    } else if (inflater.needsInput()) {
+                        break;
+                    } else if (inflater.needsDictionary()) {
+                        throw new IOException("Bad zip entry data");
+                    }
+                }
+            } catch (DataFormatException ex) {
+                throw new IOException("Bad zip entry data", ex);
+            }
+            int count = len - inflater.getRemaining();
+            if (inflater.finished()) {
+                endData();
+            }
+            return count;
+        }
+
+        private void endData() throws IOException {
+            if (writing) {
+                writing = false;
+                endEntry();
+            }
+            if ((flags & 8) != 0) {
+                next(DESCRIPTOR, 4);
+            } else {
+                next(SIGNATURE, 4);
+            }
+        }
+
+        private long dosTime(long dosTime) {
+            Calendar calendar = Calendar.getInstance();
+            calendar.clear();
+            calendar.set((int) ((dosTime >> 25) & 0x7F) + 1980, (int) ((dosTime >> 21) & 0x0F) - 1,
+                    (int) ((dosTime >> 16) & 0x1F), (int) ((dosTime >> 11) & 0x1F),
+                    (int) ((dosTime >> 5) & 0x3F), (int) ((dosTime << 1) & 0x3E));
+            return calendar.getTimeInMillis();
+        }
+    }
+
+    /**
+     * Inflates a gzip stream, made of one or more members, into another
+     * parser.
+     */
+    private static final class GzipParser extends Parser {
+
+        private static final int HEADER = 0;
+
+        private static final int EXTRA_LENGTH = 1;
+
+        private static final int EXTRA = 2;
+
+        private static final int NAME = 3;
+
+        private static final int COMMENT = 4;
+
+        private static final int HEADER_CRC = 5;
+
+        private static final int INFLATE = 6;
+
+        private static final int TRAILER = 7;
+
+        private static final int END = 8;
+
+        private final Parser parser;
+
+        private final Inflater inflater = new Inflater(true);
+
+        private final byte[] buf = new byte[BUFFER_SIZE];
+
+        private int flags;
+
+        private int members = 0;
+
+        GzipParser(Parser parser) throws IOException {
+            this.parser = parser;
+            next(HEADER, 10);
+        }
+
+        void update(byte[] b, int off, int len) throws IOException {
+            while (len > 0 && state != END) {
+                int count;
+                if (state == INFLATE) {
+                    count = inflate(b, off, len);
+                } else if (state == NAME || state == COMMENT) {
+                    // zero terminated
+                    int end = off;
+                    while (end < off + len && b[end] != 0) {
+                        end++;
+                    }
+                    if (end < off + len) {
+                        count = end - off + 1;
+                        nextHeaderPart(state + 1);
+                    } else {
+                        count = len;
+                    }
+                } else {
+                    count = fill(b, off, len);
+                }
+                off += count;
+                len -= count;
+            }
+        }
+
+        void finish() throws IOException {
+            inflater.end();
+            if (state != END && !(state == HEADER && members > 0)) {
+                throw new IOException("Truncated gzip stream");
+            }
+            parser.finish();
+        }
+
+        void field() throws IOException {
+            switch (state) {
+            case HEADER:
+                if ((field[0] & 0xFF) != 0x1F || (field[1] & 0xFF) != 0x8B || field[2] != 8) {
+                    if (members > 0) {
+                        // trailing garbage, ignored as gzip does
+                        state = END;
+                        return;
+                    }
+                    throw new IOException("Bad gzip header");
+                }
+                members++;
+                flags = field[3];
+                nextHeaderPart(EXTRA_LENGTH);
+                break;
+            case EXTRA_LENGTH:
+                next(EXTRA, le16(field, 0));
+                break;
+            case EXTRA:
+                nextHeaderPart(NAME);
+                break;
+            case HEADER_CRC:
+                nextHeaderPart(INFLATE);
+                break;
+            default:
+                // the trailer, the archive parser checks the data
+                next(HEADER, 10);
+                break;
+            }
+        }
+
+        /**
+         * Move to the first optional part of the header present from the
+         * given one on, or to the data.
+         */
+        private void nextHeaderPart(int from) throws IOException {
+            if (from <= EXTRA_LENGTH && (flags & 4) != 0) {
+                next(EXTRA_LENGTH, 2);
+            } else if (from <= NAME && (flags & 8) != 0) {
+                state = NAME;
+            } else if (from <= COMMENT && (flags & 16) != 0) {
+                state = COMMENT;
+            } else if (from <= HEADER_CRC && (flags & 2) != 0) {
+                next(HEADER_CRC, 2);
+            } else {
+                inflater.reset();
+                state = INFLATE;
+            }
+        }
+
+        private int inflate(byte[] b, int off, int len) throws IOException {
+            inflater.setInput(b, off, len);
+            try {
+                while (!inflater.finished()) {
+                    int count = inflater.inflate(buf);
+                    if (count > 0) {
+                        parser.update(buf, 0, count);
+                    } else if (inflater.needsInput()) {
+                        break;
+                    } else if (inflater.needsDictionary()) {
+                        throw new IOException("Bad gzip data");
+                    }
+                }
+            } catch (DataFormatException ex) {
+                throw new IOException("Bad gzip data", ex);
+            }
+            int count = len - inflater.getRemaining();
+            if (inflater.finished()) {
+                next(TRAILER, 8);
+            }
+            return count;
+        }
+    }
+}
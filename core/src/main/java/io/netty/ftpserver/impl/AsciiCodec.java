@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageCodec;
+
+import java.util.List;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Converts the line endings of an ASCII (TYPE A) data connection: the
+ * received data gets the local line endings and the sent data gets CRLF.
+ * It is added to the data pipeline for one transfer and is not sharable.
+ *
+ * @author Io Netty Project
+ */
+public class AsciiCodec extends MessageToMessageCodec<ByteBuf, ByteBuf> {
+
+    private final AsciiConverter encoder = AsciiConverter.toNetwork();
+
+    private final AsciiConverter decoder = AsciiConverter.toLocal();
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) {
+        out.add(convert(ctx, encoder, msg));
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) {
+        out.add(convert(ctx, decoder, msg));
+    }
+
+    private static ByteBuf convert(ChannelHandlerContext ctx, AsciiConverter converter, ByteBuf msg) {
+        ByteBuf converted = ctx.alloc().buffer(converter.maxConvertedLength(msg.readableBytes()));
+        converter.convert(msg, converted);
+        return converted;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ByteProcessor;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Converts the line endings of an ASCII (TYPE A) transfer, either from the
+ * local line endings to the CRLF of the network, or from the network to the
+ * local line endings. The line endings are found with
+ * {@link ByteBuf#forEachByte(int, int, ByteProcessor)} and the spans between
+ * them are copied in bulk.
+ *
+ * A converter keeps the last byte seen, so that a CRLF split between two
+ * buffers is still converted once. It is used by one transfer at a time.
+ *
+ * @author Io Netty Project
+ */
+public class AsciiConverter {
+
+    /**
+     * The local line separator
+     */
+    public static final byte[] LOCAL_EOL = System.getProperty("line.separator").getBytes();
+
+    private static final byte CR = '\r';
+
+    private static final byte LF = '\n';
+
+    private final boolean toNetwork;
+
+    private final byte[] eol;
+
+    private boolean lastCr = false;
+
+    private AsciiConverter(boolean toNetwork, byte[] eol) {
+        this.toNetwork = toNetwork;
+        this.eol = eol;
+    }
+
+    /**
+     * A converter from the local line endings to CRLF, for downloads. A LF
+     * not following a CR is preceded by a CR.
+     */
+    public static AsciiConverter toNetwork() {
+        return new AsciiConverter(true, null);
+    }
+
+    /**
+     * A converter from the network line endings to the local ones, for
+     * uploads. CRLF, a lone CR and a lone LF are all replaced, as some
+     * clients do not send CRLF.
+     */
+    public static AsciiConverter toLocal() {
+        return new AsciiConverter(false, LOCAL_EOL);
+    }
+
+    /**
+     * The most bytes the conversion of the given number of bytes can produce.
+     */
+    public int maxConvertedLength(int length) {
+        return toNetwork ? length * 2 : length * Math.max(1, eol.length);
+    }
+
+    /**
+     * Convert the readable bytes of the source into the destination, the
+     * source is then fully read.
+     */
+    public void convert(ByteBuf src, ByteBuf dst) {
+        int start = src.readerIndex();
+        int end = src.writerIndex();
+        if (toNetwork) {
+            toNetwork(src, start, end, dst);
+        } else {
+            toLocal(src, start, end, dst);
+        }
+        src.readerIndex(end);
+    }
+
+    private void toNetwork(ByteBuf src, int start, int end, ByteBuf dst) {
+        while (start < end) {
+            int lf = src.forEachByte(start, end - start, ByteProcessor.FIND_LF);
+            int spanEnd = lf == -1 ? end : lf;
+            if (spanEnd > start) {
+                dst.writeBytes(src, start, spanEnd - start);
+                lastCr = src.getByte(spanEnd - 1) == CR;
+            }
+            if (lf == -1) {
+                return;
+            }
+            if (!lastCr) {
+                dst.writeByte(CR);
+            }
+            dst.writeByte(LF);
+            lastCr = false;
+            start = lf + 1;
+        }
+    }
+
+    private void toLocal(ByteBuf src, int start, int end, ByteBuf dst) {
+        while (start < end) {
+            if (lastCr) {
+                // the LF of a CRLF, the line ending has been written
+                lastCr = false;
+                if (src.getByte(start) == LF) {
+                    start++;
+                    continue;
+                }
+            }
+            int eolIndex = src.forEachByte(start, end - start, ByteProcessor.FIND_CRLF);
+            int spanEnd = eolIndex == -1 ? end : eolIndex;
+            if (spanEnd > start) {
+                dst.writeBytes(src, start, spanEnd - start);
+            }
+            if (eolIndex == -1) {
+                return;
+            }
+            dst.writeBytes(eol);
+            lastCr = src.getByte(eolIndex) == CR;
+            start = eolIndex + 1;
+        }
+    }
+
+    /**
+     * Wrap a stream so that the bytes written to it are converted.
+     */
+    public OutputStream wrap(OutputStream out) {
+        return new ConvertingOutputStream(out);
+    }
+
+    /**
+     * Converts the written bytes through a reused heap buffer.
+     */
+    private final class ConvertingOutputStream extends FilterOutputStream {
+
+        private final ByteBuf converted = Unpooled.buffer();
+
+        ConvertingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            converted.clear();
+            converted.ensureWritable(maxConvertedLength(len));
+            convert(Unpooled.wrappedBuffer(b, off, len), converted);
+            out.write(converted.array(), converted.arrayOffset() + converted.readerIndex(),
+                    converted.readableBytes());
+        }
+    }
+}
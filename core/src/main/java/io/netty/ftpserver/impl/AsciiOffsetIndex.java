@@ -0,0 +1,359 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.impl;
+
+import io.netty.ftpserver.ftplet.FtpFile;
+import io.netty.ftpserver.util.IoUtils;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Maps the offsets of the ASCII (TYPE A) representation of the files, where
+ * each LF not following a CR is sent as CRLF, to the offsets in the files, so
+ * that a REST in ASCII mode seeks instead of reading the file from its start.
+ *
+ * Each file gets a sparse index of checkpoints, one every
+ * {@link #CHECKPOINT_INTERVAL} bytes of the file. The index is built lazily:
+ * the streams opened by {@link #openInputStream(FtpFile, long)} add the
+ * checkpoints they read past the end of the index, and a REST beyond the
+ * end first extends the index in bulk. A restart then seeks to the closest
+ * checkpoint, found by binary search, and reads at most one interval. Once
+ * the index covers the file, its streams no longer scan what they read.
+ *
+ * The indexes of the most recently used files are kept, keyed by the path of
+ * the physical file, and dropped once the size or the last modification time
+ * of the file changes or {@link #invalidate(FtpFile)} is called.
+ *
+ * @author Io Netty Project
+ */
+public class AsciiOffsetIndex {
+
+    /**
+     * The number of file bytes between two checkpoints
+     */
+    public static final int CHECKPOINT_INTERVAL = 256 * 1024;
+
+    /**
+     * The number of files for which the index is kept
+     */
+    private static final int MAX_FILES = 64;
+
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    private final Map<String, FileIndex> indexes = new LinkedHashMap<String, FileIndex>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FileIndex> eldest) {
+            return size() > MAX_FILES;
+        }
+    };
+
+    /**
+     * Open a stream on the file starting at the given offset of its ASCII
+     * representation. The stream adds to the index of the file as it is read.
+     *
+     * @param file The file to read
+     * @param networkOffset The offset in the ASCII representation
+     * @return The stream, positioned on the file byte of the offset
+     * @throws IOException If the file can not be read or is shorter than the
+     *             offset
+     */
+    public InputStream openInputStream(FtpFile file, long networkOffset) throws IOException {
+        FileIndex index = getIndex(file);
+        if (networkOffset > 0) {
+            index.extendTo(file, networkOffset);
+        }
+
+        Checkpoint start = index.floor(networkOffset);
+        IndexingInputStream in = new IndexingInputStream(new BufferedInputStream(
+                file.createInputStream(start.fileOffset)), index, start);
+        try {
+            in.skipTo(networkOffset);
+        } catch (IOException ex) {
+            IoUtils.close(in);
+            throw ex;
+        }
+        return in;
+    }
+
+    /**
+     * Drop the index of a file being written, renamed or deleted.
+     */
+    public void invalidate(FtpFile file) {
+        String key = IoUtils.getPhysicalPath(file);
+        if (key != null) {
+            synchronized (indexes) {
+                indexes.remove(key);
+            }
+        }
+    }
+
+    private FileIndex getIndex(FtpFile file) {
+        long size = file.getSize();
+        long lastModified = file.getLastModified();
+        String key = IoUtils.getPhysicalPath(file);
+        if (key == null) {
+            // no stable key, the index only serves this stream
+            return new FileIndex(size, lastModified);
+        }
+        synchronized (indexes) {
+            FileIndex index = indexes.get(key);
+            if (index == null || index.size != size || index.lastModified != lastModified) {
+                index = new FileIndex(size, lastModified);
+                indexes.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * A position in the file and in its ASCII representation. The byte
+     * before a checkpoint is never a CR, so that the next LF is always sent
+     * as CRLF.
+     */
+    private static final class Checkpoint {
+
+        private final long fileOffset;
+
+        private final long networkOffset;
+
+        Checkpoint(long fileOffset, long networkOffset) {
+            this.fileOffset = fileOffset;
+            this.networkOffset = networkOffset;
+        }
+    }
+
+    /**
+     * The checkpoints of one file, in increasing order of offset.
+     */
+    private static final class FileIndex {
+
+        private final long size;
+
+        private final long lastModified;
+
+        private long[] fileOffsets = new long[16];
+
+        private long[] networkOffsets = new long[16];
+
+        private int count = 1;
+
+        private final Object extendLock = new Object();
+
+        /**
+         * Set once the file has no byte after the last checkpoint at which
+         * a new one is expected, or its end was read
+         */
+        private volatile boolean complete;
+
+        FileIndex(long size, long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.complete = CHECKPOINT_INTERVAL >= size;
+        }
+
+        /**
+         * The last checkpoint at or before the network offset.
+         */
+        synchronized Checkpoint floor(long networkOffset) {
+            int i = Arrays.binarySearch(networkOffsets, 0, count, networkOffset);
+            if (i < 0) {
+                i = -i - 2;
+            }
+            return new Checkpoint(fileOffsets[i], networkOffsets[i]);
+        }
+
+        /**
+         * Add a checkpoint if it is at least one interval after the last one.
+         *
+         * @return The file offset from which the next checkpoint is expected
+         */
+        synchronized long offer(long fileOffset, long networkOffset) {
+            long last = fileOffsets[count - 1];
+            if (fileOffset >= last + CHECKPOINT_INTERVAL) {
+                if (count == fileOffsets.length) {
+                    fileOffsets = Arrays.copyOf(fileOffsets, count * 2);
+                    networkOffsets = Arrays.copyOf(networkOffsets, count * 2);
+                }
+                fileOffsets[count] = fileOffset;
+                networkOffsets[count] = networkOffset;
+                count++;
+                last = fileOffset;
+                if (last + CHECKPOINT_INTERVAL >= size) {
+                    complete = true;
+                }
+            }
+            return last + CHECKPOINT_INTERVAL;
+        }
+
+        /**
+         * Read the file in bulk from the last checkpoint until the index
+         * covers the network offset or the end of the file is reached. The
+         * index stays available to the other streams meanwhile.
+         */
+        void extendTo(FtpFile file, long networkOffset) throws IOException {
+            synchronized (extendLock) {
+                Checkpoint last;
+                synchronized (this) {
+                    last = new Checkpoint(fileOffsets[count - 1], networkOffsets[count - 1]);
+                }
+                if (complete || last.networkOffset + CHECKPOINT_INTERVAL > networkOffset) {
+                    return;
+                }
+                Scanner scanner = new Scanner(this, last);
+                InputStream in = file.createInputStream(scanner.fileOffset);
+                try {
+                    byte[] buff = new byte[SCAN_BUFFER_SIZE];
+                    while (scanner.networkOffset < networkOffset) {
+                        int len = in.read(buff);
+                        if (len == -1) {
+                            complete = true;
+                            break;
+                        }
+                        scanner.scan(buff, 0, len);
+                    }
+                } finally {
+                    IoUtils.close(in);
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts the network bytes of the file bytes read in sequence, offering
+     * the checkpoints to the index.
+     */
+    private static class Scanner {
+
+        private final FileIndex index;
+
+        long fileOffset;
+
+        long networkOffset;
+
+        private boolean lastCr = false;
+
+        private long nextCheckpoint;
+
+        Scanner(FileIndex index, Checkpoint start) {
+            this.index = index;
+            this.fileOffset = start.fileOffset;
+            this.networkOffset = start.networkOffset;
+            this.nextCheckpoint = start.fileOffset + CHECKPOINT_INTERVAL;
+        }
+
+        void scan(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                scan(b[i]);
+            }
+        }
+
+        void scan(byte c) {
+            if (fileOffset >= nextCheckpoint && !lastCr) {
+                nextCheckpoint = index.offer(fileOffset, networkOffset);
+            }
+            networkOffset += (c == '\n' && !lastCr) ? 2 : 1;
+            lastCr = c == '\r';
+            fileOffset++;
+        }
+    }
+
+    /**
+     * A stream of the file adding to its index as it is read, until the
+     * index covers the file.
+     */
+    private static final class IndexingInputStream extends FilterInputStream {
+
+        private final FileIndex index;
+
+        private final Scanner scanner;
+
+        private boolean scanning = true;
+
+        IndexingInputStream(InputStream in, FileIndex index, Checkpoint start) {
+            super(in);
+            this.index = index;
+            this.scanner = new Scanner(index, start);
+        }
+
+        /**
+         * Read up to the network offset, at most one interval after the
+         * checkpoint the stream starts at.
+         */
+        void skipTo(long networkOffset) throws IOException {
+            while (scanner.networkOffset < networkOffset) {
+                int c = in.read();
+                if (c == -1) {
+                    throw new IOException("Cannot skip");
+                }
+                scanner.scan((byte) c);
+            }
+            scanning = !index.complete;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = in.read();
+            if (c != -1 && scanning) {
+                scanner.scan((byte) c);
+                scanning = !index.complete;
+            }
+            return c;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = in.read(b, off, len);
+            if (count > 0 && scanning) {
+                scanner.scan(b, off, count);
+                scanning = !index.complete;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buff = new byte[(int) Math.min(n, SCAN_BUFFER_SIZE)];
+            long skipped = 0L;
+            while (skipped < n) {
+                int count = read(buff, 0, (int) Math.min(n - skipped, buff.length));
+                if (count == -1) {
+                    break;
+                }
+                skipped += count;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.impl;
+
+import io.netty.ftpserver.ftplet.DataConnection;
+import io.netty.util.concurrent.Future;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * A {@link DataConnection} whose transfers complete asynchronously. The
+ * returned futures hold the number of transferred bytes and fail with a
+ * {@link java.net.SocketException} when the data connection was lost or
+ * aborted, and with any other {@link java.io.IOException} when the local
+ * stream failed.
+ *
+ * @author Io Netty Project
+ */
+public interface AsyncDataConnection extends DataConnection {
+
+    /**
+     * Transfer data from the client (e.g. STOR) without blocking the caller.
+     * @param out
+     *            The {@link OutputStream} containing the destination of the
+     *            data from the client.
+     * @return The future of the length of the transferred data
+     */
+    Future<Long> transferFromClientAsync(OutputStream out);
+
+    /**
+     * Transfer data to the client (e.g. RETR) without blocking the caller.
+     * @param in
+     *            Data to be transfered to the client
+     * @return The future of the length of the transferred data
+     */
+    Future<Long> transferToClientAsync(InputStream in);
+
+    /**
+     * Transfer a file to the client (e.g. RETR in TYPE I) without blocking
+     * the caller. The file is sent without being copied through the user
+     * space when the data connection allows it.
+     * @param file
+     *            The file to be transfered to the client
+     * @param offset
+     *            The position in the file to start the transfer at
+     * @param count
+     *            The number of bytes to transfer, -1 for the rest of the file
+     * @return The future of the length of the transferred data
+     */
+    Future<Long> transferToClientAsync(File file, long offset, long count);
+
+    /**
+     * Transfer a string to the client (e.g. LIST) without blocking the caller.
+     * @param str
+     *            The string to transfer
+     * @return The future of the length of the transferred data
+     */
+    Future<Long> transferToClientAsync(String str);
+}
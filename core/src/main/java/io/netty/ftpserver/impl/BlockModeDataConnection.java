@@ -0,0 +1,627 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.ftpserver.impl;
+package io.netty.ftpserver.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.ftpserver.ftplet.DataType;
+import io.netty.ftpserver.ftplet.DefaultFtpReply;
+import io.netty.ftpserver.impl.BlockSource.Block;
+import io.netty.ftpserver.impl.BlockSource.FileBlocks;
+import io.netty.ftpserver.impl.BlockSource.StreamBlocks;
+import io.netty.ftpserver.listener.nio.channel.FtpChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * A data connection in block mode (MODE B), kept open across the transfers
+ * of the session. Every block starts with a header holding its descriptor
+ * and its length, and each transfer ends with an EOF block rather than with
+ * the closing of the connection, so that the following RETR, STOR or LIST
+ * goes on the same channel without a new PASV or PORT, TCP handshake and SSL
+ * handshake.
+ *
+ * The downloads of a file in TYPE I carry a restart marker every few
+ * megabytes, holding the position in the file to be given to REST. The
+ * restart markers of the uploads are acknowledged with a 110 reply mapping
+ * them to the position in the file.
+ *
+ * The data received between two uploads is held until the next one starts.
+ * The channel is closed once idle for the idle time of the data connections.
+ *
+ * @author Io Netty Project
+ */
+public class BlockModeDataConnection implements AsyncDataConnection {
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(BlockModeDataConnection.class);
+
+    /**
+     * The length of a block header: descriptor and byte count.
+     */
+    static final int HEADER_LENGTH = 3;
+
+    /**
+     * End of record.
+     */
+    static final int DESC_EOR = 128;
+
+    /**
+     * End of file, that is of the transfer.
+     */
+    static final int DESC_EOF = 64;
+
+    /**
+     * The data of the block is a restart marker.
+     */
+    static final int DESC_RESTART = 16;
+
+    private static final int BLOCK_SIZE = 65535;
+
+    /**
+     * The data sent between two restart markers.
+     */
+    private static final long MARKER_INTERVAL = 4 * 1024 * 1024;
+
+    private final Channel dataChannel;
+
+    private final FtpChannel channel;
+
+    private final BlockReceiver receiver = new BlockReceiver();
+
+    private volatile Promise<Long> transfer;
+
+    public BlockModeDataConnection(final Channel dataChannel, final FtpChannel channel) {
+        this.dataChannel = dataChannel;
+        this.channel = channel;
+
+        // the block handlers stay for the life of the channel, the data held
+        // since the connection was opened is replayed to them
+        final int idleTime = channel.getListener().getDataConnectionConfiguration().getIdleTime();
+        dataChannel.eventLoop().execute(new Runnable() {
+            public void run() {
+                ChannelPipeline pipeline = dataChannel.pipeline();
+                if (pipeline.get(NettyDataConnection.INBOUND_HOLDER) == null) {
+                    // already closed
+                    return;
+                }
+                if (idleTime > 0) {
+                    pipeline.addLast("idle", new IdleStateHandler(0, 0, idleTime));
+                }
+                pipeline.addLast("blockDecoder", new BlockDecoder());
+                pipeline.addLast("blockReceiver", receiver);
+                pipeline.remove(NettyDataConnection.INBOUND_HOLDER);
+                dataChannel.config().setAutoRead(true);
+            }
+        });
+    }
+
+    /**
+     * The underlying data channel.
+     */
+    public Channel getDataChannel() {
+        return dataChannel;
+    }
+
+    /**
+     * Tells whether the next transfer may go on this connection: the channel
+     * is still open and the last transfer completed.
+     */
+    boolean isReusable() {
+        Promise<Long> promise = transfer;
+        return dataChannel.isActive() && (promise == null || (promise.isDone() && promise.isSuccess()));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.impl.AsyncDataConnection#transferFromClientAsync(java.io.OutputStream)
+     */
+    public Future<Long> transferFromClientAsync(OutputStream out) {
+        final Promise<Long> promise = newTransfer();
+        if (channel.getDataType() == DataType.ASCII) {
+            out = AsciiConverter.toLocal().wrap(out);
+        }
+        final Upload upload = new Upload(out, promise);
+        dataChannel.eventLoop().execute(new Runnable() {
+            public void run() {
+                if (dataChannel.pipeline().get("blockDecoder") == null) {
+                    promise.tryFailure(new SocketException("Data connection closed"));
+                    return;
+                }
+                TrafficShapingHandler shaper = channel.getContext().getTrafficShaper()
+                        .newHandler(channel);
+                if (shaper != null) {
+                    dataChannel.pipeline().addBefore("blockDecoder", "rateLimiter", shaper);
+                }
+                receiver.start(upload);
+            }
+        });
+        return promise;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.impl.AsyncDataConnection#transferToClientAsync(java.io.InputStream)
+     */
+    public Future<Long> transferToClientAsync(InputStream in) {
+        AsciiConverter converter = channel.getDataType() == DataType.ASCII
+                ? AsciiConverter.toNetwork() : null;
+        return send(new StreamBlocks(in, converter, false, BLOCK_SIZE), -1L);
+    }
+
+    /**
+     * Sends the blocks of the file as {@link io.netty.channel.DefaultFileRegion}s
+     * when the data connection allows it, read with positional reads of the
+     * shared file channel otherwise. In ASCII, the file is read as a stream.
+     */
+    public Future<Long> transferToClientAsync(File file, long offset, long count) {
+        SharedFileChannels.Handle handle;
+        try {
+            handle = channel.getContext().getSharedFileChannels().acquire(file);
+        } catch (IOException ex) {
+            return dataChannel.eventLoop().newFailedFuture(ex);
+        }
+        long length = Math.max(0L, count < 0L ? handle.getLength() - offset
+                : Math.min(count, handle.getLength() - offset));
+
+        if (channel.getDataType() == DataType.ASCII) {
+            return send(new StreamBlocks(handle.newInputStream(offset, length),
+                    AsciiConverter.toNetwork(), true, BLOCK_SIZE), -1L);
+        }
+        return send(new FileBlocks(handle, offset, length, BLOCK_SIZE), offset);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.impl.AsyncDataConnection#transferToClientAsync(java.lang.String)
+     */
+    public Future<Long> transferToClientAsync(String str) {
+        InputStream in = new ByteArrayInputStream(str.getBytes(CharsetUtil.UTF_8));
+        return send(new StreamBlocks(in, null, false, BLOCK_SIZE), -1L);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.ftplet.DataConnection#transferFromClient(java.io.OutputStream)
+     */
+    public final long transferFromClient(final OutputStream out) throws IOException {
+        return NettyDataConnection.await(transferFromClientAsync(out));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.ftplet.DataConnection#transferToClient(java.io.InputStream)
+     */
+    public final long transferToClient(final InputStream in) throws IOException {
+        return NettyDataConnection.await(transferToClientAsync(in));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.ftplet.DataConnection#transferToClient(java.lang.String)
+     */
+    public final void transferToClient(final String str) throws IOException {
+        NettyDataConnection.await(transferToClientAsync(str));
+    }
+
+    /**
+     * The future of the last transfer started on this connection, null if none.
+     */
+    Future<Long> getTransferFuture() {
+        return transfer;
+    }
+
+    /**
+     * Fail the running transfer, if any, and close the data channel.
+     */
+    void abort() {
+        Promise<Long> promise = transfer;
+        if (promise != null) {
+            promise.tryFailure(new SocketException("Data connection closed"));
+        }
+        dataChannel.close();
+    }
+
+    private Promise<Long> newTransfer() {
+        Promise<Long> promise = dataChannel.eventLoop().newPromise();
+        transfer = promise;
+        return promise;
+    }
+
+    /**
+     * Send the blocks of the source followed by an EOF block.
+     *
+     * @param markerBase
+     *            the position in the file of the first byte, -1 to send no
+     *            restart markers
+     */
+    private Future<Long> send(final BlockSource source, final long markerBase) {
+        final Promise<Long> promise = newTransfer();
+
+        // after the block handlers are added by the constructor
+        dataChannel.eventLoop().execute(new Runnable() {
+            public void run() {
+                ChannelPipeline pipeline = dataChannel.pipeline();
+                if (pipeline.get("blockDecoder") == null) {
+                    source.close();
+                    promise.tryFailure(new SocketException("Data connection closed"));
+                    return;
+                }
+                TrafficShapingHandler shaper = channel.getContext().getTrafficShaper()
+                        .newHandler(channel);
+                if (shaper != null) {
+                    pipeline.addBefore("blockDecoder", "rateLimiter", shaper);
+                }
+                boolean regions = pipeline.get(SslHandler.class) == null
+                        && (shaper == null || !shaper.isWriteLimited());
+                new Download(source, promise, regions, markerBase).sendNext();
+            }
+        });
+        return promise;
+    }
+
+    private static ByteBuf header(ByteBufAllocator alloc, int descriptor, int count) {
+        return alloc.buffer(HEADER_LENGTH).writeByte(descriptor).writeShort(count);
+    }
+
+    /**
+     * Complete the transfer, leaving the channel open for the next one.
+     */
+    private void finish(final Promise<Long> promise, final long transferredSize) {
+        dataChannel.eventLoop().execute(new Runnable() {
+            public void run() {
+                if (dataChannel.pipeline().get("rateLimiter") != null) {
+                    dataChannel.pipeline().remove("rateLimiter");
+                }
+                promise.trySuccess(transferredSize);
+            }
+        });
+    }
+
+    /**
+     * Fail the transfer and close the data channel, which can no longer be
+     * reused as the client cannot tell where the transfer stopped.
+     */
+    private void failed(Promise<Long> promise, Throwable cause) {
+        LOG.warn("Exception during data transfer, closing data connection channel", cause);
+        promise.tryFailure(NettyDataConnection.toSocketException(cause));
+        dataChannel.close();
+    }
+
+    private void localFailed(Promise<Long> promise, IOException cause) {
+        LOG.warn("Exception during data transfer, closing data connection channel", cause);
+        promise.tryFailure(cause);
+        dataChannel.close();
+    }
+
+    /**
+     * Notify connection manager observer.
+     */
+    protected void notifyObserver() {
+        channel.updateLastAccessTime();
+    }
+
+    /**
+     * Sends the blocks of a download one after the other, each once the
+     * previous one is written.
+     */
+    private final class Download {
+
+        private final BlockSource source;
+
+        private final Promise<Long> promise;
+
+        private final boolean regions;
+
+        private final long markerBase;
+
+        private long transferredSize = 0L;
+
+        private long lastMarker = 0L;
+
+        Download(BlockSource source, Promise<Long> promise, boolean regions, long markerBase) {
+            this.source = source;
+            this.promise = promise;
+            this.regions = regions;
+            this.markerBase = markerBase;
+        }
+
+        void sendNext() {
+            if (promise.isDone()) {
+                source.close();
+                return;
+            }
+            final Block block;
+            try {
+                block = source.next(dataChannel.alloc(), regions);
+            } catch (IOException ex) {
+                source.close();
+                localFailed(promise, ex);
+                return;
+            }
+            if (block == null) {
+                source.close();
+                sendEof();
+                return;
+            }
+
+            if (markerBase >= 0L && transferredSize - lastMarker >= MARKER_INTERVAL) {
+                lastMarker = transferredSize;
+                ByteBuf marker = dataChannel.alloc().buffer();
+                marker.writeCharSequence(String.valueOf(markerBase + transferredSize), CharsetUtil.US_ASCII);
+                dataChannel.write(header(dataChannel.alloc(), DESC_RESTART, marker.readableBytes()));
+                dataChannel.write(marker);
+            }
+            dataChannel.write(header(dataChannel.alloc(), 0, block.length));
+            dataChannel.writeAndFlush(block.payload).addListener(new ChannelFutureListener() {
+                public void operationComplete(ChannelFuture future) {
+                    if (!future.isSuccess()) {
+                        source.close();
+                        failed(promise, future.cause());
+                        return;
+                    }
+
+                    // update session
+                    channel.increaseWrittenDataBytes(block.length);
+                    transferredSize += block.length;
+                    notifyObserver();
+                    sendNext();
+                }
+            });
+        }
+
+        private void sendEof() {
+            dataChannel.writeAndFlush(header(dataChannel.alloc(), DESC_EOF, 0))
+                    .addListener(new ChannelFutureListener() {
+                        public void operationComplete(ChannelFuture future) {
+                            if (future.isSuccess()) {
+                                finish(promise, transferredSize);
+                            } else {
+                                failed(promise, future.cause());
+                            }
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Writes the data of an upload into the local stream until the EOF block.
+     */
+    private final class Upload {
+
+        private final OutputStream out;
+
+        private final Promise<Long> promise;
+
+        private long transferredSize = 0L;
+
+        Upload(OutputStream out, Promise<Long> promise) {
+            this.out = out;
+            this.promise = promise;
+        }
+
+        /**
+         * Handle a decoded message.
+         *
+         * @return true once the EOF block is received
+         */
+        boolean received(Object msg) {
+            if (msg instanceof ByteBuf) {
+                ByteBuf buf = (ByteBuf) msg;
+                try {
+                    if (promise.isDone()) {
+                        return false;
+                    }
+                    int count = buf.readableBytes();
+
+                    // update session
+                    channel.increaseReadDataBytes(count);
+                    NettyDataConnection.writeBinary(buf, out);
+                    transferredSize += count;
+                    notifyObserver();
+                } catch (IOException ex) {
+                    localFailed(promise, ex);
+                } finally {
+                    ReferenceCountUtil.release(buf);
+                }
+                return false;
+            }
+            if (msg instanceof String) {
+                // acknowledge the restart marker with the position it maps to
+                channel.writeAndFlush(new DefaultFtpReply(110,
+                        "MARK " + msg + " = " + getPosition()));
+                return false;
+            }
+            finish(promise, transferredSize);
+            return true;
+        }
+
+        private long getPosition() {
+            if (out instanceof FileOutputStream) {
+                try {
+                    return ((FileOutputStream) out).getChannel().position();
+                } catch (IOException ex) {
+                    // fall back to the transferred size
+                }
+            }
+            return transferredSize;
+        }
+    }
+
+    /**
+     * Splits the received data into the data of the blocks, passed on as it
+     * arrives, the restart markers as strings, and the EOF descriptors.
+     */
+    private static final class BlockDecoder extends ByteToMessageDecoder {
+
+        private int descriptor;
+
+        private int remaining = 0;
+
+        @Override
+        protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+            for (;;) {
+                if (remaining == 0) {
+                    if (in.readableBytes() < HEADER_LENGTH) {
+                        return;
+                    }
+                    int headerIndex = in.readerIndex();
+                    descriptor = in.getUnsignedByte(headerIndex);
+                    int count = in.getUnsignedShort(headerIndex + 1);
+                    if ((descriptor & DESC_RESTART) != 0) {
+                        // a marker is passed on whole
+                        if (in.readableBytes() < HEADER_LENGTH + count) {
+                            return;
+                        }
+                        in.skipBytes(HEADER_LENGTH);
+                        out.add(in.readCharSequence(count, CharsetUtil.US_ASCII).toString());
+                        continue;
+                    }
+                    in.skipBytes(HEADER_LENGTH);
+                    if (count == 0) {
+                        if ((descriptor & DESC_EOF) != 0) {
+                            out.add(Integer.valueOf(descriptor));
+                        }
+                        continue;
+                    }
+                    remaining = count;
+                }
+                if (!in.isReadable()) {
+                    return;
+                }
+                int length = Math.min(remaining, in.readableBytes());
+                out.add(in.readRetainedSlice(length));
+                remaining -= length;
+                if (remaining == 0 && (descriptor & DESC_EOF) != 0) {
+                    out.add(Integer.valueOf(descriptor));
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands the decoded messages over to the running upload, holding them
+     * while no upload runs, and closes the channel once idle.
+     */
+    private final class BlockReceiver extends ChannelInboundHandlerAdapter {
+
+        private final ArrayDeque<Object> held = new ArrayDeque<Object>();
+
+        private Upload upload;
+
+        void start(Upload upload) {
+            this.upload = upload;
+            Object msg;
+            while (this.upload != null && (msg = held.pollFirst()) != null) {
+                deliver(msg);
+            }
+            ReadSuspension.resume(dataChannel, ReadSuspension.RECEIVER);
+        }
+
+        private void deliver(Object msg) {
+            if (upload.received(msg)) {
+                upload = null;
+            }
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if (upload == null) {
+                // the data of the next upload, read again once it starts
+                held.addLast(msg);
+                ReadSuspension.suspend(ctx.channel(), ReadSuspension.RECEIVER);
+                return;
+            }
+            deliver(msg);
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt instanceof IdleStateEvent && ((IdleStateEvent) evt).state() == IdleState.ALL_IDLE) {
+                Promise<Long> promise = transfer;
+                if (upload != null) {
+                    failed(upload.promise, new SocketTimeoutException("Data connection idle"));
+                } else if (promise == null || promise.isDone()) {
+                    LOG.debug("Closing idle block mode data connection {}", ctx.channel());
+                    ctx.close();
+                }
+                return;
+            }
+            super.userEventTriggered(ctx, evt);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            if (upload != null) {
+                upload.promise.tryFailure(new SocketException("Data connection closed before the end of data"));
+                upload = null;
+            }
+            for (Object msg : held) {
+                ReferenceCountUtil.release(msg);
+            }
+            held.clear();
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            Promise<Long> promise = upload != null ? upload.promise : transfer;
+            if (promise != null) {
+                failed(promise, cause);
+            } else {
+                ctx.close();
+            }
+        }
+    }
+}
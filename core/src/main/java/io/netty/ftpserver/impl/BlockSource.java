@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.ftpserver.impl;
+package io.netty.ftpserver.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * The data of a download in the block modes, split in blocks of at most the
+ * given size.
+ *
+ * @author Io Netty Project
+ */
+interface BlockSource {
+
+    /**
+     * The next block, null once all the data has been taken.
+     * @param regions true if the block may be a file region
+     */
+    Block next(ByteBufAllocator alloc, boolean regions) throws IOException;
+
+    void close();
+
+    /**
+     * A block of data, or a descriptor without data.
+     */
+    final class Block {
+
+        final int descriptor;
+
+        final long offset;
+
+        final int length;
+
+        final Object payload;
+
+        Block(int descriptor, long offset, int length, Object payload) {
+            this.descriptor = descriptor;
+            this.offset = offset;
+            this.length = length;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * The blocks of a file, which may be taken in any order by several
+     * channels, read with positional reads.
+     */
+    final class FileBlocks implements BlockSource {
+
+        private final SharedFileChannels.Handle handle;
+
+        private final int blockSize;
+
+        private final long start;
+
+        private final long end;
+
+        private final AtomicLong position;
+
+        FileBlocks(SharedFileChannels.Handle handle, long offset, long length, int blockSize) {
+            this.handle = handle;
+            this.blockSize = blockSize;
+            this.start = offset;
+            this.end = offset + length;
+            this.position = new AtomicLong(offset);
+        }
+
+        public Block next(ByteBufAllocator alloc, boolean regions) throws IOException {
+            for (;;) {
+                long pos = position.get();
+                if (pos >= end) {
+                    return null;
+                }
+                int length = (int) Math.min(blockSize, end - pos);
+                if (!position.compareAndSet(pos, pos + length)) {
+                    continue;
+                }
+                if (regions) {
+                    // the region releases its own reference once written
+                    return new Block(0, pos - start, length, handle.retain().newRegion(pos, length));
+                }
+                ByteBuf buf = alloc.buffer(length);
+                try {
+                    while (buf.writerIndex() < length) {
+                        int read = buf.writeBytes(handle.getChannel(), pos + buf.writerIndex(),
+                                length - buf.writerIndex());
+                        if (read == -1) {
+                            throw new EOFException("File truncated during the transfer");
+                        }
+                    }
+                } catch (IOException ex) {
+                    buf.release();
+                    throw ex;
+                }
+                return new Block(0, pos - start, length, buf);
+            }
+        }
+
+        public void close() {
+            handle.release();
+        }
+    }
+
+    /**
+     * The blocks of a stream, read in turn, with the line endings converted
+     * when a converter is given.
+     */
+    final class StreamBlocks implements BlockSource {
+
+        private final InputStream in;
+
+        private final AsciiConverter converter;
+
+        private final boolean owned;
+
+        private final byte[] buff;
+
+        private long offset = 0L;
+
+        /**
+         * @param owned true if the stream is closed with the source
+         */
+        StreamBlocks(InputStream in, AsciiConverter converter, boolean owned, int blockSize) {
+            this.in = in;
+            this.converter = converter;
+            this.owned = owned;
+            // leave room for the converted line endings
+            this.buff = new byte[converter == null ? blockSize : blockSize / 2];
+        }
+
+        public synchronized Block next(ByteBufAllocator alloc, boolean regions) throws IOException {
+            for (;;) {
+                int count = in.read(buff);
+                if (count == -1) {
+                    return null;
+                }
+                ByteBuf buf;
+                if (converter == null) {
+                    buf = alloc.buffer(count).writeBytes(buff, 0, count);
+                } else {
+                    buf = alloc.buffer(converter.maxConvertedLength(count));
+                    converter.convert(Unpooled.wrappedBuffer(buff, 0, count), buf);
+                }
+                int length = buf.readableBytes();
+                if (length == 0) {
+                    buf.release();
+                    continue;
+                }
+                Block block = new Block(0, offset, length, buf);
+                offset += length;
+                return block;
+            }
+        }
+
+        public void close() {
+            if (owned) {
+                try {
+                    in.close();
+                } catch (IOException ex) {
+                    // ignore
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,532 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.ftpserver.impl;
+
+import io.netty.ftpserver.ftplet.FtpFile;
+import io.netty.ftpserver.util.IoUtils;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Keeps the checksums of the most recently transferred or hashed files, keyed
+ * by the path of the physical file. A checksum is only returned while the
+ * size and the last modification time of the file are those it was computed
+ * for.
+ *
+ * The missing checksums are computed on a pool of background threads, the
+ * checksums of many files, as asked by MMD5, being computed in parallel, and
+ * a checksum being computed once however many sessions ask for it.
+ *
+ * When a store file is configured, each change is appended to it as a line
+ * and the file is read back on start, so that the checksums survive restarts.
+ * The file is rewritten with the current checksums only on start and once it
+ * holds many more lines than checksums. The lines are written in batches by a
+ * task of the background pool, the callers, among them the data event loops
+ * completing the transfers, only updating the checksums in memory.
+ *
+ * @author Io Netty Project
+ */
+public class ChecksumStore {
+
+    private final Logger LOG = LoggerFactory.getLogger(ChecksumStore.class);
+
+    /**
+     * The number of files for which the checksums are kept
+     */
+    private static final int MAX_FILES = 1024;
+
+    /**
+     * The number of lines appended to the store file before it is rewritten
+     */
+    private static final int MAX_APPENDED = 8 * MAX_FILES;
+
+    /**
+     * The algorithm of the lines dropping the checksums of a file
+     */
+    private static final String REMOVED = "-";
+
+    private static final String ENCODING = "UTF-8";
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_FILES;
+        }
+    };
+
+    /**
+     * The computations in progress, by algorithm and path
+     */
+    private final Map<String, Future<String>> computing = new HashMap<String, Future<String>>();
+
+    private final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+            ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+
+    private final File storeFile;
+
+    /**
+     * The lines not yet appended to the store file, guarded by the lock of
+     * the entries as is the flag of the task writing them.
+     */
+    private List<String> pendingLines = new ArrayList<String>();
+
+    private boolean flushing;
+
+    private final Runnable flushTask = new Runnable() {
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Used by the task writing the lines only, one at a time
+     */
+    private Writer writer;
+
+    private int appended;
+
+    /**
+     * @param storeFile The file the checksums are kept in across restarts,
+     *            null to keep them in memory only
+     */
+    public ChecksumStore(File storeFile) {
+        this.storeFile = storeFile;
+        if (storeFile != null) {
+            load();
+            rewrite(snapshot());
+        }
+    }
+
+    /**
+     * Get a checksum of the file.
+     *
+     * @param file The file
+     * @param algorithm The checksum algorithm
+     * @return The checksum, null if it is not known for the current content
+     */
+    public String get(FtpFile file, String algorithm) {
+        String key = IoUtils.getPhysicalPath(file);
+        if (key == null) {
+            return null;
+        }
+        long size = file.getSize();
+        long lastModified = file.getLastModified();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.size != size || entry.lastModified != lastModified) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.values.get(algorithm);
+        }
+    }
+
+    /**
+     * Get a checksum of the file, reading the whole file on a background
+     * thread when it is not known.
+     *
+     * @param file The file
+     * @param algorithm The checksum algorithm, supported by {@link TransferChecksum}
+     * @return The future checksum, failed if the file can not be read
+     */
+    public Future<String> compute(final FtpFile file, final String algorithm) {
+        String value = get(file, algorithm);
+        if (value != null) {
+            return ImmediateEventExecutor.INSTANCE.newSucceededFuture(value);
+        }
+        String key = IoUtils.getPhysicalPath(file);
+        final String computingKey = key == null ? null : algorithm + ' ' + key;
+        final Promise<String> promise;
+        synchronized (computing) {
+            if (computingKey != null) {
+                Future<String> pending = computing.get(computingKey);
+                if (pending != null) {
+                    return pending;
+                }
+            }
+            promise = ImmediateEventExecutor.INSTANCE.newPromise();
+            if (computingKey != null) {
+                computing.put(computingKey, promise);
+            }
+        }
+
+        pool.execute(new Runnable() {
+            public void run() {
+                long size = file.getSize();
+                long lastModified = file.getLastModified();
+                InputStream is = null;
+                try {
+                    is = file.createInputStream(0);
+                    String value = TransferChecksum.compute(is, algorithm);
+                    Map<String, String> values = new HashMap<String, String>();
+                    values.put(algorithm, value);
+                    put(file, size, lastModified, values);
+                    promise.trySuccess(value);
+                } catch (Throwable t) {
+                    promise.tryFailure(t);
+                } finally {
+                    IoUtils.close(is);
+                    if (computingKey != null) {
+                        synchronized (computing) {
+                            computing.remove(computingKey);
+                        }
+                    }
+                }
+            }
+        });
+        return promise;
+    }
+
+    /**
+     * Store the checksums of the whole content of the file.
+     */
+    public void put(FtpFile file, TransferChecksum checksum) {
+        put(file, file.getSize(), file.getLastModified(), checksum.getValues());
+    }
+
+    private void put(FtpFile file, long size, long lastModified, Map<String, String> values) {
+        String key = IoUtils.getPhysicalPath(file);
+        if (key == null) {
+            return;
+        }
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null || entry.size != size || entry.lastModified != lastModified) {
+                entry = new Entry(size, lastModified);
+                entries.put(key, entry);
+            }
+            entry.values.putAll(values);
+            for (Map.Entry<String, String> value : values.entrySet()) {
+                append(value.getKey(), key, entry, value.getValue());
+            }
+        }
+    }
+
+    /**
+     * Drop the checksums of a file being written or deleted.
+     */
+    public void invalidate(FtpFile file) {
+        String key = IoUtils.getPhysicalPath(file);
+        if (key != null) {
+            synchronized (entries) {
+                if (entries.remove(key) != null) {
+                    append(REMOVED, key, null, null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Move the checksums of a renamed file, the content is unchanged.
+     */
+    public void renamed(FtpFile from, FtpFile to) {
+        String fromKey = IoUtils.getPhysicalPath(from);
+        String toKey = IoUtils.getPhysicalPath(to);
+        if (fromKey == null || toKey == null) {
+            invalidate(from);
+            invalidate(to);
+            return;
+        }
+        synchronized (entries) {
+            Entry entry = entries.remove(fromKey);
+            if (entry != null) {
+                append(REMOVED, fromKey, null, null);
+                entries.put(toKey, entry);
+                for (Map.Entry<String, String> value : entry.values.entrySet()) {
+                    append(value.getKey(), toKey, entry, value.getValue());
+                }
+            } else if (entries.remove(toKey) != null) {
+                append(REMOVED, toKey, null, null);
+            }
+        }
+    }
+
+    /**
+     * Give a copy the checksums of its source, when it has the size and the
+     * last modification time of the source.
+     */
+    public void copied(FtpFile from, FtpFile to) {
+        invalidate(to);
+        String fromKey = IoUtils.getPhysicalPath(from);
+        if (fromKey == null) {
+            return;
+        }
+        long size = from.getSize();
+        long lastModified = from.getLastModified();
+        Map<String, String> values;
+        synchronized (entries) {
+            Entry entry = entries.get(fromKey);
+            if (entry == null || entry.size != size || entry.lastModified != lastModified) {
+                return;
+            }
+            values = new HashMap<String, String>(entry.values);
+        }
+        if (to.getSize() == size && to.getLastModified() == lastModified) {
+            put(to, size, lastModified, values);
+        }
+    }
+
+    /**
+     * Stop the background threads, write the pending lines and close the
+     * store file.
+     */
+    public void dispose() {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        boolean idle;
+        synchronized (entries) {
+            idle = !flushing;
+            flushing = true;
+        }
+        if (!idle) {
+            // a task still writing after the timeout keeps the file open
+            return;
+        }
+        flush();
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ex) {
+                LOG.warn("Failed to close the checksum store " + storeFile, ex);
+            }
+            writer = null;
+        }
+    }
+
+    /**
+     * Read the store file, the later lines overriding the earlier ones.
+     */
+    private void load() {
+        if (!storeFile.isFile()) {
+            return;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(storeFile), ENCODING));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // <algorithm> TAB <size> TAB <modified> TAB <checksum> TAB <path>
+                String[] fields = line.split("\t", 5);
+                if (fields.length != 5) {
+                    continue;
+                }
+                String key = fields[4];
+                if (REMOVED.equals(fields[0])) {
+                    entries.remove(key);
+                    continue;
+                }
+                try {
+                    long size = Long.parseLong(fields[1]);
+                    long lastModified = Long.parseLong(fields[2]);
+                    Entry entry = entries.get(key);
+                    if (entry == null || entry.size != size || entry.lastModified != lastModified) {
+                        entry = new Entry(size, lastModified);
+                        entries.put(key, entry);
+                    }
+                    entry.values.put(fields[0], fields[3]);
+                } catch (NumberFormatException ex) {
+                    // a line cut short by a crash
+                }
+            }
+        } catch (IOException ex) {
+            LOG.warn("Failed to read the checksum store " + storeFile, ex);
+        } finally {
+            IoUtils.close(reader);
+        }
+    }
+
+    /**
+     * The lines of the current checksums. Called with the lock held, or
+     * from the constructor.
+     */
+    private List<String> snapshot() {
+        List<String> lines = new ArrayList<String>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            for (Map.Entry<String, String> value : entry.getValue().values.entrySet()) {
+                String line = line(value.getKey(), entry.getKey(), entry.getValue(), value.getValue());
+                if (line != null) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Replace the store file with the lines and keep it open for appending.
+     * Called by the task writing the lines, or from the constructor.
+     */
+    private void rewrite(List<String> lines) {
+        try {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+            File tmpFile = new File(storeFile.getPath() + ".tmp");
+            Writer out = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(tmpFile), ENCODING));
+            try {
+                for (String line : lines) {
+                    out.write(line);
+                }
+            } finally {
+                out.close();
+            }
+            if (!tmpFile.renameTo(storeFile)) {
+                // renameTo does not replace an existing file everywhere
+                if (!storeFile.delete() || !tmpFile.renameTo(storeFile)) {
+                    throw new IOException("Failed to replace " + storeFile);
+                }
+            }
+            writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(storeFile, true), ENCODING));
+            appended = 0;
+        } catch (IOException ex) {
+            LOG.warn("Failed to write the checksum store " + storeFile
+                    + ", the checksums are kept in memory only", ex);
+            writer = null;
+        }
+    }
+
+    /**
+     * Queue a line for the store file and start the task writing it if it
+     * is not running. Called with the lock held.
+     */
+    private void append(String algorithm, String key, Entry entry, String value) {
+        if (storeFile == null) {
+            return;
+        }
+        String line = line(algorithm, key, entry, value);
+        if (line == null) {
+            return;
+        }
+        pendingLines.add(line);
+        if (!flushing) {
+            flushing = true;
+            try {
+                pool.execute(flushTask);
+            } catch (RejectedExecutionException ex) {
+                // disposed, the store file is closed
+                flushing = false;
+                pendingLines.clear();
+            }
+        }
+    }
+
+    /**
+     * Write the queued lines until none is left, rewriting the store file
+     * instead once it holds too many lines.
+     */
+    private void flush() {
+        for (;;) {
+            List<String> lines;
+            List<String> snapshot = null;
+            synchronized (entries) {
+                lines = pendingLines;
+                if (lines.isEmpty()) {
+                    flushing = false;
+                    return;
+                }
+                pendingLines = new ArrayList<String>();
+                if (appended + lines.size() > MAX_APPENDED) {
+                    // the current checksums include the queued changes
+                    snapshot = snapshot();
+                }
+            }
+            if (snapshot != null) {
+                rewrite(snapshot);
+            } else if (writer != null) {
+                try {
+                    for (String line : lines) {
+                        writer.write(line);
+                    }
+                    writer.flush();
+                } catch (IOException ex) {
+                    LOG.warn("Failed to append to the checksum store " + storeFile, ex);
+                }
+                appended += lines.size();
+            }
+        }
+    }
+
+    /**
+     * A line of the store file, null if the path can not be read back.
+     */
+    private static String line(String algorithm, String key, Entry entry, String value) {
+        if (key.indexOf('\n') != -1 || key.indexOf('\r') != -1) {
+            // can not be read back as a line
+            return null;
+        }
+        StringBuilder line = new StringBuilder(64 + key.length());
+        line.append(algorithm).append('\t')
+                .append(entry == null ? 0L : entry.size).append('\t')
+                .append(entry == null ? 0L : entry.lastModified).append('\t')
+                .append(value == null ? REMOVED : value).append('\t')
+                .append(key).append('\n');
+        return line.toString();
+    }
+
+    private static final class Entry {
+
+        private final long size;
+
+        private final long lastModified;
+
+        private final Map<String, String> values = new HashMap<String, String>();
+
+        Entry(long size, long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -21,6 +21,7 @@ package io.netty.ftpserver.impl;
 
 import io.netty.ftpserver.ConnectionConfig;
 import io.netty.ftpserver.ConnectionConfigFactory;
+import io.netty.ftpserver.TransferRejectionPolicy;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
@@ -42,8 +43,26 @@ public class DefaultConnectionConfig implements ConnectionConfig {
     
     private final int maxThreads;
 
+    private final int maxQueuedTasks;
+
+    private final TransferRejectionPolicy transferRejectionPolicy;
+
+    private final boolean virtualThreadsEnabled;
+
+    private final int maxUploadRate;
+
+    private final int maxDownloadRate;
+
+    private final int maxUploadRatePerIp;
+
+    private final int maxDownloadRatePerIp;
+
+    private final String[] checksumAlgorithms;
+
+    private final String checksumStoreFile;
+
     public DefaultConnectionConfig() {
-        this(true, 500, 10, 10, 3, 0);
+        this(true, 500, 10, 10, 3, 0, 0, TransferRejectionPolicy.ABORT, false, 0, 0, 0, 0, new String[0], null);
     }
 
     /**
@@ -51,13 +70,27 @@ public class DefaultConnectionConfig implements ConnectionConfig {
      */
     public DefaultConnectionConfig(boolean anonymousLoginEnabled,
                                    int loginFailureDelay, int maxLogins, int maxAnonymousLogins,
-                                   int maxLoginFailures, int maxThreads) {
+                                   int maxLoginFailures, int maxThreads, int maxQueuedTasks,
+                                   TransferRejectionPolicy transferRejectionPolicy,
+                                   boolean virtualThreadsEnabled,
+                                   int maxUploadRate, int maxDownloadRate,
+                                   int maxUploadRatePerIp, int maxDownloadRatePerIp,
+                                   String[] checksumAlgorithms, String checksumStoreFile) {
         this.anonymousLoginEnabled = anonymousLoginEnabled;
         this.loginFailureDelay = loginFailureDelay;
         this.maxLogins = maxLogins;
         this.maxAnonymousLogins = maxAnonymousLogins;
         this.maxLoginFailures = maxLoginFailures;
         this.maxThreads = maxThreads;
+        this.maxQueuedTasks = maxQueuedTasks;
+        this.transferRejectionPolicy = transferRejectionPolicy;
+        this.virtualThreadsEnabled = virtualThreadsEnabled;
+        this.maxUploadRate = maxUploadRate;
+        this.maxDownloadRate = maxDownloadRate;
+        this.maxUploadRatePerIp = maxUploadRatePerIp;
+        this.maxDownloadRatePerIp = maxDownloadRatePerIp;
+        this.checksumAlgorithms = checksumAlgorithms.clone();
+        this.checksumStoreFile = checksumStoreFile;
     }
 
     public int getLoginFailureDelay() {
@@ -83,5 +116,41 @@ public class DefaultConnectionConfig implements ConnectionConfig {
     public int getMaxThreads() {
         return maxThreads;
     }
+
+    public int getMaxQueuedTasks() {
+        return maxQueuedTasks;
+    }
+
+    public TransferRejectionPolicy getTransferRejectionPolicy() {
+        return transferRejectionPolicy;
+    }
+
+    public boolean isVirtualThreadsEnabled() {
+        return virtualThreadsEnabled;
+    }
+
+    public int getMaxUploadRate() {
+        return maxUploadRate;
+    }
+
+    public int getMaxDownloadRate() {
+        return maxDownloadRate;
+    }
+
+    public int getMaxUploadRatePerIp() {
+        return maxUploadRatePerIp;
+    }
+
+    public int getMaxDownloadRatePerIp() {
+        return maxDownloadRatePerIp;
+    }
+
+    public String[] getChecksumAlgorithms() {
+        return checksumAlgorithms.clone();
+    }
+
+    public String getChecksumStoreFile() {
+        return checksumStoreFile;
+    }
     
 }
@@ -46,9 +46,14 @@ public class DefaultDataConnectionConfiguration implements
     private final String passiveExternalAddress;
     private final PassivePorts passivePorts;
     private final boolean passiveIpCheck;
+    private final boolean passiveShared;
     
     private final boolean implicitSsl;
 
+    private final int maxUploadRate;
+
+    private final int maxDownloadRate;
+
     /**
 	 * Internal constructor, do not use directly. Use
 	 * {@link DataConnectionConfigurationFactory} instead.
@@ -57,7 +62,8 @@ public class DefaultDataConnectionConfiguration implements
                                               SslConfiguration ssl, boolean activeEnabled, boolean activeIpCheck,
                                               String activeLocalAddress, int activeLocalPort, String passiveAddress,
                                               PassivePorts passivePorts, String passiveExternalAddress,
-                                              boolean passiveIpCheck, boolean implicitSsl) {
+                                              boolean passiveIpCheck, boolean passiveShared, boolean implicitSsl,
+                                              int maxUploadRate, int maxDownloadRate) {
 		this.idleTime = idleTime;
 		this.ssl = ssl;
 		this.activeEnabled = activeEnabled;
@@ -68,7 +74,10 @@ public class DefaultDataConnectionConfiguration implements
 		this.passivePorts = passivePorts;
 		this.passiveExternalAddress = passiveExternalAddress;
 		this.passiveIpCheck = passiveIpCheck;
+		this.passiveShared = passiveShared;
 		this.implicitSsl = implicitSsl;
+		this.maxUploadRate = maxUploadRate;
+		this.maxDownloadRate = maxDownloadRate;
 	}
 
     /**
@@ -78,6 +87,20 @@ public class DefaultDataConnectionConfiguration implements
         return idleTime;
     }
 
+    /**
+     * @see io.netty.ftpserver.DataConnectionConfiguration#getMaxUploadRate()
+     */
+    public int getMaxUploadRate() {
+        return maxUploadRate;
+    }
+
+    /**
+     * @see io.netty.ftpserver.DataConnectionConfiguration#getMaxDownloadRate()
+     */
+    public int getMaxDownloadRate() {
+        return maxDownloadRate;
+    }
+
     /**
      * Is PORT enabled?
      */
@@ -123,12 +146,19 @@ public class DefaultDataConnectionConfiguration implements
 	public boolean isPassiveIpCheck() {
 		return passiveIpCheck;
 	}
+
+    /**
+     * @see io.netty.ftpserver.DataConnectionConfiguration#isPassiveShared()
+     */
+    public boolean isPassiveShared() {
+        return passiveShared;
+    }
 	
     /**
      * Get passive data port. Data port number zero (0) means that any available
      * port will be used.
      */
-    public synchronized int requestPassivePort() {
+    public int requestPassivePort() {
     	return passivePorts.reserveNextPort();
     }
 
@@ -144,7 +174,7 @@ public class DefaultDataConnectionConfiguration implements
     /**
      * Release data port
      */
-    public synchronized void releasePassivePort(final int port) {
+    public void releasePassivePort(final int port) {
         passivePorts.releasePort(port);
     }
 
@@ -30,11 +30,13 @@ import io.netty.ftpserver.ftplet.FtpRequest;
  */
 public class DefaultFtpRequest implements FtpRequest {
 
-    private final String line;
+    private final String verb;
 
     private final String command;
 
     private final String argument;
+
+    private String line;
     
     /**
      * timestamp when this request was received
@@ -53,30 +55,32 @@ public class DefaultFtpRequest implements FtpRequest {
     	this.receivedTime = System.currentTimeMillis();
         line = requestLine.trim();
         int spInd = line.indexOf(' ');
-        command = parseCmd(line, spInd);
+        verb = spInd != -1 ? line.substring(0, spInd) : line;
+        command = FtpCommands.getCommand(verb);
         argument = parseArg(line, spInd);
     }
 
     /**
-     * Parse the ftp command line.
+     * Request already parsed by the decoder, the request line is only built
+     * when asked for.
+     *
+     * @param verb the command as sent by the client
+     * @param command the command, in upper case and with its alias resolved
+     * @param argument the argument, null if none
+     * @param receivedTime when the request was received
      */
-    private String parseCmd(final String lineToParse, int spInd) {
-        String cmd = null;
-        if (spInd != -1) {
-            cmd = line.substring(0, spInd).toUpperCase();
-        } else {
-            cmd = line.toUpperCase();
-        }
-        if ((cmd.length() > 0) && (cmd.charAt(0) == 'X')) {
-            cmd = cmd.substring(1);
-        }
-        return cmd;
+    public DefaultFtpRequest(final String verb, final String command,
+            final String argument, final long receivedTime) {
+        this.verb = verb;
+        this.command = command;
+        this.argument = argument;
+        this.receivedTime = receivedTime;
     }
 
     private String parseArg(final String lineToParse, int spInd) {
         String arg = null;
         if (spInd != -1) {
-            arg = line.substring(spInd + 1);
+            arg = lineToParse.substring(spInd + 1);
             if (arg.equals("")) {
                 arg = null;
             }
@@ -102,6 +106,9 @@ public class DefaultFtpRequest implements FtpRequest {
      * Get the ftp request line.
      */
     public String getRequestLine() {
+        if (line == null) {
+            line = argument != null ? verb + ' ' + argument : verb;
+        }
         return line;
     }
 
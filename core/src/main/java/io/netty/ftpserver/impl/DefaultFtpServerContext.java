@@ -31,6 +31,7 @@ import io.netty.ftpserver.ftpletcontainer.FtpletContainer;
 import io.netty.ftpserver.ftpletcontainer.impl.DefaultFtpletContainer;
 import io.netty.ftpserver.listener.Listener;
 import io.netty.ftpserver.listener.ListenerFactory;
+import io.netty.ftpserver.impl.reply.ReplyCache;
 import io.netty.ftpserver.message.MessageResource;
 import io.netty.ftpserver.message.MessageResourceFactory;
 import io.netty.ftpserver.usermanager.PropertiesUserManagerFactory;
@@ -38,18 +39,21 @@ import io.netty.ftpserver.usermanager.impl.BaseUser;
 import io.netty.ftpserver.usermanager.impl.ConcurrentLoginPermission;
 import io.netty.ftpserver.usermanager.impl.TransferRatePermission;
 import io.netty.ftpserver.usermanager.impl.WritePermission;
+import io.netty.ftpserver.util.VirtualThreads;
+import io.netty.util.concurrent.DefaultEventExecutor;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.ftpserver.command.CommandFactory;
 import io.netty.ftpserver.command.CommandFactoryFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.security.cert.Certificate;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
@@ -83,9 +87,46 @@ public class DefaultFtpServerContext implements FtpServerContext {
     private static final List<Authority> ANON_AUTHORITIES = new ArrayList<Authority>();
     
     /**
-     * The thread pool executor to be used by the server using this context
+     * The transfer threads to be used by the server using this context
      */
-    private ThreadPoolExecutor threadPoolExecutor = null;
+    private TransferExecutorGroup transferExecutorGroup = null;
+
+    /**
+     * The factory of the virtual threads running the sessions, when enabled
+     */
+    private ThreadFactory sessionThreadFactory = null;
+
+    private boolean sessionThreadFactoryResolved = false;
+
+    /**
+     * The token buckets shaping the data connections
+     */
+    private TrafficShaper trafficShaper = null;
+
+    /**
+     * The ASCII offsets of the files restarted in ASCII mode
+     */
+    private final AsciiOffsetIndex asciiOffsetIndex = new AsciiOffsetIndex();
+
+    /**
+     * The replies encoded from the message resource, built on first use
+     */
+    private volatile ReplyCache replyCache = null;
+
+    /**
+     * The checksums of the recently transferred files
+     */
+    private ChecksumStore checksumStore = null;
+
+    /**
+     * The file channels of the downloads in progress
+     */
+    private final SharedFileChannels sharedFileChannels = new SharedFileChannels();
+
+    /**
+     * The files uploaded in byte ranges
+     */
+    private final RangedUploads rangedUploads = new RangedUploads();
     
     static {
         ADMIN_AUTHORITIES.add(new WritePermission());
@@ -160,6 +201,20 @@ public class DefaultFtpServerContext implements FtpServerContext {
         return messageResource;
     }
 
+    public ReplyCache getReplyCache() {
+        ReplyCache cache = replyCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = replyCache;
+                if (cache == null && messageResource != null) {
+                    cache = new ReplyCache(messageResource);
+                    replyCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
     /**
      * Get ftp statistics.
      */
@@ -198,14 +253,19 @@ public class DefaultFtpServerContext implements FtpServerContext {
     public void dispose() {
         listeners.clear();
         ftpletContainer.getFtplets().clear();
-        if (threadPoolExecutor != null) {
-            LOG.debug("Shutting down the thread pool executor");
-            threadPoolExecutor.shutdown();
-            try {
-                threadPoolExecutor.awaitTermination(5000, TimeUnit.MILLISECONDS);
-            } catch (InterruptedException e) {
-            } finally {
-                // TODO: how to handle?
+        if (transferExecutorGroup != null) {
+            LOG.debug("Shutting down the transfer executor group");
+            transferExecutorGroup.shutdownGracefully().awaitUninterruptibly(5000);
+        }
+        rangedUploads.dispose();
+        synchronized (this) {
+            if (checksumStore != null) {
+                checksumStore.dispose();
+                checksumStore = null;
+            }
+            if (replyCache != null) {
+                replyCache.dispose();
+                replyCache = null;
             }
         }
     }
@@ -246,8 +306,12 @@ public class DefaultFtpServerContext implements FtpServerContext {
         this.ftpletContainer = ftpletContainer;
     }
 
-    public void setMessageResource(MessageResource messageResource) {
+    public synchronized void setMessageResource(MessageResource messageResource) {
         this.messageResource = messageResource;
+        if (replyCache != null) {
+            replyCache.dispose();
+            replyCache = null;
+        }
     }
 
     public void setUserManager(UserManager userManager) {
@@ -262,22 +326,71 @@ public class DefaultFtpServerContext implements FtpServerContext {
         this.connectionConfig = connectionConfig;
     }
     
-    public synchronized ThreadPoolExecutor getThreadPoolExecutor() {
-//        if(threadPoolExecutor == null) {
-//            int maxThreads = connectionConfig.getMaxThreads();
-//            if(maxThreads < 1) {
-//                int maxLogins = connectionConfig.getMaxLogins();
-//                if(maxLogins > 0) {
-//                    maxThreads = maxLogins;
-//                }
-//                else {
-//                    maxThreads = 16;
-//                }
-//            }
-//            LOG.debug("Intializing shared thread pool executor with max threads of {}", maxThreads);
-//            threadPoolExecutor = new OrderedThreadPoolExecutor(maxThreads);
-//        }
-        return threadPoolExecutor;
+    public synchronized TransferExecutorGroup getTransferExecutorGroup() {
+        if (transferExecutorGroup == null) {
+            int maxThreads = connectionConfig.getMaxThreads();
+            if (maxThreads < 1) {
+                int maxLogins = connectionConfig.getMaxLogins();
+                if (maxLogins > 0) {
+                    maxThreads = maxLogins;
+                } else {
+                    maxThreads = 16;
+                }
+            }
+            LOG.debug("Intializing shared transfer executor group with max threads of {}", maxThreads);
+            transferExecutorGroup = new TransferExecutorGroup(maxThreads,
+                    connectionConfig.getMaxQueuedTasks(),
+                    connectionConfig.getTransferRejectionPolicy());
+        }
+        return transferExecutorGroup;
+    }
+
+    public EventExecutor newSessionExecutor() {
+        ThreadFactory threadFactory;
+        synchronized (this) {
+            if (!sessionThreadFactoryResolved) {
+                sessionThreadFactoryResolved = true;
+                if (connectionConfig.isVirtualThreadsEnabled()) {
+                    sessionThreadFactory = VirtualThreads.newThreadFactory("ftp-session-");
+                    if (sessionThreadFactory == null) {
+                        LOG.warn("Virtual threads are not supported by this JVM, "
+                                + "using the transfer executor group");
+                    }
+                }
+            }
+            threadFactory = sessionThreadFactory;
+        }
+        if (threadFactory == null) {
+            return null;
+        }
+        return new DefaultEventExecutor(threadFactory);
+    }
+
+    public synchronized TrafficShaper getTrafficShaper() {
+        if (trafficShaper == null) {
+            trafficShaper = new TrafficShaper(connectionConfig);
+        }
+        return trafficShaper;
+    }
+
+    public AsciiOffsetIndex getAsciiOffsetIndex() {
+        return asciiOffsetIndex;
+    }
+
+    public synchronized ChecksumStore getChecksumStore() {
+        if (checksumStore == null) {
+            String storeFile = connectionConfig.getChecksumStoreFile();
+            checksumStore = new ChecksumStore(storeFile == null ? null : new File(storeFile));
+        }
+        return checksumStore;
+    }
+
+    public SharedFileChannels getSharedFileChannels() {
+        return sharedFileChannels;
+    }
+
+    public RangedUploads getRangedUploads() {
+        return rangedUploads;
     }
 
     public Certificate[] getClientCertificates() {
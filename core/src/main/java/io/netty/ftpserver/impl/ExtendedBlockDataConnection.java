@@ -0,0 +1,843 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.socket.ChannelInputShutdownEvent;
+import io.netty.ftpserver.ftplet.DataType;
+import io.netty.ftpserver.impl.BlockSource.Block;
+import io.netty.ftpserver.impl.BlockSource.FileBlocks;
+import io.netty.ftpserver.impl.BlockSource.StreamBlocks;
+import io.netty.ftpserver.listener.nio.channel.FtpChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * A data connection in extended block mode (MODE E), spreading each transfer
+ * over the parallel data channels of the session. Every block starts with a
+ * header holding its descriptor, its length and its offset in the
+ * transferred data, so that the blocks received on any of the channels are
+ * written at their offset: with positional writes into a file, or reordered
+ * before being written to any other stream.
+ *
+ * A download runs on all the channels at once, each sending the next block
+ * as soon as its previous one is written. A channel ends its part with an EOD
+ * block, and the last one to end also sends the EOF, whose offset holds the
+ * count of the EOD blocks. An upload completes once the EOF has been received
+ * along with as many EOD blocks as it announced. The data channels are
+ * closed by the server at the end of each transfer, as in stream mode.
+ *
+ * @author Io Netty Project
+ */
+public class ExtendedBlockDataConnection implements AsyncDataConnection {
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(ExtendedBlockDataConnection.class);
+
+    /**
+     * The length of a block header: descriptor, byte count and offset.
+     */
+    static final int HEADER_LENGTH = 17;
+
+    /**
+     * End of file, the offset of the header is the count of EOD blocks.
+     */
+    static final int DESC_EOF = 64;
+
+    /**
+     * End of the data sent on the channel.
+     */
+    static final int DESC_EOD = 8;
+
+    /**
+     * The sender closes the channel after this block.
+     */
+    static final int DESC_CLOSE = 4;
+
+    private static final int BLOCK_SIZE = 128 * 1024;
+
+    /**
+     * The out of order data held for a stream before the channels sending
+     * it are paused.
+     */
+    private static final int MAX_PENDING = 16 * 1024 * 1024;
+
+    private final FtpChannel channel;
+
+    private final List<Channel> dataChannels = new ArrayList<Channel>();
+
+    private Transfer transfer;
+
+    private boolean closed;
+
+    public ExtendedBlockDataConnection(final FtpChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Add a data channel, which joins the running transfer if any.
+     */
+    void addChannel(Channel dataChannel) {
+        Transfer current;
+        synchronized (this) {
+            if (closed) {
+                dataChannel.close();
+                return;
+            }
+            dataChannels.add(dataChannel);
+            current = transfer;
+        }
+        if (current != null) {
+            current.join(dataChannel);
+        }
+    }
+
+    /**
+     * The number of data channels of the connection.
+     */
+    synchronized int getChannelCount() {
+        return dataChannels.size();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.impl.AsyncDataConnection#transferFromClientAsync(java.io.OutputStream)
+     */
+    public Future<Long> transferFromClientAsync(OutputStream out) {
+        if (channel.getDataType() == DataType.ASCII) {
+            out = AsciiConverter.toLocal().wrap(out);
+        }
+        ReceiveTransfer receive;
+        try {
+            receive = new ReceiveTransfer(newPromise(), out);
+        } catch (IOException ex) {
+            return newPromise().setFailure(ex);
+        }
+        return start(receive);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.impl.AsyncDataConnection#transferToClientAsync(java.io.InputStream)
+     */
+    public Future<Long> transferToClientAsync(InputStream in) {
+        AsciiConverter converter = channel.getDataType() == DataType.ASCII
+                ? AsciiConverter.toNetwork() : null;
+        return start(new SendTransfer(newPromise(), new StreamBlocks(in, converter, false, BLOCK_SIZE)));
+    }
+
+    /**
+     * Sends the blocks of the file as {@link io.netty.channel.DefaultFileRegion}s
+     * on the channels that allow it, read with positional reads of the shared
+     * file channel otherwise. In ASCII, the file is read as a stream.
+     */
+    public Future<Long> transferToClientAsync(File file, long offset, long count) {
+        SharedFileChannels.Handle handle;
+        try {
+            handle = channel.getContext().getSharedFileChannels().acquire(file);
+        } catch (IOException ex) {
+            return newPromise().setFailure(ex);
+        }
+        long length = Math.max(0L, count < 0L ? handle.getLength() - offset
+                : Math.min(count, handle.getLength() - offset));
+
+        BlockSource source;
+        if (channel.getDataType() == DataType.ASCII) {
+            source = new StreamBlocks(handle.newInputStream(offset, length),
+                    AsciiConverter.toNetwork(), true, BLOCK_SIZE);
+        } else {
+            source = new FileBlocks(handle, offset, length, BLOCK_SIZE);
+        }
+        return start(new SendTransfer(newPromise(), source));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.impl.AsyncDataConnection#transferToClientAsync(java.lang.String)
+     */
+    public Future<Long> transferToClientAsync(String str) {
+        InputStream in = new ByteArrayInputStream(str.getBytes(CharsetUtil.UTF_8));
+        return start(new SendTransfer(newPromise(), new StreamBlocks(in, null, false, BLOCK_SIZE)));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.ftplet.DataConnection#transferFromClient(java.io.OutputStream)
+     */
+    public final long transferFromClient(final OutputStream out) throws IOException {
+        return NettyDataConnection.await(transferFromClientAsync(out));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.ftplet.DataConnection#transferToClient(java.io.InputStream)
+     */
+    public final long transferToClient(final InputStream in) throws IOException {
+        return NettyDataConnection.await(transferToClientAsync(in));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.ftplet.DataConnection#transferToClient(java.lang.String)
+     */
+    public final void transferToClient(final String str) throws IOException {
+        NettyDataConnection.await(transferToClientAsync(str));
+    }
+
+    /**
+     * The future of the last transfer started on this connection, null if none.
+     */
+    synchronized Future<Long> getTransferFuture() {
+        return transfer == null ? null : transfer.promise;
+    }
+
+    /**
+     * Fail the running transfer, if any, and close the data channels.
+     */
+    void abort() {
+        Transfer current;
+        synchronized (this) {
+            current = transfer;
+        }
+        if (current != null && current.promise.tryFailure(new SocketException("Data connection closed"))) {
+            current.released();
+        }
+        closeChannels(null);
+    }
+
+    private synchronized Promise<Long> newPromise() {
+        return dataChannels.get(0).eventLoop().newPromise();
+    }
+
+    private Future<Long> start(Transfer started) {
+        List<Channel> channels;
+        synchronized (this) {
+            transfer = started;
+            channels = new ArrayList<Channel>(dataChannels);
+        }
+        for (Channel dataChannel : channels) {
+            started.join(dataChannel);
+        }
+        return started.promise;
+    }
+
+    /**
+     * Close all the data channels, then run the given task if any.
+     */
+    private void closeChannels(final Runnable then) {
+        List<Channel> channels;
+        synchronized (this) {
+            closed = true;
+            channels = new ArrayList<Channel>(dataChannels);
+        }
+        final AtomicInteger remaining = new AtomicInteger(channels.size());
+        ChannelFutureListener listener = new ChannelFutureListener() {
+            public void operationComplete(ChannelFuture future) {
+                if (remaining.decrementAndGet() == 0 && then != null) {
+                    then.run();
+                }
+            }
+        };
+        for (Channel dataChannel : channels) {
+            dataChannel.close().addListener(listener);
+        }
+    }
+
+    private static ByteBuf header(ByteBufAllocator alloc, int descriptor, long count, long offset) {
+        return alloc.buffer(HEADER_LENGTH).writeByte(descriptor).writeLong(count).writeLong(offset);
+    }
+
+    /**
+     * Notify connection manager observer.
+     */
+    protected void notifyObserver() {
+        channel.updateLastAccessTime();
+    }
+
+    /**
+     * A transfer running on all the data channels of the connection.
+     */
+    private abstract class Transfer {
+
+        final Promise<Long> promise;
+
+        final AtomicLong transferredSize = new AtomicLong();
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Transfer(Promise<Long> promise) {
+            this.promise = promise;
+        }
+
+        /**
+         * Start the part of the transfer running on the data channel.
+         */
+        abstract void join(Channel dataChannel);
+
+        /**
+         * Release the resources of the transfer.
+         */
+        abstract void release();
+
+        final void released() {
+            if (released.compareAndSet(false, true)) {
+                release();
+            }
+        }
+
+        /**
+         * Close the data channels, then complete the transfer.
+         */
+        final void finish() {
+            closeChannels(new Runnable() {
+                public void run() {
+                    promise.trySuccess(transferredSize.get());
+                    released();
+                }
+            });
+        }
+
+        /**
+         * Fail the transfer on an error of a data channel.
+         */
+        final void failed(Throwable cause) {
+            if (promise.isDone()) {
+                return;
+            }
+            LOG.warn("Exception during data transfer, closing data connection channels", cause);
+            if (promise.tryFailure(NettyDataConnection.toSocketException(cause))) {
+                released();
+            }
+            closeChannels(null);
+        }
+
+        /**
+         * Fail the transfer on an error of the local stream.
+         */
+        final void localFailed(IOException cause) {
+            if (promise.isDone()) {
+                return;
+            }
+            LOG.warn("Exception during data transfer, closing data connection channels", cause);
+            if (promise.tryFailure(cause)) {
+                released();
+            }
+            closeChannels(null);
+        }
+    }
+
+    /**
+     * Sends the blocks of the source on all the channels, each channel taking
+     * the next block once it has written its previous one.
+     */
+    private final class SendTransfer extends Transfer {
+
+        private final BlockSource source;
+
+        private int channels = 0;
+
+        private int ended = 0;
+
+        private int endsWritten = 0;
+
+        private boolean eofSent = false;
+
+        SendTransfer(Promise<Long> promise, BlockSource source) {
+            super(promise);
+            this.source = source;
+        }
+
+        @Override
+        void join(Channel dataChannel) {
+            synchronized (this) {
+                if (eofSent) {
+                    // joined too late, the EOF counts the channels already
+                    return;
+                }
+                channels++;
+            }
+
+            // shapes the blocks of every channel against the same limits
+            TrafficShapingHandler shaper = channel.getContext().getTrafficShaper()
+                    .newHandler(channel);
+            if (shaper != null) {
+                dataChannel.pipeline().addLast("rateLimiter", shaper);
+            }
+            boolean regions = dataChannel.pipeline().get(SslHandler.class) == null
+                    && (shaper == null || !shaper.isWriteLimited());
+            sendNext(dataChannel, regions);
+        }
+
+        private void sendNext(final Channel dataChannel, final boolean regions) {
+            if (promise.isDone()) {
+                return;
+            }
+            final Block block;
+            try {
+                block = source.next(dataChannel.alloc(), regions);
+            } catch (IOException ex) {
+                localFailed(ex);
+                return;
+            }
+            if (block == null) {
+                sendEnd(dataChannel);
+                return;
+            }
+
+            dataChannel.write(header(dataChannel.alloc(), 0, block.length, block.offset));
+            dataChannel.writeAndFlush(block.payload).addListener(new ChannelFutureListener() {
+                public void operationComplete(ChannelFuture future) {
+                    if (!future.isSuccess()) {
+                        failed(future.cause());
+                        return;
+                    }
+
+                    // update session
+                    channel.increaseWrittenDataBytes(block.length);
+                    transferredSize.addAndGet(block.length);
+                    notifyObserver();
+                    sendNext(dataChannel, regions);
+                }
+            });
+        }
+
+        private void sendEnd(Channel dataChannel) {
+            final boolean last;
+            final int count;
+            synchronized (this) {
+                ended++;
+                last = ended == channels;
+                eofSent |= last;
+                count = channels;
+            }
+            int descriptor = DESC_EOD | DESC_CLOSE | (last ? DESC_EOF : 0);
+            dataChannel.writeAndFlush(header(dataChannel.alloc(), descriptor, 0L, last ? count : 0L))
+                    .addListener(new ChannelFutureListener() {
+                        public void operationComplete(ChannelFuture future) {
+                            if (!future.isSuccess()) {
+                                failed(future.cause());
+                                return;
+                            }
+                            boolean done;
+                            synchronized (SendTransfer.this) {
+                                endsWritten++;
+                                done = eofSent && endsWritten == channels;
+                            }
+                            if (done) {
+                                finish();
+                            }
+                        }
+                    });
+        }
+
+        @Override
+        void release() {
+            source.close();
+        }
+    }
+
+    /**
+     * Writes the blocks received on all the channels, directly at their
+     * position when the stream is a file, in order otherwise. The ranges
+     * written to a file are tracked, so that an overlapping block is
+     * rejected and a missing one fails the transfer at its end.
+     */
+    private final class ReceiveTransfer extends Transfer {
+
+        private final OutputStream out;
+
+        private final FileChannel fileChannel;
+
+        private final long base;
+
+        private final TreeMap<Long, ByteBuf> pending = new TreeMap<Long, ByteBuf>();
+
+        /**
+         * The ranges written to the file, merged, by start
+         */
+        private final TreeMap<Long, Long> written = new TreeMap<Long, Long>();
+
+        private final List<Channel> paused = new ArrayList<Channel>();
+
+        private long expected = 0L;
+
+        private long pendingBytes = 0L;
+
+        private int receiving = 0;
+
+        private int eods = 0;
+
+        private long eodCount = -1L;
+
+        ReceiveTransfer(Promise<Long> promise, OutputStream out) throws IOException {
+            super(promise);
+            this.out = out;
+            if (out instanceof FileOutputStream) {
+                fileChannel = ((FileOutputStream) out).getChannel();
+                base = fileChannel.position();
+            } else {
+                fileChannel = null;
+                base = 0L;
+            }
+        }
+
+        @Override
+        void join(final Channel dataChannel) {
+            final int idleTime = channel.getListener().getDataConnectionConfiguration().getIdleTime();
+
+            // configure the pipeline on the data event loop, so that the data
+            // held since the channel was opened is replayed to the receiver
+            dataChannel.eventLoop().execute(new Runnable() {
+                public void run() {
+                    ChannelPipeline pipeline = dataChannel.pipeline();
+                    if (pipeline.get(NettyDataConnection.INBOUND_HOLDER) == null) {
+                        // closed before the transfer, the EOD count tells
+                        // whether it carried any data
+                        return;
+                    }
+                    synchronized (ReceiveTransfer.this) {
+                        receiving++;
+                    }
+                    TrafficShapingHandler shaper = channel.getContext().getTrafficShaper()
+                            .newHandler(channel);
+                    if (shaper != null) {
+                        pipeline.addLast("rateLimiter", shaper);
+                    }
+                    if (idleTime > 0) {
+                        pipeline.addLast("readTimeout", new ReadTimeoutHandler(idleTime));
+                    }
+                    pipeline.addLast("blockDecoder", new BlockDecoder());
+                    pipeline.addLast("receiver", new BlockReceiver(ReceiveTransfer.this));
+                    pipeline.remove(NettyDataConnection.INBOUND_HOLDER);
+                    dataChannel.config().setAutoRead(true);
+                }
+            });
+        }
+
+        void received(Channel dataChannel, long offset, ByteBuf data) {
+            if (promise.isDone()) {
+                return;
+            }
+            int length = data.readableBytes();
+            try {
+                // update session
+                channel.increaseReadDataBytes(length);
+                if (fileChannel != null) {
+                    synchronized (this) {
+                        if (overlaps(offset, offset + length)) {
+                            throw new CorruptedFrameException("Overlapping block at offset " + offset);
+                        }
+                        add(offset, offset + length);
+                    }
+                    int index = data.readerIndex();
+                    long position = base + offset;
+                    int remaining = length;
+                    while (remaining > 0) {
+                        int written = data.getBytes(index, fileChannel, position, remaining);
+                        index += written;
+                        position += written;
+                        remaining -= written;
+                    }
+                } else {
+                    synchronized (this) {
+                        receivedInOrder(dataChannel, offset, data);
+                    }
+                }
+                transferredSize.addAndGet(length);
+                notifyObserver();
+            } catch (CorruptedFrameException ex) {
+                failed(ex);
+            } catch (IOException ex) {
+                localFailed(ex);
+            }
+        }
+
+        /**
+         * Write the data if it is the next one of the stream, hold it until
+         * then otherwise, pausing the channel while too much data is held.
+         */
+        private void receivedInOrder(Channel dataChannel, long offset, ByteBuf data)
+                throws IOException {
+            if (offset < expected || pending.containsKey(offset)) {
+                throw new CorruptedFrameException("Overlapping block at offset " + offset);
+            }
+            if (offset > expected) {
+                int length = data.readableBytes();
+                pending.put(offset, dataChannel.alloc().buffer(length).writeBytes(data));
+                pendingBytes += length;
+
+                // never pause the last channel still sending
+                if (pendingBytes > MAX_PENDING && paused.size() + 1 < receiving) {
+                    ReadSuspension.suspend(dataChannel, ReadSuspension.RECEIVER);
+                    paused.add(dataChannel);
+                }
+                return;
+            }
+
+            expected += data.readableBytes();
+            NettyDataConnection.writeBinary(data, out);
+            Map.Entry<Long, ByteBuf> next;
+            while ((next = pending.firstEntry()) != null && next.getKey() <= expected) {
+                pending.pollFirstEntry();
+                ByteBuf buf = next.getValue();
+                try {
+                    if (next.getKey() < expected) {
+                        throw new CorruptedFrameException("Overlapping block at offset " + next.getKey());
+                    }
+                    pendingBytes -= buf.readableBytes();
+                    expected += buf.readableBytes();
+                    NettyDataConnection.writeBinary(buf, out);
+                } finally {
+                    buf.release();
+                }
+            }
+            if (pendingBytes <= MAX_PENDING / 2) {
+                resume();
+            }
+        }
+
+        private boolean overlaps(long start, long end) {
+            Map.Entry<Long, Long> before = written.floorEntry(start);
+            if (before != null && before.getValue() > start) {
+                return true;
+            }
+            Map.Entry<Long, Long> after = written.ceilingEntry(start);
+            return after != null && after.getKey() < end;
+        }
+
+        private void add(long start, long end) {
+            Map.Entry<Long, Long> before = written.floorEntry(start);
+            if (before != null && before.getValue() == start) {
+                start = before.getKey();
+                written.remove(start);
+            }
+            Long next = written.get(end);
+            if (next != null) {
+                written.remove(end);
+                end = next;
+            }
+            written.put(start, end);
+        }
+
+        /**
+         * The offset of the first byte not received, -1 if the data received
+         * has no hole. Called with the lock held.
+         */
+        private long missingOffset() {
+            if (fileChannel == null) {
+                return pending.isEmpty() ? -1L : expected;
+            }
+            if (written.isEmpty()) {
+                return -1L;
+            }
+            Map.Entry<Long, Long> first = written.firstEntry();
+            if (first.getKey() != 0L) {
+                return 0L;
+            }
+            return written.size() == 1 ? -1L : first.getValue();
+        }
+
+        private void resume() {
+            for (Channel dataChannel : paused) {
+                ReadSuspension.resume(dataChannel, ReadSuspension.RECEIVER);
+            }
+            paused.clear();
+        }
+
+        void ended(int descriptor, long offset) {
+            boolean done;
+            long missing = -1L;
+            synchronized (this) {
+                if ((descriptor & DESC_EOF) != 0) {
+                    eodCount = offset;
+                }
+                if ((descriptor & DESC_EOD) != 0) {
+                    eods++;
+                    receiving--;
+                    if (paused.size() >= receiving) {
+                        resume();
+                    }
+                }
+                done = eodCount >= 0L && eods >= eodCount;
+                if (done) {
+                    missing = missingOffset();
+                }
+            }
+            if (missing >= 0L) {
+                failed(new CorruptedFrameException("Missing block at offset " + missing));
+            } else if (done) {
+                finish();
+            }
+        }
+
+        @Override
+        synchronized void release() {
+            for (ByteBuf buf : pending.values()) {
+                buf.release();
+            }
+            pending.clear();
+            pendingBytes = 0L;
+            written.clear();
+        }
+    }
+
+    /**
+     * Splits the received data into blocks, the data of a large block being
+     * passed on as it arrives.
+     */
+    private static final class BlockDecoder extends ByteToMessageDecoder {
+
+        private int descriptor;
+
+        private long offset;
+
+        private long remaining = 0L;
+
+        @Override
+        protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+            for (;;) {
+                if (remaining == 0L) {
+                    if (in.readableBytes() < HEADER_LENGTH) {
+                        return;
+                    }
+                    descriptor = in.readUnsignedByte();
+                    long count = in.readLong();
+                    offset = in.readLong();
+                    if (count < 0L || offset < 0L) {
+                        throw new CorruptedFrameException("Invalid block header");
+                    }
+                    if (count == 0L) {
+                        out.add(new Block(descriptor, offset, 0, null));
+                        continue;
+                    }
+                    remaining = count;
+                }
+                if (!in.isReadable()) {
+                    return;
+                }
+                int length = (int) Math.min(remaining, in.readableBytes());
+                out.add(new Block(0, offset, length, in.readRetainedSlice(length)));
+                offset += length;
+                remaining -= length;
+                if (remaining == 0L && (descriptor & DESC_EOD) != 0) {
+                    // the EOF offset only counts the EOD blocks in an empty block
+                    out.add(new Block(descriptor & ~DESC_EOF, offset, 0, null));
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands the blocks of a channel over to the upload.
+     */
+    private static final class BlockReceiver extends ChannelInboundHandlerAdapter {
+
+        private final ReceiveTransfer transfer;
+
+        private boolean ended = false;
+
+        BlockReceiver(ReceiveTransfer transfer) {
+            this.transfer = transfer;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            Block block = (Block) msg;
+            if (block.payload != null) {
+                ByteBuf data = (ByteBuf) block.payload;
+                try {
+                    transfer.received(ctx.channel(), block.offset, data);
+                } finally {
+                    ReferenceCountUtil.release(data);
+                }
+                return;
+            }
+            if ((block.descriptor & DESC_EOD) != 0) {
+                ended = true;
+
+                // the channel may now stay idle until the other ones end
+                if (ctx.pipeline().get("readTimeout") != null) {
+                    ctx.pipeline().remove("readTimeout");
+                }
+            }
+            transfer.ended(block.descriptor, block.offset);
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt instanceof ChannelInputShutdownEvent && !ended) {
+                transfer.failed(new SocketException("Data connection closed before the end of data"));
+            }
+            super.userEventTriggered(ctx, evt);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            if (!ended) {
+                transfer.failed(new SocketException("Data connection closed before the end of data"));
+            }
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            transfer.failed(cause);
+        }
+    }
+}
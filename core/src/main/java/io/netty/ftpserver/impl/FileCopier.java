@@ -0,0 +1,357 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.ftpserver.impl;
+
+import io.netty.ftpserver.filesystem.nativefs.impl.ArchiveFtpFile;
+import io.netty.ftpserver.filesystem.nativefs.impl.NativeFtpFile;
+import io.netty.ftpserver.ftplet.FtpException;
+import io.netty.ftpserver.ftplet.FtpFile;
+import io.netty.ftpserver.listener.nio.channel.FtpChannel;
+import io.netty.ftpserver.util.IoUtils;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Copies a file, or a directory recursively, on the server, as asked with
+ * SITE CPFR and SITE CPTO, so that the data does not go through the client.
+ * A native file is copied in the kernel with {@link FileChannel#transferTo},
+ * which some file systems turn into a copy on write clone, any other file
+ * with its streams.
+ *
+ * The files of a directory are copied by a few tasks in parallel on the
+ * transfer threads, each task copying one file and then queuing itself
+ * again, so that the threads keep serving the commands of the other
+ * sessions. The directories are walked lazily, each one being listed and
+ * created when the tasks reach it.
+ *
+ * @author Io Netty Project
+ */
+public class FileCopier {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileCopier.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FtpChannel channel;
+
+    private final FtpFile from;
+
+    private final FtpFile to;
+
+    private final EventExecutorGroup executors;
+
+    private final int parallelism;
+
+    private final Promise<Long> promise;
+
+    private final Deque<Level> levels = new ArrayDeque<Level>();
+
+    private boolean started = false;
+
+    private int activeTasks;
+
+    private Throwable cause;
+
+    private final AtomicInteger foundFiles = new AtomicInteger();
+
+    private final AtomicInteger copiedFiles = new AtomicInteger();
+
+    private final AtomicLong copiedBytes = new AtomicLong();
+
+    /**
+     * Internal constructor, do not use directly.
+     *
+     * @param channel the session copying the files
+     * @param from the file or directory to copy
+     * @param to the copy
+     * @param executors the threads copying the files
+     * @param parallelism the maximum number of files copied at once
+     */
+    public FileCopier(FtpChannel channel, FtpFile from, FtpFile to,
+                      EventExecutorGroup executors, int parallelism) {
+        this.channel = channel;
+        this.from = from;
+        this.to = to;
+        this.executors = executors;
+        this.parallelism = Math.max(1, parallelism);
+        this.promise = executors.next().newPromise();
+    }
+
+    /**
+     * Start the copy.
+     *
+     * @return The number of bytes copied, once all are
+     */
+    public Future<Long> start() {
+        int tasks = from.isDirectory() ? parallelism : 1;
+        synchronized (this) {
+            activeTasks = tasks;
+        }
+        for (int i = 0; i < tasks; i++) {
+            submit(new CopyTask());
+        }
+        return promise;
+    }
+
+    /**
+     * The progress of the copy, as shown by STAT.
+     */
+    public String getProgress() {
+        return "Copying " + from.getAbsolutePath() + " to " + to.getAbsolutePath() + "\n"
+                + copiedFiles.get() + " of " + foundFiles.get() + " files found so far, "
+                + copiedBytes.get() + " bytes copied";
+    }
+
+    /**
+     * The number of files copied.
+     */
+    public int getCopiedFiles() {
+        return copiedFiles.get();
+    }
+
+    private void submit(CopyTask task) {
+        try {
+            executors.next().execute(task);
+        } catch (RejectedExecutionException ex) {
+            taskDone(ex);
+        }
+    }
+
+    private void taskDone(Throwable failure) {
+        synchronized (this) {
+            if (failure != null && cause == null) {
+                cause = failure;
+            }
+            if (--activeTasks > 0) {
+                return;
+            }
+        }
+        if (cause != null) {
+            promise.tryFailure(cause);
+        } else {
+            promise.trySuccess(copiedBytes.get());
+        }
+    }
+
+    /**
+     * The next file to copy with its copy, creating the directories on the
+     * way, null once all are handed out.
+     */
+    private synchronized FtpFile[] next() throws IOException {
+        if (cause != null) {
+            return null;
+        }
+        if (!started) {
+            started = true;
+            if (!from.isDirectory()) {
+                foundFiles.incrementAndGet();
+                return new FtpFile[] { from, to };
+            }
+            mkdir(to);
+            levels.push(new Level(from, to.getAbsolutePath()));
+        }
+        while (!levels.isEmpty()) {
+            Level level = levels.peek();
+            if (level.index == level.files.size()) {
+                levels.pop();
+                continue;
+            }
+            FtpFile file = level.files.get(level.index++);
+            FtpFile copy = getFile(level.path + '/' + file.getName());
+            if (file.isDirectory()) {
+                if (isLink(file)) {
+                    // not followed, a link cycle would never end
+                    continue;
+                }
+                mkdir(copy);
+                levels.push(new Level(file, copy.getAbsolutePath()));
+            } else if (file.isFile()) {
+                foundFiles.incrementAndGet();
+                return new FtpFile[] { file, copy };
+            }
+        }
+        return null;
+    }
+
+    private FtpFile getFile(String path) throws IOException {
+        try {
+            FtpFile file = channel.getFileSystemView().getFile(path);
+            if (file == null) {
+                throw new IOException("Invalid path : " + path);
+            }
+            return file;
+        } catch (FtpException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    private static boolean isLink(FtpFile file) {
+        Object physicalFile = file.getPhysicalFile();
+        return physicalFile instanceof File
+                && Files.isSymbolicLink(((File) physicalFile).toPath());
+    }
+
+    private void mkdir(FtpFile dir) throws IOException {
+        if (dir.isDirectory()) {
+            return;
+        }
+        if (dir.doesExist() || !dir.isWritable() || !dir.mkdir()) {
+            throw new IOException("Cannot create directory : " + dir.getAbsolutePath());
+        }
+        ServerFtpStatistics ftpStat = (ServerFtpStatistics) channel.getContext()
+                .getFtpStatistics();
+        if (ftpStat != null) {
+            ftpStat.setMkdir(channel, dir);
+        }
+    }
+
+    private void copy(FtpFile file, FtpFile copy) throws IOException {
+        if (!file.isReadable()) {
+            throw new IOException("No read permission : " + file.getAbsolutePath());
+        }
+        if (copy.isDirectory()) {
+            throw new IOException("Not a file : " + copy.getAbsolutePath());
+        }
+        FtpServerContext context = channel.getContext();
+        context.getAsciiOffsetIndex().invalidate(copy);
+        context.getChecksumStore().invalidate(copy);
+
+        long size = 0L;
+        OutputStream out = copy.createOutputStream(0L);
+        try {
+            if (file instanceof NativeFtpFile && !(file instanceof ArchiveFtpFile)
+                    && out instanceof FileOutputStream) {
+                // in kernel copy from the shared channel of the file
+                FileChannel target = ((FileOutputStream) out).getChannel();
+                SharedFileChannels.Handle handle = context.getSharedFileChannels()
+                        .acquire(((NativeFtpFile) file).getPhysicalFile());
+                try {
+                    long length = handle.getLength();
+                    while (size < length) {
+                        long count = handle.getChannel().transferTo(size, length - size, target);
+                        if (count <= 0L) {
+                            // the file got shorter
+                            break;
+                        }
+                        size += count;
+                        copiedBytes.addAndGet(count);
+                    }
+                } finally {
+                    handle.release();
+                }
+            } else {
+                InputStream in = file.createInputStream(0L);
+                try {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    int count;
+                    while ((count = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, count);
+                        size += count;
+                        copiedBytes.addAndGet(count);
+                    }
+                } finally {
+                    IoUtils.close(in);
+                }
+            }
+            out.close();
+        } finally {
+            IoUtils.close(out);
+        }
+
+        copy.setLastModified(file.getLastModified());
+        context.getChecksumStore().copied(file, copy);
+        copiedFiles.incrementAndGet();
+
+        // notify the statistics component
+        ServerFtpStatistics ftpStat = (ServerFtpStatistics) context.getFtpStatistics();
+        if (ftpStat != null) {
+            ftpStat.setUpload(channel, copy, size);
+        }
+    }
+
+    /**
+     * A directory being copied.
+     */
+    private static final class Level {
+
+        final List<? extends FtpFile> files;
+
+        final String path;
+
+        int index = 0;
+
+        Level(FtpFile dir, String path) {
+            List<? extends FtpFile> files = dir.listFiles();
+            this.files = files != null ? files : new ArrayList<FtpFile>();
+            this.path = path;
+        }
+    }
+
+    /**
+     * Copies one file, then queues itself again for the next one.
+     */
+    private final class CopyTask implements Runnable {
+
+        public void run() {
+            FtpFile[] files;
+            try {
+                if (!channel.getTChannel().isActive()) {
+                    throw new IOException("Session closed");
+                }
+                files = next();
+                if (files != null) {
+                    copy(files[0], files[1]);
+                }
+            } catch (IOException ex) {
+                LOG.debug("Exception copying files", ex);
+                taskDone(ex);
+                return;
+            } catch (RuntimeException ex) {
+                LOG.warn("Exception copying files", ex);
+                taskDone(ex);
+                return;
+            }
+            if (files == null) {
+                taskDone(null);
+            } else {
+                submit(this);
+            }
+        }
+    }
+}
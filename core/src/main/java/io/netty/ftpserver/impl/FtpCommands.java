@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.impl;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * The table of the known FTP commands, so that the verb of a request is
+ * matched to a shared command name without decoding it to a string. A verb
+ * of up to eight ASCII characters is packed in a long, one byte per
+ * character, which is looked up in an open addressing table. The old
+ * commands of RFC 775 map to their RFC 959 names, XMKD to MKD for example.
+ *
+ * @author Io Netty Project
+ */
+public final class FtpCommands {
+
+    /**
+     * The longest verb packed in a key
+     */
+    public static final int MAX_PACKED_LENGTH = 8;
+
+    private static final String[] COMMANDS = {
+        "ABOR", "ACCT", "ADAT", "ALLO", "APPE", "AUTH", "CCC", "CDUP", "CONF",
+        "CWD", "DELE", "ENC", "EPRT", "EPSV", "FEAT", "HASH", "HELP", "HOST",
+        "LANG", "LIST", "MD5", "MDTM", "MFCT", "MFF", "MFMT", "MIC", "MKD",
+        "MLSD", "MLST", "MMD5", "MODE", "NLST", "NOOP", "OPTS", "PASS", "PASV",
+        "PBSZ", "PORT", "PROT", "PWD", "QUIT", "RANG", "REIN", "REST", "RETR",
+        "RMD", "RNFR", "RNTO", "SITE", "SIZE", "SMNT", "SPAS", "SPOR", "STAT",
+        "STOR", "STOU", "STRU", "SYST", "TYPE", "USER", "XCRC", "XMD5",
+        "XSHA1", "XSHA256", "XSHA512"
+    };
+
+    private static final String[][] ALIASES = {
+        {"XCUP", "CDUP"}, {"XCWD", "CWD"}, {"XMKD", "MKD"}, {"XPWD", "PWD"},
+        {"XRMD", "RMD"}
+    };
+
+    private static final int MASK = 255;
+
+    private static final long[] KEYS = new long[MASK + 1];
+
+    private static final String[] NAMES = new String[MASK + 1];
+
+    private static final Map<String, String> BY_NAME = new HashMap<String, String>();
+
+    static {
+        for (String command : COMMANDS) {
+            add(command, command);
+        }
+        for (String[] alias : ALIASES) {
+            add(alias[0], alias[1]);
+        }
+    }
+
+    private FtpCommands() {
+    }
+
+    private static void add(String verb, String command) {
+        long key = pack(verb);
+        int index = index(key);
+        while (KEYS[index] != 0L) {
+            index = (index + 1) & MASK;
+        }
+        KEYS[index] = key;
+        NAMES[index] = command;
+        BY_NAME.put(verb, command);
+    }
+
+    private static int index(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 56) & MASK;
+    }
+
+    /**
+     * Pack a verb as it was received, -1 if it is longer than
+     * {@link #MAX_PACKED_LENGTH} or not in ASCII.
+     */
+    public static long pack(ByteBuf buffer, int index, int length) {
+        if (length > MAX_PACKED_LENGTH) {
+            return -1L;
+        }
+        long key = 0L;
+        for (int i = index; i < index + length; i++) {
+            byte b = buffer.getByte(i);
+            if (b < 0) {
+                return -1L;
+            }
+            key = key << 8 | b;
+        }
+        return key;
+    }
+
+    /**
+     * Pack a verb of up to {@link #MAX_PACKED_LENGTH} ASCII characters.
+     */
+    public static long pack(String verb) {
+        long key = 0L;
+        for (int i = 0; i < verb.length(); i++) {
+            key = key << 8 | verb.charAt(i);
+        }
+        return key;
+    }
+
+    /**
+     * The upper case of a packed verb.
+     */
+    public static long toUpperCase(long key) {
+        long upper = 0L;
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            long b = (key >>> shift) & 0xFF;
+            if (b >= 'a' && b <= 'z') {
+                b -= 'a' - 'A';
+            }
+            upper = upper << 8 | b;
+        }
+        return upper;
+    }
+
+    /**
+     * The command of an upper case packed verb, null if it is not known.
+     */
+    public static String lookup(long key) {
+        int index = index(key);
+        long current;
+        while ((current = KEYS[index]) != 0L) {
+            if (current == key) {
+                return NAMES[index];
+            }
+            index = (index + 1) & MASK;
+        }
+        return null;
+    }
+
+    /**
+     * The verb of a packed key.
+     */
+    public static String unpack(long key) {
+        char[] chars = new char[MAX_PACKED_LENGTH];
+        int length = 0;
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            char c = (char) ((key >>> shift) & 0xFF);
+            if (c != 0 || length > 0) {
+                chars[length++] = c;
+            }
+        }
+        return new String(chars, 0, length);
+    }
+
+    /**
+     * The command of a verb, the verb in upper case if it is not known.
+     */
+    public static String getCommand(String verb) {
+        String upper = verb.toUpperCase();
+        String command = BY_NAME.get(upper);
+        return command != null ? command : upper;
+    }
+}
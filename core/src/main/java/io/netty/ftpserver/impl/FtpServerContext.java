@@ -23,12 +23,13 @@ import io.netty.ftpserver.ConnectionConfig;
 import io.netty.ftpserver.ftpletcontainer.FtpletContext;
 import io.netty.ftpserver.ftpletcontainer.FtpletContainer;
 import io.netty.ftpserver.listener.Listener;
+import io.netty.ftpserver.impl.reply.ReplyCache;
 import io.netty.ftpserver.message.MessageResource;
 import io.netty.ftpserver.command.CommandFactory;
+import io.netty.util.concurrent.EventExecutor;
 
 import java.security.cert.Certificate;
 import java.util.Map;
-import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
@@ -47,6 +48,13 @@ public interface FtpServerContext extends FtpletContext {
      */
     MessageResource getMessageResource();
 
+    /**
+     * Returns the replies encoded from the message resource.
+     * @return the reply cache for this context, null if there is no
+     *         message resource.
+     */
+    ReplyCache getReplyCache();
+
     /**
      * Get ftplet container.
      */
@@ -67,10 +75,50 @@ public interface FtpServerContext extends FtpletContext {
     void dispose();
     
     /**
-     * Returns the thread pool executor for this context.  
-     * @return the thread pool executor for this context.
+     * Returns the threads running the blocking commands for this context.
+     * @return the transfer executor group for this context.
+     */
+    TransferExecutorGroup getTransferExecutorGroup();
+
+    /**
+     * Creates the executor running the commands of a new session on a
+     * virtual thread of its own.
+     * @return the session executor, null if the commands run on the transfer
+     *         executor group.
+     */
+    EventExecutor newSessionExecutor();
+
+    /**
+     * Returns the token buckets shaping the data connections.
+     * @return the traffic shaper for this context.
+     */
+    TrafficShaper getTrafficShaper();
+
+    /**
+     * Returns the index of the ASCII offsets of the files, used by REST in
+     * ASCII mode.
+     * @return the ASCII offset index for this context.
+     */
+    AsciiOffsetIndex getAsciiOffsetIndex();
+
+    /**
+     * Returns the checksums of the recently transferred files, used by HASH
+     * and the other checksum commands.
+     * @return the checksum store for this context.
+     */
+    ChecksumStore getChecksumStore();
+
+    /**
+     * Returns the file channels shared by the downloads in progress.
+     * @return the shared file channels for this context.
+     */
+    SharedFileChannels getSharedFileChannels();
+
+    /**
+     * Returns the uploads of files in byte ranges by several sessions.
+     * @return the ranged uploads for this context.
      */
-    ThreadPoolExecutor getThreadPoolExecutor();
+    RangedUploads getRangedUploads();
 
     Certificate[] getClientCertificates();
 }
@@ -19,25 +19,25 @@
 
 package io.netty.ftpserver.impl;
 
-import io.netty.ftpserver.usermanager.impl.TransferRateRequest;
-import io.netty.ftpserver.ftplet.DataConnection;
 import io.netty.ftpserver.ftplet.DataType;
 import io.netty.ftpserver.listener.nio.channel.FtpChannel;
 import io.netty.ftpserver.usermanager.impl.TransferRateRequest;
 import io.netty.ftpserver.util.IoUtils;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.net.Socket;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterInputStream;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
@@ -47,14 +47,12 @@ import java.util.zip.InflaterInputStream;
  *
  * @author Io Netty Project
  */
-public class IODataConnection implements DataConnection {
+public class IODataConnection implements AsyncDataConnection {
 
     private final Logger LOG = LoggerFactory
     .getLogger(IODataConnection.class);
 
-    
-    private static final byte[] EOL = System.getProperty("line.separator").getBytes();
-    
+
     private final FtpChannel channel;
 
     private final Socket socket;
@@ -83,7 +81,7 @@ public class IODataConnection implements DataConnection {
             // create input stream
             InputStream is = dataSoc.getInputStream();
             if (factory.isZipMode()) {
-                is = new InflaterInputStream(is);
+                is = ZlibPool.newInflaterInputStream(is);
             }
             return is;
         } catch (IOException ex) {
@@ -107,7 +105,7 @@ public class IODataConnection implements DataConnection {
             // create output stream
             OutputStream os = dataSoc.getOutputStream();
             if (factory.isZipMode()) {
-                os = new DeflaterOutputStream(os);
+                os = ZlibPool.newDeflaterOutputStream(os, factory.getZipLevel());
             }
             return os;
         } catch (IOException ex) {
@@ -189,13 +187,63 @@ public class IODataConnection implements DataConnection {
         }
     }
 
+    /**
+     * Transfers in the calling thread, the returned future is always completed.
+     */
+    public Future<Long> transferFromClientAsync(final OutputStream out) {
+        try {
+            return ImmediateEventExecutor.INSTANCE.newSucceededFuture(transferFromClient(out));
+        } catch (IOException ex) {
+            return ImmediateEventExecutor.INSTANCE.newFailedFuture(ex);
+        }
+    }
+
+    /**
+     * Transfers in the calling thread, the returned future is always completed.
+     */
+    public Future<Long> transferToClientAsync(final InputStream in) {
+        try {
+            return ImmediateEventExecutor.INSTANCE.newSucceededFuture(transferToClient(in));
+        } catch (IOException ex) {
+            return ImmediateEventExecutor.INSTANCE.newFailedFuture(ex);
+        }
+    }
+
+    /**
+     * Transfers in the calling thread, the returned future is always completed.
+     */
+    public Future<Long> transferToClientAsync(final File file, final long offset, final long count) {
+        InputStream in = null;
+        try {
+            in = channel.getContext().getSharedFileChannels().acquire(file)
+                    .newInputStream(offset, count < 0L ? Long.MAX_VALUE : count);
+            return ImmediateEventExecutor.INSTANCE.newSucceededFuture(transferToClient(in));
+        } catch (IOException ex) {
+            return ImmediateEventExecutor.INSTANCE.newFailedFuture(ex);
+        } finally {
+            IoUtils.close(in);
+        }
+    }
+
+    /**
+     * Transfers in the calling thread, the returned future is always completed.
+     */
+    public Future<Long> transferToClientAsync(final String str) {
+        try {
+            transferToClient(str);
+            return ImmediateEventExecutor.INSTANCE.newSucceededFuture((long) str.getBytes("UTF-8").length);
+        } catch (IOException ex) {
+            return ImmediateEventExecutor.INSTANCE.newFailedFuture(ex);
+        }
+    }
+
     private final long transfer(boolean isWrite,
                                 final InputStream in, final OutputStream out, final int maxRate)
             throws IOException {
         long transferredSize = 0L;
 
         boolean isAscii = channel.getDataType() == DataType.ASCII;
-        long startTime = System.currentTimeMillis();
+        TokenBucket bucket = maxRate > 0 ? new TokenBucket(maxRate) : null;
         byte[] buff = new byte[4096];
 
         BufferedInputStream bis = null;
@@ -203,33 +251,14 @@ public class IODataConnection implements DataConnection {
         try {
             bis = IoUtils.getBufferedInputStream(in);
 
-            bos = IoUtils.getBufferedOutputStream(out);
+            // if ascii, replace \n by \r\n on writes and the line endings
+            // by the system local line ending on reads
+            bos = IoUtils.getBufferedOutputStream(!isAscii ? out
+                    : isWrite ? AsciiConverter.toNetwork().wrap(out)
+                    : AsciiConverter.toLocal().wrap(out));
 
-            byte lastByte = 0;
             while (true) {
 
-                // if current rate exceeds the max rate, sleep for 50ms
-                // and again check the current transfer rate
-                if (maxRate > 0) {
-
-                    // prevent "divide by zero" exception
-                    long interval = System.currentTimeMillis() - startTime;
-                    if (interval == 0) {
-                        interval = 1;
-                    }
-
-                    // check current rate
-                    long currRate = (transferredSize * 1000L) / interval;
-                    if (currRate > maxRate) {
-                        try {
-                            Thread.sleep(50);
-                        } catch (InterruptedException ex) {
-                            break;
-                        }
-                        continue;
-                    }
-                }
-
                 // read data
                 int count = bis.read(buff);
 
@@ -247,42 +276,24 @@ public class IODataConnection implements DataConnection {
                 }
 
                 // write data
-                // if ascii, replace \n by \r\n
-                if (isAscii) {
-                    for (int i = 0; i < count; ++i) {
-                        byte b = buff[i];
-                        if(isWrite) {
-                            if (b == '\n' && lastByte != '\r') {
-                                bos.write('\r');
-                            }
-    
-                            bos.write(b);
-                        } else {
-                            if(b == '\n') {
-                                // for reads, we should always get \r\n
-                                // so what we do here is to ignore \n bytes 
-                                // and on \r dump the system local line ending.
-                                // Some clients won't transform new lines into \r\n so we make sure we don't delete new lines
-                                if (lastByte != '\r'){
-                                    bos.write(EOL);
-                                }
-                            } else if(b == '\r') {
-                                bos.write(EOL);
-                            } else {
-                                // not a line ending, just output
-                                bos.write(b);
-                            }
-                        }
-                        // store this byte so that we can compare it for line endings
-                        lastByte = b;
-                    }
-                } else {
-                    bos.write(buff, 0, count);
-                }
+                bos.write(buff, 0, count);
 
                 transferredSize += count;
 
                 notifyObserver();
+
+                // this stream based connection blocks anyway, wait for the
+                // bucket to be out of debt before reading more
+                if (bucket != null) {
+                    long wait = bucket.take(count);
+                    if (wait > 0) {
+                        try {
+                            TimeUnit.NANOSECONDS.sleep(wait);
+                        } catch (InterruptedException ex) {
+                            break;
+                        }
+                    }
+                }
             }
         } catch(IOException e) {
             LOG.warn("Exception during data transfer, closing data connection socket", e);
@@ -26,6 +26,8 @@ import io.netty.ftpserver.ftplet.FtpException;
 import io.netty.ftpserver.listener.nio.channel.FtpChannel;
 import io.netty.ftpserver.ssl.ClientAuth;
 import io.netty.ftpserver.ssl.SslConfiguration;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,6 +39,7 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.UnknownHostException;
+import java.util.zip.Deflater;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
@@ -67,6 +70,8 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
 
     private boolean isZip = false;
 
+    private int zipLevel = Deflater.DEFAULT_COMPRESSION;
+
     InetAddress serverControlAddress;
 
     FtpChannel channel;
@@ -238,6 +243,19 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
         return new IODataConnection(createDataSocket(), channel, this);
     }
 
+    /**
+     * Opens the connection in the calling thread, the returned future is
+     * always completed.
+     */
+    public Future<AsyncDataConnection> openConnectionAsync() {
+        try {
+            return ImmediateEventExecutor.INSTANCE.<AsyncDataConnection>newSucceededFuture(
+                    new IODataConnection(createDataSocket(), channel, this));
+        } catch (Exception ex) {
+            return ImmediateEventExecutor.INSTANCE.newFailedFuture(ex);
+        }
+    }
+
     /**
      * Get the data socket. In case of error returns null.
      */
@@ -422,6 +440,73 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
         isZip = zip;
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.impl.ServerDataConnectionFactory#getZipLevel()
+     */
+    public int getZipLevel() {
+        return zipLevel;
+    }
+
+    /**
+     * Set zip compression level.
+     */
+    public void setZipLevel(final int level) {
+        zipLevel = level;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.impl.ServerDataConnectionFactory#isExtendedBlockMode()
+     */
+    public boolean isExtendedBlockMode() {
+        return false;
+    }
+
+    /**
+     * Extended block mode is not supported on the blocking sockets.
+     */
+    public void setExtendedBlockMode(final boolean extended) {
+        if (extended) {
+            throw new UnsupportedOperationException("Extended block mode not supported");
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.impl.ServerDataConnectionFactory#getParallelism()
+     */
+    public int getParallelism() {
+        return 1;
+    }
+
+    /**
+     * Ignored, a single data connection is used.
+     */
+    public void setParallelism(final int parallelism) {
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.impl.ServerDataConnectionFactory#isBlockMode()
+     */
+    public boolean isBlockMode() {
+        return false;
+    }
+
+    /**
+     * Block mode is not supported on the blocking sockets.
+     */
+    public void setBlockMode(final boolean block) {
+        if (block) {
+            throw new UnsupportedOperationException("Block mode not supported");
+        }
+    }
+
     /**
      * Check the data connection idle status.
      */
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.ftpserver.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.compression.DecompressionException;
+
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Decompresses the data received in MODE Z with a pooled {@link Inflater},
+ * into large heap buffers.
+ *
+ * @author Io Netty Project
+ */
+public class ModeZDecoder extends ByteToMessageDecoder {
+
+    private Inflater inflater;
+
+    private boolean finished;
+
+    private byte[] input;
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        inflater = ZlibPool.borrowInflater();
+    }
+
+    @Override
+    protected void handlerRemoved0(ChannelHandlerContext ctx) {
+        if (inflater != null) {
+            ZlibPool.release(inflater);
+            inflater = null;
+        }
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        int len = in.readableBytes();
+        if (finished || inflater == null) {
+            // ignore what follows the end of the compressed stream
+            in.skipBytes(len);
+            return;
+        }
+
+        if (in.hasArray()) {
+            inflater.setInput(in.array(), in.arrayOffset() + in.readerIndex(), len);
+        } else {
+            if (input == null || input.length < len) {
+                input = new byte[Math.max(len, ZlibPool.BUFFER_SIZE)];
+            }
+            in.getBytes(in.readerIndex(), input, 0, len);
+            inflater.setInput(input, 0, len);
+        }
+
+        try {
+            while (true) {
+                ByteBuf decompressed = ctx.alloc().heapBuffer(ZlibPool.BUFFER_SIZE);
+                int n = inflater.inflate(decompressed.array(),
+                        decompressed.arrayOffset() + decompressed.writerIndex(),
+                        decompressed.writableBytes());
+                if (n > 0) {
+                    decompressed.writerIndex(decompressed.writerIndex() + n);
+                    out.add(decompressed);
+                } else {
+                    decompressed.release();
+                }
+                if (inflater.finished()) {
+                    finished = true;
+                    break;
+                }
+                if (inflater.needsDictionary()) {
+                    throw new DecompressionException("Decompression failed: dictionary required");
+                }
+                if (n == 0 && inflater.needsInput()) {
+                    break;
+                }
+            }
+        } catch (DataFormatException ex) {
+            throw new DecompressionException("Decompression failed", ex);
+        }
+        in.skipBytes(len - inflater.getRemaining());
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.ftpserver.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.MessageToByteEncoder;
+
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Compresses the data sent in MODE Z with a pooled {@link Deflater}. The
+ * data is deflated from and into large heap arrays, the source level of the
+ * project predating the {@link java.nio.ByteBuffer} methods of the
+ * {@link Deflater}.
+ *
+ * Content already compressed is sent at the store level, without burning
+ * CPU for no gain. It is told by the extension of the file, when known, or
+ * by the entropy of the first {@link #SAMPLE_SIZE} bytes sent.
+ *
+ * @author Io Netty Project
+ */
+public class ModeZEncoder extends MessageToByteEncoder<ByteBuf> {
+
+    /**
+     * The number of bytes sampled to estimate the entropy of the content
+     */
+    public static final int SAMPLE_SIZE = 4096;
+
+    /**
+     * The entropy, in bits per byte, above which the content is considered
+     * already compressed
+     */
+    private static final double INCOMPRESSIBLE_ENTROPY = 7.5;
+
+    private static final String[] COMPRESSED_EXTENSIONS = { ".gz", ".tgz", ".zip", ".bz2", ".tbz2",
+            ".xz", ".txz", ".7z", ".rar", ".zst", ".lz4", ".lzma", ".z", ".jar", ".war",
+            ".jpg", ".jpeg", ".png", ".gif", ".webp", ".mp3", ".mp4", ".m4a", ".mkv",
+            ".avi", ".mov", ".ogg", ".flac", ".docx", ".xlsx", ".pptx", ".apk", ".rpm", ".deb" };
+
+    private final int level;
+
+    private Deflater deflater;
+
+    private boolean sampled;
+
+    private byte[] input;
+
+    private ChannelHandlerContext ctx;
+
+    /**
+     * @param level the compression level, from 0 to 9, or
+     *            {@link Deflater#DEFAULT_COMPRESSION}
+     * @param incompressible true to send at the store level from the start
+     */
+    public ModeZEncoder(int level, boolean incompressible) {
+        super(false);
+        this.level = incompressible ? Deflater.NO_COMPRESSION : level;
+        this.sampled = incompressible || level == Deflater.NO_COMPRESSION;
+    }
+
+    /**
+     * Is the file name the one of an already compressed format?
+     */
+    public static boolean isCompressedFileName(String fileName) {
+        String name = fileName.toLowerCase(Locale.ENGLISH);
+        for (String extension : COMPRESSED_EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+        deflater = ZlibPool.borrowDeflater(level);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        if (deflater != null) {
+            ZlibPool.release(deflater);
+            deflater = null;
+        }
+    }
+
+    @Override
+    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, ByteBuf msg, boolean preferDirect) {
+        // the worst case of deflate, 5 bytes per stored block of 16 KB
+        int size = msg.readableBytes() + (msg.readableBytes() >>> 12) + 64;
+        return ctx.alloc().heapBuffer(Math.min(size, ZlibPool.BUFFER_SIZE * 2));
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, ByteBuf msg, ByteBuf out) {
+        int len = msg.readableBytes();
+        if (len == 0 || deflater == null) {
+            return;
+        }
+        if (!sampled) {
+            sampled = true;
+            if (entropy(msg, Math.min(len, SAMPLE_SIZE)) > INCOMPRESSIBLE_ENTROPY) {
+                deflater.setLevel(Deflater.NO_COMPRESSION);
+            }
+        }
+
+        if (msg.hasArray()) {
+            deflater.setInput(msg.array(), msg.arrayOffset() + msg.readerIndex(), len);
+        } else {
+            if (input == null || input.length < len) {
+                input = new byte[Math.max(len, ZlibPool.BUFFER_SIZE)];
+            }
+            msg.getBytes(msg.readerIndex(), input, 0, len);
+            deflater.setInput(input, 0, len);
+        }
+        msg.skipBytes(len);
+        deflate(out, false);
+    }
+
+    /**
+     * Deflate until the input is consumed or, when finishing, until the end
+     * of the compressed stream is written.
+     */
+    private void deflate(ByteBuf out, boolean finishing) {
+        while (true) {
+            out.ensureWritable(ZlibPool.BUFFER_SIZE / 4);
+            int n = deflater.deflate(out.array(), out.arrayOffset() + out.writerIndex(),
+                    out.writableBytes());
+            out.writerIndex(out.writerIndex() + n);
+            if (finishing ? deflater.finished() : deflater.needsInput()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Shannon entropy of the first bytes, in bits per byte.
+     */
+    private static double entropy(ByteBuf buf, int length) {
+        int[] counts = new int[256];
+        int start = buf.readerIndex();
+        for (int i = 0; i < length; i++) {
+            counts[buf.getByte(start + i) & 0xff]++;
+        }
+        double entropy = 0.0;
+        for (int count : counts) {
+            if (count > 0) {
+                double p = (double) count / length;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy / Math.log(2);
+    }
+
+    /**
+     * Write the end of the compressed stream, then close the channel.
+     */
+    public ChannelFuture close() {
+        final ChannelPromise promise = ctx.newPromise();
+        if (ctx.executor().inEventLoop()) {
+            finish(promise);
+        } else {
+            ctx.executor().execute(new Runnable() {
+                public void run() {
+                    finish(promise);
+                }
+            });
+        }
+        return promise;
+    }
+
+    private void finish(final ChannelPromise promise) {
+        if (deflater == null) {
+            ctx.close(promise);
+            return;
+        }
+        deflater.finish();
+        ByteBuf footer = ctx.alloc().heapBuffer(64);
+        deflate(footer, true);
+        ctx.writeAndFlush(footer).addListener(new ChannelFutureListener() {
+            public void operationComplete(ChannelFuture future) {
+                ctx.close(promise);
+            }
+        });
+    }
+}
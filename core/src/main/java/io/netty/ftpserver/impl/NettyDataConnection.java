@@ -0,0 +1,597 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelProgressiveFuture;
+import io.netty.channel.ChannelProgressiveFutureListener;
+import io.netty.channel.ChannelProgressivePromise;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.FileRegion;
+import io.netty.channel.socket.ChannelInputShutdownEvent;
+import io.netty.ftpserver.ftplet.DataType;
+import io.netty.ftpserver.impl.TransferChecksum.ChecksumOutputStream;
+import io.netty.ftpserver.listener.nio.channel.FtpChannel;
+import io.netty.ftpserver.util.IoUtils;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.stream.ChunkedInput;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * A data connection on a Netty {@link Channel}. Transfers run on the data
+ * event loop and complete the returned futures once the data channel is
+ * closed by the server (downloads) or half closed by the client (uploads),
+ * so that the 226 reply always follows the end of the data.
+ *
+ * @author Io Netty Project
+ */
+public class NettyDataConnection implements AsyncDataConnection {
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(NettyDataConnection.class);
+
+    private static final int CHUNK_SIZE = 8192;
+
+    static final String INBOUND_HOLDER = "inboundHolder";
+
+    private final Channel dataChannel;
+
+    private final FtpChannel channel;
+
+    private final ServerDataConnectionFactory factory;
+
+    private volatile Promise<Long> transfer;
+
+    public NettyDataConnection(final Channel dataChannel, final FtpChannel channel,
+                               final ServerDataConnectionFactory factory) {
+        this.dataChannel = dataChannel;
+        this.channel = channel;
+        this.factory = factory;
+    }
+
+    /**
+     * The underlying data channel.
+     */
+    public Channel getDataChannel() {
+        return dataChannel;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.impl.AsyncDataConnection#transferFromClientAsync(java.io.OutputStream)
+     */
+    public Future<Long> transferFromClientAsync(final OutputStream out) {
+        final Promise<Long> promise = newTransfer();
+        final boolean isAscii = channel.getDataType() == DataType.ASCII;
+        final int idleTime = channel.getListener().getDataConnectionConfiguration().getIdleTime();
+
+        // configure the pipeline on the data event loop, so that the data
+        // held since the connection was opened is replayed to the receiver
+        dataChannel.eventLoop().execute(new Runnable() {
+            public void run() {
+                ChannelPipeline pipeline = dataChannel.pipeline();
+                if (pipeline.get(INBOUND_HOLDER) == null) {
+                    promise.tryFailure(new SocketException("Data connection closed"));
+                    return;
+                }
+                TrafficShapingHandler shaper = channel.getContext().getTrafficShaper()
+                        .newHandler(channel);
+                if (shaper != null) {
+                    pipeline.addLast("rateLimiter", shaper);
+                }
+                if (idleTime > 0) {
+                    pipeline.addLast("readTimeout", new ReadTimeoutHandler(idleTime));
+                }
+                if (factory.isZipMode()) {
+                    pipeline.addLast("inflater", new ModeZDecoder());
+                }
+                if (isAscii) {
+                    pipeline.addLast("ascii", new AsciiCodec());
+                }
+                pipeline.addLast("receiver", new ReceiveHandler(out, promise));
+                pipeline.remove(INBOUND_HOLDER);
+                dataChannel.config().setAutoRead(true);
+            }
+        });
+        return promise;
+    }
+
+    /**
+     * Write a binary buffer to the stream, straight from the pooled direct
+     * buffer into the file channel when the stream is a file, without the
+     * intermediate heap copy of {@link OutputStream#write(byte[])}.
+     */
+    static void writeBinary(ByteBuf buf, OutputStream out) throws IOException {
+        if (out instanceof ChecksumOutputStream) {
+            // digest the buffer in place and keep the file channel path
+            ((ChecksumOutputStream) out).getChecksum().update(buf);
+            out = ((ChecksumOutputStream) out).getTarget();
+        }
+        if (out instanceof RangedUploads.Segment) {
+            // positional writes, without copy to a byte array
+            int length = buf.readableBytes();
+            for (ByteBuffer nioBuffer : buf.nioBuffers(buf.readerIndex(), length)) {
+                ((RangedUploads.Segment) out).write(nioBuffer);
+            }
+            buf.skipBytes(length);
+            return;
+        }
+        if (out instanceof FileOutputStream) {
+            FileChannel fileChannel = ((FileOutputStream) out).getChannel();
+            while (buf.isReadable()) {
+                buf.readBytes(fileChannel, buf.readableBytes());
+            }
+        } else {
+            buf.readBytes(out, buf.readableBytes());
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.impl.AsyncDataConnection#transferToClientAsync(java.io.InputStream)
+     */
+    public Future<Long> transferToClientAsync(final InputStream in) {
+        return transferToClientAsync(in, channel.getContext().getTrafficShaper()
+                .newHandler(channel), false);
+    }
+
+    private Future<Long> transferToClientAsync(final InputStream in, TrafficShapingHandler shaper,
+            boolean incompressible) {
+        final Promise<Long> promise = newTransfer();
+
+        ChannelPipeline pipeline = dataChannel.pipeline();
+        if (shaper != null) {
+            pipeline.addLast("rateLimiter", shaper);
+        }
+        if (factory.isZipMode()) {
+            pipeline.addLast("deflater", new ModeZEncoder(factory.getZipLevel(), incompressible));
+        }
+        if (channel.getDataType() == DataType.ASCII) {
+            pipeline.addLast("ascii", new AsciiCodec());
+        }
+        pipeline.addLast("chunkedWriter", new ChunkedWriteHandler());
+
+        final StreamInput input = new StreamInput(in);
+        dataChannel.writeAndFlush(input).addListener(new ChannelFutureListener() {
+            public void operationComplete(ChannelFuture future) {
+                if (!future.isSuccess()) {
+                    failed(promise, future.cause());
+                    return;
+                }
+                finish(promise, input.transferredSize);
+            }
+        });
+        return promise;
+    }
+
+    /**
+     * Sends the file with a {@link DefaultFileRegion}, that is with sendfile(2),
+     * unless the data has to go through the user space: in ASCII, SSL or MODE Z,
+     * or when the downloads are shaped, the file is sent in chunks.
+     */
+    public Future<Long> transferToClientAsync(final File file, final long offset, long count) {
+        // the downloads of the same file share its channel, read with
+        // positional reads
+        final SharedFileChannels.Handle handle;
+        try {
+            handle = channel.getContext().getSharedFileChannels().acquire(file);
+        } catch (IOException ex) {
+            return dataChannel.eventLoop().newFailedFuture(ex);
+        }
+        final long length = Math.max(0L, count < 0L ? handle.getLength() - offset
+                : Math.min(count, handle.getLength() - offset));
+
+        // shapes the file region as well as the chunks
+        TrafficShapingHandler shaper = channel.getContext().getTrafficShaper()
+                .newHandler(channel);
+        if (shaper != null) {
+            dataChannel.pipeline().addLast("rateLimiter", shaper);
+        }
+
+        if (channel.getDataType() == DataType.ASCII || factory.isZipMode()
+                || dataChannel.pipeline().get(SslHandler.class) != null
+                || (shaper != null && shaper.isWriteLimited())) {
+            final InputStream in = handle.newInputStream(offset, length);
+            Future<Long> future = transferToClientAsync(in, null,
+                    ModeZEncoder.isCompressedFileName(file.getName()));
+            future.addListener(new FutureListener<Long>() {
+                public void operationComplete(Future<Long> future) {
+                    IoUtils.close(in);
+                }
+            });
+            return future;
+        }
+
+        final Promise<Long> promise = newTransfer();
+
+        // the region releases the channel once written
+        FileRegion region = handle.newRegion(offset, length);
+        ChannelProgressivePromise writePromise = dataChannel.newProgressivePromise();
+        writePromise.addListener(new ChannelProgressiveFutureListener() {
+            private long transferredSize = 0L;
+
+            public void operationProgressed(ChannelProgressiveFuture future, long progress, long total) {
+                // update session
+                channel.increaseWrittenDataBytes((int) (progress - transferredSize));
+                transferredSize = progress;
+                notifyObserver();
+            }
+
+            public void operationComplete(ChannelProgressiveFuture future) {
+                if (future.isSuccess()) {
+                    channel.increaseWrittenDataBytes((int) (length - transferredSize));
+                    finish(promise, length);
+                } else {
+                    failed(promise, future.cause());
+                }
+            }
+        });
+        dataChannel.writeAndFlush(region, writePromise);
+        return promise;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.impl.AsyncDataConnection#transferToClientAsync(java.lang.String)
+     */
+    public Future<Long> transferToClientAsync(final String str) {
+        final Promise<Long> promise = newTransfer();
+        if (factory.isZipMode()) {
+            dataChannel.pipeline().addLast("deflater", new ModeZEncoder(factory.getZipLevel(), false));
+        }
+        ByteBuf buf = ByteBufUtil.writeUtf8(dataChannel.alloc(), str);
+        final long size = buf.readableBytes();
+
+        // update session
+        channel.increaseWrittenDataBytes((int) size);
+        dataChannel.writeAndFlush(buf).addListener(new ChannelFutureListener() {
+            public void operationComplete(ChannelFuture future) {
+                if (future.isSuccess()) {
+                    finish(promise, size);
+                } else {
+                    failed(promise, future.cause());
+                }
+            }
+        });
+        return promise;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.ftplet.DataConnection#transferFromClient(java.io.OutputStream)
+     */
+    public final long transferFromClient(final OutputStream out) throws IOException {
+        return await(transferFromClientAsync(out));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.ftplet.DataConnection#transferToClient(java.io.InputStream)
+     */
+    public final long transferToClient(final InputStream in) throws IOException {
+        return await(transferToClientAsync(in));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.ftplet.DataConnection#transferToClient(java.lang.String)
+     */
+    public final void transferToClient(final String str) throws IOException {
+        await(transferToClientAsync(str));
+    }
+
+    /**
+     * The future of the last transfer started on this connection, null if none.
+     */
+    Future<Long> getTransferFuture() {
+        return transfer;
+    }
+
+    /**
+     * Fail the running transfer, if any, and close the data channel.
+     */
+    void abort() {
+        Promise<Long> promise = transfer;
+        if (promise != null) {
+            promise.tryFailure(new SocketException("Data connection closed"));
+        }
+        dataChannel.close();
+    }
+
+    private Promise<Long> newTransfer() {
+        Promise<Long> promise = dataChannel.eventLoop().newPromise();
+        transfer = promise;
+        return promise;
+    }
+
+    /**
+     * Close the data channel, flushing the compressed stream trailer in
+     * MODE Z, then complete the transfer.
+     */
+    private void finish(final Promise<Long> promise, final long transferredSize) {
+        ChannelHandler deflater = dataChannel.pipeline().get("deflater");
+        ChannelFuture closeFuture;
+        if (deflater instanceof ModeZEncoder) {
+            closeFuture = ((ModeZEncoder) deflater).close();
+        } else {
+            closeFuture = dataChannel.close();
+        }
+        closeFuture.addListener(new ChannelFutureListener() {
+            public void operationComplete(ChannelFuture future) {
+                if (future.isSuccess()) {
+                    promise.trySuccess(transferredSize);
+                } else {
+                    failed(promise, future.cause());
+                }
+            }
+        });
+    }
+
+    /**
+     * Fail the transfer. Errors of the data channel are reported as
+     * {@link SocketException} while errors of the local stream are kept as is.
+     */
+    private void failed(Promise<Long> promise, Throwable cause) {
+        LOG.warn("Exception during data transfer, closing data connection channel", cause);
+        if (!(cause instanceof LocalStreamException)) {
+            cause = toSocketException(cause);
+        } else {
+            cause = cause.getCause();
+        }
+        promise.tryFailure(cause);
+        dataChannel.close();
+    }
+
+    static SocketException toSocketException(Throwable cause) {
+        if (cause instanceof SocketException) {
+            return (SocketException) cause;
+        }
+        SocketException ex = new SocketException(cause.getMessage());
+        ex.initCause(cause);
+        return ex;
+    }
+
+    static long await(Future<Long> future) throws IOException {
+        future.awaitUninterruptibly();
+        if (future.isSuccess()) {
+            return future.getNow();
+        }
+        Throwable cause = future.cause();
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        }
+        throw new IOException(cause);
+    }
+
+    /**
+     * Notify connection manager observer.
+     */
+    protected void notifyObserver() {
+        channel.updateLastAccessTime();
+    }
+
+    /**
+     * Marks a failure of the local stream, to be told apart from the
+     * failures of the data channel.
+     */
+    private static final class LocalStreamException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        LocalStreamException(IOException cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * Holds what the data channel receives before a transfer is started.
+     * The native transports read the data and the end of input of a short
+     * upload even with auto read disabled, so they are replayed to the
+     * transfer handlers when this handler is removed.
+     */
+    static final class InboundHolder extends ChannelInboundHandlerAdapter {
+
+        private final List<Object> pending = new ArrayList<Object>();
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            pending.add(msg);
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+            if (evt instanceof ChannelInputShutdownEvent) {
+                pending.add(evt);
+            } else {
+                ctx.fireUserEventTriggered(evt);
+            }
+        }
+
+        @Override
+        public void handlerRemoved(ChannelHandlerContext ctx) {
+            for (Object msg : pending) {
+                if (msg instanceof ChannelInputShutdownEvent) {
+                    ctx.fireUserEventTriggered(msg);
+                } else {
+                    ctx.fireChannelRead(msg);
+                }
+            }
+            if (!pending.isEmpty()) {
+                pending.clear();
+                ctx.fireChannelReadComplete();
+            }
+        }
+    }
+
+    /**
+     * Reads the local stream in chunks, the line endings are converted by the
+     * {@link AsciiCodec} of the pipeline in ASCII mode.
+     */
+    private final class StreamInput implements ChunkedInput<ByteBuf> {
+
+        private final InputStream in;
+
+        private final byte[] buff = new byte[CHUNK_SIZE];
+
+        private boolean endOfInput;
+
+        private long transferredSize = 0L;
+
+        StreamInput(InputStream in) {
+            this.in = in;
+        }
+
+        public boolean isEndOfInput() {
+            return endOfInput;
+        }
+
+        public void close() {
+            // the stream is owned by the command
+        }
+
+        @Deprecated
+        public ByteBuf readChunk(ChannelHandlerContext ctx) throws Exception {
+            return readChunk(ctx.alloc());
+        }
+
+        public ByteBuf readChunk(ByteBufAllocator allocator) throws Exception {
+            int count;
+            try {
+                count = in.read(buff);
+            } catch (IOException ex) {
+                throw new LocalStreamException(ex);
+            }
+            if (count == -1) {
+                endOfInput = true;
+                return null;
+            }
+
+            // update session
+            channel.increaseWrittenDataBytes(count);
+            transferredSize += count;
+            notifyObserver();
+
+            return allocator.buffer(count).writeBytes(buff, 0, count);
+        }
+
+        public long length() {
+            return -1;
+        }
+
+        public long progress() {
+            return transferredSize;
+        }
+    }
+
+    /**
+     * Writes the received data into the local stream and completes the
+     * transfer when the client closes the data connection.
+     */
+    private final class ReceiveHandler extends ChannelInboundHandlerAdapter {
+
+        private final OutputStream out;
+
+        private final Promise<Long> promise;
+
+        private long transferredSize = 0L;
+
+        ReceiveHandler(OutputStream out, Promise<Long> promise) {
+            this.out = out;
+            this.promise = promise;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            ByteBuf buf = (ByteBuf) msg;
+            try {
+                int count = buf.readableBytes();
+
+                // update session
+                channel.increaseReadDataBytes(count);
+                writeBinary(buf, out);
+                transferredSize += count;
+                notifyObserver();
+
+                // stop reading while the extractor is behind
+                if (out instanceof ArchiveExtractor) {
+                    ((ArchiveExtractor) out).pauseReads(dataChannel);
+                }
+            } catch (IOException ex) {
+                failed(promise, new LocalStreamException(ex));
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt instanceof ChannelInputShutdownEvent) {
+                promise.trySuccess(transferredSize);
+            }
+            super.userEventTriggered(ctx, evt);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            promise.trySuccess(transferredSize);
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            failed(promise, cause);
+        }
+    }
+}
@@ -0,0 +1,857 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.impl;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.ftpserver.DataConnectionConfiguration;
+import io.netty.ftpserver.DataConnectionException;
+import io.netty.ftpserver.ftplet.DataConnection;
+import io.netty.ftpserver.listener.nio.channel.FtpChannel;
+import io.netty.ftpserver.ssl.ClientAuth;
+import io.netty.ftpserver.ssl.SslConfiguration;
+import io.netty.ftpserver.util.DefaultEventLoopConfig;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLEngine;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Non-blocking data connection factory. The PASV/EPSV data connections are
+ * accepted by a Netty {@link ServerBootstrap} and the PORT/EPRT data
+ * connections are opened by a Netty {@link Bootstrap}, both running on the
+ * data event loop group of the listener. When the passive channels are
+ * shared, the PASV/EPSV data connections are accepted by the
+ * {@link SharedPassiveListener} of the listener instead.
+ *
+ * In extended block mode, the data connection gathers all the channels
+ * accepted on the passive port, or the parallel channels opened to the
+ * active address, into an {@link ExtendedBlockDataConnection}. In block
+ * mode, the {@link BlockModeDataConnection} is kept open for the following
+ * transfers, until a new PASV or PORT, another mode or its idle timeout.
+ *
+ * @author Io Netty Project
+ */
+public class NettyDataConnectionFactory implements ServerDataConnectionFactory {
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(NettyDataConnectionFactory.class);
+
+    static final String SSL_HANDLER = "sslFilter";
+
+    private final FtpChannel channel;
+
+    private Channel serverChannel;
+
+    private Promise<Channel> acceptPromise;
+
+    private NettyDataConnection dataConnection;
+
+    private ExtendedBlockDataConnection extendedConnection;
+
+    private BlockModeDataConnection blockConnection;
+
+    private Future<Channel> activeConnect;
+
+    private final List<Channel> extraChannels = new ArrayList<Channel>();
+
+    private InetAddress address;
+
+    private int port = 0;
+
+    private long requestTime = 0L;
+
+    private boolean passive = false;
+
+    private boolean secure = false;
+
+    private boolean isZip = false;
+
+    private int zipLevel = Deflater.DEFAULT_COMPRESSION;
+
+    private boolean extendedBlockMode = false;
+
+    private int parallelism = 1;
+
+    private boolean blockMode = false;
+
+    private InetAddress serverControlAddress;
+
+    public NettyDataConnectionFactory(final FtpChannel channel) {
+        this.channel = channel;
+        if ((channel != null) && (channel.getListener() != null) &&
+                channel.getListener().getDataConnectionConfiguration().isImplicitSsl()) {
+            secure = true;
+        }
+    }
+
+    /**
+     * Close the data channel and the passive server channel, if any.
+     * This method must be idempotent as we might call it multiple times during disconnect.
+     * It never blocks, as it is also called from the data event loop.
+     */
+    public synchronized void closeDataConnection() {
+
+        // in block mode, the data channel is kept for the next transfer
+        if (blockConnection != null && (!blockMode || !blockConnection.isReusable())) {
+            closeBlockConnection();
+        }
+
+        // abort the running transfer, if any, and close the data channel
+        if (dataConnection != null) {
+            dataConnection.abort();
+            dataConnection = null;
+        }
+        if (extendedConnection != null) {
+            extendedConnection.abort();
+            extendedConnection = null;
+        }
+
+        // the parallel data channels not yet handed over to a transfer
+        for (Channel extra : extraChannels) {
+            extra.close();
+        }
+        extraChannels.clear();
+        activeConnect = null;
+
+        // an accepted data channel not yet handed over to a transfer
+        if (acceptPromise != null) {
+            if (!acceptPromise.tryFailure(new SocketException("Data connection closed"))
+                    && acceptPromise.isSuccess()) {
+                acceptPromise.getNow().close();
+            }
+            acceptPromise = null;
+        }
+
+        // close server channel if any
+        if (serverChannel != null) {
+            serverChannel.close();
+
+            DataConnectionConfiguration dcc = channel.getListener()
+                    .getDataConnectionConfiguration();
+            if (dcc != null) {
+                dcc.releasePassivePort(port);
+            }
+
+            serverChannel = null;
+        }
+
+        // reset request time
+        requestTime = 0L;
+    }
+
+    /**
+     * The future of the transfer running on the open data connection, null if
+     * none. Listeners added to it are notified after the ones of the command
+     * that started the transfer.
+     */
+    public synchronized Future<Long> getTransferFuture() {
+        if (blockConnection != null) {
+            return blockConnection.getTransferFuture();
+        }
+        if (extendedConnection != null) {
+            return extendedConnection.getTransferFuture();
+        }
+        return dataConnection == null ? null : dataConnection.getTransferFuture();
+    }
+
+    /**
+     * Port command.
+     */
+    public synchronized void initActiveDataConnection(
+            final InetSocketAddress address) {
+
+        // close old channels if any
+        closeBlockConnection();
+        closeDataConnection();
+
+        // set variables
+        passive = false;
+        this.address = address.getAddress();
+        port = address.getPort();
+        requestTime = System.currentTimeMillis();
+    }
+
+    private SslConfiguration getSslConfiguration() {
+        DataConnectionConfiguration dataCfg = channel.getListener()
+                .getDataConnectionConfiguration();
+
+        SslConfiguration configuration = dataCfg.getSslConfiguration();
+
+        // fall back if no configuration has been provided on the data connection config
+        if (configuration == null) {
+            configuration = channel.getListener().getSslConfiguration();
+        }
+
+        return configuration;
+    }
+
+    /**
+     * Initiate a data connection in passive mode (server listening).
+     * The bind is awaited outside of the lock so that a transfer completing
+     * on the data event loop can still close its data connection.
+     */
+    public InetSocketAddress initPassiveDataConnection()
+            throws DataConnectionException {
+        LOG.debug("Initiating passive data connection");
+
+        DataConnectionConfiguration dataCfg = channel.getListener()
+                .getDataConnectionConfiguration();
+        SharedPassiveListener sharedPassive = channel.getListener().getSharedPassiveListener();
+        final InetAddress bindAddress;
+        final int passivePort;
+        final Promise<Channel> promise;
+        synchronized (this) {
+            // close old channels if any
+            closeBlockConnection();
+            closeDataConnection();
+
+            if (secure && getSslConfiguration() == null) {
+                throw new DataConnectionException("Data connection SSL required but not configured.");
+            }
+
+            // get the passive port, the shared channels have their own
+            passivePort = sharedPassive == null ? dataCfg.requestPassivePort() : 0;
+            if (passivePort == -1) {
+                throw new DataConnectionException(
+                        "Cannot find an available passive port.");
+            }
+
+            String passiveAddress = dataCfg.getPassiveAddress();
+            try {
+                if (passiveAddress == null) {
+                    bindAddress = serverControlAddress;
+                } else {
+                    bindAddress = resolveAddress(passiveAddress);
+                }
+            } catch (DataConnectionException ex) {
+                dataCfg.releasePassivePort(passivePort);
+                throw ex;
+            }
+            promise = getDataGroup().next().newPromise();
+            acceptPromise = promise;
+        }
+
+        if (sharedPassive != null) {
+            return initSharedPassiveDataConnection(sharedPassive, bindAddress, promise);
+        }
+
+        // open passive server channel and get parameters
+        LOG.debug("Opening {}passive data connection on address \"{}\" and port {}",
+                secure ? "SSL " : "", bindAddress, passivePort);
+        ChannelFuture bindFuture;
+        try {
+            ServerBootstrap serverBootstrap = new ServerBootstrap();
+            serverBootstrap.group(getDataGroup())
+                    .channel(new DefaultEventLoopConfig(channel.getListener().getChannelType()).getServerChannel())
+                    .option(ChannelOption.SO_REUSEADDR, true)
+                    .childOption(ChannelOption.AUTO_READ, false)
+                    .childOption(ChannelOption.ALLOW_HALF_CLOSURE, true)
+                    .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                    .childHandler(new ChannelInitializer<Channel>() {
+                        @Override
+                        protected void initChannel(Channel ch) throws Exception {
+                            acceptDataChannel(promise, ch);
+                        }
+                    });
+            bindFuture = serverBootstrap.bind(bindAddress, passivePort).awaitUninterruptibly();
+        } catch (ClassNotFoundException ex) {
+            bindFuture = null;
+            promise.tryFailure(ex);
+        }
+
+        synchronized (this) {
+            if (bindFuture == null || !bindFuture.isSuccess() || acceptPromise != promise) {
+                Throwable cause = bindFuture == null ? promise.cause() : bindFuture.cause();
+                if (bindFuture != null) {
+                    bindFuture.channel().close();
+                }
+                dataCfg.releasePassivePort(passivePort);
+                if (acceptPromise == promise) {
+                    acceptPromise = null;
+                }
+                throw new DataConnectionException("Failed to initate passive data connection: "
+                        + (cause == null ? "closed" : cause.getMessage()), cause);
+            }
+            serverChannel = bindFuture.channel();
+            return passiveOpened(bindAddress, ((InetSocketAddress) serverChannel.localAddress()).getPort());
+        }
+    }
+
+    /**
+     * Wait for the passive data connection on the shared passive channels.
+     */
+    private InetSocketAddress initSharedPassiveDataConnection(SharedPassiveListener sharedPassive,
+            InetAddress bindAddress, Promise<Channel> promise) throws DataConnectionException {
+        InetSocketAddress sharedAddress;
+        try {
+            sharedAddress = sharedPassive.register(bindAddress,
+                    channel.remoteAddress().getAddress(), this, promise);
+        } catch (DataConnectionException ex) {
+            promise.tryFailure(ex);
+            synchronized (this) {
+                if (acceptPromise == promise) {
+                    acceptPromise = null;
+                }
+            }
+            throw ex;
+        }
+
+        synchronized (this) {
+            if (acceptPromise != promise) {
+                throw new DataConnectionException("Failed to initate passive data connection: closed");
+            }
+            return passiveOpened(bindAddress, sharedAddress.getPort());
+        }
+    }
+
+    private InetSocketAddress passiveOpened(InetAddress bindAddress, int boundPort) {
+        address = bindAddress;
+        port = boundPort;
+        LOG.debug("{}Passive data connection created on address \"{}\" and port {}",
+                secure ? "SSL " : "", address, port);
+
+        // set different state variables
+        passive = true;
+        requestTime = System.currentTimeMillis();
+
+        return new InetSocketAddress(address, port);
+    }
+
+    /**
+     * Hand an accepted data channel over to the pending accept promise.
+     */
+    void acceptDataChannel(Promise<Channel> promise, Channel ch)
+            throws GeneralSecurityException {
+        if (promise.isDone() && !extendedBlockMode) {
+            LOG.debug("Data connection already accepted, closing {}", ch);
+            ch.close();
+            return;
+        }
+        if (channel.getListener().getDataConnectionConfiguration().isPassiveIpCheck()) {
+            // Let's make sure we got the connection from the same
+            // client that we are expecting
+            InetAddress remoteAddress = channel.remoteAddress().getAddress();
+            InetAddress dataChannelAddress = ((InetSocketAddress) ch.remoteAddress()).getAddress();
+            if (!dataChannelAddress.equals(remoteAddress)) {
+                LOG.warn("Passive IP Check failed. Closing data connection from "
+                        + dataChannelAddress
+                        + " as it does not match the expected address "
+                        + remoteAddress);
+                ch.close();
+                return;
+            }
+        }
+        if (secure) {
+            ch.pipeline().addFirst(SSL_HANDLER, createSslHandler());
+        }
+        ch.pipeline().addLast(NettyDataConnection.INBOUND_HOLDER, new NettyDataConnection.InboundHolder());
+        if (!promise.trySuccess(ch)) {
+            // a parallel channel of extended block mode
+            addExtraChannel(promise, ch);
+        }
+    }
+
+    /**
+     * Add a parallel data channel to the extended block mode data connection,
+     * or keep it until the connection is opened.
+     *
+     * @param origin the accept or connect future of the first data channel
+     */
+    private void addExtraChannel(Future<Channel> origin, Channel ch) {
+        ExtendedBlockDataConnection connection;
+        synchronized (this) {
+            if (!extendedBlockMode || (origin.isDone() && !origin.isSuccess())
+                    || (origin != acceptPromise && origin != activeConnect)) {
+                LOG.debug("Data connection already accepted, closing {}", ch);
+                ch.close();
+                return;
+            }
+            connection = extendedConnection;
+            if (connection == null) {
+                extraChannels.add(ch);
+                return;
+            }
+        }
+        LOG.debug("Parallel data connection added {}", ch);
+        connection.addChannel(ch);
+    }
+
+    private SslHandler createSslHandler() throws GeneralSecurityException {
+        SslConfiguration ssl = getSslConfiguration();
+        SSLEngine engine = ssl.getSSLContext().createSSLEngine();
+        engine.setUseClientMode(false);
+        if (ssl.getClientAuth() == ClientAuth.NEED) {
+            engine.setNeedClientAuth(true);
+        } else if (ssl.getClientAuth() == ClientAuth.WANT) {
+            engine.setWantClientAuth(true);
+        }
+        if (ssl.getEnabledCipherSuites() != null) {
+            engine.setEnabledCipherSuites(ssl.getEnabledCipherSuites());
+        }
+        return new SslHandler(engine);
+    }
+
+    private EventLoopGroup getDataGroup() {
+        return channel.getListener().getDataEventLoopGroup();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.FtpDataConnectionFactory2#getInetAddress()
+     */
+    public InetAddress getInetAddress() {
+        return address;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.FtpDataConnectionFactory2#getPort()
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Blocking variant of {@link #openConnectionAsync()}, must not be called
+     * from the data event loop.
+     */
+    public DataConnection openConnection() throws Exception {
+        Future<AsyncDataConnection> future = openConnectionAsync().awaitUninterruptibly();
+        if (!future.isSuccess()) {
+            Throwable cause = future.cause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw new IOException(cause);
+        }
+        return future.getNow();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.impl.ServerDataConnectionFactory#openConnectionAsync()
+     */
+    public synchronized Future<AsyncDataConnection> openConnectionAsync() {
+        final Promise<AsyncDataConnection> result = getDataGroup().next().newPromise();
+        final DataConnectionConfiguration dataConfig = channel.getListener()
+                .getDataConnectionConfiguration();
+
+        // the block mode data connection kept since the last transfer
+        if (blockConnection != null) {
+            if (blockMode && blockConnection.isReusable()) {
+                LOG.debug("Reusing block mode data connection");
+                return result.setSuccess(blockConnection);
+            }
+            closeBlockConnection();
+        }
+
+        final Future<Channel> connectFuture;
+        if (!passive) {
+            if (address == null) {
+                return result.setFailure(new IOException("Cannot open data connection."));
+            }
+            if (secure && getSslConfiguration() == null) {
+                return result.setFailure(new DataConnectionException("Data connection SSL not configured"));
+            }
+            connectFuture = connectActive(dataConfig, dataConfig.getActiveLocalPort());
+            if (extendedBlockMode) {
+                activeConnect = connectFuture;
+                for (int i = 1; i < parallelism; i++) {
+                    connectParallel(dataConfig, connectFuture);
+                }
+            }
+        } else {
+            if (acceptPromise == null) {
+                return result.setFailure(new IOException("Cannot open data connection."));
+            }
+            LOG.debug("Opening {}passive data connection", secure ? "secure " : "");
+            connectFuture = acceptPromise;
+
+            // the accept timeout, as SO_TIMEOUT on the former blocking accept
+            int idleTime = dataConfig.getIdleTime();
+            if (idleTime > 0 && !acceptPromise.isDone()) {
+                final Promise<Channel> promise = acceptPromise;
+                final ScheduledFuture<?> timeout = getDataGroup().schedule(new Runnable() {
+                    public void run() {
+                        promise.tryFailure(new SocketTimeoutException("Accept timed out"));
+                    }
+                }, idleTime, TimeUnit.SECONDS);
+                promise.addListener(new FutureListener<Channel>() {
+                    public void operationComplete(Future<Channel> future) {
+                        timeout.cancel(false);
+                    }
+                });
+            }
+        }
+
+        connectFuture.addListener(new FutureListener<Channel>() {
+            public void operationComplete(Future<Channel> future) {
+                if (!future.isSuccess()) {
+                    LOG.warn("NettyDataConnectionFactory.openConnectionAsync()", future.cause());
+                    closeDataConnection();
+                    result.tryFailure(future.cause());
+                    return;
+                }
+                final Channel dataChannel = future.getNow();
+                SslHandler sslHandler = dataChannel.pipeline().get(SslHandler.class);
+                if (sslHandler == null) {
+                    opened(dataChannel, result);
+                    return;
+                }
+
+                // Make sure the SSL handshake is completed, or we'll
+                // get an error if we turn out not to send any data
+                // e.g. during the listing of an empty directory
+                sslHandler.handshakeFuture().addListener(new FutureListener<Channel>() {
+                    public void operationComplete(Future<Channel> future) {
+                        if (future.isSuccess()) {
+                            opened(dataChannel, result);
+                        } else {
+                            LOG.warn("Data connection SSL handshake failed", future.cause());
+                            dataChannel.close();
+                            closeDataConnection();
+                            result.tryFailure(future.cause());
+                        }
+                    }
+                });
+            }
+        });
+        return result;
+    }
+
+    private synchronized void opened(Channel dataChannel, Promise<AsyncDataConnection> result) {
+        if (blockMode) {
+            BlockModeDataConnection connection = new BlockModeDataConnection(dataChannel, channel);
+            if (!result.trySuccess(connection)) {
+                dataChannel.close();
+                return;
+            }
+            abortConnections();
+            blockConnection = connection;
+
+            // the channel is owned by the connection from now on
+            if (acceptPromise != null && acceptPromise.isSuccess()) {
+                acceptPromise = null;
+            }
+            LOG.debug("{} block mode data connection opened", passive ? "Passive" : "Active");
+            return;
+        }
+        if (extendedBlockMode) {
+            ExtendedBlockDataConnection connection = new ExtendedBlockDataConnection(channel);
+            connection.addChannel(dataChannel);
+            for (Channel extra : extraChannels) {
+                connection.addChannel(extra);
+            }
+            extraChannels.clear();
+            if (!result.trySuccess(connection)) {
+                connection.abort();
+                return;
+            }
+            abortConnections();
+            extendedConnection = connection;
+            LOG.debug("{} extended block mode data connection opened", passive ? "Passive" : "Active");
+            return;
+        }
+
+        NettyDataConnection connection = new NettyDataConnection(dataChannel, channel, this);
+        if (!result.trySuccess(connection)) {
+            dataChannel.close();
+            return;
+        }
+        abortConnections();
+        dataConnection = connection;
+        LOG.debug("{} data connection opened", passive ? "Passive" : "Active");
+    }
+
+    private void abortConnections() {
+        closeBlockConnection();
+        if (dataConnection != null) {
+            dataConnection.abort();
+            dataConnection = null;
+        }
+        if (extendedConnection != null) {
+            extendedConnection.abort();
+            extendedConnection = null;
+        }
+    }
+
+    private void closeBlockConnection() {
+        if (blockConnection != null) {
+            blockConnection.abort();
+            blockConnection = null;
+        }
+    }
+
+    /**
+     * Open one more active data channel of extended block mode, bound to any
+     * local port as they all connect to the same client port.
+     */
+    private void connectParallel(DataConnectionConfiguration dataConfig, final Future<Channel> origin) {
+        connectActive(dataConfig, 0).addListener(new FutureListener<Channel>() {
+            public void operationComplete(Future<Channel> future) {
+                if (future.isSuccess()) {
+                    addExtraChannel(origin, future.getNow());
+                } else {
+                    LOG.debug("Failed to open parallel data connection", future.cause());
+                }
+            }
+        });
+    }
+
+    private Future<Channel> connectActive(DataConnectionConfiguration dataConfig, int localPort) {
+        final Promise<Channel> promise = getDataGroup().next().newPromise();
+        try {
+            LOG.debug("Opening {}active data connection", secure ? "secure " : "");
+            InetAddress localAddr = resolveAddress(dataConfig
+                    .getActiveLocalAddress());
+
+            // if no local address has been configured, make sure we use the same as the client connects from
+            if (localAddr == null) {
+                localAddr = channel.localAddress().getAddress();
+            }
+
+            InetSocketAddress localSocketAddress = new InetSocketAddress(localAddr, localPort);
+            LOG.debug("Binding active data connection to {}", localSocketAddress);
+
+            final boolean ssl = secure;
+            Bootstrap bootstrap = new Bootstrap();
+            bootstrap.group(getDataGroup())
+                    .channel(new DefaultEventLoopConfig(channel.getListener().getChannelType()).getSocketChannel())
+                    .option(ChannelOption.SO_REUSEADDR, true)
+                    .option(ChannelOption.AUTO_READ, false)
+                    .option(ChannelOption.ALLOW_HALF_CLOSURE, true)
+                    .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                    .localAddress(localSocketAddress)
+                    .handler(new ChannelInitializer<Channel>() {
+                        @Override
+                        protected void initChannel(Channel ch) throws Exception {
+                            if (ssl) {
+                                ch.pipeline().addFirst(SSL_HANDLER, createSslHandler());
+                            }
+                            ch.pipeline().addLast(NettyDataConnection.INBOUND_HOLDER,
+                                    new NettyDataConnection.InboundHolder());
+                        }
+                    });
+            bootstrap.connect(new InetSocketAddress(address, port)).addListener(new ChannelFutureListener() {
+                public void operationComplete(ChannelFuture future) {
+                    if (future.isSuccess()) {
+                        promise.trySuccess(future.channel());
+                    } else {
+                        promise.tryFailure(future.cause());
+                    }
+                }
+            });
+        } catch (Exception ex) {
+            promise.tryFailure(ex);
+        }
+        return promise;
+    }
+
+    /*
+     *  (non-Javadoc)
+     *   Returns an InetAddress object from a hostname or IP address.
+     */
+    private InetAddress resolveAddress(String host)
+            throws DataConnectionException {
+        if (host == null) {
+            return null;
+        } else {
+            try {
+                return InetAddress.getByName(host);
+            } catch (UnknownHostException ex) {
+                throw new DataConnectionException("Failed to resolve address", ex);
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.DataConnectionFactory#isSecure()
+     */
+    public boolean isSecure() {
+        return secure;
+    }
+
+    /**
+     * Set the security protocol.
+     */
+    public void setSecure(final boolean secure) {
+        this.secure = secure;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.DataConnectionFactory#isZipMode()
+     */
+    public boolean isZipMode() {
+        return isZip;
+    }
+
+    /**
+     * Set zip mode.
+     */
+    public void setZipMode(final boolean zip) {
+        isZip = zip;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.impl.ServerDataConnectionFactory#getZipLevel()
+     */
+    public int getZipLevel() {
+        return zipLevel;
+    }
+
+    /**
+     * Set zip compression level.
+     */
+    public void setZipLevel(final int level) {
+        zipLevel = level;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.impl.ServerDataConnectionFactory#isExtendedBlockMode()
+     */
+    public boolean isExtendedBlockMode() {
+        return extendedBlockMode;
+    }
+
+    /**
+     * Set extended block mode.
+     */
+    public synchronized void setExtendedBlockMode(final boolean extended) {
+        extendedBlockMode = extended;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.impl.ServerDataConnectionFactory#getParallelism()
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Set the number of parallel data channels.
+     */
+    public void setParallelism(final int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.ftpserver.impl.ServerDataConnectionFactory#isBlockMode()
+     */
+    public boolean isBlockMode() {
+        return blockMode;
+    }
+
+    /**
+     * Set block mode, closing the kept data connection when turned off.
+     */
+    public synchronized void setBlockMode(final boolean block) {
+        blockMode = block;
+        if (!block) {
+            closeBlockConnection();
+        }
+    }
+
+    /**
+     * Check the data connection idle status.
+     */
+    public synchronized boolean isTimeout(final long currTime) {
+
+        // data connection not requested - not a timeout
+        if (requestTime == 0L) {
+            return false;
+        }
+
+        // data connection active - not a timeout, the kept block mode data
+        // connection has an idle timeout of its own
+        if (dataConnection != null || extendedConnection != null || blockConnection != null) {
+            return false;
+        }
+
+        // no idle time limit - not a timeout
+        int maxIdleTime = channel.getListener()
+                .getDataConnectionConfiguration().getIdleTime() * 1000;
+        if (maxIdleTime == 0) {
+            return false;
+        }
+
+        // idle time is within limit - not a timeout
+        if ((currTime - requestTime) < maxIdleTime) {
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Dispose data connection - close all the channels.
+     */
+    public synchronized void dispose() {
+        closeBlockConnection();
+        closeDataConnection();
+    }
+
+    /**
+     * Sets the server's control address.
+     */
+    public void setServerControlAddress(final InetAddress serverControlAddress) {
+        this.serverControlAddress = serverControlAddress;
+    }
+}
@@ -22,14 +22,19 @@ package io.netty.ftpserver.impl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.netty.util.concurrent.GlobalEventExecutor;
+
 import java.io.IOException;
 import java.net.ServerSocket;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.List;
-import java.util.Random;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
@@ -37,6 +42,12 @@ import java.util.StringTokenizer;
  * Provides support for parsing a passive ports string as well as keeping track
  * of reserved passive ports.
  *
+ * The ports are reserved and released without any lock, one bit per port.
+ * A reservation starts at a random port and takes the next free one, so that
+ * concurrent reservations rarely compete for the same bits. The check that
+ * the ports are not bound by another process is done in the background, and
+ * the ports found bound are skipped until they are found unbound again.
+ *
  * @author Io Netty Project
  */
 public class PassivePorts {
@@ -47,15 +58,40 @@ public class PassivePorts {
 
     private static final Integer MAX_PORT_INTEGER = Integer.valueOf(MAX_PORT);
 
-    private List<Integer> freeList;
+    /**
+     * The minimum time between two checks of the bound ports
+     */
+    private static final long PROBE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    /**
+     * The passive ports, sorted, without the "any" port 0
+     */
+    private final int[] ports;
 
-    private Set<Integer> usedList;
+    /**
+     * Can the "any" port 0 be used?
+     */
+    private final boolean anyPort;
+
+    /**
+     * One bit per port, set while the port is reserved
+     */
+    private final AtomicLongArray reserved;
+
+    /**
+     * One bit per port, set while the port is bound by another process
+     */
+    private final AtomicLongArray unavailable;
 
-    private Random r = new Random();
+    private final long lastWordMask;
+
+    private final AtomicBoolean probing = new AtomicBoolean();
+
+    private final AtomicLong lastProbe = new AtomicLong();
 
     private String passivePortsString;
 
-    private boolean checkIfBound;
+    private final boolean checkIfBound;
 
     /**
      * Parse a string containing passive ports
@@ -153,15 +189,26 @@ public class PassivePorts {
     public PassivePorts(Set<Integer> passivePorts, boolean checkIfBound) {
         if (passivePorts == null) {
             throw new NullPointerException("passivePorts can not be null");
-        } else if(passivePorts.isEmpty()) {
-            passivePorts = new HashSet<Integer>();
-            passivePorts.add(0);
         }
 
-        this.freeList = new ArrayList<Integer>(passivePorts);
-        this.usedList = new HashSet<Integer>(passivePorts.size());
+        int[] sorted = new int[passivePorts.size()];
+        int count = 0;
+        for (Integer port : passivePorts) {
+            if (port.intValue() != 0) {
+                sorted[count++] = port.intValue();
+            }
+        }
+        this.ports = Arrays.copyOf(sorted, count);
+        Arrays.sort(this.ports);
+        this.anyPort = count < passivePorts.size() || passivePorts.isEmpty();
+
+        int words = (count + 63) >>> 6;
+        this.reserved = new AtomicLongArray(words);
+        this.unavailable = new AtomicLongArray(words);
+        this.lastWordMask = (count & 63) == 0 ? -1L : (1L << (count & 63)) - 1;
 
         this.checkIfBound = checkIfBound;
+        this.lastProbe.set(System.nanoTime() - PROBE_INTERVAL_NANOS);
     }
 
     /**
@@ -198,46 +245,144 @@ public class PassivePorts {
         }
     }
 
-    public synchronized int reserveNextPort() {
-        // create a copy of the free ports, so that we can keep track of the tested ports
-        List<Integer> freeCopy = new ArrayList<Integer>(freeList);
-        
-        // Loop until we have found a port, or exhausted all available ports
-        while (freeCopy.size() > 0) {
-            // Otherwise, pick one at random
-            int i = r.nextInt(freeCopy.size());
-            Integer ret = freeCopy.get(i);
-
-            if (ret == 0) {
-                // "Any" port should not be removed from our free list,
-                // nor added to the used list
-                return 0;
-
-            } else if (checkPortUnbound(ret)) {
-                // Not used by someone else, so lets reserve it and return it
-                freeList.remove(ret);
-                usedList.add(ret);
-                return ret;
+    /**
+     * Reserve a passive port.
+     *
+     * @return the reserved port, 0 for any port, -1 if all the ports are reserved
+     */
+    public int reserveNextPort() {
+        if (ports.length == 0) {
+            return anyPort ? 0 : -1;
+        }
+        probeInBackground();
+
+        int start = ThreadLocalRandom.current().nextInt(ports.length);
+        int index = reserve(start, true);
+        if (index == -1 && checkIfBound) {
+            // the bound ports may have been released since the last check,
+            // let the bind tell
+            index = reserve(start, false);
+        }
+        if (index == -1) {
+            return anyPort ? 0 : -1;
+        }
+        return ports[index];
+    }
 
-            } else {
-                freeCopy.remove(i);
-                // log port unavailable, but left in pool
-                log.warn("Passive port in use by another process: " + ret);
+    /**
+     * Reserve the first free port from the start index, wrapping around.
+     *
+     * @return the index of the reserved port, -1 if none is free
+     */
+    private int reserve(int start, boolean skipUnavailable) {
+        int words = reserved.length();
+        int first = start >>> 6;
+        long firstMask = -1L << (start & 63);
+        for (int i = 0; i <= words; i++) {
+            int word = (first + i) % words;
+            long mask = i == 0 ? firstMask : i == words ? ~firstMask : -1L;
+            if (word == words - 1) {
+                mask &= lastWordMask;
+            }
+            for (;;) {
+                long bits = reserved.get(word);
+                long free = ~bits & mask;
+                if (skipUnavailable) {
+                    free &= ~unavailable.get(word);
+                }
+                if (free == 0) {
+                    break;
+                }
+                long bit = Long.lowestOneBit(free);
+                if (reserved.compareAndSet(word, bits, bits | bit)) {
+                    return (word << 6) + Long.numberOfTrailingZeros(bit);
+                }
             }
         }
-
         return -1;
     }
 
-    public synchronized void releasePort(final int port) {
-        if (port == 0) {
-            // Ignore port 0 being released,
-            // since its not put on the used list
+    private boolean tryReserve(int index) {
+        int word = index >>> 6;
+        long bit = 1L << (index & 63);
+        for (;;) {
+            long bits = reserved.get(word);
+            if ((bits & bit) != 0) {
+                return false;
+            }
+            if (reserved.compareAndSet(word, bits, bits | bit)) {
+                return true;
+            }
+        }
+    }
 
-        } else if (usedList.remove(port)) {
-            freeList.add(port);
+    private static boolean clear(AtomicLongArray array, int index) {
+        int word = index >>> 6;
+        long bit = 1L << (index & 63);
+        for (;;) {
+            long bits = array.get(word);
+            if ((bits & bit) == 0) {
+                return false;
+            }
+            if (array.compareAndSet(word, bits, bits & ~bit)) {
+                return true;
+            }
+        }
+    }
 
-        } else {
+    private static void set(AtomicLongArray array, int index) {
+        int word = index >>> 6;
+        long bit = 1L << (index & 63);
+        for (;;) {
+            long bits = array.get(word);
+            if ((bits & bit) != 0 || array.compareAndSet(word, bits, bits | bit)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Check which of the free ports are bound by another process, in the
+     * background and at most once per {@link #PROBE_INTERVAL_NANOS}. The ports
+     * are reserved while checked, so that the check never competes with a
+     * data connection for the port.
+     */
+    private void probeInBackground() {
+        if (!checkIfBound || System.nanoTime() - lastProbe.get() < PROBE_INTERVAL_NANOS
+                || !probing.compareAndSet(false, true)) {
+            return;
+        }
+        GlobalEventExecutor.INSTANCE.execute(new Runnable() {
+            public void run() {
+                try {
+                    for (int i = 0; i < ports.length; i++) {
+                        if (!tryReserve(i)) {
+                            continue;
+                        }
+                        if (checkPortUnbound(ports[i])) {
+                            clear(unavailable, i);
+                        } else {
+                            set(unavailable, i);
+                            // log port unavailable, but left in pool
+                            log.warn("Passive port in use by another process: " + ports[i]);
+                        }
+                        clear(reserved, i);
+                    }
+                } finally {
+                    lastProbe.set(System.nanoTime());
+                    probing.set(false);
+                }
+            }
+        });
+    }
+
+    public void releasePort(final int port) {
+        int index = Arrays.binarySearch(ports, port);
+        if (port == 0 || (index < 0 && anyPort)) {
+            // Ignore port 0 and the ports picked by the system being
+            // released, since they are not reserved
+
+        } else if (index < 0 || !clear(reserved, index)) {
             // log attempt to release unused port
             log.warn("Releasing unreserved passive port: " + port);
         }
@@ -251,7 +396,11 @@ public class PassivePorts {
 
         StringBuilder sb = new StringBuilder();
 
-        for (Integer port : freeList) {
+        if (anyPort) {
+            sb.append(0);
+            sb.append(",");
+        }
+        for (int port : ports) {
             sb.append(port);
             sb.append(",");
         }
@@ -260,4 +409,4 @@ public class PassivePorts {
         return sb.toString();
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,322 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.ftpserver.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Assembles a file uploaded in byte ranges, set with ALLO and RANG, by
+ * several sessions at once. The segments are written with positional writes
+ * into a hidden part file next to the target, which is never truncated, and
+ * the ranges which completely arrived are tracked per file. Once they cover
+ * the whole file, the part file is atomically renamed to the target, so that
+ * the file only ever appears complete.
+ *
+ * A segment which did not completely arrive is not tracked and has to be
+ * uploaded again. The tracking is kept in memory only: the part files of the
+ * uploads interrupted by a restart have to be uploaded again, and are deleted
+ * when the server stops. An upload no segment was written to for
+ * {@link #EXPIRY_MILLIS} is abandoned: it is dropped along with its part file
+ * once another segment ends.
+ *
+ * @author Io Netty Project
+ */
+public class RangedUploads {
+
+    private final Logger LOG = LoggerFactory.getLogger(RangedUploads.class);
+
+    /**
+     * The time after which an upload no segment is written to is abandoned
+     */
+    public static final long EXPIRY_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final Map<String, Upload> uploads = new HashMap<String, Upload>();
+
+    /**
+     * Start writing a segment of a file.
+     *
+     * @param target The file to publish once complete
+     * @param size The size of the whole file
+     * @param start The first byte of the segment
+     * @param end The last byte of the segment
+     * @return The stream writing the segment, tracking it once closed
+     * @throws IOException If the size differs from the one of the segments
+     *             already started, the segment overlaps one of them, or the
+     *             part file can not be opened
+     */
+    public Segment begin(File target, long size, long start, long end) throws IOException {
+        if (start < 0L || end < start || end >= size) {
+            throw new IOException("Invalid range " + start + "-" + end + " of " + size + " bytes");
+        }
+        String key = target.getAbsolutePath();
+        synchronized (uploads) {
+            Upload upload = uploads.get(key);
+            if (upload == null) {
+                upload = new Upload(key, target, size);
+                uploads.put(key, upload);
+            } else if (upload.size != size) {
+                throw new IOException("Size " + size + " differs from the upload in progress: "
+                        + upload.size);
+            }
+            if (upload.overlaps(start, end + 1)) {
+                throw new IOException("Range " + start + "-" + end + " already uploaded");
+            }
+            if (upload.channel == null) {
+                RandomAccessFile raf = new RandomAccessFile(upload.partFile, "rw");
+                upload.channel = raf.getChannel();
+            }
+            upload.writing.put(start, end + 1);
+            upload.writers++;
+            upload.lastUsed = System.currentTimeMillis();
+            return new Segment(upload, start, end + 1);
+        }
+    }
+
+    /**
+     * Delete the part files of the uploads no segment is written to, as they
+     * can not be resumed after a restart.
+     */
+    public void dispose() {
+        drop(Long.MAX_VALUE);
+    }
+
+    /**
+     * Drop the uploads with no writer not used since the given time and
+     * delete their part files.
+     */
+    private void drop(long usedBefore) {
+        List<Upload> dropped = new ArrayList<Upload>();
+        synchronized (uploads) {
+            Iterator<Upload> it = uploads.values().iterator();
+            while (it.hasNext()) {
+                Upload upload = it.next();
+                if (upload.writers == 0 && upload.lastUsed < usedBefore) {
+                    it.remove();
+                    dropped.add(upload);
+                }
+            }
+        }
+        for (Upload upload : dropped) {
+            LOG.info("Ranged upload of {} dropped before it was complete", upload.target);
+            if (upload.partFile.exists() && !upload.partFile.delete()) {
+                LOG.warn("Failed to delete {}", upload.partFile);
+            }
+        }
+    }
+
+    /**
+     * A segment done, tracked if completely written. Called on the thread
+     * of a command, as the file is synced and renamed once complete.
+     */
+    private void end(Segment segment, boolean complete) throws IOException {
+        drop(System.currentTimeMillis() - EXPIRY_MILLIS);
+
+        Upload upload = segment.upload;
+        boolean publish;
+        FileChannel channel = null;
+        synchronized (uploads) {
+            upload.lastUsed = System.currentTimeMillis();
+            upload.writing.remove(segment.start);
+            if (complete) {
+                upload.add(segment.start, segment.end);
+            }
+            publish = upload.isComplete();
+            if (--upload.writers == 0) {
+                channel = upload.channel;
+                upload.channel = null;
+            }
+            if (publish) {
+                uploads.remove(upload.key);
+            }
+        }
+
+        if (channel != null) {
+            if (publish) {
+                channel.force(true);
+            }
+            channel.close();
+        }
+        if (publish) {
+            // the last writer closed the channel, the segments all arrived
+            try {
+                Files.move(upload.partFile.toPath(), upload.target.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(upload.partFile.toPath(), upload.target.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            LOG.info("Ranged upload of {} complete, {} bytes", upload.target, upload.size);
+        }
+    }
+
+    /**
+     * The upload of one file.
+     */
+    private static final class Upload {
+
+        private final String key;
+
+        private final File target;
+
+        private final File partFile;
+
+        private final long size;
+
+        /**
+         * The ranges which arrived, merged, by start
+         */
+        private final TreeMap<Long, Long> done = new TreeMap<Long, Long>();
+
+        /**
+         * The ranges being written, by start
+         */
+        private final TreeMap<Long, Long> writing = new TreeMap<Long, Long>();
+
+        private FileChannel channel;
+
+        private int writers = 0;
+
+        private long lastUsed;
+
+        Upload(String key, File target, long size) {
+            this.key = key;
+            this.target = target;
+            this.partFile = new File(target.getParentFile(), '.' + target.getName() + ".part");
+            this.size = size;
+        }
+
+        boolean overlaps(long start, long end) {
+            return overlaps(done, start, end) || overlaps(writing, start, end);
+        }
+
+        private static boolean overlaps(TreeMap<Long, Long> ranges, long start, long end) {
+            Map.Entry<Long, Long> before = ranges.floorEntry(start);
+            if (before != null && before.getValue() > start) {
+                return true;
+            }
+            Map.Entry<Long, Long> after = ranges.ceilingEntry(start);
+            return after != null && after.getKey() < end;
+        }
+
+        void add(long start, long end) {
+            Map.Entry<Long, Long> before = done.floorEntry(start);
+            if (before != null && before.getValue() == start) {
+                start = before.getKey();
+                done.remove(start);
+            }
+            Long next = done.get(end);
+            if (next != null) {
+                done.remove(end);
+                end = next;
+            }
+            done.put(start, end);
+        }
+
+        boolean isComplete() {
+            Long end = done.get(0L);
+            return end != null && end == size;
+        }
+    }
+
+    /**
+     * Writes a segment with positional writes.
+     */
+    public final class Segment extends OutputStream {
+
+        private final Upload upload;
+
+        private final long start;
+
+        private final long end;
+
+        private long position;
+
+        private boolean closed = false;
+
+        private Segment(Upload upload, long start, long end) {
+            this.upload = upload;
+            this.start = start;
+            this.end = end;
+            this.position = start;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            write(ByteBuffer.wrap(b, off, len));
+        }
+
+        /**
+         * Write the remaining bytes of the buffer at the current position.
+         */
+        public void write(ByteBuffer buffer) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (position + buffer.remaining() > end) {
+                throw new IOException("Data beyond the end of the range " + start + "-" + (end - 1));
+            }
+            while (buffer.hasRemaining()) {
+                position += upload.channel.write(buffer, position);
+            }
+        }
+
+        /**
+         * End the segment, tracked if completely written.
+         *
+         * @throws IOException If the segment was not completely written, it
+         *             then has to be uploaded again
+         */
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                end(this, position == end);
+                if (position != end) {
+                    throw new IOException("Range " + start + "-" + (end - 1) + " incomplete, "
+                            + (position - start) + " bytes received");
+                }
+            }
+        }
+    }
+}
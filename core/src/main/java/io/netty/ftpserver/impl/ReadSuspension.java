@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.impl;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Suspends the reads of a data channel for a reason, the channel reading
+ * again only once none of the reasons holds. The traffic shaper and the
+ * receiver of an upload may suspend the same channel, each resuming it on
+ * its own time.
+ *
+ * @author Io Netty Project
+ */
+public final class ReadSuspension {
+
+    /**
+     * The buckets of the traffic shaper are in debt
+     */
+    public static final int SHAPER = 1;
+
+    /**
+     * The receiver of the data is behind, or not ready yet
+     */
+    public static final int RECEIVER = 2;
+
+    private static final AttributeKey<AtomicInteger> REASONS =
+            AttributeKey.valueOf(ReadSuspension.class, "REASONS");
+
+    private ReadSuspension() {
+        // static methods only
+    }
+
+    /**
+     * Stop reading the channel for the given reason.
+     */
+    public static void suspend(Channel channel, int reason) {
+        update(channel, reason, true);
+    }
+
+    /**
+     * The given reason no longer holds, the channel reads again unless
+     * another one does.
+     */
+    public static void resume(Channel channel, int reason) {
+        update(channel, reason, false);
+    }
+
+    /**
+     * Is the channel suspended for the given reason?
+     */
+    public static boolean isSuspended(Channel channel, int reason) {
+        AtomicInteger reasons = channel.attr(REASONS).get();
+        return reasons != null && (reasons.get() & reason) != 0;
+    }
+
+    private static void update(final Channel channel, int reason, boolean suspend) {
+        AtomicInteger reasons = channel.attr(REASONS).get();
+        if (reasons == null) {
+            reasons = new AtomicInteger();
+            AtomicInteger current = channel.attr(REASONS).setIfAbsent(reasons);
+            if (current != null) {
+                reasons = current;
+            }
+        }
+        int current;
+        int next;
+        do {
+            current = reasons.get();
+            next = suspend ? current | reason : current & ~reason;
+        } while (!reasons.compareAndSet(current, next));
+        if (current == next) {
+            return;
+        }
+
+        // the auto read follows the latest reasons, whatever the order the
+        // updates reach the event loop in
+        final AtomicInteger latest = reasons;
+        if (channel.eventLoop().inEventLoop()) {
+            apply(channel, latest);
+        } else {
+            channel.eventLoop().execute(new Runnable() {
+                public void run() {
+                    apply(channel, latest);
+                }
+            });
+        }
+    }
+
+    private static void apply(Channel channel, AtomicInteger reasons) {
+        if (channel.isActive()) {
+            channel.config().setAutoRead(reasons.get() == 0);
+        }
+    }
+}
@@ -21,6 +21,7 @@ package io.netty.ftpserver.impl;
 
 import io.netty.ftpserver.DataConnectionException;
 import io.netty.ftpserver.ftplet.DataConnectionFactory;
+import io.netty.util.concurrent.Future;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
@@ -34,12 +35,21 @@ import java.net.InetSocketAddress;
 public interface ServerDataConnectionFactory extends DataConnectionFactory {
 
     /**
-     * Port command.
+     * Open the data connection without blocking the caller. The future
+     * completes once the client is connected and, for secure data
+     * connections, the SSL handshake is done.
+     */
+    Future<AsyncDataConnection> openConnectionAsync();
+
+    /**
+     * Port command. The open data connection is closed first, aborting the
+     * transfer running on it, if any.
      */
     void initActiveDataConnection(InetSocketAddress address);
 
     /**
-     * Initiate the passive data connection.
+     * Initiate the passive data connection. The open data connection is
+     * closed first, aborting the transfer running on it, if any.
      * 
      * @return The {@link InetSocketAddress} on which the data connection if
      *         bound.
@@ -59,6 +69,34 @@ public interface ServerDataConnectionFactory extends DataConnectionFactory {
 
     void setZipMode(boolean zip);
 
+    /**
+     * Set the MODE Z compression level, from 0 to 9, or -1 for the default.
+     */
+    void setZipLevel(int level);
+
+    /**
+     * Set extended block mode (MODE E), in which a transfer is spread over
+     * the parallel data channels of the session.
+     *
+     * @throws UnsupportedOperationException
+     *             if the data connections do not support extended block mode
+     */
+    void setExtendedBlockMode(boolean extended);
+
+    /**
+     * Set the number of parallel data channels opened in extended block mode.
+     */
+    void setParallelism(int parallelism);
+
+    /**
+     * Set block mode (MODE B), in which the data connection is kept open
+     * across the transfers.
+     *
+     * @throws UnsupportedOperationException
+     *             if the data connections do not support block mode
+     */
+    void setBlockMode(boolean block);
+
     /**
      * Check the data connection idle status.
      */
@@ -79,6 +117,26 @@ public interface ServerDataConnectionFactory extends DataConnectionFactory {
      */
     boolean isZipMode();
 
+    /**
+     * Get the MODE Z compression level.
+     */
+    int getZipLevel();
+
+    /**
+     * Is extended block mode?
+     */
+    boolean isExtendedBlockMode();
+
+    /**
+     * Get the number of parallel data channels of extended block mode.
+     */
+    int getParallelism();
+
+    /**
+     * Is block mode?
+     */
+    boolean isBlockMode();
+
     /**
      * Get client address.
      */
@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.ftpserver.impl;
+
+import io.netty.channel.DefaultFileRegion;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Shares one read only {@link FileChannel} per file between the downloads in
+ * progress, so that the sessions downloading segments of the same file, set
+ * with RANG or REST, all read it with positional reads on the same channel
+ * instead of each opening the file. A channel is closed once the last
+ * download using it completes. A file replaced or changed since its channel
+ * was opened gets a channel of its own.
+ *
+ * @author Io Netty Project
+ */
+public class SharedFileChannels {
+
+    private final Map<String, Handle> handles = new HashMap<String, Handle>();
+
+    /**
+     * Get a channel reading the file, to be released once done.
+     */
+    public Handle acquire(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        long length = file.length();
+        long lastModified = file.lastModified();
+        synchronized (handles) {
+            Handle handle = handles.get(key);
+            if (handle != null && handle.length == length
+                    && handle.lastModified == lastModified) {
+                handle.refCnt++;
+                return handle;
+            }
+        }
+
+        // open outside of the lock, the file system may be slow
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        Handle handle = new Handle(key, raf.getChannel(), length, lastModified);
+        synchronized (handles) {
+            Handle current = handles.get(key);
+            if (current != null && current.length == length
+                    && current.lastModified == lastModified) {
+                // opened concurrently, keep the first one
+                current.refCnt++;
+                handle.closeQuietly();
+                return current;
+            }
+            handles.put(key, handle);
+            return handle;
+        }
+    }
+
+    private void release(Handle handle) {
+        synchronized (handles) {
+            if (--handle.refCnt > 0) {
+                return;
+            }
+            if (handles.get(handle.key) == handle) {
+                handles.remove(handle.key);
+            }
+        }
+        handle.closeQuietly();
+    }
+
+    /**
+     * A shared channel, released once by each of its users.
+     */
+    public final class Handle {
+
+        private final String key;
+
+        private final FileChannel channel;
+
+        private final long length;
+
+        private final long lastModified;
+
+        private int refCnt = 1;
+
+        private Handle(String key, FileChannel channel, long length, long lastModified) {
+            this.key = key;
+            this.channel = channel;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        public FileChannel getChannel() {
+            return channel;
+        }
+
+        /**
+         * The length of the file when the channel was opened.
+         */
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * Take one more reference, for each region handed out separately.
+         */
+        public Handle retain() {
+            synchronized (handles) {
+                refCnt++;
+            }
+            return this;
+        }
+
+        public void release() {
+            SharedFileChannels.this.release(this);
+        }
+
+        /**
+         * A region of the file releasing this handle rather than closing the
+         * channel once it is deallocated.
+         */
+        public DefaultFileRegion newRegion(long position, long count) {
+            return new DefaultFileRegion(channel, position, count) {
+                @Override
+                protected void deallocate() {
+                    // not the release of the region
+                    Handle.this.release();
+                }
+            };
+        }
+
+        /**
+         * A stream reading a region of the file, releasing this handle once
+         * it is closed.
+         */
+        public InputStream newInputStream(long position, long count) {
+            return new RegionInputStream(this, position, count);
+        }
+
+        private void closeQuietly() {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Reads a region of a shared channel with positional reads, leaving the
+     * position of the channel alone.
+     */
+    private static final class RegionInputStream extends InputStream {
+
+        private final Handle handle;
+
+        private long position;
+
+        private long remaining;
+
+        private boolean closed = false;
+
+        RegionInputStream(Handle handle, long position, long count) {
+            this.handle = handle;
+            this.position = position;
+            this.remaining = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (remaining <= 0) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, (int) Math.min(len, remaining));
+            int count = handle.getChannel().read(buffer, position);
+            if (count == -1) {
+                // the file got shorter
+                remaining = 0;
+                return -1;
+            }
+            position += count;
+            remaining -= count;
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = Math.max(0L, Math.min(n, remaining));
+            position += skipped;
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, remaining);
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                handle.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.impl;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.ftpserver.DataConnectionConfiguration;
+import io.netty.ftpserver.DataConnectionException;
+import io.netty.ftpserver.listener.Listener;
+import io.netty.ftpserver.util.DefaultEventLoopConfig;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Long-lived passive server channels shared by all the sessions of a listener.
+ * Each PASV/EPSV registers the waiting session on one of the channels, and an
+ * accepted data connection is handed to the oldest session waiting on that
+ * channel from the same client address. When the passive IP check is
+ * disabled, a connection from any other address goes to the oldest session
+ * waiting on the channel.
+ *
+ * A new channel is bound on a passive port only when all the channels of the
+ * bind address already have a session of the same client waiting, so that
+ * the sessions of a client are told apart by port as long as there are ports
+ * left.
+ *
+ * A data connection carries nothing telling which session it is for. Once
+ * the passive ports run out, two sessions of the same client address wait on
+ * the same channel, and the first connection accepted goes to the session
+ * whose PASV/EPSV came first, whichever session opened it. A client opening
+ * the data connections of its sessions in another order than their PASV gets
+ * their transfers crossed. The clients behind one NAT address are one client
+ * here, so enough passive ports should be configured for the concurrent
+ * sessions of such an address.
+ *
+ * @author Io Netty Project
+ */
+public class SharedPassiveListener {
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(SharedPassiveListener.class);
+
+    private final Listener listener;
+
+    private final Map<InetAddress, List<PortChannel>> channels = new HashMap<InetAddress, List<PortChannel>>();
+
+    private boolean closed = false;
+
+    public SharedPassiveListener(final Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Register a session waiting for a passive data connection.
+     *
+     * @param bindAddress
+     *            The address to listen on, null for all addresses
+     * @param clientAddress
+     *            The address of the control connection of the session
+     * @param factory
+     *            The data connection factory of the session
+     * @param promise
+     *            The accept promise of the session, the registration is
+     *            dropped once it is done
+     * @return The address the session should tell the client to connect to
+     * @throws DataConnectionException
+     *             If no passive channel could be bound
+     */
+    public InetSocketAddress register(final InetAddress bindAddress, final InetAddress clientAddress,
+            final NettyDataConnectionFactory factory, final Promise<Channel> promise)
+            throws DataConnectionException {
+        PortChannel portChannel;
+        synchronized (this) {
+            portChannel = select(bindAddress, clientAddress, false);
+        }
+
+        if (portChannel == null) {
+            // bind outside of the lock, the accepts of the event loop take it
+            PortChannel bound = bind(bindAddress);
+            synchronized (this) {
+                if (bound != null) {
+                    if (closed) {
+                        bound.close();
+                        throw new DataConnectionException("Shared passive listener closed");
+                    }
+                    List<PortChannel> list = channels.get(bindAddress);
+                    if (list == null) {
+                        list = new ArrayList<PortChannel>();
+                        channels.put(bindAddress, list);
+                    }
+                    list.add(bound);
+                    portChannel = bound;
+                } else {
+                    portChannel = select(bindAddress, clientAddress, true);
+                }
+            }
+            if (portChannel == null) {
+                throw new DataConnectionException(
+                        "Cannot find an available passive port.");
+            }
+        }
+
+        final PortChannel waitingOn = portChannel;
+        final Pending pending = new Pending(clientAddress, factory, promise);
+        synchronized (this) {
+            if (closed) {
+                throw new DataConnectionException("Shared passive listener closed");
+            }
+            waitingOn.pending.add(pending);
+        }
+        promise.addListener(new FutureListener<Channel>() {
+            public void operationComplete(Future<Channel> future) {
+                synchronized (SharedPassiveListener.this) {
+                    waitingOn.pending.remove(pending);
+                }
+            }
+        });
+        return waitingOn.localAddress;
+    }
+
+    /**
+     * Select the channel with the fewest waiting sessions among the ones no
+     * session of the client is waiting on, or, if shared is true, the one
+     * with the fewest waiting sessions of the client.
+     */
+    private PortChannel select(InetAddress bindAddress, InetAddress clientAddress, boolean shared) {
+        List<PortChannel> list = channels.get(bindAddress);
+        if (closed || list == null) {
+            return null;
+        }
+        PortChannel best = null;
+        int bestCount = Integer.MAX_VALUE;
+        for (PortChannel portChannel : list) {
+            int clientCount = portChannel.countPending(clientAddress);
+            if (!shared && clientCount > 0) {
+                continue;
+            }
+            int count = shared ? clientCount : portChannel.pending.size();
+            if (count < bestCount) {
+                best = portChannel;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Bind a new channel on a reserved passive port.
+     *
+     * @return The new channel, null if no passive port is left or the bind
+     *         failed
+     */
+    private PortChannel bind(InetAddress bindAddress) {
+        DataConnectionConfiguration dataCfg = listener.getDataConnectionConfiguration();
+        final int reservedPort = dataCfg.requestPassivePort();
+        if (reservedPort == -1) {
+            return null;
+        }
+
+        LOG.debug("Opening shared passive data channel on address \"{}\" and port {}",
+                bindAddress, reservedPort);
+        final PortChannel portChannel = new PortChannel(reservedPort);
+        try {
+            ServerBootstrap serverBootstrap = new ServerBootstrap();
+            serverBootstrap.group(listener.getDataEventLoopGroup())
+                    .channel(new DefaultEventLoopConfig(listener.getChannelType()).getServerChannel())
+                    .option(ChannelOption.SO_REUSEADDR, true)
+                    .childOption(ChannelOption.AUTO_READ, false)
+                    .childOption(ChannelOption.ALLOW_HALF_CLOSURE, true)
+                    .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                    .childHandler(new ChannelInitializer<Channel>() {
+                        @Override
+                        protected void initChannel(Channel ch) throws Exception {
+                            accept(portChannel, ch);
+                        }
+                    });
+            ChannelFuture bindFuture = serverBootstrap.bind(bindAddress, reservedPort).awaitUninterruptibly();
+            if (!bindFuture.isSuccess()) {
+                LOG.warn("Failed to open shared passive data channel on port " + reservedPort,
+                        bindFuture.cause());
+                bindFuture.channel().close();
+                dataCfg.releasePassivePort(reservedPort);
+                return null;
+            }
+            portChannel.serverChannel = bindFuture.channel();
+            InetSocketAddress local = (InetSocketAddress) portChannel.serverChannel.localAddress();
+            portChannel.localAddress = new InetSocketAddress(bindAddress, local.getPort());
+            return portChannel;
+        } catch (ClassNotFoundException ex) {
+            LOG.warn("Failed to open shared passive data channel", ex);
+            dataCfg.releasePassivePort(reservedPort);
+            return null;
+        }
+    }
+
+    /**
+     * Hand an accepted data channel to the oldest session waiting on the
+     * port channel for the remote address.
+     */
+    private void accept(PortChannel portChannel, Channel ch) throws Exception {
+        InetAddress remoteAddress = ((InetSocketAddress) ch.remoteAddress()).getAddress();
+        boolean ipCheck = listener.getDataConnectionConfiguration().isPassiveIpCheck();
+        Pending match = null;
+        synchronized (this) {
+            for (Iterator<Pending> it = portChannel.pending.iterator(); it.hasNext();) {
+                Pending pending = it.next();
+                if (remoteAddress.equals(pending.clientAddress)) {
+                    match = pending;
+                    it.remove();
+                    break;
+                }
+            }
+            if (match == null && !ipCheck) {
+                match = portChannel.pending.poll();
+            }
+        }
+
+        if (match == null) {
+            LOG.warn("No session waiting for a passive data connection from "
+                    + remoteAddress + " on port " + portChannel.localAddress.getPort()
+                    + ", closing it");
+            ch.close();
+            return;
+        }
+        match.factory.acceptDataChannel(match.promise, ch);
+    }
+
+    /**
+     * Close all the channels and fail the waiting sessions.
+     */
+    public void close() {
+        List<PortChannel> closing = new ArrayList<PortChannel>();
+        synchronized (this) {
+            closed = true;
+            for (List<PortChannel> list : channels.values()) {
+                closing.addAll(list);
+            }
+            channels.clear();
+        }
+        for (PortChannel portChannel : closing) {
+            portChannel.close();
+        }
+    }
+
+    /**
+     * A shared passive server channel and the sessions waiting on it, in
+     * order of their PASV/EPSV.
+     */
+    private class PortChannel {
+
+        private final int reservedPort;
+
+        private final ArrayDeque<Pending> pending = new ArrayDeque<Pending>();
+
+        private Channel serverChannel;
+
+        private InetSocketAddress localAddress;
+
+        PortChannel(int reservedPort) {
+            this.reservedPort = reservedPort;
+        }
+
+        int countPending(InetAddress clientAddress) {
+            int count = 0;
+            for (Pending p : pending) {
+                if (p.clientAddress.equals(clientAddress)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        void close() {
+            List<Pending> failing;
+            synchronized (SharedPassiveListener.this) {
+                failing = new ArrayList<Pending>(pending);
+                pending.clear();
+            }
+            for (Pending p : failing) {
+                p.promise.tryFailure(new SocketException("Data connection closed"));
+            }
+            serverChannel.close();
+            listener.getDataConnectionConfiguration().releasePassivePort(reservedPort);
+        }
+    }
+
+    /**
+     * A session waiting for a passive data connection.
+     */
+    private static class Pending {
+
+        private final InetAddress clientAddress;
+
+        private final NettyDataConnectionFactory factory;
+
+        private final Promise<Channel> promise;
+
+        Pending(InetAddress clientAddress, NettyDataConnectionFactory factory, Promise<Channel> promise) {
+            this.clientAddress = clientAddress;
+            this.factory = factory;
+            this.promise = promise;
+        }
+    }
+}
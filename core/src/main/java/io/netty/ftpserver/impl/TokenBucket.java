@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * A token bucket refilled at a fixed rate of bytes per second. The bucket
+ * holds at most {@link #BURST_MILLIS} worth of tokens, so that an idle
+ * transfer can not bank its idle time and burst later on. Taking more tokens
+ * than available leaves the bucket in debt, the caller waiting for the debt
+ * to be paid back before sending or reading anything more.
+ *
+ * @author Io Netty Project
+ */
+public class TokenBucket {
+
+    /**
+     * The maximum burst, in milliseconds of the rate
+     */
+    public static final long BURST_MILLIS = 100L;
+
+    private final long rate;
+
+    private final long capacity;
+
+    private final Clock clock;
+
+    private long tokens;
+
+    private long lastRefill;
+
+    /**
+     * @param rate the rate in bytes per second, greater than 0
+     */
+    public TokenBucket(long rate) {
+        this(rate, Clock.SYSTEM);
+    }
+
+    TokenBucket(long rate, Clock clock) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("Invalid rate: " + rate);
+        }
+        this.rate = rate;
+        this.capacity = Math.max(1L, rate * BURST_MILLIS / 1000L);
+        this.clock = clock;
+        this.tokens = capacity;
+        this.lastRefill = clock.nanoTime();
+    }
+
+    /**
+     * The rate in bytes per second.
+     */
+    public long getRate() {
+        return rate;
+    }
+
+    /**
+     * Take tokens for the given number of bytes.
+     *
+     * @param bytes the number of bytes sent or received
+     * @return the time to wait, in nanoseconds, before the next bytes
+     */
+    public synchronized long take(long bytes) {
+        long now = clock.nanoTime();
+        long elapsed = now - lastRefill;
+        if (elapsed > 0) {
+            long refill = (long) ((double) elapsed * rate / TimeUnit.SECONDS.toNanos(1));
+            if (tokens + refill >= capacity) {
+                tokens = capacity;
+                lastRefill = now;
+            } else if (refill > 0) {
+                // only the time of the whole tokens is used up, the rest
+                // counts for the next refill
+                tokens += refill;
+                lastRefill += (long) ((double) refill * TimeUnit.SECONDS.toNanos(1) / rate);
+            }
+        }
+        tokens -= bytes;
+        if (tokens >= 0) {
+            return 0L;
+        }
+        return (long) ((double) -tokens * TimeUnit.SECONDS.toNanos(1) / rate);
+    }
+
+    /**
+     * The time source of the buckets and of the shaped writes, replaced by
+     * the tests.
+     */
+    abstract static class Clock {
+
+        static final Clock SYSTEM = new Clock() {
+            @Override
+            long nanoTime() {
+                return System.nanoTime();
+            }
+        };
+
+        abstract long nanoTime();
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.impl;
+
+import io.netty.ftpserver.ConnectionConfig;
+import io.netty.ftpserver.DataConnectionConfiguration;
+import io.netty.ftpserver.ftplet.User;
+import io.netty.ftpserver.listener.Listener;
+import io.netty.ftpserver.listener.nio.channel.FtpChannel;
+import io.netty.ftpserver.usermanager.impl.TransferRateRequest;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Holds the token buckets shaping the data connections, one level above the
+ * other: the whole server, each listener, each user and each client IP
+ * address. A data connection takes its bytes from the buckets of all the
+ * levels it belongs to, and so waits for the most limited of them. The
+ * buckets of a listener, user or address are dropped once their last data
+ * connection is closed.
+ *
+ * @author Io Netty Project
+ */
+public class TrafficShaper {
+
+    private final Buckets global;
+
+    private final Level<Listener> listeners = new Level<Listener>();
+
+    private final Level<String> users = new Level<String>();
+
+    private final Level<InetAddress> addresses = new Level<InetAddress>();
+
+    private final ConnectionConfig connectionConfig;
+
+    private final TokenBucket.Clock clock;
+
+    /**
+     * Internal constructor, do not use directly.
+     */
+    public TrafficShaper(ConnectionConfig connectionConfig) {
+        this(connectionConfig, TokenBucket.Clock.SYSTEM);
+    }
+
+    TrafficShaper(ConnectionConfig connectionConfig, TokenBucket.Clock clock) {
+        this.connectionConfig = connectionConfig;
+        this.clock = clock;
+        this.global = new Buckets(connectionConfig.getMaxUploadRate(),
+                connectionConfig.getMaxDownloadRate(), clock);
+    }
+
+    /**
+     * Create the handler shaping a data connection of the session.
+     *
+     * @param session the control session owning the data connection
+     * @return the handler, null if no level limits the data connection
+     */
+    public TrafficShapingHandler newHandler(FtpChannel session) {
+        final List<Buckets> acquired = new ArrayList<Buckets>(4);
+        final List<Runnable> releases = new ArrayList<Runnable>(3);
+        if (!global.isEmpty()) {
+            acquired.add(global);
+        }
+
+        final Listener listener = session.getListener();
+        if (listener != null) {
+            DataConnectionConfiguration config = listener.getDataConnectionConfiguration();
+            acquire(listeners, listener, config.getMaxUploadRate(),
+                    config.getMaxDownloadRate(), acquired, releases);
+        }
+
+        User user = session.getUser();
+        if (user != null) {
+            TransferRateRequest transferRateRequest = (TransferRateRequest) user
+                    .authorize(new TransferRateRequest());
+            if (transferRateRequest != null) {
+                acquire(users, user.getName(), transferRateRequest.getMaxUploadRate(),
+                        transferRateRequest.getMaxDownloadRate(), acquired, releases);
+            }
+        }
+
+        InetSocketAddress remoteAddress = session.remoteAddress();
+        if (remoteAddress != null && remoteAddress.getAddress() != null) {
+            acquire(addresses, remoteAddress.getAddress(),
+                    connectionConfig.getMaxUploadRatePerIp(),
+                    connectionConfig.getMaxDownloadRatePerIp(), acquired, releases);
+        }
+
+        if (acquired.isEmpty()) {
+            return null;
+        }
+
+        List<TokenBucket> readBuckets = new ArrayList<TokenBucket>(acquired.size());
+        List<TokenBucket> writeBuckets = new ArrayList<TokenBucket>(acquired.size());
+        for (Buckets buckets : acquired) {
+            if (buckets.upload != null) {
+                readBuckets.add(buckets.upload);
+            }
+            if (buckets.download != null) {
+                writeBuckets.add(buckets.download);
+            }
+        }
+        return new TrafficShapingHandler(
+                readBuckets.toArray(new TokenBucket[readBuckets.size()]),
+                writeBuckets.toArray(new TokenBucket[writeBuckets.size()]),
+                clock,
+                new Runnable() {
+                    public void run() {
+                        for (Runnable release : releases) {
+                            release.run();
+                        }
+                    }
+                });
+    }
+
+    private <K> void acquire(final Level<K> level, final K key, int uploadRate,
+                                    int downloadRate, List<Buckets> acquired,
+                                    List<Runnable> releases) {
+        if (uploadRate <= 0 && downloadRate <= 0) {
+            return;
+        }
+        acquired.add(level.acquire(key, uploadRate, downloadRate, clock));
+        releases.add(new Runnable() {
+            public void run() {
+                level.release(key);
+            }
+        });
+    }
+
+    /**
+     * The upload and download buckets of one listener, user or address.
+     */
+    private static final class Buckets {
+
+        private final TokenBucket upload;
+
+        private final TokenBucket download;
+
+        private int references;
+
+        Buckets(int uploadRate, int downloadRate, TokenBucket.Clock clock) {
+            upload = uploadRate > 0 ? new TokenBucket(uploadRate, clock) : null;
+            download = downloadRate > 0 ? new TokenBucket(downloadRate, clock) : null;
+        }
+
+        boolean isEmpty() {
+            return upload == null && download == null;
+        }
+    }
+
+    /**
+     * The buckets of one level, counting the data connections using them.
+     */
+    private static final class Level<K> {
+
+        private final Map<K, Buckets> buckets = new HashMap<K, Buckets>();
+
+        synchronized Buckets acquire(K key, int uploadRate, int downloadRate,
+                                     TokenBucket.Clock clock) {
+            Buckets entry = buckets.get(key);
+            if (entry == null) {
+                entry = new Buckets(uploadRate, downloadRate, clock);
+                buckets.put(key, entry);
+            }
+            entry.references++;
+            return entry;
+        }
+
+        synchronized void release(K key) {
+            Buckets entry = buckets.get(key);
+            if (entry != null && --entry.references <= 0) {
+                buckets.remove(key);
+            }
+        }
+    }
+}
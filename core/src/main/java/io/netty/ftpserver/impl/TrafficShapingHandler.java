@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.FileRegion;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Shapes a data connection with the token buckets of all the levels it
+ * belongs to, see {@link TrafficShaper}. Nothing ever blocks: the reads are
+ * suspended until the buckets are out of debt, along with the other reasons
+ * of the {@link ReadSuspension}, and the writes are delayed on
+ * the event loop, the channel turning unwritable while too much data is
+ * delayed so that the chunked writer stops reading the file.
+ *
+ * @author Io Netty Project
+ */
+public class TrafficShapingHandler extends ChannelDuplexHandler {
+
+    /**
+     * The index of the user defined writability, the one of the Netty
+     * channel traffic shaping handler this handler is used instead of
+     */
+    private static final int WRITABILITY_INDEX = 1;
+
+    private static final long MAX_DELAYED_BYTES = 4L * 1024 * 1024;
+
+    private final TokenBucket[] readBuckets;
+
+    private final TokenBucket[] writeBuckets;
+
+    private final TokenBucket.Clock clock;
+
+    private final Runnable release;
+
+    private boolean released;
+
+    private boolean readSuspended;
+
+    private final ArrayDeque<DelayedWrite> delayedWrites = new ArrayDeque<DelayedWrite>();
+
+    private long delayedBytes;
+
+    TrafficShapingHandler(TokenBucket[] readBuckets, TokenBucket[] writeBuckets,
+                          TokenBucket.Clock clock, Runnable release) {
+        this.readBuckets = readBuckets;
+        this.writeBuckets = writeBuckets;
+        this.clock = clock;
+        this.release = release;
+    }
+
+    /**
+     * Are the writes shaped?
+     */
+    public boolean isWriteLimited() {
+        return writeBuckets.length > 0;
+    }
+
+    @Override
+    public void channelRead(final ChannelHandlerContext ctx, Object msg) throws Exception {
+        long wait = take(readBuckets, size(msg));
+        if (wait > 0 && !readSuspended) {
+            readSuspended = true;
+            ReadSuspension.suspend(ctx.channel(), ReadSuspension.SHAPER);
+            ctx.executor().schedule(new Runnable() {
+                public void run() {
+                    readSuspended = false;
+                    ReadSuspension.resume(ctx.channel(), ReadSuspension.SHAPER);
+                }
+            }, wait, TimeUnit.NANOSECONDS);
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void write(final ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+            throws Exception {
+        long size = size(msg);
+        long now = clock.nanoTime();
+        long writeTime = now + take(writeBuckets, size);
+        if (delayedWrites.isEmpty() && writeTime <= now) {
+            ctx.write(msg, promise);
+            return;
+        }
+
+        // keep the order of the delayed writes, even the ones due already
+        DelayedWrite last = delayedWrites.peekLast();
+        if (last != null) {
+            writeTime = Math.max(writeTime, last.writeTime);
+        }
+        delayedWrites.addLast(new DelayedWrite(msg, promise, size, writeTime));
+        delayedBytes += size;
+        if (delayedBytes > MAX_DELAYED_BYTES) {
+            setUserDefinedWritability(ctx, false);
+        }
+        if (last == null) {
+            schedule(ctx, writeTime - now);
+        }
+    }
+
+    /**
+     * Write the delayed messages once due, one timer at a time.
+     */
+    private void schedule(final ChannelHandlerContext ctx, long delay) {
+        ctx.executor().schedule(new Runnable() {
+            public void run() {
+                long now = clock.nanoTime();
+                DelayedWrite write;
+                while ((write = delayedWrites.peekFirst()) != null && write.writeTime <= now) {
+                    delayedWrites.removeFirst();
+                    delayedBytes -= write.size;
+                    ctx.write(write.msg, write.promise);
+                }
+                ctx.flush();
+                if (delayedBytes <= MAX_DELAYED_BYTES / 2) {
+                    setUserDefinedWritability(ctx, true);
+                }
+                if (write != null) {
+                    schedule(ctx, write.writeTime - now);
+                }
+            }
+        }, Math.max(0L, delay), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        release();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        // hand the delayed messages over, they are failed and released if
+        // the channel is closed already
+        DelayedWrite write;
+        while ((write = delayedWrites.pollFirst()) != null) {
+            ctx.write(write.msg, write.promise);
+        }
+        delayedBytes = 0L;
+        ctx.flush();
+        // a MODE B data channel stays open for the next transfer
+        setUserDefinedWritability(ctx, true);
+        release();
+    }
+
+    private void release() {
+        if (!released) {
+            released = true;
+            release.run();
+        }
+    }
+
+    private static long take(TokenBucket[] buckets, long size) {
+        long wait = 0L;
+        if (size > 0) {
+            for (TokenBucket bucket : buckets) {
+                wait = Math.max(wait, bucket.take(size));
+            }
+        }
+        return wait;
+    }
+
+    private static long size(Object msg) {
+        if (msg instanceof ByteBuf) {
+            return ((ByteBuf) msg).readableBytes();
+        }
+        if (msg instanceof ByteBufHolder) {
+            return ((ByteBufHolder) msg).content().readableBytes();
+        }
+        if (msg instanceof FileRegion) {
+            return ((FileRegion) msg).count();
+        }
+        return 0L;
+    }
+
+    private static final class DelayedWrite {
+
+        private final Object msg;
+
+        private final ChannelPromise promise;
+
+        private final long size;
+
+        private final long writeTime;
+
+        DelayedWrite(Object msg, ChannelPromise promise, long size, long writeTime) {
+            this.msg = msg;
+            this.promise = promise;
+            this.size = size;
+            this.writeTime = writeTime;
+        }
+    }
+
+    private static void setUserDefinedWritability(ChannelHandlerContext ctx, boolean writable) {
+        ChannelOutboundBuffer cob = ctx.channel().unsafe().outboundBuffer();
+        if (cob != null) {
+            cob.setUserDefinedWritability(WRITABILITY_INDEX, writable);
+        }
+    }
+}
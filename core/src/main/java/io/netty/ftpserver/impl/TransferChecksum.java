@@ -0,0 +1,304 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.ftpserver.impl;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Computes the checksums of a file while it is transferred, so that they can
+ * be answered without reading the file again. The supported algorithms are
+ * {@link #CRC32}, {@link #CRC32C} (from Java 9), {@link #MD5}, {@link #SHA_1}
+ * and {@link #SHA_256}. The values are upper case hexadecimal strings.
+ *
+ * @author Io Netty Project
+ */
+public class TransferChecksum {
+
+    public static final String CRC32 = "CRC32";
+
+    public static final String CRC32C = "CRC32C";
+
+    public static final String MD5 = "MD5";
+
+    public static final String SHA_1 = "SHA-1";
+
+    public static final String SHA_256 = "SHA-256";
+
+    private static final int COPY_SIZE = 8192;
+
+    private static final char[] DIGITS = { '0', '1', '2', '3', '4', '5', '6',
+            '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+
+    private final String[] algorithms;
+
+    private final MessageDigest[] digests;
+
+    private final Checksum[] checksums;
+
+    private byte[] copy;
+
+    /**
+     * @param algorithms the algorithms to compute, all supported
+     */
+    public TransferChecksum(String[] algorithms) {
+        this.algorithms = algorithms.clone();
+        this.digests = new MessageDigest[algorithms.length];
+        this.checksums = new Checksum[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            Object engine = newEngine(algorithms[i]);
+            if (engine instanceof MessageDigest) {
+                digests[i] = (MessageDigest) engine;
+            } else {
+                checksums[i] = (Checksum) engine;
+            }
+        }
+    }
+
+    /**
+     * The canonical name of an algorithm, null if it is not supported.
+     */
+    public static String getAlgorithm(String name) {
+        String upper = name.trim().toUpperCase(Locale.ENGLISH);
+        String[] known = { CRC32, CRC32C, MD5, SHA_1, SHA_256 };
+        for (String algorithm : known) {
+            if (algorithm.equals(upper) || algorithm.replace("-", "").equals(upper)) {
+                return newEngine(algorithm) == null ? null : algorithm;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A {@link MessageDigest} or a {@link Checksum}, null if not available.
+     */
+    private static Object newEngine(String algorithm) {
+        if (CRC32.equals(algorithm)) {
+            return new CRC32();
+        }
+        if (CRC32C.equals(algorithm)) {
+            // java.util.zip.CRC32C is only available from Java 9
+            try {
+                return Class.forName("java.util.zip.CRC32C").newInstance();
+            } catch (Exception ex) {
+                return null;
+            }
+        }
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Compute a single checksum of a whole stream.
+     */
+    public static String compute(InputStream in, String algorithm) throws IOException {
+        TransferChecksum checksum = new TransferChecksum(new String[] { algorithm });
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            checksum.update(buffer, 0, read);
+        }
+        return checksum.getValues().get(algorithm);
+    }
+
+    public void update(byte[] b, int off, int len) {
+        for (int i = 0; i < algorithms.length; i++) {
+            if (digests[i] != null) {
+                digests[i].update(b, off, len);
+            } else {
+                checksums[i].update(b, off, len);
+            }
+        }
+    }
+
+    /**
+     * Update with the readable bytes of the buffer, leaving its indexes
+     * untouched.
+     */
+    public void update(ByteBuf buf) {
+        int len = buf.readableBytes();
+        if (len == 0) {
+            return;
+        }
+        if (buf.hasArray()) {
+            update(buf.array(), buf.arrayOffset() + buf.readerIndex(), len);
+            return;
+        }
+        for (int i = 0; i < algorithms.length; i++) {
+            if (digests[i] != null) {
+                for (ByteBuffer nioBuffer : buf.nioBuffers(buf.readerIndex(), len)) {
+                    digests[i].update(nioBuffer);
+                }
+            }
+        }
+        // the Checksum interface of the source level has no ByteBuffer method
+        if (copy == null) {
+            copy = new byte[COPY_SIZE];
+        }
+        for (int i = 0; i < algorithms.length; i++) {
+            if (checksums[i] != null) {
+                for (int pos = 0; pos < len; pos += COPY_SIZE) {
+                    int n = Math.min(COPY_SIZE, len - pos);
+                    buf.getBytes(buf.readerIndex() + pos, copy, 0, n);
+                    checksums[i].update(copy, 0, n);
+                }
+            }
+        }
+    }
+
+    /**
+     * The values by algorithm, the checksum must not be updated afterwards.
+     */
+    public Map<String, String> getValues() {
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        for (int i = 0; i < algorithms.length; i++) {
+            if (digests[i] != null) {
+                values.put(algorithms[i], new String(encodeHex(digests[i].digest())));
+            } else {
+                long value = checksums[i].getValue();
+                values.put(algorithms[i], new String(encodeHex(new byte[] {
+                        (byte) (value >>> 24), (byte) (value >>> 16),
+                        (byte) (value >>> 8), (byte) value })));
+            }
+        }
+        return values;
+    }
+
+    private static char[] encodeHex(byte[] data) {
+        char[] out = new char[data.length << 1];
+        for (int i = 0, j = 0; i < data.length; i++) {
+            out[j++] = DIGITS[(0xF0 & data[i]) >>> 4];
+            out[j++] = DIGITS[0x0F & data[i]];
+        }
+        return out;
+    }
+
+    /**
+     * A stream updating the checksum with what is written through it.
+     */
+    public static class ChecksumOutputStream extends FilterOutputStream {
+
+        private final TransferChecksum checksum;
+
+        public ChecksumOutputStream(OutputStream out, TransferChecksum checksum) {
+            super(out);
+            this.checksum = checksum;
+        }
+
+        public TransferChecksum getChecksum() {
+            return checksum;
+        }
+
+        /**
+         * The stream written to, for the writers updating the checksum
+         * themselves.
+         */
+        public OutputStream getTarget() {
+            return out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checksum.update(b, off, len);
+            out.write(b, off, len);
+        }
+    }
+
+    /**
+     * A stream updating the checksum with what is read through it.
+     */
+    public static class ChecksumInputStream extends FilterInputStream {
+
+        private final TransferChecksum checksum;
+
+        private boolean endOfStream = false;
+
+        public ChecksumInputStream(InputStream in, TransferChecksum checksum) {
+            super(in);
+            this.checksum = checksum;
+        }
+
+        public TransferChecksum getChecksum() {
+            return checksum;
+        }
+
+        /**
+         * Has the whole stream been read?
+         */
+        public boolean isEndOfStream() {
+            return endOfStream;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = in.read();
+            if (c == -1) {
+                endOfStream = true;
+            } else {
+                checksum.update(new byte[] { (byte) c }, 0, 1);
+            }
+            return c;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = in.read(b, off, len);
+            if (count == -1) {
+                endOfStream = true;
+            } else {
+                checksum.update(b, off, count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes would be missing from the checksum
+            throw new IOException("Skip not supported");
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.impl;
+
+import io.netty.channel.Channel;
+import io.netty.ftpserver.TransferRejectionPolicy;
+import io.netty.util.concurrent.AbstractEventExecutor;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.UnorderedThreadPoolEventExecutor;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * The threads running the commands which block on the file system, so that
+ * they never hold the I/O event loops. The threads share one queue, any free
+ * thread taking the next task. The dispatcher of the control channel,
+ * {@link io.netty.ftpserver.command.impl.RegisterCommand}, runs the commands
+ * of a session on an {@link #newOrderedExecutor() ordered executor} of this
+ * group, so that they keep their order without being bound to one thread.
+ *
+ * @author Io Netty Project
+ */
+public class TransferExecutorGroup extends UnorderedThreadPoolEventExecutor {
+
+    /**
+     * The maximum number of tasks an ordered executor runs before letting
+     * the other sessions have the thread
+     */
+    private static final int MAX_TASKS_PER_RUN = 16;
+
+    private final int threads;
+
+    private final int maxQueuedTasks;
+
+    private final TransferRejectionPolicy rejectionPolicy;
+
+    private final AtomicInteger activeThreads = new AtomicInteger();
+
+    /**
+     * The tasks waiting in the ordered executors, not yet given to the pool
+     */
+    private final AtomicInteger orderedTasks = new AtomicInteger();
+
+    /**
+     * The ordered executors queued in the pool, not counted as tasks
+     */
+    private final AtomicInteger queuedRunners = new AtomicInteger();
+
+    /**
+     * The control channels no longer reading commands until the queue drains
+     */
+    private final Queue<Channel> suspended = new ConcurrentLinkedQueue<Channel>();
+
+    /**
+     * Internal constructor, do not use directly.
+     *
+     * @param nThreads the number of threads
+     * @param maxQueuedTasks the maximum number of tasks queued per thread, 0 for no limit
+     * @param rejectionPolicy what to do with the commands once the queue is full
+     */
+    public TransferExecutorGroup(int nThreads, int maxQueuedTasks,
+                                 TransferRejectionPolicy rejectionPolicy) {
+        super(nThreads, new DefaultThreadFactory("ftp-transfer"));
+        this.threads = nThreads;
+        this.maxQueuedTasks = maxQueuedTasks > 0 ? maxQueuedTasks * nThreads : 0;
+        this.rejectionPolicy = rejectionPolicy;
+    }
+
+    /**
+     * Create an executor running its tasks one after the other, in the order
+     * they were given, on whichever thread of this group is free.
+     */
+    public EventExecutor newOrderedExecutor() {
+        return new OrderedExecutor();
+    }
+
+    /**
+     * Check the queue before a command of a control channel is queued. Once
+     * the queue is full, the command is either refused, or queued all the same
+     * while the control channel stops reading the next commands until the
+     * queue drains, depending on the {@link TransferRejectionPolicy}.
+     *
+     * @param controlChannel the control channel of the command
+     * @return false if the command is refused
+     */
+    public boolean accept(Channel controlChannel) {
+        if (!isFull()) {
+            return true;
+        }
+        if (rejectionPolicy != TransferRejectionPolicy.BACKOFF) {
+            return false;
+        }
+        controlChannel.config().setAutoRead(false);
+        suspended.add(controlChannel);
+
+        // the queue may have drained before the channel was added
+        resumeSuspended();
+        return true;
+    }
+
+    private boolean isFull() {
+        return maxQueuedTasks > 0 && getQueueDepth() >= maxQueuedTasks;
+    }
+
+    private void resumeSuspended() {
+        Channel channel;
+        while (!isFull() && (channel = suspended.poll()) != null) {
+            channel.config().setAutoRead(true);
+        }
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        activeThreads.incrementAndGet();
+        super.beforeExecute(t, r);
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        activeThreads.decrementAndGet();
+        if (!suspended.isEmpty()) {
+            resumeSuspended();
+        }
+    }
+
+    /**
+     * The number of tasks waiting for a thread.
+     */
+    public int getQueueDepth() {
+        return Math.max(0, getQueue().size() - queuedRunners.get()) + orderedTasks.get();
+    }
+
+    /**
+     * The number of threads currently running a task.
+     */
+    public int getActiveThreads() {
+        return activeThreads.get();
+    }
+
+    /**
+     * The number of threads of this group.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Queues its tasks and hands itself to the group while it has some, so
+     * that at most one of them runs at a time. It lives as long as the group,
+     * shutting it down does nothing.
+     */
+    private final class OrderedExecutor extends AbstractEventExecutor implements Runnable {
+
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private volatile Thread thread;
+
+        OrderedExecutor() {
+            super(TransferExecutorGroup.this);
+        }
+
+        public void execute(Runnable task) {
+            if (task == null) {
+                throw new NullPointerException("task");
+            }
+            orderedTasks.incrementAndGet();
+            tasks.add(task);
+            scheduleRun();
+        }
+
+        private void scheduleRun() {
+            if (scheduled.compareAndSet(false, true)) {
+                queuedRunners.incrementAndGet();
+                try {
+                    TransferExecutorGroup.this.execute(this);
+                } catch (RuntimeException e) {
+                    queuedRunners.decrementAndGet();
+                    scheduled.set(false);
+                    throw e;
+                }
+            }
+        }
+
+        public void run() {
+            queuedRunners.decrementAndGet();
+            thread = Thread.currentThread();
+            try {
+                for (int i = 0; i < MAX_TASKS_PER_RUN; i++) {
+                    Runnable task = tasks.poll();
+                    if (task == null) {
+                        break;
+                    }
+                    orderedTasks.decrementAndGet();
+                    safeExecute(task);
+                }
+            } finally {
+                thread = null;
+                scheduled.set(false);
+                if (!tasks.isEmpty()) {
+                    scheduleRun();
+                }
+            }
+        }
+
+        public boolean inEventLoop(Thread thread) {
+            return thread == this.thread;
+        }
+
+        public boolean isShuttingDown() {
+            return TransferExecutorGroup.this.isShuttingDown();
+        }
+
+        public Future<?> shutdownGracefully(long quietPeriod, long timeout, TimeUnit unit) {
+            return terminationFuture();
+        }
+
+        public Future<?> terminationFuture() {
+            return TransferExecutorGroup.this.terminationFuture();
+        }
+
+        @Override
+        @Deprecated
+        public void shutdown() {
+        }
+
+        public boolean isShutdown() {
+            return TransferExecutorGroup.this.isShutdown();
+        }
+
+        public boolean isTerminated() {
+            return TransferExecutorGroup.this.isTerminated();
+        }
+
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return TransferExecutorGroup.this.awaitTermination(timeout, unit);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.ftpserver.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Pools the {@link Deflater} and {@link Inflater} of the MODE Z transfers,
+ * so that their native zlib contexts are reused rather than allocated for
+ * each transfer and left to the finalizer. At most {@link #MAX_POOLED} of
+ * each are kept, the others are ended once released.
+ *
+ * @author Io Netty Project
+ */
+public final class ZlibPool {
+
+    /**
+     * The maximum number of idle deflaters, and of idle inflaters, kept
+     */
+    public static final int MAX_POOLED = 64;
+
+    /**
+     * The size of the buffers of the MODE Z streams
+     */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Queue<Deflater> DEFLATERS = new ConcurrentLinkedQueue<Deflater>();
+
+    private static final AtomicInteger DEFLATER_COUNT = new AtomicInteger();
+
+    private static final Queue<Inflater> INFLATERS = new ConcurrentLinkedQueue<Inflater>();
+
+    private static final AtomicInteger INFLATER_COUNT = new AtomicInteger();
+
+    private ZlibPool() {
+        // static methods only
+    }
+
+    /**
+     * Borrow a deflater writing the zlib format.
+     *
+     * @param level the compression level, from 0 to 9, or
+     *            {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public static Deflater borrowDeflater(int level) {
+        Deflater deflater = DEFLATERS.poll();
+        if (deflater == null) {
+            return new Deflater(level);
+        }
+        DEFLATER_COUNT.decrementAndGet();
+        deflater.setLevel(level);
+        return deflater;
+    }
+
+    /**
+     * Return a deflater, it must not be used anymore.
+     */
+    public static void release(Deflater deflater) {
+        if (DEFLATER_COUNT.incrementAndGet() > MAX_POOLED) {
+            DEFLATER_COUNT.decrementAndGet();
+            deflater.end();
+            return;
+        }
+        deflater.reset();
+        DEFLATERS.offer(deflater);
+    }
+
+    /**
+     * Borrow an inflater reading the zlib format.
+     */
+    public static Inflater borrowInflater() {
+        Inflater inflater = INFLATERS.poll();
+        if (inflater == null) {
+            return new Inflater();
+        }
+        INFLATER_COUNT.decrementAndGet();
+        return inflater;
+    }
+
+    /**
+     * Return an inflater, it must not be used anymore.
+     */
+    public static void release(Inflater inflater) {
+        if (INFLATER_COUNT.incrementAndGet() > MAX_POOLED) {
+            INFLATER_COUNT.decrementAndGet();
+            inflater.end();
+            return;
+        }
+        inflater.reset();
+        INFLATERS.offer(inflater);
+    }
+
+    /**
+     * A compressing stream with a pooled deflater, returned once the stream
+     * is closed.
+     */
+    public static OutputStream newDeflaterOutputStream(OutputStream out, int level) {
+        final Deflater deflater = borrowDeflater(level);
+        return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+            private boolean closed = false;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    super.close();
+                } finally {
+                    release(deflater);
+                }
+            }
+        };
+    }
+
+    /**
+     * A decompressing stream with a pooled inflater, returned once the
+     * stream is closed.
+     */
+    public static InputStream newInflaterInputStream(InputStream in) {
+        final Inflater inflater = borrowInflater();
+        return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+            private boolean closed = false;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    super.close();
+                } finally {
+                    release(inflater);
+                }
+            }
+        };
+    }
+}
@@ -19,6 +19,7 @@
 
 package io.netty.ftpserver.impl.reply;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.ftpserver.ftplet.DefaultFtpReply;
 import io.netty.ftpserver.ftplet.FtpRequest;
 import io.netty.ftpserver.listener.nio.channel.FtpChannel;
@@ -32,7 +33,18 @@ import io.netty.ftpserver.listener.nio.channel.FtpChannel;
  */
 public class LocalizedFtpReply extends DefaultFtpReply {
 
+    private final ByteBuf encoded;
+
     public static LocalizedFtpReply translate(FtpChannel channel, FtpRequest request, int code, String subId, String basicMsg) {
+        // a message without variables is written already encoded
+        ReplyCache cache = channel.getContext().getReplyCache();
+        if (cache != null) {
+            ReplyCache.Reply reply = cache.get(channel.getLanguage(), code, subId);
+            if (reply != null) {
+                return new LocalizedFtpReply(code, reply.getMessage(), reply.getEncoded());
+            }
+        }
+
         String msg = FtpReplyTranslator.translateMessage(channel, request, code, subId,
                 basicMsg);
 
@@ -48,6 +60,18 @@ public class LocalizedFtpReply extends DefaultFtpReply {
 	 *            the reply text
 	 */
     public LocalizedFtpReply(int code, String message) {
+        this(code, message, null);
+    }
+
+    private LocalizedFtpReply(int code, String message, ByteBuf encoded) {
         super(code, message);
+        this.encoded = encoded;
+    }
+
+    /**
+     * The shared encoded reply, null if the reply is encoded when written.
+     */
+    public ByteBuf getEncoded() {
+        return encoded;
     }
 }
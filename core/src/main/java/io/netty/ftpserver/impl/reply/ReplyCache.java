@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.impl.reply;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.ftpserver.ftplet.DefaultFtpReply;
+import io.netty.ftpserver.message.MessageResource;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * The replies whose message has no variable, encoded once per language from
+ * the {@link MessageResource} so that they are written to the clients from
+ * a shared read only buffer. The cache holds one reference to each buffer,
+ * and each write of a reply one more.
+ *
+ * @author Io Netty Project
+ */
+public class ReplyCache {
+
+    private final Map<String, IntObjectMap<Map<String, Reply>>> replies =
+            new HashMap<String, IntObjectMap<Map<String, Reply>>>();
+
+    private final List<ByteBuf> buffers = new ArrayList<ByteBuf>();
+
+    public ReplyCache(MessageResource resource) {
+        add(resource, null);
+        List<String> languages = resource.getAvailableLanguages();
+        if (languages != null) {
+            for (String language : languages) {
+                add(resource, language.toLowerCase());
+            }
+        }
+    }
+
+    private void add(MessageResource resource, String language) {
+        Map<String, String> messages = resource.getMessages(language);
+        if (messages == null) {
+            return;
+        }
+        IntObjectMap<Map<String, Reply>> byCode = new IntObjectHashMap<Map<String, Reply>>();
+        for (Map.Entry<String, String> entry : messages.entrySet()) {
+            String message = entry.getValue();
+            if (message == null || message.indexOf('{') != -1) {
+                continue;
+            }
+
+            // the key is the code, followed by the sub id if any
+            String key = entry.getKey();
+            int dot = key.indexOf('.');
+            int code;
+            try {
+                code = Integer.parseInt(dot == -1 ? key : key.substring(0, dot));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            String subId = dot == -1 ? "" : key.substring(dot + 1);
+
+            String line = new DefaultFtpReply(code, message).toString();
+            ByteBuf buffer = Unpooled.directBuffer(ByteBufUtil.utf8Bytes(line));
+            ByteBufUtil.writeUtf8(buffer, line);
+            buffers.add(buffer);
+
+            Map<String, Reply> bySubId = byCode.get(code);
+            if (bySubId == null) {
+                bySubId = new HashMap<String, Reply>();
+                byCode.put(code, bySubId);
+            }
+            bySubId.put(subId, new Reply(message, buffer.asReadOnly()));
+        }
+        replies.put(language, byCode);
+    }
+
+    /**
+     * Get the reply of a code and sub id, null if its message has variables
+     * or the language is not known.
+     */
+    public Reply get(String language, int code, String subId) {
+        IntObjectMap<Map<String, Reply>> byCode = replies.get(language);
+        if (byCode == null) {
+            return null;
+        }
+        Map<String, Reply> bySubId = byCode.get(code);
+        if (bySubId == null) {
+            return null;
+        }
+        return bySubId.get(subId == null ? "" : subId);
+    }
+
+    /**
+     * Release the references of the cache to the buffers, once the server is
+     * stopped. The replies still being written hold references of their own,
+     * the memory of a buffer is freed once the last of them is written.
+     */
+    public void dispose() {
+        for (ByteBuf buffer : buffers) {
+            buffer.release();
+        }
+        buffers.clear();
+        replies.clear();
+    }
+
+    /**
+     * A message and its encoded reply.
+     */
+    public static final class Reply {
+
+        private final String message;
+
+        private final ByteBuf encoded;
+
+        private Reply(String message, ByteBuf encoded) {
+            this.message = message;
+            this.encoded = encoded;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * The encoded reply, to be written with a retained duplicate, which
+         * fails once the cache is disposed.
+         */
+        public ByteBuf getEncoded() {
+            return encoded;
+        }
+    }
+}
@@ -19,9 +19,11 @@
 
 package io.netty.ftpserver.listener;
 
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.ftpserver.DataConnectionConfiguration;
 import io.netty.ftpserver.impl.FtpServerContext;
+import io.netty.ftpserver.impl.SharedPassiveListener;
 import io.netty.ftpserver.listener.nio.channel.FtpChannel;
 import io.netty.ftpserver.ssl.SslConfiguration;
 
@@ -129,4 +131,19 @@ public interface Listener {
     int getIdleTimeout();
 
     String getChannelType();
+
+    /**
+     * Get the event loop group serving the data connections opened by
+     * the sessions of this listener.
+     * @return The data connection event loop group, null if the listener
+     *         has not been started
+     */
+    EventLoopGroup getDataEventLoopGroup();
+
+    /**
+     * Get the passive channels shared by the sessions of this listener.
+     * @return The shared passive channels, null if the passive channels are
+     *         not shared or the listener has not been started
+     */
+    SharedPassiveListener getSharedPassiveListener();
 }
\ No newline at end of file
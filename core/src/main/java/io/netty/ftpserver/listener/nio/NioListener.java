@@ -31,6 +31,7 @@ import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.ftpserver.DataConnectionConfiguration;
 import io.netty.ftpserver.command.impl.RegisterCommand;
 import io.netty.ftpserver.impl.FtpServerContext;
+import io.netty.ftpserver.impl.SharedPassiveListener;
 import io.netty.ftpserver.listener.Listener;
 import io.netty.ftpserver.listener.ListenerFactory;
 import io.netty.ftpserver.listener.nio.channel.FtpStatus;
@@ -40,6 +41,7 @@ import io.netty.ftpserver.listener.nio.log.FtpLoggingHandler;
 import io.netty.ftpserver.ssl.ClientAuth;
 import io.netty.ftpserver.ssl.SslConfiguration;
 import io.netty.ftpserver.util.DefaultEventLoopConfig;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.ssl.SslHandler;
@@ -63,10 +65,19 @@ public class NioListener extends AbstractListener {
 
     private final Logger LOG = LoggerFactory.getLogger(NioListener.class);
 
+    /**
+     * The most flushes of the control channel held back before one goes out
+     */
+    private static final int FLUSH_CONSOLIDATION_LIMIT = 64;
+
     public static ChannelGroup channels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
 
     private ChannelFuture channelFuture;
 
+    private volatile EventLoopGroup dataGroup;
+
+    private volatile SharedPassiveListener sharedPassiveListener;
+
     /**
      * @deprecated Use the constructor with IpFilter instead. 
      * Constructor for internal use, do not use directly. Instead use {@link ListenerFactory}
@@ -92,6 +103,11 @@ public class NioListener extends AbstractListener {
         DefaultEventLoopConfig defaultEventLoopConfig = new DefaultEventLoopConfig(getChannelType());
         final EventLoopGroup bossGroup = defaultEventLoopConfig.getEventLoopGroup();
         final EventLoopGroup workGroup = defaultEventLoopConfig.getEventLoopGroup();
+        dataGroup = defaultEventLoopConfig.getEventLoopGroup();
+        DataConnectionConfiguration dataConfig = getDataConnectionConfiguration();
+        final SharedPassiveListener sharedPassive = dataConfig != null && dataConfig.isPassiveShared()
+                ? new SharedPassiveListener(this) : null;
+        sharedPassiveListener = sharedPassive;
         try {
             ServerBootstrap serverBootstrap = new ServerBootstrap();
             serverBootstrap.group(bossGroup,workGroup).channel(defaultEventLoopConfig.getServerChannel())
@@ -112,11 +128,15 @@ public class NioListener extends AbstractListener {
                                 }
                                 channel.pipeline().addLast("sslFilter", new SslHandler(engine));
                             }
+                            // the replies of the commands read together, or written
+                            // together by the transfer threads, go out in one flush
+                            channel.pipeline().addLast("flushConsolidation",
+                                    new FlushConsolidationHandler(FLUSH_CONSOLIDATION_LIMIT, true));
                             channel.pipeline().addLast(new IdleStateHandler(60, 30, 0, TimeUnit.SECONDS));
                             channel.pipeline().addLast("decoder",new FtpRequestDecoder(2048));
                             channel.pipeline().addLast("encoder",new FtpResponseEncoder());
+                            channel.pipeline().addLast(RegisterCommand.LOGGER, new FtpLoggingHandler(LogLevel.INFO));
                             channel.pipeline().addLast(new RegisterCommand(channels));
-                            channel.pipeline().addLast(new FtpLoggingHandler(LogLevel.INFO));
                         }
                     });
             channelFuture = serverBootstrap.bind(getPort()).sync();
@@ -124,8 +144,12 @@ public class NioListener extends AbstractListener {
                 @Override
                 public void operationComplete(ChannelFuture future) throws Exception {
                     LOG.info("The service is exiting...");
+                    if (sharedPassive != null) {
+                        sharedPassive.close();
+                    }
                     bossGroup.shutdownGracefully();
                     workGroup.shutdownGracefully();
+                    dataGroup.shutdownGracefully();
                 }
             });
         } catch(Exception e) {
@@ -174,6 +198,20 @@ public class NioListener extends AbstractListener {
         }
     }
     
+    /**
+     * @see Listener#getDataEventLoopGroup()
+     */
+    public EventLoopGroup getDataEventLoopGroup() {
+        return dataGroup;
+    }
+
+    /**
+     * @see Listener#getSharedPassiveListener()
+     */
+    public SharedPassiveListener getSharedPassiveListener() {
+        return sharedPassiveListener;
+    }
+
 //    /**
 //     * @see Listener#getActiveSessions()
 //     */
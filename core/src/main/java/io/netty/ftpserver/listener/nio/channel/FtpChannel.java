@@ -29,9 +29,11 @@ import io.netty.ftpserver.ftplet.FtpFile;
 import io.netty.ftpserver.ftplet.FtpReply;
 import io.netty.ftpserver.ftplet.Structure;
 import io.netty.ftpserver.ftplet.User;
+import io.netty.ftpserver.impl.FileCopier;
 import io.netty.ftpserver.impl.FtpServerContext;
 import io.netty.ftpserver.impl.ServerDataConnectionFactory;
 import io.netty.ftpserver.listener.Listener;
+import io.netty.util.concurrent.EventExecutor;
 
 import java.net.InetSocketAddress;
 import java.util.Date;
@@ -72,10 +74,22 @@ public interface FtpChannel<T extends AbstractChannel>{
 
     void setFileOffset(long fileOffset);
 
+    long getFileRangeEnd();
+
+    void setFileRangeEnd(long fileRangeEnd);
+
+    long getAllocatedSize();
+
+    void setAllocatedSize(long allocatedSize);
+
     void setRenameFrom(FtpFile renFr);
 
     FtpFile getRenameFrom();
 
+    void setCopyFrom(FtpFile cpFr);
+
+    FtpFile getCopyFrom();
+
     void setDataType(DataType dataType);
 
     Date getLastAccessTime();
@@ -102,6 +116,26 @@ public interface FtpChannel<T extends AbstractChannel>{
 
     ServerDataConnectionFactory getDataConnection();
 
+    /**
+     * The executor running the commands of the session on a virtual thread,
+     * null if they run on the event loop and the transfer threads.
+     */
+    EventExecutor getSessionExecutor();
+
+    /**
+     * The executor running the blocking work of the session in order, the
+     * session executor when there is one, else an ordered executor of the
+     * transfer threads.
+     */
+    EventExecutor getTransferExecutor();
+
+    /**
+     * The server side copy running for the session, set by SITE CPTO.
+     */
+    FileCopier getCopier();
+
+    void setCopier(FileCopier copier);
+
     Object setAttribute(String key, Object value);
 
     Object getAttribute(String key);
@@ -114,6 +148,13 @@ public interface FtpChannel<T extends AbstractChannel>{
 
     ChannelFuture writeAndFlush(FtpReply ftpReply);
 
+    /**
+     * Keep the command in progress until its final reply, for a command
+     * replying once it returned without a preliminary reply first. The
+     * requests received meanwhile wait for that reply.
+     */
+    void deferReply();
+
     ChannelPipeline pipeline();
 
     ChannelFuture close();
@@ -0,0 +1,661 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.listener.nio.channel;
+
+import io.netty.channel.AbstractChannel;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelPipeline;
+import io.netty.ftpserver.ftplet.DataType;
+import io.netty.ftpserver.ftplet.FileSystemView;
+import io.netty.ftpserver.ftplet.FtpFile;
+import io.netty.ftpserver.ftplet.FtpReply;
+import io.netty.ftpserver.ftplet.FtpRequest;
+import io.netty.ftpserver.ftplet.Structure;
+import io.netty.ftpserver.ftplet.User;
+import io.netty.ftpserver.impl.FileCopier;
+import io.netty.ftpserver.impl.FtpServerContext;
+import io.netty.ftpserver.impl.NettyDataConnectionFactory;
+import io.netty.ftpserver.impl.ServerDataConnectionFactory;
+import io.netty.ftpserver.impl.TransferExecutorGroup;
+import io.netty.ftpserver.listener.Listener;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.EventExecutor;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * The state of an FTP session, created once per control channel and kept
+ * under {@link #KEY}. The state used by the server is held in fields, only
+ * the attributes set by the ftplets and a few commands go to a map.
+ *
+ * @author Io Netty Project
+ */
+public class FtpSession implements FtpChannel<AbstractChannel> {
+
+    /**
+     * The key of the session in the attributes of the control channel
+     */
+    public static final AttributeKey<FtpSession> KEY = AttributeKey.valueOf(FtpStatus.ATTRIBUTE_SESSION);
+
+    /**
+     * The user event fired on the control channel once the command in
+     * progress completed and a request is queued behind it
+     */
+    public static final Object NEXT_REQUEST = new Object();
+
+    private static final AttributeKey<FtpServerContext> CONTEXT = AttributeKey.valueOf(FtpStatus.ATTRIBUTE_CONTEXT);
+
+    private static final AttributeKey<Listener> LISTENER = AttributeKey.valueOf(FtpStatus.ATTRIBUTE_LISTENER);
+
+    private final AbstractChannel channel;
+
+    private final FtpServerContext context;
+
+    private final Listener listener;
+
+    private final long creationTime;
+
+    private final Map<String, Object> attributes = new ConcurrentHashMap<String, Object>(4);
+
+    private volatile User user;
+
+    private volatile String userArgument;
+
+    private volatile String language;
+
+    private volatile int failedLogins;
+
+    private volatile long loginTime;
+
+    private volatile long lastAccessTime;
+
+    private volatile FileSystemView fileSystemView;
+
+    private volatile ServerDataConnectionFactory dataConnection;
+
+    private volatile DataType dataType = DataType.ASCII;
+
+    private volatile Structure structure = Structure.FILE;
+
+    private volatile FtpFile renameFrom;
+
+    private volatile FtpFile copyFrom;
+
+    private volatile long fileOffset;
+
+    private volatile long fileRangeEnd = -1L;
+
+    private volatile long allocatedSize = -1L;
+
+    /**
+     * Updated by the data event loops of all the channels of a transfer
+     */
+    private final AtomicLong writtenBytes = new AtomicLong();
+
+    private final AtomicLong readBytes = new AtomicLong();
+
+    private volatile long lastWriteTime;
+
+    private volatile long lastReadTime;
+
+    private volatile FtpReply ftpReply;
+
+    private volatile EventExecutor sessionExecutor;
+
+    private volatile EventExecutor transferExecutor;
+
+    private volatile FileCopier copier;
+
+    /**
+     * The requests received while a command is in progress, run one after
+     * the other once it completes, also the lock of the command state
+     */
+    private final Queue<FtpRequest> queuedRequests = new ArrayDeque<FtpRequest>();
+
+    private boolean commandInProgress;
+
+    private boolean commandReturned;
+
+    private boolean replyPending;
+
+    /**
+     * The first reply of the command in progress written before it returned
+     */
+    private FtpReply commandReply;
+
+    private FtpSession(Channel channel) {
+        this.channel = (AbstractChannel) channel;
+        this.context = channel.attr(CONTEXT).get();
+        this.listener = channel.attr(LISTENER).get();
+        this.creationTime = System.currentTimeMillis();
+        this.lastReadTime = creationTime;
+        this.lastWriteTime = creationTime;
+    }
+
+    /**
+     * Get the session of a control channel, created on first use.
+     */
+    public static FtpSession get(Channel channel) {
+        Attribute<FtpSession> attr = channel.attr(KEY);
+        FtpSession session = attr.get();
+        if (session == null) {
+            session = new FtpSession(channel);
+            FtpSession current = attr.setIfAbsent(session);
+            if (current != null) {
+                session = current;
+            }
+        }
+        return session;
+    }
+
+    @Override
+    public void resetState() {
+        renameFrom = null;
+        copyFrom = null;
+        fileOffset = 0L;
+        fileRangeEnd = -1L;
+    }
+
+    @Override
+    public FileSystemView getFileSystemView() {
+        return fileSystemView;
+    }
+
+    @Override
+    public FtpServerContext getContext() {
+        return context;
+    }
+
+    @Override
+    public User getUser() {
+        return user;
+    }
+
+    @Override
+    public boolean isLoggedIn() {
+        return user != null;
+    }
+
+    @Override
+    public Listener getListener() {
+        return listener;
+    }
+
+    @Override
+    public void setLanguage(String language) {
+        this.language = language;
+    }
+
+    @Override
+    public String getLanguage() {
+        return language;
+    }
+
+    @Override
+    public String getUserArgument() {
+        String userArgument = this.userArgument;
+        return userArgument == null ? "" : userArgument;
+    }
+
+    @Override
+    public void setUserArgument(String userArgument) {
+        this.userArgument = userArgument;
+    }
+
+    @Override
+    public int getFailedLogins() {
+        return failedLogins;
+    }
+
+    @Override
+    public void reinitialize() {
+        logoutUser();
+        user = null;
+        userArgument = null;
+        loginTime = 0L;
+        fileSystemView = null;
+        renameFrom = null;
+        copyFrom = null;
+        fileOffset = 0L;
+        fileRangeEnd = -1L;
+        allocatedSize = -1L;
+    }
+
+    @Override
+    public void logoutUser() {
+
+    }
+
+    @Override
+    public void setLogin(FileSystemView fsview) {
+        loginTime = System.currentTimeMillis();
+        fileSystemView = fsview;
+    }
+
+    @Override
+    public long getFileOffset() {
+        return fileOffset;
+    }
+
+    @Override
+    public void setFileOffset(long fileOffset) {
+        this.fileOffset = fileOffset;
+    }
+
+    /**
+     * The last byte of the file to transfer set by RANG, -1 for the end of
+     * the file.
+     */
+    @Override
+    public long getFileRangeEnd() {
+        return fileRangeEnd;
+    }
+
+    @Override
+    public void setFileRangeEnd(long fileRangeEnd) {
+        this.fileRangeEnd = fileRangeEnd;
+    }
+
+    /**
+     * The size of the file to store set by ALLO, -1 if not set. Unlike the
+     * file offset it is kept until the next transfer.
+     */
+    @Override
+    public long getAllocatedSize() {
+        return allocatedSize;
+    }
+
+    @Override
+    public void setAllocatedSize(long allocatedSize) {
+        this.allocatedSize = allocatedSize;
+    }
+
+    @Override
+    public void setRenameFrom(FtpFile renFr) {
+        this.renameFrom = renFr;
+    }
+
+    @Override
+    public FtpFile getRenameFrom() {
+        return renameFrom;
+    }
+
+    @Override
+    public void setCopyFrom(FtpFile cpFr) {
+        this.copyFrom = cpFr;
+    }
+
+    @Override
+    public FtpFile getCopyFrom() {
+        return copyFrom;
+    }
+
+    @Override
+    public void setDataType(DataType dataType) {
+        this.dataType = dataType;
+    }
+
+    @Override
+    public DataType getDataType() {
+        return dataType;
+    }
+
+    @Override
+    public void setStructure(Structure structure) {
+        this.structure = structure;
+    }
+
+    @Override
+    public Structure getStructure() {
+        return structure;
+    }
+
+    @Override
+    public Date getLastAccessTime() {
+        long lastAccessTime = this.lastAccessTime;
+        return lastAccessTime == 0L ? null : new Date(lastAccessTime);
+    }
+
+    @Override
+    public Date getLoginTime() {
+        long loginTime = this.loginTime;
+        return loginTime == 0L ? null : new Date(loginTime);
+    }
+
+    @Override
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    @Override
+    public void setUser(User user) {
+        this.user = user;
+    }
+
+    @Override
+    public void increaseFailedLogins() {
+        failedLogins++;
+    }
+
+    @Override
+    public void increaseWrittenDataBytes(int increment) {
+        if (increment <= 0) {
+            return;
+        }
+        writtenBytes.addAndGet(increment);
+        lastWriteTime = System.currentTimeMillis();
+    }
+
+    @Override
+    public void increaseReadDataBytes(int increment) {
+        if (increment <= 0) {
+            return;
+        }
+        readBytes.addAndGet(increment);
+        lastReadTime = System.currentTimeMillis();
+    }
+
+    /**
+     * The number of data bytes sent to the client by the transfers of the
+     * session.
+     */
+    public long getWrittenDataBytes() {
+        return writtenBytes.get();
+    }
+
+    /**
+     * The number of data bytes received from the client by the transfers of
+     * the session.
+     */
+    public long getReadDataBytes() {
+        return readBytes.get();
+    }
+
+    @Override
+    public void updateLastAccessTime() {
+        lastAccessTime = System.currentTimeMillis();
+    }
+
+    @Override
+    public synchronized ServerDataConnectionFactory getDataConnection() {
+        if (dataConnection == null) {
+            NettyDataConnectionFactory dataCon = new NettyDataConnectionFactory(this);
+            dataCon.setServerControlAddress(localAddress().getAddress());
+            dataConnection = dataCon;
+        }
+        return dataConnection;
+    }
+
+    @Override
+    public EventExecutor getSessionExecutor() {
+        return sessionExecutor;
+    }
+
+    /**
+     * Set the executor running the commands of the session on a virtual
+     * thread.
+     */
+    public void setSessionExecutor(EventExecutor sessionExecutor) {
+        this.sessionExecutor = sessionExecutor;
+    }
+
+    /**
+     * The executor running the blocking commands of the session in the order
+     * they were received: the session executor when the session has one,
+     * else an ordered executor of the transfer threads, created with the
+     * first of them.
+     *
+     * @return the executor, null if the server has no transfer threads
+     */
+    @Override
+    public EventExecutor getTransferExecutor() {
+        if (sessionExecutor != null) {
+            return sessionExecutor;
+        }
+        synchronized (this) {
+            if (transferExecutor == null) {
+                TransferExecutorGroup group = getContext().getTransferExecutorGroup();
+                if (group != null) {
+                    transferExecutor = group.newOrderedExecutor();
+                }
+            }
+            return transferExecutor;
+        }
+    }
+
+    /**
+     * Start the command of a request, unless a command is still in progress,
+     * in which case the request is queued behind it. A command is in
+     * progress until it returned and its final reply was written, so that
+     * the transfers keep the session until their 226 or 4xx reply.
+     *
+     * @return true if the command of the request is to run now
+     */
+    public boolean offerRequest(FtpRequest request) {
+        synchronized (queuedRequests) {
+            if (commandInProgress || !queuedRequests.isEmpty()) {
+                queuedRequests.add(request);
+                return false;
+            }
+            startCommand();
+            return true;
+        }
+    }
+
+    /**
+     * Start the command of the next queued request, following a
+     * {@link #NEXT_REQUEST} event.
+     *
+     * @return the request, null if a command is still in progress or no
+     *         request is queued
+     */
+    public FtpRequest pollRequest() {
+        synchronized (queuedRequests) {
+            if (commandInProgress) {
+                return null;
+            }
+            FtpRequest request = queuedRequests.poll();
+            if (request != null) {
+                startCommand();
+            }
+            return request;
+        }
+    }
+
+    /**
+     * Write a reply beside the command in progress, such as its status,
+     * without completing it.
+     *
+     * @return false if no command is in progress, or requests are queued
+     *         before this one, in which case nothing is written
+     */
+    public boolean writeAside(FtpReply ftpReply) {
+        synchronized (queuedRequests) {
+            if (!commandInProgress || !queuedRequests.isEmpty()) {
+                return false;
+            }
+            channel.writeAndFlush(ftpReply);
+            return true;
+        }
+    }
+
+    private void startCommand() {
+        commandInProgress = true;
+        commandReturned = false;
+        replyPending = false;
+        commandReply = null;
+    }
+
+    /**
+     * The command in progress returned, it completes unless its final reply
+     * is still to come.
+     */
+    public void commandReturned() {
+        boolean next;
+        synchronized (queuedRequests) {
+            commandReturned = true;
+            if (!commandInProgress || replyPending) {
+                return;
+            }
+            commandInProgress = false;
+            next = !queuedRequests.isEmpty();
+        }
+        if (next) {
+            fireNextRequest();
+        }
+    }
+
+    @Override
+    public void deferReply() {
+        synchronized (queuedRequests) {
+            if (commandInProgress) {
+                replyPending = true;
+            }
+        }
+    }
+
+    /**
+     * Tell the dispatcher to run the next request, once the replies written
+     * so far have been, whatever the thread the command completed on.
+     */
+    private void fireNextRequest() {
+        channel.eventLoop().execute(new Runnable() {
+            public void run() {
+                channel.pipeline().fireUserEventTriggered(NEXT_REQUEST);
+            }
+        });
+    }
+
+    @Override
+    public FileCopier getCopier() {
+        return copier;
+    }
+
+    @Override
+    public void setCopier(FileCopier copier) {
+        this.copier = copier;
+    }
+
+    @Override
+    public Object setAttribute(String key, Object value) {
+        if (key == null) {
+            throw new IllegalArgumentException("key");
+        }
+        if (value == null) {
+            return attributes.remove(key);
+        }
+        return attributes.put(key, value);
+    }
+
+    @Override
+    public Object getAttribute(String key) {
+        if (key == null) {
+            throw new IllegalArgumentException("key");
+        }
+        return attributes.get(key);
+    }
+
+    @Override
+    public AbstractChannel getTChannel() {
+        return channel;
+    }
+
+    @Override
+    public InetSocketAddress localAddress() {
+        return (InetSocketAddress) channel.localAddress();
+    }
+
+    @Override
+    public InetSocketAddress remoteAddress() {
+        return (InetSocketAddress) channel.remoteAddress();
+    }
+
+    @Override
+    public ChannelFuture writeAndFlush(FtpReply ftpReply) {
+        ChannelFuture future;
+        boolean next = false;
+        synchronized (queuedRequests) {
+            this.ftpReply = ftpReply;
+
+            // a preliminary reply holds the command in progress until the
+            // final one, which completes it once the command returned
+            if (commandInProgress) {
+                if (!commandReturned && commandReply == null) {
+                    commandReply = ftpReply;
+                }
+                if (ftpReply.getCode() < 200) {
+                    replyPending = true;
+                } else if (replyPending) {
+                    replyPending = false;
+                    if (commandReturned) {
+                        commandInProgress = false;
+                        next = !queuedRequests.isEmpty();
+                    }
+                }
+            }
+
+            // written within the lock so that the replies keep the order the
+            // command state was updated in
+            future = channel.writeAndFlush(ftpReply);
+        }
+        if (next) {
+            fireNextRequest();
+        }
+        return future;
+    }
+
+    @Override
+    public ChannelPipeline pipeline() {
+        return channel.pipeline();
+    }
+
+    @Override
+    public ChannelFuture close() {
+        return channel.close();
+    }
+
+    /**
+     * The last reply written.
+     */
+    public FtpReply getFtpReply() {
+        return ftpReply;
+    }
+
+    /**
+     * The reply passed to the ftplets after the command in progress: the
+     * first one it wrote before returning, so the 150 reply of a transfer
+     * even if the transfer ended first, else the last reply written.
+     */
+    public FtpReply getCommandReply() {
+        synchronized (queuedRequests) {
+            return commandReply != null ? commandReply : ftpReply;
+        }
+    }
+}
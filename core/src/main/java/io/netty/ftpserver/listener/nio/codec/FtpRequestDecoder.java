@@ -24,18 +24,80 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.LineBasedFrameDecoder;
 import io.netty.util.CharsetUtil;
 import io.netty.ftpserver.impl.DefaultFtpRequest;
+import io.netty.ftpserver.impl.FtpCommands;
 
 /**
+ * Splits the control connection into request lines and parses each of them
+ * into a {@link DefaultFtpRequest}. Known verbs are matched in the
+ * {@link FtpCommands} table straight from the buffer, only the argument is
+ * decoded to a string.
+ *
  * @author Io Netty Project
  */
 public class FtpRequestDecoder extends LineBasedFrameDecoder {
 
+    /**
+     * When the bytes being decoded were read, shared by the requests read
+     * together
+     */
+    private long receivedTime;
+
     public FtpRequestDecoder(int maxLength) {
         super(maxLength);
     }
 
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        receivedTime = System.currentTimeMillis();
+        super.channelRead(ctx, msg);
+    }
+
     @Override
     protected Object decode(ChannelHandlerContext ctx, ByteBuf buffer) throws Exception {
-        return new DefaultFtpRequest(((ByteBuf)super.decode(ctx,buffer)).toString(CharsetUtil.UTF_8));
+        ByteBuf frame = (ByteBuf) super.decode(ctx, buffer);
+        if (frame == null) {
+            return null;
+        }
+        try {
+            return parse(frame);
+        } finally {
+            frame.release();
+        }
+    }
+
+    private DefaultFtpRequest parse(ByteBuf frame) {
+        // trim the line
+        int start = frame.readerIndex();
+        int end = frame.writerIndex();
+        while (start < end && (frame.getByte(start) & 0xFF) <= ' ') {
+            start++;
+        }
+        while (end > start && (frame.getByte(end - 1) & 0xFF) <= ' ') {
+            end--;
+        }
+
+        int space = frame.indexOf(start, end, (byte) ' ');
+        int verbEnd = space == -1 ? end : space;
+        String argument = null;
+        if (space != -1 && space + 1 < end) {
+            argument = frame.toString(space + 1, end - space - 1, CharsetUtil.UTF_8);
+        }
+
+        String verb;
+        String command;
+        long key = FtpCommands.pack(frame, start, verbEnd - start);
+        if (key == -1L) {
+            verb = frame.toString(start, verbEnd - start, CharsetUtil.UTF_8);
+            command = FtpCommands.getCommand(verb);
+        } else {
+            long upper = FtpCommands.toUpperCase(key);
+            command = FtpCommands.lookup(upper);
+            if (command == null) {
+                command = FtpCommands.unpack(upper);
+            }
+            // the verb is only kept apart for aliases and lower case
+            verb = FtpCommands.pack(command) == key ? command : FtpCommands.unpack(key);
+        }
+        return new DefaultFtpRequest(verb, command, argument, receivedTime);
     }
 }
@@ -20,16 +20,40 @@
 package io.netty.ftpserver.listener.nio.codec;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.handler.codec.MessageToMessageEncoder;
 import io.netty.ftpserver.ftplet.FtpReply;
+import io.netty.ftpserver.impl.reply.LocalizedFtpReply;
+import io.netty.util.IllegalReferenceCountException;
+
+import java.util.List;
 
 /**
+ * Writes the replies in UTF-8. A reply already encoded by the
+ * {@link io.netty.ftpserver.impl.reply.ReplyCache} is written from its shared
+ * buffer, retained until written, the others straight into a buffer of the
+ * size of the message.
+ *
  * @author Io Netty Project
  */
-public class FtpResponseEncoder extends MessageToByteEncoder<FtpReply>{
+public class FtpResponseEncoder extends MessageToMessageEncoder<FtpReply> {
     @Override
-    protected void encode(ChannelHandlerContext channelHandlerContext, FtpReply ftpReply, ByteBuf byteBuf) throws Exception {
-        byteBuf.writeBytes(ftpReply.toString().getBytes());
+    protected void encode(ChannelHandlerContext ctx, FtpReply ftpReply, List<Object> out) throws Exception {
+        if (ftpReply instanceof LocalizedFtpReply) {
+            ByteBuf encoded = ((LocalizedFtpReply) ftpReply).getEncoded();
+            if (encoded != null) {
+                try {
+                    out.add(encoded.retainedDuplicate());
+                    return;
+                } catch (IllegalReferenceCountException e) {
+                    // the cache was disposed since the reply was created
+                }
+            }
+        }
+        String reply = ftpReply.toString();
+        ByteBuf buffer = ctx.alloc().buffer(ByteBufUtil.utf8MaxBytes(reply));
+        ByteBufUtil.writeUtf8(buffer, reply);
+        out.add(buffer);
     }
 }
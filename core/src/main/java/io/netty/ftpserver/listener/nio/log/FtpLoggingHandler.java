@@ -26,7 +26,7 @@ import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
-import io.netty.ftpserver.listener.nio.channel.FtpIoChannel;
+import io.netty.ftpserver.listener.nio.channel.FtpSession;
 import io.netty.handler.logging.ByteBufFormat;
 import io.netty.handler.logging.LogLevel;
 import io.netty.util.internal.ObjectUtil;
@@ -182,9 +182,9 @@ public class FtpLoggingHandler extends ChannelDuplexHandler {
 	 * @param eventName the name of the event
 	 */
 	protected String format(ChannelHandlerContext ctx, String eventName) {
-		FtpIoChannel ftpIoChannel = new FtpIoChannel(ctx.channel());
-		String userName = ftpIoChannel.getUserArgument();
-		String remote = ftpIoChannel.remoteAddress().getAddress().getHostAddress();
+		FtpSession session = FtpSession.get(ctx.channel());
+		String userName = session.getUserArgument();
+		String remote = session.remoteAddress().getAddress().getHostAddress();
 		return new StringBuilder(userName.length() + 3 +remote.length() + 3 + eventName.length())
 				.append("[").append(userName).append("]").append(' ')
 				.append("[").append(remote).append("]").append(' ')
@@ -214,9 +214,9 @@ public class FtpLoggingHandler extends ChannelDuplexHandler {
 	 * Generates the default log message of the specified event whose argument is a {@link ByteBuf}.
 	 */
 	private String formatByteBuf(ChannelHandlerContext ctx, String eventName, ByteBuf msg) {
-		FtpIoChannel ftpIoChannel = new FtpIoChannel(ctx.channel());
-		String userName = ftpIoChannel.getUserArgument();
-		String remote = ftpIoChannel.remoteAddress().getAddress().getHostAddress();
+		FtpSession session = FtpSession.get(ctx.channel());
+		String userName = session.getUserArgument();
+		String remote = session.remoteAddress().getAddress().getHostAddress();
 		int length = msg.readableBytes();
 		if (length == 0) {
 			StringBuilder buf = new StringBuilder(userName.length() + 3 +
@@ -248,9 +248,9 @@ public class FtpLoggingHandler extends ChannelDuplexHandler {
 	 * Generates the default log message of the specified event whose argument is a {@link ByteBufHolder}.
 	 */
 	private String formatByteBufHolder(ChannelHandlerContext ctx, String eventName, ByteBufHolder msg) {
-		FtpIoChannel ftpIoChannel = new FtpIoChannel(ctx.channel());
-		String userName = ftpIoChannel.getUserArgument();
-		String remote = ftpIoChannel.remoteAddress().getAddress().getHostAddress();
+		FtpSession session = FtpSession.get(ctx.channel());
+		String userName = session.getUserArgument();
+		String remote = session.remoteAddress().getAddress().getHostAddress();
 		String msgStr = msg.toString();
 		ByteBuf content = msg.content();
 		int length = content.readableBytes();
@@ -285,9 +285,9 @@ public class FtpLoggingHandler extends ChannelDuplexHandler {
 	 * Generates the default log message of the specified event whose argument is an arbitrary object.
 	 */
 	private String formatSimple(ChannelHandlerContext ctx, String eventName, Object msg) {
-		FtpIoChannel ftpIoChannel = new FtpIoChannel(ctx.channel());
-		String userName = ftpIoChannel.getUserArgument();
-		String remote = ftpIoChannel.remoteAddress().getAddress().getHostAddress();
+		FtpSession session = FtpSession.get(ctx.channel());
+		String userName = session.getUserArgument();
+		String remote = session.remoteAddress().getAddress().getHostAddress();
 		String msgStr = String.valueOf(msg);
 		if (maskPassword && msgStr.startsWith("PASS")) {
 			msgStr = "PASS *****";
@@ -19,6 +19,7 @@
 
 package io.netty.ftpserver.util;
 
+import io.netty.channel.Channel;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.ServerChannel;
 
@@ -32,24 +33,31 @@ public class DefaultEventLoopConfig {
 
     private final String socketChannel;
 
+    private final String clientChannel;
+
     public DefaultEventLoopConfig(String eventType){
         if("NIO".equals(eventType)){
             this.eventLoopGroup = "io.netty.channel.nio.NioEventLoopGroup";
             this.socketChannel = "io.netty.channel.socket.nio.NioServerSocketChannel";
+            this.clientChannel = "io.netty.channel.socket.nio.NioSocketChannel";
         }else if("EPOLL".equals(eventType)){
             this.eventLoopGroup = "io.netty.channel.epoll.EpollEventLoopGroup";
             this.socketChannel = "io.netty.channel.epoll.EpollServerSocketChannel";
+            this.clientChannel = "io.netty.channel.epoll.EpollSocketChannel";
         }else if ("KQUEUE".equals(eventType)){
             this.eventLoopGroup = "io.netty.channel.kqueue.KQueueEventLoopGroup";
             this.socketChannel = "io.netty.channel.kqueue.KQueueServerSocketChannel";
+            this.clientChannel = "io.netty.channel.kqueue.KQueueSocketChannel";
         }else{
             String os = System.getProperty("os.name");
             if (os.toLowerCase(Locale.ROOT).startsWith("win")){
                 this.eventLoopGroup = "io.netty.channel.nio.NioEventLoopGroup";
                 this.socketChannel = "io.netty.channel.socket.nio.NioServerSocketChannel";
+                this.clientChannel = "io.netty.channel.socket.nio.NioSocketChannel";
             }else {
                 this.eventLoopGroup = "io.netty.channel.epoll.EpollEventLoopGroup";
                 this.socketChannel = "io.netty.channel.epoll.EpollServerSocketChannel";
+                this.clientChannel = "io.netty.channel.epoll.EpollSocketChannel";
             }
         }
     }
@@ -62,4 +70,8 @@ public class DefaultEventLoopConfig {
     public Class<ServerChannel> getServerChannel() throws ClassNotFoundException {
         return (Class<ServerChannel>) Class.forName(socketChannel);
     }
+
+    public Class<Channel> getSocketChannel() throws ClassNotFoundException {
+        return (Class<Channel>) Class.forName(clientChannel);
+    }
 }
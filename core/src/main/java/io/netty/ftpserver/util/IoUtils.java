@@ -19,6 +19,8 @@
 
 package io.netty.ftpserver.util;
 
+import io.netty.ftpserver.ftplet.FtpFile;
+
 import java.io.*;
 import java.util.Random;
 
@@ -111,6 +113,70 @@ public class IoUtils {
         return newFile;
     }
 
+    /**
+     * Get the absolute path of the physical file, null if the file is not
+     * backed by a <code>File</code>. Unlike the virtual path it does not
+     * depend on the user.
+     */
+    public final static String getPhysicalPath(FtpFile file) {
+        Object physicalFile = file.getPhysicalFile();
+        if (physicalFile instanceof File) {
+            return ((File) physicalFile).getAbsolutePath();
+        }
+        return null;
+    }
+
+    /**
+     * Get an <code>InputStream</code> ending after the given number of bytes.
+     */
+    public final static InputStream getBoundedInputStream(InputStream in,
+            final long count) {
+        return new FilterInputStream(in) {
+            private long remaining = count;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int c = in.read();
+                if (c != -1) {
+                    remaining--;
+                }
+                return c;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int read = in.read(b, off, (int) Math.min(len, remaining));
+                if (read > 0) {
+                    remaining -= read;
+                }
+                return read;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = in.skip(Math.min(n, remaining));
+                remaining -= skipped;
+                return skipped;
+            }
+
+            @Override
+            public int available() throws IOException {
+                return (int) Math.min(in.available(), remaining);
+            }
+
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        };
+    }
+
     /**
      * No exception <code>InputStream</code> close method.
      */
@@ -159,6 +225,18 @@ public class IoUtils {
         }
     }
 
+    /**
+     * No exception <code>java.io.RandomAccessFile</code> close method.
+     */
+    public final static void close(RandomAccessFile raf) {
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (Exception ex) {
+            }
+        }
+    }
+
     /**
      * Get exception stack trace.
      */
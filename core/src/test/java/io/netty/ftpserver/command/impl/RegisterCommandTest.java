@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.command.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.ftpserver.impl.DefaultFtpRequest;
+
+import org.junit.Test;
+
+/**
+ * @author Io Netty Project
+ */
+public class RegisterCommandTest {
+
+    @Test
+    public void testTransferCommands() {
+        assertTrue(isTransferCommand("RETR file"));
+        assertTrue(isTransferCommand("stor file"));
+        assertTrue(isTransferCommand("LIST"));
+        assertTrue(isTransferCommand("XSHA256 file"));
+        assertFalse(isTransferCommand("NOOP"));
+        assertFalse(isTransferCommand("PASV"));
+        assertFalse(isTransferCommand("CWD dir"));
+    }
+
+    @Test
+    public void testSiteSubcommands() {
+        assertTrue(isTransferCommand("SITE UNPACK archive.tar"));
+        assertTrue(isTransferCommand("site unpack archive.tar"));
+        assertTrue(isTransferCommand("SITE CPFR from"));
+        assertTrue(isTransferCommand("SITE CpTo to"));
+        assertFalse(isTransferCommand("SITE"));
+        assertFalse(isTransferCommand("SITE HELP"));
+        assertFalse(isTransferCommand("SITE STAT"));
+        assertFalse(isTransferCommand("SITE UNPACKS archive.tar"));
+    }
+
+    private static boolean isTransferCommand(String line) {
+        return RegisterCommand.isTransferCommand(new DefaultFtpRequest(line));
+    }
+}
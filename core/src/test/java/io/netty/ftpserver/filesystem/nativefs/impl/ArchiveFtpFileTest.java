@@ -0,0 +1,418 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.netty.ftpserver.filesystem.nativefs.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.ftpserver.usermanager.impl.BaseUser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Io Netty Project
+ */
+public class ArchiveFtpFileTest {
+
+    private final BaseUser user = new BaseUser();
+
+    private final Random random = new Random(1L);
+
+    private File root;
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("archive", "");
+        assertTrue(root.delete());
+        dir = new File(root, "dir");
+        assertTrue(new File(dir, "sub/deeper").mkdirs());
+        assertTrue(new File(dir, "empty").mkdir());
+        user.setName("user");
+        user.setHomeDirectory(root.getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() {
+        delete(root);
+    }
+
+    @Test
+    public void testGet() throws IOException {
+        assertNotNull(archive("dir.tar"));
+        assertNotNull(archive("dir.TAR.GZ"));
+        assertNotNull(archive("dir.zip"));
+        assertNotNull(archive("*.csv.tar"));
+
+        // not an archive extension, no directory, nothing to name it after
+        assertNull(archive("dir.rar"));
+        assertNull(archive("missing.tar"));
+        assertNull(archive(".tar"));
+        write("file.bin", 10);
+        assertNull(archive("file.bin.tar"));
+
+        // a real file hides the archive
+        write("dir.tar", 10);
+        assertNull(archive("dir.tar"));
+    }
+
+    @Test
+    public void testProperties() throws IOException {
+        ArchiveFtpFile archive = archive("dir.tar");
+        assertTrue(archive.doesExist());
+        assertTrue(archive.isFile());
+        assertFalse(archive.isDirectory());
+        assertTrue(archive.isReadable());
+        assertEquals(0L, archive.getSize());
+        assertNull(archive.listFiles());
+
+        // gone with its directory
+        delete(dir);
+        assertFalse(archive.doesExist());
+    }
+
+    @Test
+    public void testTar() throws IOException {
+        Map<String, byte[]> files = createFiles();
+        byte[] tar = readFully(archive("dir.tar").createInputStream(0L));
+
+        // whole records of 20 blocks
+        assertEquals(0, tar.length % (20 * 512));
+        Map<String, byte[]> entries = untar(tar);
+        assertEquals(expectedEntries(files).keySet().toString(), entries.keySet().toString());
+        assertEntries(expectedEntries(files), entries);
+    }
+
+    @Test
+    public void testTarGz() throws IOException {
+        Map<String, byte[]> files = createFiles();
+        byte[] tarGz = readFully(archive("dir.tar.gz").createInputStream(0L));
+        byte[] tar = readFully(new GZIPInputStream(new ByteArrayInputStream(tarGz)));
+        assertEntries(expectedEntries(files), untar(tar));
+    }
+
+    @Test
+    public void testZip() throws IOException {
+        Map<String, byte[]> files = createFiles();
+        byte[] zip = readFully(archive("dir.zip").createInputStream(0L));
+
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip));
+        ZipEntry entry;
+        while ((entry = in.getNextEntry()) != null) {
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                data.write(buffer, 0, count);
+            }
+            entries.put(entry.getName(), entry.isDirectory() ? null : data.toByteArray());
+        }
+        in.close();
+        assertEquals(expectedEntries(files).keySet().toString(), entries.keySet().toString());
+        assertEntries(expectedEntries(files), entries);
+    }
+
+    @Test
+    public void testGlob() throws IOException {
+        write("a.csv", 100);
+        write("b.csv", 0);
+        write("c.txt", 100);
+        Map<String, byte[]> entries = untar(readFully(archive("*.csv.tar").createInputStream(0L)));
+        assertEquals("[a.csv, b.csv]", entries.keySet().toString());
+        assertArrayEquals(read(new File(root, "a.csv")), entries.get("a.csv"));
+        assertEquals(0, entries.get("b.csv").length);
+
+        // nothing matching
+        entries = untar(readFully(archive("*.xml.tar").createInputStream(0L)));
+        assertTrue(entries.isEmpty());
+    }
+
+    @Test
+    public void testEmptyDirectory() throws IOException {
+        Map<String, byte[]> entries = untar(readFully(archive("dir/empty.tar").createInputStream(0L)));
+        assertEquals("[empty/]", entries.keySet().toString());
+    }
+
+    @Test
+    public void testLongNames() throws IOException {
+        // split into the prefix and name fields
+        char[] chars = new char[90];
+        Arrays.fill(chars, 'a');
+        String longDir = new String(chars);
+        assertTrue(new File(dir, longDir).mkdir());
+        write("dir/" + longDir + "/" + longDir + ".bin", 10);
+
+        // too long for them, a GNU long name
+        chars = new char[200];
+        Arrays.fill(chars, 'b');
+        String longName = new String(chars);
+        write("dir/" + longName, 10);
+
+        Map<String, byte[]> entries = untar(readFully(archive("dir.tar").createInputStream(0L)));
+        assertArrayEquals(read(new File(dir, longDir + "/" + longDir + ".bin")),
+                entries.get("dir/" + longDir + "/" + longDir + ".bin"));
+        assertArrayEquals(read(new File(dir, longName)), entries.get("dir/" + longName));
+    }
+
+    @Test
+    public void testOffset() throws IOException {
+        createFiles();
+        for (String name : new String[] { "dir.tar", "dir.tar.gz", "dir.zip" }) {
+            byte[] whole = readFully(archive(name).createInputStream(0L));
+            for (long offset : new long[] { 1L, 511L, 512L, 70000L, whole.length }) {
+                assertArrayEquals(name + " at " + offset, Arrays.copyOfRange(whole, (int) offset, whole.length),
+                        readFully(archive(name).createInputStream(offset)));
+            }
+            try {
+                archive(name).createInputStream(whole.length + 1L).close();
+                fail("Skipped past the end of " + name);
+            } catch (IOException ex) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testLinkedDirectoryNotFollowed() throws IOException {
+        try {
+            Files.createSymbolicLink(new File(dir, "sub/loop").toPath(), dir.toPath());
+        } catch (UnsupportedOperationException ex) {
+            Assume.assumeNoException(ex);
+        } catch (IOException ex) {
+            Assume.assumeNoException(ex);
+        }
+        write("dir/sub/file.bin", 10);
+        Map<String, byte[]> entries = untar(readFully(archive("dir.tar").createInputStream(0L)));
+        assertTrue(entries.containsKey("dir/sub/file.bin"));
+        assertFalse(entries.containsKey("dir/sub/loop/"));
+    }
+
+    @Test
+    public void testReadInSmallPieces() throws IOException {
+        createFiles();
+        byte[] whole = readFully(archive("dir.tar").createInputStream(0L));
+        InputStream in = archive("dir.tar").createInputStream(0L);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            out.write(b);
+            byte[] piece = new byte[7];
+            int count = in.read(piece, 0, piece.length);
+            if (count == -1) {
+                break;
+            }
+            out.write(piece, 0, count);
+        }
+        in.close();
+        assertArrayEquals(whole, out.toByteArray());
+    }
+
+    /**
+     * Create the files of the directory, in a nested directory as well.
+     */
+    private Map<String, byte[]> createFiles() throws IOException {
+        Map<String, byte[]> files = new LinkedHashMap<String, byte[]>();
+        files.put("b.bin", write("dir/b.bin", 200000));
+        files.put("a.txt", write("dir/a.txt", 1000));
+        files.put("sub/c.gz", write("dir/sub/c.gz", 513));
+        files.put("sub/deeper/d.bin", write("dir/sub/deeper/d.bin", 0));
+        return files;
+    }
+
+    /**
+     * The entries of the archive of the directory created by
+     * {@link #createFiles()}, in name order, directories with a null content.
+     */
+    private static Map<String, byte[]> expectedEntries(Map<String, byte[]> files) {
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        entries.put("dir/", null);
+        entries.put("dir/a.txt", files.get("a.txt"));
+        entries.put("dir/b.bin", files.get("b.bin"));
+        entries.put("dir/empty/", null);
+        entries.put("dir/sub/", null);
+        entries.put("dir/sub/c.gz", files.get("sub/c.gz"));
+        entries.put("dir/sub/deeper/", null);
+        entries.put("dir/sub/deeper/d.bin", files.get("sub/deeper/d.bin"));
+        return entries;
+    }
+
+    private static void assertEntries(Map<String, byte[]> expected, Map<String, byte[]> entries) {
+        assertEquals(expected.keySet(), entries.keySet());
+        for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+            assertArrayEquals(entry.getKey(), entry.getValue(), entries.get(entry.getKey()));
+        }
+    }
+
+    private ArchiveFtpFile archive(String name) {
+        return ArchiveFtpFile.get("/" + name, new File(root, name), user);
+    }
+
+    private byte[] write(String name, int length) throws IOException {
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+        FileOutputStream out = new FileOutputStream(new File(root, name));
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        return data;
+    }
+
+    /**
+     * Read the entries of a tar archive, checking the header checksums,
+     * directories with a null content.
+     */
+    private static Map<String, byte[]> untar(byte[] tar) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(tar));
+        byte[] header = new byte[512];
+        String longName = null;
+        for (;;) {
+            in.readFully(header);
+            if (isZero(header)) {
+                // the end of the archive, two blocks of zeros
+                in.readFully(header);
+                assertTrue(isZero(header));
+                break;
+            }
+            assertEquals(octal(header, 148, 8), checksum(header));
+            assertEquals("ustar", string(header, 257, 6));
+
+            long size = octal(header, 124, 12);
+            byte[] data = new byte[(int) size];
+            in.readFully(data);
+            in.skipBytes((int) ((512 - size % 512) % 512));
+
+            char type = (char) header[156];
+            if (type == 'L') {
+                longName = string(data, 0, data.length);
+                continue;
+            }
+            String name = string(header, 0, 100);
+            String prefix = string(header, 345, 155);
+            if (prefix.length() > 0) {
+                name = prefix + '/' + name;
+            }
+            if (longName != null) {
+                name = longName;
+                longName = null;
+            }
+            entries.put(name, type == '5' ? null : data);
+        }
+
+        // the padding of the last record
+        try {
+            while (true) {
+                assertEquals(0, in.readByte());
+            }
+        } catch (EOFException ex) {
+            // expected
+        }
+        return entries;
+    }
+
+    private static boolean isZero(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long checksum(byte[] header) {
+        long checksum = 0L;
+        for (int i = 0; i < header.length; i++) {
+            checksum += i >= 148 && i < 156 ? ' ' : header[i] & 0xFF;
+        }
+        return checksum;
+    }
+
+    private static long octal(byte[] header, int offset, int length) {
+        String digits = string(header, offset, length).trim();
+        return Long.parseLong(digits, 8);
+    }
+
+    private static String string(byte[] bytes, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && bytes[end] != 0) {
+            end++;
+        }
+        return new String(bytes, offset, end - offset, Charset.forName("UTF-8"));
+    }
+
+    private static byte[] read(File file) throws IOException {
+        return Files.readAllBytes(file.toPath());
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        try {
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null && !Files.isSymbolicLink(file.toPath())) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.impl;
+
+import io.netty.ftpserver.FtpServer;
+import io.netty.ftpserver.FtpServerFactory;
+import io.netty.ftpserver.ftplet.Authority;
+import io.netty.ftpserver.ftplet.UserManager;
+import io.netty.ftpserver.listener.ListenerFactory;
+import io.netty.ftpserver.usermanager.PropertiesUserManagerFactory;
+import io.netty.ftpserver.usermanager.impl.BaseUser;
+import io.netty.ftpserver.usermanager.impl.WritePermission;
+import io.netty.util.CharsetUtil;
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.After;
+import org.junit.Before;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Starts a server on a loopback port, with a user allowed to write in a
+ * temporary home directory, and logs a client in.
+ *
+ * @author Io Netty Project
+ */
+public abstract class AbstractLoopbackTest {
+
+    protected static final String HOST = "127.0.0.1";
+
+    protected static final int TIMEOUT = 10000;
+
+    private static final Pattern HOST_PORT = Pattern.compile("(\\d+),(\\d+),(\\d+),(\\d+),(\\d+),(\\d+)");
+
+    protected File homeDirectory;
+
+    protected int port;
+
+    protected FtpServer server;
+
+    protected FTPClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        homeDirectory = File.createTempFile("ftphome", "");
+        assertTrue(homeDirectory.delete());
+        assertTrue(homeDirectory.mkdirs());
+
+        UserManager userManager = new PropertiesUserManagerFactory().createUserManager();
+        BaseUser user = new BaseUser();
+        user.setName("user");
+        user.setPassword("password");
+        user.setHomeDirectory(homeDirectory.getAbsolutePath());
+        user.setAuthorities(getAuthorities());
+        userManager.save(user);
+
+        port = freePort();
+        ListenerFactory listenerFactory = new ListenerFactory();
+        listenerFactory.setPort(port);
+        FtpServerFactory serverFactory = new FtpServerFactory();
+        serverFactory.setUserManager(userManager);
+        configure(serverFactory, listenerFactory);
+        serverFactory.addListener("default", listenerFactory.createListener());
+        server = serverFactory.createServer();
+        server.start();
+
+        client = login();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (client != null && client.isConnected()) {
+            client.disconnect();
+        }
+        if (server != null) {
+            server.stop();
+        }
+        delete(homeDirectory);
+    }
+
+    /**
+     * The authorities of the user, the write permission by default.
+     */
+    protected List<Authority> getAuthorities() {
+        return Collections.<Authority>singletonList(new WritePermission());
+    }
+
+    /**
+     * Configure the server and its listener before they are created.
+     */
+    protected void configure(FtpServerFactory serverFactory, ListenerFactory listenerFactory) {
+    }
+
+    /**
+     * Connect and log a new client in.
+     */
+    protected FTPClient login() throws IOException {
+        FTPClient ftpClient = new FTPClient();
+        ftpClient.setDefaultTimeout(TIMEOUT);
+        ftpClient.connect(HOST, port);
+        assertTrue(ftpClient.login("user", "password"));
+        return ftpClient;
+    }
+
+    /**
+     * Send PASV on the client and open the data connection.
+     */
+    protected Socket openPassive(FTPClient ftpClient) throws IOException {
+        assertEquals(227, ftpClient.sendCommand("PASV"));
+        return connect(ftpClient.getReplyString());
+    }
+
+    /**
+     * Open the data connection to the address of a PASV or SPAS reply.
+     */
+    protected static Socket connect(String reply) throws IOException {
+        Socket socket = new Socket();
+        socket.connect(passiveAddress(reply), TIMEOUT);
+        socket.setSoTimeout(TIMEOUT);
+        return socket;
+    }
+
+    /**
+     * The address of a PASV or SPAS reply.
+     */
+    protected static InetSocketAddress passiveAddress(String reply) {
+        Matcher matcher = HOST_PORT.matcher(reply);
+        assertTrue(reply, matcher.find());
+        String host = matcher.group(1) + '.' + matcher.group(2) + '.' + matcher.group(3) + '.' + matcher.group(4);
+        int dataPort = Integer.parseInt(matcher.group(5)) * 256 + Integer.parseInt(matcher.group(6));
+        return new InetSocketAddress(host, dataPort);
+    }
+
+    /**
+     * A raw control connection, logged in, for the tests pipelining commands.
+     */
+    protected static final class RawControl {
+
+        private final Socket socket;
+
+        private final BufferedReader reader;
+
+        private String lastReply;
+
+        RawControl(int port) throws IOException {
+            socket = new Socket(HOST, port);
+            socket.setSoTimeout(TIMEOUT);
+            reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), CharsetUtil.UTF_8));
+            assertEquals(220, readReply());
+            send("USER user\r\nPASS password\r\n");
+            assertEquals(331, readReply());
+            assertEquals(230, readReply());
+        }
+
+        /**
+         * Send one or more command lines in one write.
+         */
+        void send(String lines) throws IOException {
+            OutputStream out = socket.getOutputStream();
+            out.write(lines.getBytes(CharsetUtil.UTF_8));
+            out.flush();
+        }
+
+        /**
+         * Read the next reply, multi-line or not.
+         *
+         * @return its code
+         */
+        int readReply() throws IOException {
+            StringBuilder reply = new StringBuilder();
+            String line = reader.readLine();
+            assertNotNull("Connection closed", line);
+            reply.append(line);
+            if (line.length() > 3 && line.charAt(3) == '-') {
+                String code = line.substring(0, 3);
+                do {
+                    line = reader.readLine();
+                    assertNotNull("Connection closed", line);
+                    reply.append('\n').append(line);
+                } while (!(line.startsWith(code) && line.length() > 3 && line.charAt(3) == ' '));
+            }
+            lastReply = reply.toString();
+            return Integer.parseInt(lastReply.substring(0, 3));
+        }
+
+        /**
+         * Read the codes of the next replies.
+         */
+        List<Integer> readReplies(int count) throws IOException {
+            List<Integer> codes = new ArrayList<Integer>(count);
+            for (int i = 0; i < count; i++) {
+                codes.add(readReply());
+            }
+            return codes;
+        }
+
+        String getLastReply() {
+            return lastReply;
+        }
+
+        void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    protected static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    protected static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    protected static byte[] read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) raf.length()];
+            raf.readFully(data);
+            return data;
+        } finally {
+            raf.close();
+        }
+    }
+
+    protected static void write(File file, byte[] data) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    protected static int freePort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    protected static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.netty.ftpserver.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.net.ftp.FTP;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Downloads the archives of directories and globs generated on RETR by a
+ * loopback server.
+ *
+ * @author Io Netty Project
+ */
+public class ArchiveDownloadTest extends AbstractLoopbackTest {
+
+    private byte[] first;
+
+    private byte[] second;
+
+    private byte[] csv;
+
+    @Before
+    public void setUpFiles() throws IOException {
+        File dir = new File(homeDirectory, "dir");
+        assertTrue(new File(dir, "sub").mkdirs());
+        first = randomBytes(300000);
+        second = randomBytes(1000);
+        csv = randomBytes(100);
+        write(new File(dir, "first.bin"), first);
+        write(new File(dir, "sub/second.bin"), second);
+        write(new File(homeDirectory, "data.csv"), csv);
+        write(new File(homeDirectory, "data.txt"), randomBytes(100));
+        assertTrue(client.setFileType(FTP.BINARY_FILE_TYPE));
+        client.enterLocalPassiveMode();
+    }
+
+    @Test
+    public void testZip() throws IOException {
+        Map<String, byte[]> entries = unzip(retrieve("dir.zip"));
+        assertEquals("[dir/, dir/first.bin, dir/sub/, dir/sub/second.bin]", entries.keySet().toString());
+        assertArrayEquals(first, entries.get("dir/first.bin"));
+        assertArrayEquals(second, entries.get("dir/sub/second.bin"));
+    }
+
+    @Test
+    public void testTar() throws IOException {
+        byte[] tar = retrieve("dir.tar");
+        assertEquals(0, tar.length % (20 * 512));
+        assertTrue(contains(tar, first));
+        assertTrue(contains(tar, second));
+
+        // the same archive compressed
+        byte[] tarGz = retrieve("dir.tar.gz");
+        assertArrayEquals(tar, readFully(new GZIPInputStream(new ByteArrayInputStream(tarGz))));
+    }
+
+    @Test
+    public void testGlob() throws IOException {
+        Map<String, byte[]> entries = unzip(retrieve("*.csv.zip"));
+        assertEquals("[data.csv]", entries.keySet().toString());
+        assertArrayEquals(csv, entries.get("data.csv"));
+    }
+
+    @Test
+    public void testRestart() throws IOException {
+        byte[] tar = retrieve("dir.tar");
+        client.setRestartOffset(100000L);
+        byte[] tail = retrieve("dir.tar");
+        assertArrayEquals(Arrays.copyOfRange(tar, 100000, tar.length), tail);
+    }
+
+    @Test
+    public void testSizeAndRange() throws IOException {
+        // not known in advance
+        assertEquals(213, client.sendCommand("SIZE dir.tar"));
+        assertTrue(client.getReplyString(), client.getReplyString().trim().endsWith(" 0"));
+
+        // so no range of it
+        Socket socket = openPassive(client);
+        try {
+            assertEquals(350, client.sendCommand("RANG 0 99"));
+            assertEquals(551, client.sendCommand("RETR dir.tar"));
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testUploadHidesTheArchive() throws IOException {
+        byte[] data = randomBytes(100);
+        assertTrue(client.storeFile("dir.zip", new ByteArrayInputStream(data)));
+        assertArrayEquals(data, retrieve("dir.zip"));
+        assertArrayEquals(data, read(new File(homeDirectory, "dir.zip")));
+    }
+
+    @Test
+    public void testMissingDirectory() throws IOException {
+        assertFalse(client.retrieveFile("missing.tar", new ByteArrayOutputStream()));
+        assertEquals(550, client.getReplyCode());
+        assertFalse(client.retrieveFile("data.csv.tar", new ByteArrayOutputStream()));
+        assertEquals(550, client.getReplyCode());
+    }
+
+    private byte[] retrieve(String fileName) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(client.getReplyString(), client.retrieveFile(fileName, out));
+        return out.toByteArray();
+    }
+
+    private static Map<String, byte[]> unzip(byte[] zip) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip));
+        try {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                ByteArrayOutputStream data = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    data.write(buffer, 0, count);
+                }
+                entries.put(entry.getName(), data.toByteArray());
+            }
+        } finally {
+            in.close();
+        }
+        return entries;
+    }
+
+    private static boolean contains(byte[] data, byte[] part) {
+        outer:
+        for (int i = 0; i <= data.length - part.length; i++) {
+            for (int j = 0; j < part.length; j++) {
+                if (data[i + j] != part[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,552 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.ftpserver.filesystem.nativefs.impl.NativeFileSystemView;
+import io.netty.ftpserver.ftplet.Authority;
+import io.netty.ftpserver.ftplet.FileSystemView;
+import io.netty.ftpserver.listener.nio.channel.FtpChannel;
+import io.netty.ftpserver.usermanager.impl.BaseUser;
+import io.netty.ftpserver.usermanager.impl.WritePermission;
+import io.netty.util.concurrent.DefaultEventExecutor;
+import io.netty.util.concurrent.EventExecutor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Io Netty Project
+ */
+public class ArchiveExtractorTest {
+
+    private static final int[] CHUNK_SIZES = {1, 3, 100, 511, 512, 513, 4096, 1 << 20};
+
+    private static final byte[] CONTENT = randomBytes(20000);
+
+    private File root;
+
+    private File homeDirectory;
+
+    private EventExecutor executor;
+
+    private FtpChannel channel;
+
+    @Before
+    public void setUp() throws Exception {
+        root = File.createTempFile("ftpunpack", "");
+        assertTrue(root.delete());
+        homeDirectory = new File(root, "home");
+        assertTrue(homeDirectory.mkdirs());
+
+        BaseUser user = new BaseUser();
+        user.setName("user");
+        user.setHomeDirectory(homeDirectory.getAbsolutePath());
+        user.setAuthorities(Collections.<Authority>singletonList(new WritePermission()));
+        final FileSystemView view = new NativeFileSystemView(user, false);
+
+        final FtpServerContext context = proxy(FtpServerContext.class, new InvocationHandler() {
+            private final AsciiOffsetIndex asciiOffsetIndex = new AsciiOffsetIndex();
+
+            private final ChecksumStore checksumStore = new ChecksumStore(null);
+
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getAsciiOffsetIndex")) {
+                    return asciiOffsetIndex;
+                } else if (method.getName().equals("getChecksumStore")) {
+                    return checksumStore;
+                } else if (method.getName().equals("getFtpStatistics")) {
+                    return null;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+        channel = proxy(FtpChannel.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getContext")) {
+                    return context;
+                } else if (method.getName().equals("getFileSystemView")) {
+                    return view;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+        executor = new DefaultEventExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownGracefully(0, 1, TimeUnit.SECONDS).awaitUninterruptibly();
+        delete(root);
+    }
+
+    @Test
+    public void testTarChunkBoundaries() throws Exception {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        tarEntry(tar, "dir/", '5', null, new byte[0]);
+        tarEntry(tar, "dir/file.bin", '0', null, CONTENT);
+        tarEntry(tar, "empty.txt", '0', null, new byte[0]);
+        tarEntry(tar, "odd.bin", '0', null, Arrays.copyOf(CONTENT, 1025));
+        tarEnd(tar);
+
+        for (int chunkSize : CHUNK_SIZES) {
+            ArchiveExtractor extractor = extract(tar.toByteArray(), chunkSize);
+            assertEquals(0, extractor.getRefusedCount());
+            assertArrayEquals(CONTENT, read(new File(homeDirectory, "dir/file.bin")));
+            assertEquals(0L, new File(homeDirectory, "empty.txt").length());
+            assertArrayEquals(Arrays.copyOf(CONTENT, 1025), read(new File(homeDirectory, "odd.bin")));
+            clear(homeDirectory);
+        }
+    }
+
+    @Test
+    public void testTarGzChunkBoundaries() throws Exception {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        tarEntry(tar, "file.bin", '0', null, CONTENT);
+        tarEnd(tar);
+        byte[] archive = gzip(tar.toByteArray());
+
+        for (int chunkSize : CHUNK_SIZES) {
+            extract(archive, chunkSize);
+            assertArrayEquals(CONTENT, read(new File(homeDirectory, "file.bin")));
+            clear(homeDirectory);
+        }
+    }
+
+    @Test
+    public void testZipChunkBoundaries() throws Exception {
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        ZipOutputStream out = new ZipOutputStream(zip);
+        out.putNextEntry(new ZipEntry("dir/"));
+        out.closeEntry();
+        out.putNextEntry(new ZipEntry("dir/deflated.bin"));
+        out.write(CONTENT);
+        out.closeEntry();
+        ZipEntry stored = new ZipEntry("stored.bin");
+        stored.setMethod(ZipEntry.STORED);
+        stored.setSize(CONTENT.length);
+        CRC32 crc = new CRC32();
+        crc.update(CONTENT);
+        stored.setCrc(crc.getValue());
+        out.putNextEntry(stored);
+        out.write(CONTENT);
+        out.closeEntry();
+        out.close();
+
+        for (int chunkSize : CHUNK_SIZES) {
+            ArchiveExtractor extractor = extract(zip.toByteArray(), chunkSize);
+            assertEquals(0, extractor.getRefusedCount());
+            assertArrayEquals(CONTENT, read(new File(homeDirectory, "dir/deflated.bin")));
+            assertArrayEquals(CONTENT, read(new File(homeDirectory, "stored.bin")));
+            clear(homeDirectory);
+        }
+    }
+
+    @Test
+    public void testParentAndAbsoluteNames() throws Exception {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        tarEntry(tar, "../evil.txt", '0', null, CONTENT);
+        tarEntry(tar, "dir/../../evil.txt", '0', null, CONTENT);
+        tarEntry(tar, "..\\evil.txt", '0', null, CONTENT);
+        tarEntry(tar, "/absolute.txt", '0', null, CONTENT);
+        tarEntry(tar, "./dir/./file.txt", '0', null, CONTENT);
+        tarEnd(tar);
+
+        ArchiveExtractor extractor = extract(tar.toByteArray(), 4096);
+        assertEquals(3, extractor.getRefusedCount());
+        assertFalse(new File(root, "evil.txt").exists());
+
+        // an absolute name is extracted in the directory
+        assertArrayEquals(CONTENT, read(new File(homeDirectory, "absolute.txt")));
+        assertArrayEquals(CONTENT, read(new File(homeDirectory, "dir/file.txt")));
+    }
+
+    @Test
+    public void testZipParentName() throws Exception {
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        ZipOutputStream out = new ZipOutputStream(zip);
+        out.putNextEntry(new ZipEntry("../evil.txt"));
+        out.write(CONTENT);
+        out.closeEntry();
+        out.putNextEntry(new ZipEntry("file.txt"));
+        out.write(CONTENT);
+        out.closeEntry();
+        out.close();
+
+        ArchiveExtractor extractor = extract(zip.toByteArray(), 4096);
+        assertEquals(1, extractor.getRefusedCount());
+        assertFalse(new File(root, "evil.txt").exists());
+        assertArrayEquals(CONTENT, read(new File(homeDirectory, "file.txt")));
+    }
+
+    @Test
+    public void testLinksSkipped() throws Exception {
+        File target = new File(root, "target.txt");
+        RandomAccessFile raf = new RandomAccessFile(target, "rw");
+        raf.close();
+
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        tarEntry(tar, "symlink", '2', target.getAbsolutePath(), new byte[0]);
+        tarEntry(tar, "hardlink", '1', "../target.txt", new byte[0]);
+        tarEntry(tar, "symlink", '0', null, CONTENT);
+        tarEnd(tar);
+
+        extract(tar.toByteArray(), 4096);
+
+        // the regular file of the same name is written as a file, the
+        // target of the link is left untouched
+        assertArrayEquals(CONTENT, read(new File(homeDirectory, "symlink")));
+        assertFalse(new File(homeDirectory, "hardlink").exists());
+        assertEquals(0L, target.length());
+    }
+
+    @Test
+    public void testTruncatedArchives() throws Exception {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        tarEntry(tar, "file.bin", '0', null, CONTENT);
+        tarEnd(tar);
+        byte[] tarBytes = tar.toByteArray();
+
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        ZipOutputStream out = new ZipOutputStream(zip);
+        out.putNextEntry(new ZipEntry("file.bin"));
+        out.write(CONTENT);
+        out.closeEntry();
+        out.close();
+        byte[] zipBytes = zip.toByteArray();
+
+        // in a header, in the data of an entry
+        assertTruncated(Arrays.copyOf(tarBytes, 100));
+        assertTruncated(Arrays.copyOf(tarBytes, 512 + 1000));
+        assertTruncated(Arrays.copyOf(zipBytes, 20));
+        assertTruncated(Arrays.copyOf(zipBytes, zipBytes.length / 2));
+        byte[] gzip = gzip(tarBytes);
+        assertTruncated(Arrays.copyOf(gzip, gzip.length / 2));
+    }
+
+    @Test
+    public void testPauseAndResume() throws Exception {
+        byte[] content = randomBytes(8 * 1024 * 1024);
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        tarEntry(tar, "large.bin", '0', null, content);
+        tarEnd(tar);
+        byte[] archive = tar.toByteArray();
+
+        // hold the thread extracting the archive so that the data queues up
+        final CountDownLatch hold = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    hold.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        ArchiveExtractor extractor = new ArchiveExtractor(channel, view(), executor);
+        final CountDownLatch resumed = new CountDownLatch(1);
+        Runnable resume = new Runnable() {
+            public void run() {
+                resumed.countDown();
+            }
+        };
+
+        // below the high water mark, the writer goes on
+        int chunkSize = 64 * 1024;
+        int position = 0;
+        extractor.write(archive, position, chunkSize);
+        position += chunkSize;
+        assertFalse(extractor.pause(resume));
+
+        while (position < 5 * 1024 * 1024) {
+            extractor.write(archive, position, chunkSize);
+            position += chunkSize;
+        }
+        assertTrue(extractor.pause(resume));
+        Thread.sleep(100L);
+        assertEquals(1L, resumed.getCount());
+
+        // resumed once the extraction is back under the low water mark
+        hold.countDown();
+        assertTrue(resumed.await(10, TimeUnit.SECONDS));
+
+        extractor.write(archive, position, archive.length - position);
+        assertEquals(1, extractor.finish().get(10, TimeUnit.SECONDS).intValue());
+        assertArrayEquals(content, read(new File(homeDirectory, "large.bin")));
+    }
+
+    @Test
+    public void testShaperResumesBeforeSlowExtractor() throws Exception {
+        final CountDownLatch hold = holdExecutor();
+        ArchiveExtractor extractor = new ArchiveExtractor(channel, view(), executor);
+
+        // 5 MB read at 40 MB/s, the shaper waits 25 ms
+        EmbeddedChannel dataChannel = shapedUpload(extractor, 40L * 1024 * 1024);
+        dataChannel.writeInbound(Unpooled.wrappedBuffer(largeArchive(), 0, 5 * 1024 * 1024));
+        assertTrue(ReadSuspension.isSuspended(dataChannel, ReadSuspension.SHAPER));
+        assertTrue(ReadSuspension.isSuspended(dataChannel, ReadSuspension.RECEIVER));
+        assertFalse(dataChannel.config().isAutoRead());
+
+        // the shaper is out of debt, the extractor is still behind
+        Thread.sleep(100L);
+        dataChannel.runScheduledPendingTasks();
+        assertFalse(ReadSuspension.isSuspended(dataChannel, ReadSuspension.SHAPER));
+        assertFalse(dataChannel.config().isAutoRead());
+
+        hold.countDown();
+        awaitExtractor();
+        dataChannel.runPendingTasks();
+        assertFalse(ReadSuspension.isSuspended(dataChannel, ReadSuspension.RECEIVER));
+        assertTrue(dataChannel.config().isAutoRead());
+        extractor.abort();
+        dataChannel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testSlowExtractorResumesBeforeShaper() throws Exception {
+        final CountDownLatch hold = holdExecutor();
+        ArchiveExtractor extractor = new ArchiveExtractor(channel, view(), executor);
+
+        // 5 MB read at 4 MB/s, the shaper waits more than a second
+        EmbeddedChannel dataChannel = shapedUpload(extractor, 4L * 1024 * 1024);
+        long start = System.nanoTime();
+        dataChannel.writeInbound(Unpooled.wrappedBuffer(largeArchive(), 0, 5 * 1024 * 1024));
+        assertFalse(dataChannel.config().isAutoRead());
+
+        // the extractor caught up, the shaper is still in debt
+        hold.countDown();
+        awaitExtractor();
+        dataChannel.runPendingTasks();
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertFalse(ReadSuspension.isSuspended(dataChannel, ReadSuspension.RECEIVER));
+        assertTrue(ReadSuspension.isSuspended(dataChannel, ReadSuspension.SHAPER));
+        assertFalse(dataChannel.config().isAutoRead());
+
+        Thread.sleep(1500L);
+        dataChannel.runScheduledPendingTasks();
+        assertTrue(dataChannel.config().isAutoRead());
+        extractor.abort();
+        dataChannel.finishAndReleaseAll();
+    }
+
+    /**
+     * A data channel shaped at the given rate, writing what it reads to the
+     * extractor the way the receiver of a SITE UNPACK upload does.
+     */
+    private static EmbeddedChannel shapedUpload(final ArchiveExtractor extractor, long rate) {
+        TrafficShapingHandler shaper = new TrafficShapingHandler(
+                new TokenBucket[] {new TokenBucket(rate)}, new TokenBucket[0],
+                TokenBucket.Clock.SYSTEM, new Runnable() {
+                    public void run() {
+                    }
+                });
+        return new EmbeddedChannel(shaper, new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+                ByteBuf buf = (ByteBuf) msg;
+                try {
+                    buf.readBytes(extractor, buf.readableBytes());
+                    extractor.pauseReads(ctx.channel());
+                } finally {
+                    buf.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * Hold the thread extracting the archive so that the data queues up.
+     */
+    private CountDownLatch holdExecutor() {
+        final CountDownLatch hold = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    hold.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        return hold;
+    }
+
+    /**
+     * Wait for the extraction of the data queued so far.
+     */
+    private void awaitExtractor() throws Exception {
+        executor.submit(new Runnable() {
+            public void run() {
+            }
+        }).get(10, TimeUnit.SECONDS);
+    }
+
+    private static byte[] largeArchive() throws IOException {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        tarEntry(tar, "large.bin", '0', null, randomBytes(8 * 1024 * 1024));
+        tarEnd(tar);
+        return tar.toByteArray();
+    }
+
+    private void assertTruncated(byte[] archive) throws Exception {
+        try {
+            extract(archive, 4096);
+            fail("Truncated archive extracted");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IOException);
+        }
+        clear(homeDirectory);
+    }
+
+    private ArchiveExtractor extract(byte[] archive, int chunkSize) throws Exception {
+        ArchiveExtractor extractor = new ArchiveExtractor(channel, view(), executor);
+        for (int i = 0; i < archive.length; i += chunkSize) {
+            extractor.write(archive, i, Math.min(chunkSize, archive.length - i));
+        }
+        extractor.finish().get(10, TimeUnit.SECONDS);
+        return extractor;
+    }
+
+    private io.netty.ftpserver.ftplet.FtpFile view() throws Exception {
+        return channel.getFileSystemView().getFile("/");
+    }
+
+    private static void tarEntry(ByteArrayOutputStream out, String name, char type, String linkName,
+                                 byte[] data) throws IOException {
+        byte[] header = new byte[512];
+        ascii(header, 0, name);
+        octal(header, 100, 0644L, 8);
+        octal(header, 108, 0L, 8);
+        octal(header, 116, 0L, 8);
+        octal(header, 124, data.length, 12);
+        octal(header, 136, 1500000000L, 12);
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        header[156] = (byte) type;
+        if (linkName != null) {
+            ascii(header, 157, linkName);
+        }
+        ascii(header, 257, "ustar");
+        ascii(header, 263, "00");
+        long checksum = 0L;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        octal(header, 148, checksum, 7);
+        out.write(header);
+        out.write(data);
+        out.write(new byte[(512 - data.length % 512) % 512]);
+    }
+
+    private static void tarEnd(ByteArrayOutputStream out) throws IOException {
+        out.write(new byte[1024]);
+    }
+
+    private static void ascii(byte[] header, int off, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            header[off + i] = (byte) value.charAt(i);
+        }
+    }
+
+    /**
+     * An octal number on length - 1 digits, followed by a NUL.
+     */
+    private static void octal(byte[] header, int off, long value, int length) {
+        String digits = Long.toOctalString(value);
+        while (digits.length() < length - 1) {
+            digits = '0' + digits;
+        }
+        ascii(header, off, digits);
+        header[off + length - 1] = 0;
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(data);
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(ArchiveExtractorTest.class.getClassLoader(),
+                new Class<?>[] {type}, handler);
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) raf.length()];
+            raf.readFully(data);
+            return data;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void clear(File dir) {
+        File[] children = dir.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+    }
+
+    private static void delete(File file) {
+        clear(file);
+        file.delete();
+    }
+}
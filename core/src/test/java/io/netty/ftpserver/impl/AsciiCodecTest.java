@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.netty.ftpserver.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Io Netty Project
+ */
+public class AsciiCodecTest {
+
+    private static final String EOL = new String(AsciiConverter.LOCAL_EOL, CharsetUtil.US_ASCII);
+
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp() {
+        channel = new EmbeddedChannel(new AsciiCodec());
+    }
+
+    @After
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testUpload() {
+        assertEquals("a" + EOL + "b" + EOL + "c" + EOL, readInbound("a\r\nb\rc\n"));
+    }
+
+    @Test
+    public void testDownload() {
+        assertEquals("a\r\nb\r\n", readOutbound("a\nb\r\n"));
+    }
+
+    @Test
+    public void testCrLfSplitBetweenUploadedBuffers() {
+        assertEquals("a" + EOL, readInbound("a\r"));
+        assertEquals("b", readInbound("\nb"));
+        assertEquals(EOL + "c", readInbound("\rc"));
+    }
+
+    @Test
+    public void testDirectionsKeepTheirOwnState() {
+        // a CR ending an upload buffer does not swallow the LF of a download
+        assertEquals("a" + EOL, readInbound("a\r"));
+        assertEquals("\r\nb", readOutbound("\nb"));
+        assertEquals("c", readInbound("\nc"));
+    }
+
+    @Test
+    public void testBuffersReleased() {
+        ByteBuf in = buffer("a\r\n");
+        channel.writeInbound(in);
+        assertEquals(0, in.refCnt());
+        ByteBuf out = buffer("a\n");
+        channel.writeOutbound(out);
+        assertEquals(0, out.refCnt());
+        release(channel.readInbound());
+        release(channel.readOutbound());
+    }
+
+    @Test
+    public void testLargeBuffer() {
+        StringBuilder data = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            data.append("line ").append(i).append('\n');
+            expected.append("line ").append(i).append("\r\n");
+        }
+        assertEquals(expected.toString(), readOutbound(data.toString()));
+    }
+
+    private String readInbound(String data) {
+        assertTrue(channel.writeInbound(buffer(data)));
+        String converted = toString(channel.readInbound());
+        assertNull(channel.readInbound());
+        return converted;
+    }
+
+    private String readOutbound(String data) {
+        assertTrue(channel.writeOutbound(buffer(data)));
+        String converted = toString(channel.readOutbound());
+        assertNull(channel.readOutbound());
+        return converted;
+    }
+
+    private static String toString(Object msg) {
+        ByteBuf buffer = (ByteBuf) msg;
+        assertFalse(buffer == null);
+        String string = buffer.toString(CharsetUtil.US_ASCII);
+        buffer.release();
+        return string;
+    }
+
+    private static void release(Object msg) {
+        ((ByteBuf) msg).release();
+    }
+
+    private static ByteBuf buffer(String data) {
+        return Unpooled.copiedBuffer(data, CharsetUtil.US_ASCII);
+    }
+}
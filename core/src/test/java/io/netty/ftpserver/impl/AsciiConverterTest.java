@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.Test;
+
+/**
+ * @author Io Netty Project
+ */
+public class AsciiConverterTest {
+
+    private static final String EOL = new String(AsciiConverter.LOCAL_EOL, CharsetUtil.US_ASCII);
+
+    @Test
+    public void testToNetwork() {
+        assertEquals("a\r\nb\r\n\r\nc", convert(AsciiConverter.toNetwork(), "a\nb\r\n\nc"));
+        assertEquals("\r\n", convert(AsciiConverter.toNetwork(), "\n"));
+        assertEquals("a\rb", convert(AsciiConverter.toNetwork(), "a\rb"));
+        assertEquals("abc", convert(AsciiConverter.toNetwork(), "abc"));
+    }
+
+    @Test
+    public void testToLocal() {
+        assertEquals("a" + EOL + "b" + EOL + "c" + EOL + "d",
+                convert(AsciiConverter.toLocal(), "a\r\nb\rc\nd"));
+        assertEquals(EOL + EOL, convert(AsciiConverter.toLocal(), "\r\r"));
+        assertEquals(EOL + EOL, convert(AsciiConverter.toLocal(), "\n\r\n"));
+        assertEquals("abc", convert(AsciiConverter.toLocal(), "abc"));
+    }
+
+    @Test
+    public void testCrLfSplitBetweenBuffers() {
+        // a CR ending a buffer and the LF starting the next are one line ending
+        assertEquals("a\r\nb", convert(AsciiConverter.toNetwork(), "a\r", "\nb"));
+        assertEquals("a" + EOL + "b", convert(AsciiConverter.toLocal(), "a\r", "\nb"));
+        assertEquals("a" + EOL + EOL + "b", convert(AsciiConverter.toLocal(), "a\r", "\rb"));
+        assertEquals(EOL + "b", convert(AsciiConverter.toLocal(), "\r", "", "\nb"));
+    }
+
+    @Test
+    public void testOneByteBuffers() {
+        String data = "line 1\r\nline 2\nline 3\r\rend\r\n";
+        String[] bytes = new String[data.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = data.substring(i, i + 1);
+        }
+        assertEquals(convert(AsciiConverter.toNetwork(), data), convert(AsciiConverter.toNetwork(), bytes));
+        assertEquals(convert(AsciiConverter.toLocal(), data), convert(AsciiConverter.toLocal(), bytes));
+    }
+
+    @Test
+    public void testMaxConvertedLength() {
+        String data = "\n\n\n\n";
+        AsciiConverter converter = AsciiConverter.toNetwork();
+        assertTrue(convert(converter, data).length() <= converter.maxConvertedLength(data.length()));
+        data = "\r\r\r\r";
+        converter = AsciiConverter.toLocal();
+        assertTrue(convert(converter, data).length() <= converter.maxConvertedLength(data.length()));
+    }
+
+    @Test
+    public void testWrap() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream out = AsciiConverter.toLocal().wrap(bytes);
+        out.write("a\r".getBytes(CharsetUtil.US_ASCII));
+        out.write('\n');
+        out.write("b\nc".getBytes(CharsetUtil.US_ASCII), 1, 2);
+        out.close();
+        assertEquals("a" + EOL + EOL + "c", new String(bytes.toByteArray(), CharsetUtil.US_ASCII));
+    }
+
+    private static String convert(AsciiConverter converter, String... chunks) {
+        ByteBuf dst = Unpooled.buffer();
+        for (String chunk : chunks) {
+            ByteBuf src = Unpooled.copiedBuffer(chunk, CharsetUtil.US_ASCII);
+            converter.convert(src, dst);
+            assertEquals(0, src.readableBytes());
+            src.release();
+        }
+        String converted = dst.toString(CharsetUtil.US_ASCII);
+        dst.release();
+        return converted;
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.netty.ftpserver.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.ftpserver.FtpServerFactory;
+import io.netty.ftpserver.ftplet.FtpReply;
+import io.netty.ftpserver.ftplet.FtpRequest;
+import io.netty.ftpserver.ftplet.FtpletResult;
+import io.netty.ftpserver.ftpletcontainer.Ftplet;
+import io.netty.ftpserver.ftpletcontainer.FtpletContext;
+import io.netty.ftpserver.listener.ListenerFactory;
+import io.netty.ftpserver.listener.nio.channel.FtpChannel;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.net.ftp.FTP;
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.Test;
+
+/**
+ * Transfers files on a loopback server, the transfer commands returning
+ * after their 150 reply and the transfers completing on the data event loop.
+ *
+ * @author Io Netty Project
+ */
+public class AsyncTransferTest extends AbstractLoopbackTest {
+
+    private final List<String> afterCommands = new CopyOnWriteArrayList<String>();
+
+    private final BlockingQueue<Object> transfers = new LinkedBlockingQueue<Object>();
+
+    @Override
+    protected void configure(FtpServerFactory serverFactory, ListenerFactory listenerFactory) {
+        serverFactory.setFtplets(Collections.<String, Ftplet>singletonMap("recorder", new RecordingFtplet()));
+    }
+
+    @Test
+    public void testRetrieve() throws Exception {
+        byte[] data = randomBytes(32 * 1024 * 1024);
+        write(new File(homeDirectory, "file.bin"), data);
+        assertEquals(200, client.sendCommand("TYPE I"));
+        Socket socket = openPassive(client);
+        try {
+            assertEquals(150, client.sendCommand("RETR file.bin"));
+            // the ftplet sees the 150 reply while the transfer is stalled on
+            // the unread data connection
+            awaitAfterCommand("RETR 150");
+            assertArrayEquals(data, readFully(socket.getInputStream()));
+        } finally {
+            socket.close();
+        }
+        assertEquals(226, client.getReply());
+        assertEquals(Long.valueOf(data.length), transfers.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testStore() throws Exception {
+        byte[] data = randomBytes(5000000);
+        assertEquals(200, client.sendCommand("TYPE I"));
+        Socket socket = openPassive(client);
+        try {
+            assertEquals(150, client.sendCommand("STOR file.bin"));
+            // the transfer cannot end before the data connection is closed
+            awaitAfterCommand("STOR 150");
+            socket.getOutputStream().write(data);
+        } finally {
+            socket.close();
+        }
+        assertEquals(226, client.getReply());
+        // the file is complete once replied to
+        assertArrayEquals(data, read(new File(homeDirectory, "file.bin")));
+        assertEquals(Long.valueOf(data.length), transfers.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testQuickTransfers() throws Exception {
+        // the transfers may end before the commands return, the ftplets
+        // still see the 150 replies
+        byte[] data = randomBytes(10);
+        write(new File(homeDirectory, "small.bin"), data);
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+        client.enterLocalPassiveMode();
+        for (int i = 0; i < 50; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertTrue(client.retrieveFile("small.bin", out));
+            assertArrayEquals(data, out.toByteArray());
+            assertTrue(client.storeFile("copy" + i + ".bin", new ByteArrayInputStream(data)));
+            assertArrayEquals(data, read(new File(homeDirectory, "copy" + i + ".bin")));
+        }
+        for (String afterCommand : afterCommands) {
+            if (afterCommand.startsWith("RETR") || afterCommand.startsWith("STOR")) {
+                assertTrue(afterCommand, afterCommand.endsWith(" 150"));
+            }
+        }
+    }
+
+    @Test
+    public void testRefusedTransfer() throws Exception {
+        client.enterLocalPassiveMode();
+        assertFalse(client.retrieveFile("missing.bin", new ByteArrayOutputStream()));
+        assertEquals(550, client.getReplyCode());
+        assertTrue(afterCommands.contains("RETR 550"));
+
+        // the session goes on
+        assertEquals(257, client.sendCommand("PWD"));
+    }
+
+    @Test
+    public void testRetrieveClosedByClient() throws Exception {
+        RandomAccessFile file = new RandomAccessFile(new File(homeDirectory, "large.bin"), "rw");
+        try {
+            file.setLength(256L * 1024 * 1024);
+        } finally {
+            file.close();
+        }
+        assertEquals(200, client.sendCommand("TYPE I"));
+        Socket data = openPassive(client);
+        assertEquals(150, client.sendCommand("RETR large.bin"));
+        awaitAfterCommand("RETR 150");
+        InputStream in = data.getInputStream();
+        byte[] buffer = new byte[65536];
+        assertTrue(in.read(buffer) > 0);
+        data.close();
+
+        assertEquals(426, client.getReply());
+        Object transfer = transfers.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotNull(transfer);
+        assertTrue(transfer instanceof Throwable);
+        assertEquals(200, client.sendCommand("NOOP"));
+    }
+
+    @Test
+    public void testOtherSessionsDuringATransfer() throws Exception {
+        RandomAccessFile file = new RandomAccessFile(new File(homeDirectory, "large.bin"), "rw");
+        try {
+            file.setLength(256L * 1024 * 1024);
+        } finally {
+            file.close();
+        }
+        assertEquals(200, client.sendCommand("TYPE I"));
+        Socket data = openPassive(client);
+        try {
+            // the client does not read, the transfer stalls on the data
+            // event loop without holding a thread
+            assertEquals(150, client.sendCommand("RETR large.bin"));
+            for (int i = 0; i < 5; i++) {
+                FTPClient other = login();
+                try {
+                    assertEquals(200, other.sendCommand("NOOP"));
+                    assertEquals(257, other.sendCommand("PWD"));
+                } finally {
+                    other.disconnect();
+                }
+            }
+        } finally {
+            data.close();
+        }
+        assertEquals(426, client.getReply());
+    }
+
+    private void awaitAfterCommand(String afterCommand) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!afterCommands.contains(afterCommand)) {
+            assertTrue(afterCommand + " not seen", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Records the replies seen after the commands, and the outcome of the
+     * transfers they started.
+     */
+    private final class RecordingFtplet implements Ftplet {
+
+        public void init(FtpletContext ftpletContext) {
+        }
+
+        public void destroy() {
+        }
+
+        public FtpletResult beforeCommand(FtpChannel channel, FtpRequest request) {
+            return FtpletResult.DEFAULT;
+        }
+
+        public FtpletResult afterCommand(FtpChannel channel, FtpRequest request, FtpReply reply) {
+            afterCommands.add(request.getCommand() + ' ' + reply.getCode());
+            if (reply.getCode() == FtpReply.REPLY_150_FILE_STATUS_OKAY) {
+                Future<Long> transfer = ((NettyDataConnectionFactory) channel.getDataConnection())
+                        .getTransferFuture();
+                if (transfer != null) {
+                    transfer.addListener(new FutureListener<Long>() {
+                        public void operationComplete(Future<Long> future) {
+                            transfers.add(future.isSuccess() ? future.getNow() : future.cause());
+                        }
+                    });
+                }
+            }
+            return FtpletResult.DEFAULT;
+        }
+
+        public FtpletResult onConnect(FtpChannel channel) {
+            return FtpletResult.DEFAULT;
+        }
+
+        public FtpletResult onDisconnect(FtpChannel channel) {
+            return FtpletResult.DEFAULT;
+        }
+    }
+}
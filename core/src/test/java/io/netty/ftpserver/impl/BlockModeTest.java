@@ -0,0 +1,351 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.netty.ftpserver.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.ftpserver.DataConnectionConfigurationFactory;
+import io.netty.ftpserver.FtpServerFactory;
+import io.netty.ftpserver.listener.ListenerFactory;
+import io.netty.util.CharsetUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Transfers files in block mode over a data connection kept across the
+ * transfers of a loopback server, sending and reading the blocks the way a
+ * client would.
+ *
+ * @author Io Netty Project
+ */
+public class BlockModeTest extends AbstractLoopbackTest {
+
+    private static final int DESC_EOF = 64;
+
+    private static final int DESC_RESTART = 16;
+
+    /**
+     * The idle time of the data connections, in seconds
+     */
+    private static final int IDLE_TIME = 2;
+
+    private final List<String> markers = new ArrayList<String>();
+
+    @Override
+    protected void configure(FtpServerFactory serverFactory, ListenerFactory listenerFactory) {
+        DataConnectionConfigurationFactory factory = new DataConnectionConfigurationFactory();
+        factory.setIdleTime(IDLE_TIME);
+        listenerFactory.setDataConnectionConfiguration(factory.createDataConnectionConfiguration());
+    }
+
+    @Before
+    public void setUpMode() throws IOException {
+        assertEquals(200, client.sendCommand("TYPE I"));
+        assertEquals(200, client.sendCommand("MODE B"));
+    }
+
+    @Test
+    public void testConnectionKeptAcrossTransfers() throws IOException {
+        byte[] first = randomBytes(200000);
+        byte[] second = randomBytes(10);
+        write(new File(homeDirectory, "first.bin"), first);
+        write(new File(homeDirectory, "second.bin"), second);
+        write(new File(homeDirectory, "empty.bin"), new byte[0]);
+
+        // one PASV for all the transfers
+        Socket socket = openPassive(client);
+        try {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            for (int i = 0; i < 3; i++) {
+                assertArrayEquals(first, retrieve(in, "first.bin"));
+                assertArrayEquals(second, retrieve(in, "second.bin"));
+                assertArrayEquals(new byte[0], retrieve(in, "empty.bin"));
+
+                assertEquals(150, client.sendCommand("STOR stored" + i + ".bin"));
+                writeBlocks(out, first, 1000);
+                assertEquals(226, client.getReply());
+                assertArrayEquals(first, read(new File(homeDirectory, "stored" + i + ".bin")));
+
+                assertEquals(150, client.sendCommand("LIST"));
+                String listing = new String(readBlocks(in), CharsetUtil.UTF_8);
+                assertEquals(226, client.getReply());
+                assertTrue(listing, listing.contains("first.bin"));
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testUploadsSentAhead() throws IOException {
+        byte[] first = randomBytes(100000);
+        byte[] second = randomBytes(100000);
+        Socket socket = openPassive(client);
+        try {
+            // the blocks of both uploads before their STOR, held by the
+            // server until each one starts
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            writeBlocks(out, first, 65535);
+            writeBlocks(out, second, 777);
+
+            assertEquals(150, client.sendCommand("STOR first.bin"));
+            assertEquals(226, client.getReply());
+            assertEquals(150, client.sendCommand("STOR second.bin"));
+            assertEquals(226, client.getReply());
+        } finally {
+            socket.close();
+        }
+        assertArrayEquals(first, read(new File(homeDirectory, "first.bin")));
+        assertArrayEquals(second, read(new File(homeDirectory, "second.bin")));
+    }
+
+    @Test
+    public void testDownloadRestartMarkers() throws IOException {
+        byte[] data = randomBytes(10 * 1024 * 1024);
+        write(new File(homeDirectory, "file.bin"), data);
+        Socket socket = openPassive(client);
+        try {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            assertArrayEquals(data, retrieve(in, "file.bin"));
+
+            // the markers are the positions in the file, each one of the
+            // data sent before it
+            assertEquals(markers.toString(), 2, markers.size());
+            long previous = 0L;
+            for (String marker : markers) {
+                String[] sentAndMarker = marker.split(" ");
+                assertEquals(sentAndMarker[0], sentAndMarker[1]);
+                long position = Long.parseLong(sentAndMarker[1]);
+                assertTrue(position >= previous + 4 * 1024 * 1024);
+                previous = position;
+            }
+
+            // restart at the last one
+            assertEquals(350, client.sendCommand("REST " + previous));
+            assertArrayEquals(Arrays.copyOfRange(data, (int) previous, data.length),
+                    retrieve(in, "file.bin"));
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testUploadRestartMarker() throws IOException {
+        byte[] data = randomBytes(200000);
+        Socket socket = openPassive(client);
+        try {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            assertEquals(150, client.sendCommand("STOR file.bin"));
+            writeBlock(out, 0, Arrays.copyOfRange(data, 0, 100000));
+            writeBlock(out, DESC_RESTART, "abc".getBytes(CharsetUtil.US_ASCII));
+            writeBlock(out, 0, Arrays.copyOfRange(data, 100000, data.length));
+            writeBlock(out, DESC_EOF, new byte[0]);
+            out.flush();
+
+            // the marker is acknowledged with its position in the file
+            assertEquals(110, client.getReply());
+            assertTrue(client.getReplyString(), client.getReplyString().contains("MARK abc = 100000"));
+            assertEquals(226, client.getReply());
+        } finally {
+            socket.close();
+        }
+        assertArrayEquals(data, read(new File(homeDirectory, "file.bin")));
+    }
+
+    @Test
+    public void testEofWithData() throws IOException {
+        byte[] data = randomBytes(1000);
+        Socket socket = openPassive(client);
+        try {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            assertEquals(150, client.sendCommand("STOR file.bin"));
+            writeBlock(out, 0, Arrays.copyOfRange(data, 0, 600));
+            writeBlock(out, DESC_EOF, Arrays.copyOfRange(data, 600, 1000));
+            out.flush();
+            assertEquals(226, client.getReply());
+        } finally {
+            socket.close();
+        }
+        assertArrayEquals(data, read(new File(homeDirectory, "file.bin")));
+    }
+
+    @Test
+    public void testConnectionKeptAfterARefusedTransfer() throws IOException {
+        byte[] data = randomBytes(1000);
+        write(new File(homeDirectory, "file.bin"), data);
+        Socket socket = openPassive(client);
+        try {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            assertArrayEquals(data, retrieve(in, "file.bin"));
+            assertEquals(550, client.sendCommand("RETR missing.bin"));
+            assertArrayEquals(data, retrieve(in, "file.bin"));
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testConnectionClosedByModeChange() throws IOException {
+        assertConnectionClosedBy("MODE S", 200);
+    }
+
+    @Test
+    public void testConnectionClosedByPasv() throws IOException {
+        assertConnectionClosedBy("PASV", 227);
+    }
+
+    @Test
+    public void testConnectionClosedByAbor() throws IOException {
+        assertConnectionClosedBy("ABOR", 226);
+    }
+
+    @Test
+    public void testConnectionClosedByAFailedUpload() throws IOException {
+        byte[] data = randomBytes(1000);
+        write(new File(homeDirectory, "file.bin"), data);
+        Socket socket = openPassive(client);
+        try {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            assertArrayEquals(data, retrieve(in, "file.bin"));
+
+            // the client closes its output in the middle of a block
+            assertEquals(150, client.sendCommand("STOR stored.bin"));
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeByte(0);
+            out.writeShort(1000);
+            out.write(data, 0, 10);
+            out.flush();
+            socket.shutdownOutput();
+            assertEquals(426, client.getReply());
+            assertEquals(-1, in.read());
+        } finally {
+            socket.close();
+        }
+
+        // a new data connection is needed
+        socket = openPassive(client);
+        try {
+            assertArrayEquals(data, retrieve(new DataInputStream(socket.getInputStream()), "file.bin"));
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testIdleConnectionClosed() throws IOException {
+        byte[] data = randomBytes(1000);
+        write(new File(homeDirectory, "file.bin"), data);
+        Socket socket = openPassive(client);
+        try {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            assertArrayEquals(data, retrieve(in, "file.bin"));
+
+            // closed by the server once idle, well before the read times out
+            long start = System.currentTimeMillis();
+            try {
+                assertEquals(-1, in.read());
+            } catch (SocketTimeoutException ex) {
+                throw new AssertionError("Idle data connection kept open");
+            }
+            assertTrue(System.currentTimeMillis() - start >= IDLE_TIME * 1000 / 2);
+        } finally {
+            socket.close();
+        }
+        assertEquals(200, client.sendCommand("NOOP"));
+    }
+
+    private void assertConnectionClosedBy(String command, int reply) throws IOException {
+        byte[] data = randomBytes(1000);
+        write(new File(homeDirectory, "file.bin"), data);
+        Socket socket = openPassive(client);
+        try {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            assertArrayEquals(data, retrieve(in, "file.bin"));
+            assertEquals(reply, client.sendCommand(command));
+            assertEquals(-1, in.read());
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Retrieve a file on the kept data connection.
+     */
+    private byte[] retrieve(DataInputStream in, String fileName) throws IOException {
+        assertEquals(150, client.sendCommand("RETR " + fileName));
+        byte[] data = readBlocks(in);
+        assertEquals(226, client.getReply());
+        return data;
+    }
+
+    /**
+     * Read the blocks of one transfer, up to its EOF block, keeping the
+     * restart markers along with the size of the data read before them.
+     */
+    private byte[] readBlocks(DataInputStream in) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for (;;) {
+            int descriptor = in.readUnsignedByte();
+            byte[] block = new byte[in.readUnsignedShort()];
+            in.readFully(block);
+            if ((descriptor & DESC_RESTART) != 0) {
+                markers.add(data.size() + " " + new String(block, CharsetUtil.US_ASCII));
+                continue;
+            }
+            data.write(block);
+            if ((descriptor & DESC_EOF) != 0) {
+                return data.toByteArray();
+            }
+        }
+    }
+
+    /**
+     * Write the data in blocks of the given size, followed by an EOF block.
+     */
+    private static void writeBlocks(DataOutputStream out, byte[] data, int blockSize) throws IOException {
+        for (int offset = 0; offset < data.length; offset += blockSize) {
+            writeBlock(out, 0, Arrays.copyOfRange(data, offset, Math.min(data.length, offset + blockSize)));
+        }
+        writeBlock(out, DESC_EOF, new byte[0]);
+        out.flush();
+    }
+
+    private static void writeBlock(DataOutputStream out, int descriptor, byte[] block) throws IOException {
+        out.writeByte(descriptor);
+        out.writeShort(block.length);
+        out.write(block);
+    }
+}
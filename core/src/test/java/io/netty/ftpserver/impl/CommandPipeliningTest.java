@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.impl;
+
+import io.netty.util.CharsetUtil;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.net.Socket;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Pipelines commands on a raw control connection and checks that their
+ * replies keep the order of the requests, transfers included.
+ *
+ * @author Io Netty Project
+ */
+public class CommandPipeliningTest extends AbstractLoopbackTest {
+
+    @Test
+    public void testListThenNoop() throws Exception {
+        write(new File(homeDirectory, "listed.txt"), new byte[10]);
+        RawControl control = new RawControl(port);
+        try {
+            control.send("PASV\r\n");
+            assertEquals(227, control.readReply());
+            String pasv = control.getLastReply();
+
+            // the NOOP arrives while LIST waits for its data connection
+            control.send("LIST\r\nNOOP\r\n");
+            assertEquals(150, control.readReply());
+            Thread.sleep(200L);
+
+            Socket data = connect(pasv);
+            try {
+                String listing = new String(readFully(data.getInputStream()), CharsetUtil.UTF_8);
+                assertTrue(listing, listing.contains("listed.txt"));
+            } finally {
+                data.close();
+            }
+            assertEquals(Arrays.asList(226, 200), control.readReplies(2));
+        } finally {
+            control.close();
+        }
+    }
+
+    @Test
+    public void testBurstOfCommands() throws Exception {
+        RawControl control = new RawControl(port);
+        try {
+            control.send("TYPE I\r\nMODE S\r\nPWD\r\nFOO\r\nNOOP\r\n");
+            assertEquals(Arrays.asList(200, 200, 257, 502, 200), control.readReplies(5));
+        } finally {
+            control.close();
+        }
+    }
+
+    @Test
+    public void testCommandsAfterTransfers() throws Exception {
+        byte[] content = randomBytes(100000);
+        write(new File(homeDirectory, "first.bin"), content);
+        RawControl control = new RawControl(port);
+        try {
+            control.send("TYPE I\r\nPASV\r\n");
+            assertEquals(200, control.readReply());
+            assertEquals(227, control.readReply());
+            Socket data = connect(control.getLastReply());
+            control.send("RETR first.bin\r\nPWD\r\nSIZE first.bin\r\n");
+            assertEquals(150, control.readReply());
+            try {
+                assertTrue(Arrays.equals(content, readFully(data.getInputStream())));
+            } finally {
+                data.close();
+            }
+            assertEquals(Arrays.asList(226, 257, 213), control.readReplies(3));
+            assertTrue(control.getLastReply(), control.getLastReply().endsWith(" 100000"));
+        } finally {
+            control.close();
+        }
+    }
+
+    @Test
+    public void testAbortRunningTransfer() throws Exception {
+        // larger than the socket buffers, the transfer waits for the client
+        RandomAccessFile file = new RandomAccessFile(new File(homeDirectory, "large.bin"), "rw");
+        try {
+            file.setLength(256L * 1024 * 1024);
+        } finally {
+            file.close();
+        }
+        RawControl control = new RawControl(port);
+        try {
+            control.send("TYPE I\r\nPASV\r\n");
+            assertEquals(200, control.readReply());
+            assertEquals(227, control.readReply());
+            Socket data = connect(control.getLastReply());
+            try {
+                control.send("RETR large.bin\r\n");
+                assertEquals(150, control.readReply());
+                assertTrue(data.getInputStream().read() != -1);
+
+                // the ABOR closes the data connection right away, its reply
+                // follows the one of the transfer, the NOOP comes last
+                control.send("ABOR\r\nNOOP\r\n");
+                assertEquals(Arrays.asList(426, 226, 200), control.readReplies(3));
+            } finally {
+                data.close();
+            }
+        } finally {
+            control.close();
+        }
+    }
+}
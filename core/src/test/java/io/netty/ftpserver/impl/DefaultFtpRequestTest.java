@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author Io Netty Project
+ */
+public class DefaultFtpRequestTest {
+
+    @Test
+    public void testCommandAndArgument() {
+        DefaultFtpRequest request = new DefaultFtpRequest("  retr  dir/file.txt \r\n");
+        assertEquals("RETR", request.getCommand());
+        assertEquals(" dir/file.txt", request.getArgument());
+        assertEquals("retr  dir/file.txt", request.getRequestLine());
+    }
+
+    @Test
+    public void testNoArgument() {
+        DefaultFtpRequest request = new DefaultFtpRequest("NOOP ");
+        assertEquals("NOOP", request.getCommand());
+        assertNull(request.getArgument());
+        assertFalse(request.hasArgument());
+    }
+
+    @Test
+    public void testRfc775Aliases() {
+        assertEquals("CDUP", new DefaultFtpRequest("XCUP").getCommand());
+        assertEquals("CWD", new DefaultFtpRequest("XCWD dir").getCommand());
+        assertEquals("MKD", new DefaultFtpRequest("xmkd dir").getCommand());
+        assertEquals("PWD", new DefaultFtpRequest("XPWD").getCommand());
+        assertEquals("RMD", new DefaultFtpRequest("XRMD dir").getCommand());
+    }
+
+    @Test
+    public void testChecksumCommandsKeepTheirX() {
+        assertEquals("XCRC", new DefaultFtpRequest("XCRC file").getCommand());
+        assertEquals("XMD5", new DefaultFtpRequest("XMD5 file").getCommand());
+        assertEquals("XSHA1", new DefaultFtpRequest("xsha1 file").getCommand());
+        assertEquals("XSHA256", new DefaultFtpRequest("XSHA256 file").getCommand());
+    }
+
+    @Test
+    public void testUnknownCommandKeepsItsX() {
+        DefaultFtpRequest request = new DefaultFtpRequest("XFOO bar");
+        assertEquals("XFOO", request.getCommand());
+        assertTrue(request.hasArgument());
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.impl;
+
+import io.netty.ftpserver.FtpServer;
+import io.netty.ftpserver.FtpServerFactory;
+import io.netty.ftpserver.ftplet.Authority;
+import io.netty.ftpserver.ftplet.UserManager;
+import io.netty.ftpserver.listener.ListenerFactory;
+import io.netty.ftpserver.usermanager.PropertiesUserManagerFactory;
+import io.netty.ftpserver.usermanager.impl.BaseUser;
+import io.netty.ftpserver.usermanager.impl.WritePermission;
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Uploads files in extended block mode over loopback data connections,
+ * sending the blocks the way a client would.
+ *
+ * @author Io Netty Project
+ */
+public class ExtendedBlockModeTest {
+
+    private static final String HOST = "127.0.0.1";
+
+    private static final int TIMEOUT = 10000;
+
+    private static final Pattern HOST_PORT = Pattern.compile("(\\d+),(\\d+),(\\d+),(\\d+),(\\d+),(\\d+)");
+
+    private File homeDirectory;
+
+    private FtpServer server;
+
+    private FTPClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        homeDirectory = File.createTempFile("ftphome", "");
+        assertTrue(homeDirectory.delete());
+        assertTrue(homeDirectory.mkdirs());
+
+        UserManager userManager = new PropertiesUserManagerFactory().createUserManager();
+        BaseUser user = new BaseUser();
+        user.setName("user");
+        user.setPassword("password");
+        user.setHomeDirectory(homeDirectory.getAbsolutePath());
+        user.setAuthorities(Collections.<Authority>singletonList(new WritePermission()));
+        userManager.save(user);
+
+        int port = freePort();
+        ListenerFactory listenerFactory = new ListenerFactory();
+        listenerFactory.setPort(port);
+        FtpServerFactory serverFactory = new FtpServerFactory();
+        serverFactory.addListener("default", listenerFactory.createListener());
+        serverFactory.setUserManager(userManager);
+        server = serverFactory.createServer();
+        server.start();
+
+        client = new FTPClient();
+        client.setDefaultTimeout(TIMEOUT);
+        client.connect(HOST, port);
+        assertTrue(client.login("user", "password"));
+        assertEquals(200, client.sendCommand("TYPE", "I"));
+        assertEquals(200, client.sendCommand("MODE", "E"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (client != null && client.isConnected()) {
+            client.disconnect();
+        }
+        if (server != null) {
+            server.stop();
+        }
+        delete(homeDirectory);
+    }
+
+    @Test
+    public void testPassiveReorderedBlocks() throws Exception {
+        byte[] data = randomBytes(300000);
+        Socket[] sockets = openPassive(2);
+        try {
+            assertEquals(150, client.sendCommand("STOR", "reordered.bin"));
+
+            // the first channel ends, with the EOF, before the second one
+            // sent its part of the data
+            ByteArrayOutputStream first = new ByteArrayOutputStream();
+            writeBlock(first, 0, 200000, data, 200000, 100000);
+            writeBlock(first, 0, 0, data, 0, 100000);
+            writeEof(first, 2);
+            send(sockets[0], first);
+            Thread.sleep(200L);
+
+            ByteArrayOutputStream second = new ByteArrayOutputStream();
+            writeBlock(second, ExtendedBlockDataConnection.DESC_EOD, 100000, data, 100000, 100000);
+            send(sockets[1], second);
+
+            assertEquals(226, client.getReply());
+        } finally {
+            close(sockets);
+        }
+        assertArrayEquals(data, read(new File(homeDirectory, "reordered.bin")));
+    }
+
+    @Test
+    public void testActiveParallelChannels() throws Exception {
+        byte[] data = randomBytes(3000);
+        ServerSocket serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(HOST, 0));
+        serverSocket.setSoTimeout(TIMEOUT);
+        Socket[] sockets = new Socket[3];
+        try {
+            assertEquals(200, client.sendCommand("OPTS", "RETR Parallelism=3;"));
+            assertEquals(200, client.sendCommand("SPOR", encode(serverSocket.getLocalPort())));
+            assertEquals(150, client.sendCommand("STOR", "parallel.bin"));
+            for (int i = 0; i < sockets.length; i++) {
+                sockets[i] = serverSocket.accept();
+            }
+
+            // the blocks in reverse order, one per channel
+            for (int i = 0; i < sockets.length; i++) {
+                int offset = (sockets.length - 1 - i) * 1000;
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                if (i < sockets.length - 1) {
+                    writeBlock(out, ExtendedBlockDataConnection.DESC_EOD, offset, data, offset, 1000);
+                } else {
+                    writeBlock(out, 0, offset, data, offset, 1000);
+                    writeEof(out, sockets.length);
+                }
+                send(sockets[i], out);
+            }
+
+            assertEquals(226, client.getReply());
+        } finally {
+            close(sockets);
+            serverSocket.close();
+        }
+        assertArrayEquals(data, read(new File(homeDirectory, "parallel.bin")));
+    }
+
+    @Test
+    public void testMissingBlock() throws Exception {
+        byte[] data = randomBytes(3000);
+        Socket[] sockets = openPassive(1);
+        try {
+            assertEquals(150, client.sendCommand("STOR", "missing.bin"));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeBlock(out, 0, 0, data, 0, 1000);
+            writeBlock(out, 0, 2000, data, 2000, 1000);
+            writeEof(out, 1);
+            send(sockets[0], out);
+
+            assertEquals(551, client.getReply());
+        } finally {
+            close(sockets);
+        }
+    }
+
+    @Test
+    public void testOverlappingBlock() throws Exception {
+        byte[] data = randomBytes(3000);
+        Socket[] sockets = openPassive(1);
+        try {
+            assertEquals(150, client.sendCommand("STOR", "overlapping.bin"));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeBlock(out, 0, 0, data, 0, 2000);
+            writeBlock(out, 0, 1000, data, 1000, 2000);
+            writeEof(out, 1);
+            send(sockets[0], out);
+
+            assertEquals(551, client.getReply());
+        } finally {
+            close(sockets);
+        }
+    }
+
+    @Test
+    public void testEodCount() throws Exception {
+        byte[] data = randomBytes(2000);
+        Socket[] sockets = openPassive(2);
+        try {
+            assertEquals(150, client.sendCommand("STOR", "count.bin"));
+
+            // the EOF announces two EOD blocks, the transfer waits for the
+            // empty EOD block of the second channel, sent after its data
+            ByteArrayOutputStream first = new ByteArrayOutputStream();
+            writeBlock(first, 0, 0, data, 0, 1000);
+            writeEof(first, 2);
+            send(sockets[0], first);
+
+            ByteArrayOutputStream second = new ByteArrayOutputStream();
+            writeBlock(second, 0, 1000, data, 1000, 1000);
+            send(sockets[1], second);
+            Thread.sleep(200L);
+            second.reset();
+            writeBlock(second, ExtendedBlockDataConnection.DESC_EOD, 2000, new byte[0], 0, 0);
+            send(sockets[1], second);
+
+            assertEquals(226, client.getReply());
+        } finally {
+            close(sockets);
+        }
+        assertArrayEquals(data, read(new File(homeDirectory, "count.bin")));
+    }
+
+    /**
+     * Ask for the striped passive address and open the data connections.
+     */
+    private Socket[] openPassive(int count) throws IOException {
+        assertEquals(229, client.sendCommand("SPAS"));
+        Matcher matcher = HOST_PORT.matcher(client.getReplyString());
+        assertTrue(matcher.find());
+        String host = matcher.group(1) + '.' + matcher.group(2) + '.' + matcher.group(3) + '.' + matcher.group(4);
+        int port = Integer.parseInt(matcher.group(5)) * 256 + Integer.parseInt(matcher.group(6));
+
+        Socket[] sockets = new Socket[count];
+        for (int i = 0; i < count; i++) {
+            sockets[i] = new Socket(host, port);
+            sockets[i].setSoTimeout(TIMEOUT);
+        }
+        return sockets;
+    }
+
+    private static String encode(int port) {
+        return HOST.replace('.', ',') + ',' + (port >> 8) + ',' + (port & 0xFF);
+    }
+
+    private static void writeBlock(ByteArrayOutputStream out, int descriptor, long offset,
+                                   byte[] data, int index, int length) throws IOException {
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeByte(descriptor);
+        header.writeLong(length);
+        header.writeLong(offset);
+        header.write(data, index, length);
+        header.flush();
+    }
+
+    /**
+     * The EOF ending the data of a channel, its offset holds the EOD count.
+     */
+    private static void writeEof(ByteArrayOutputStream out, int eodCount) throws IOException {
+        writeBlock(out, ExtendedBlockDataConnection.DESC_EOF | ExtendedBlockDataConnection.DESC_EOD,
+                eodCount, new byte[0], 0, 0);
+    }
+
+    private static void send(Socket socket, ByteArrayOutputStream out) throws IOException {
+        socket.getOutputStream().write(out.toByteArray());
+        socket.getOutputStream().flush();
+    }
+
+    private static void close(Socket[] sockets) throws IOException {
+        for (Socket socket : sockets) {
+            if (socket != null) {
+                socket.close();
+            }
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) raf.length()];
+            raf.readFully(data);
+            return data;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
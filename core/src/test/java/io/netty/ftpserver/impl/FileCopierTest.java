@@ -0,0 +1,309 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.netty.ftpserver.impl;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.ftpserver.filesystem.nativefs.impl.NativeFileSystemView;
+import io.netty.ftpserver.ftplet.Authority;
+import io.netty.ftpserver.ftplet.FileSystemView;
+import io.netty.ftpserver.ftplet.FtpFile;
+import io.netty.ftpserver.listener.nio.channel.FtpChannel;
+import io.netty.ftpserver.usermanager.impl.BaseUser;
+import io.netty.ftpserver.usermanager.impl.WritePermission;
+import io.netty.util.concurrent.DefaultEventExecutor;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Io Netty Project
+ */
+public class FileCopierTest {
+
+    private static final byte[] CONTENT = randomBytes(100000);
+
+    private File homeDirectory;
+
+    private EventExecutor executor;
+
+    private EmbeddedChannel tChannel;
+
+    private Runnable onUpload;
+
+    @Before
+    public void setUp() throws Exception {
+        homeDirectory = File.createTempFile("ftpcopy", "");
+        assertTrue(homeDirectory.delete());
+        assertTrue(homeDirectory.mkdirs());
+        executor = new DefaultEventExecutor();
+        tChannel = new EmbeddedChannel();
+    }
+
+    @After
+    public void tearDown() {
+        tChannel.finishAndReleaseAll();
+        executor.shutdownGracefully(0, 1, TimeUnit.SECONDS).awaitUninterruptibly();
+        delete(homeDirectory);
+    }
+
+    @Test
+    public void testCopyOverExistingFile() throws Exception {
+        write(new File(homeDirectory, "from.bin"), CONTENT);
+        // longer than the copy, which must not keep its tail
+        write(new File(homeDirectory, "to.bin"), randomBytes(CONTENT.length * 2));
+
+        FtpChannel channel = channel(new WritePermission());
+        FileCopier copier = copier(channel, "/from.bin", "/to.bin", 1);
+        Future<Long> future = copier.start().awaitUninterruptibly();
+        assertTrue(future.isSuccess());
+        assertEquals(CONTENT.length, future.getNow().longValue());
+        assertEquals(1, copier.getCopiedFiles());
+        assertArrayEquals(CONTENT, read(new File(homeDirectory, "to.bin")));
+    }
+
+    @Test
+    public void testCopyDirectoryOverExistingDirectory() throws Exception {
+        File from = new File(homeDirectory, "from");
+        assertTrue(new File(from, "sub").mkdirs());
+        write(new File(from, "a.bin"), CONTENT);
+        write(new File(from, "sub/b.bin"), CONTENT);
+        File to = new File(homeDirectory, "to");
+        assertTrue(to.mkdirs());
+        write(new File(to, "a.bin"), new byte[10]);
+        write(new File(to, "other.bin"), new byte[10]);
+
+        Future<Long> future = copier(channel(new WritePermission()), "/from", "/to", 4)
+                .start().awaitUninterruptibly();
+        assertTrue(future.isSuccess());
+        assertArrayEquals(CONTENT, read(new File(to, "a.bin")));
+        assertArrayEquals(CONTENT, read(new File(to, "sub/b.bin")));
+        // the files only in the target are kept
+        assertEquals(10L, new File(to, "other.bin").length());
+    }
+
+    @Test
+    public void testCopyToNewDirectory() throws Exception {
+        File from = new File(homeDirectory, "from");
+        assertTrue(new File(from, "sub").mkdirs());
+        write(new File(from, "sub/file.bin"), CONTENT);
+
+        Future<Long> future = copier(channel(new WritePermission()), "/from", "/to", 4)
+                .start().awaitUninterruptibly();
+        assertTrue(future.isSuccess());
+        assertArrayEquals(CONTENT, read(new File(homeDirectory, "to/sub/file.bin")));
+    }
+
+    @Test
+    public void testCopyIntoMissingDirectory() throws Exception {
+        write(new File(homeDirectory, "from.bin"), CONTENT);
+        File from = new File(homeDirectory, "from");
+        assertTrue(from.mkdirs());
+        write(new File(from, "file.bin"), CONTENT);
+        FtpChannel channel = channel(new WritePermission());
+
+        // the parent directories of the copy are not created
+        Future<Long> future = copier(channel, "/from.bin", "/missing/to.bin", 1)
+                .start().awaitUninterruptibly();
+        assertFalse(future.isSuccess());
+        assertTrue(future.cause() instanceof IOException);
+
+        future = copier(channel, "/from", "/missing/to", 4).start().awaitUninterruptibly();
+        assertFalse(future.isSuccess());
+        assertTrue(future.cause() instanceof IOException);
+        assertFalse(new File(homeDirectory, "missing").exists());
+    }
+
+    @Test
+    public void testPermissionDenied() throws Exception {
+        File from = new File(homeDirectory, "from");
+        assertTrue(from.mkdirs());
+        write(new File(from, "file.bin"), CONTENT);
+        assertTrue(new File(homeDirectory, "allowed").mkdirs());
+        FtpChannel channel = channel(new WritePermission("/allowed"));
+
+        Future<Long> future = copier(channel, "/from/file.bin", "/copy.bin", 1)
+                .start().awaitUninterruptibly();
+        assertFalse(future.isSuccess());
+        assertFalse(new File(homeDirectory, "copy.bin").exists());
+
+        future = copier(channel, "/from", "/copy", 4).start().awaitUninterruptibly();
+        assertFalse(future.isSuccess());
+        assertFalse(new File(homeDirectory, "copy").exists());
+
+        future = copier(channel, "/from", "/allowed/copy", 4).start().awaitUninterruptibly();
+        assertTrue(future.isSuccess());
+        assertArrayEquals(CONTENT, read(new File(homeDirectory, "allowed/copy/file.bin")));
+    }
+
+    @Test
+    public void testSessionClosedBeforeStart() throws Exception {
+        File from = new File(homeDirectory, "from");
+        assertTrue(from.mkdirs());
+        write(new File(from, "file.bin"), CONTENT);
+
+        tChannel.close();
+        FileCopier copier = copier(channel(new WritePermission()), "/from", "/to", 4);
+        Future<Long> future = copier.start().awaitUninterruptibly();
+        assertFalse(future.isSuccess());
+        assertEquals(0, copier.getCopiedFiles());
+        assertFalse(new File(homeDirectory, "to").exists());
+    }
+
+    @Test
+    public void testSessionClosedDuringCopy() throws Exception {
+        File from = new File(homeDirectory, "from");
+        assertTrue(from.mkdirs());
+        for (int i = 0; i < 10; i++) {
+            write(new File(from, "file" + i + ".bin"), CONTENT);
+        }
+
+        // the session closes once the first file is copied
+        onUpload = new Runnable() {
+            public void run() {
+                tChannel.close();
+            }
+        };
+        FileCopier copier = copier(channel(new WritePermission()), "/from", "/to", 1);
+        Future<Long> future = copier.start().awaitUninterruptibly();
+        assertFalse(future.isSuccess());
+        assertEquals("Session closed", future.cause().getMessage());
+        assertEquals(1, copier.getCopiedFiles());
+        assertEquals(1, new File(homeDirectory, "to").list().length);
+    }
+
+    private FileCopier copier(FtpChannel channel, String from, String to, int parallelism)
+            throws Exception {
+        FileSystemView view = channel.getFileSystemView();
+        FtpFile fromFile = view.getFile(from);
+        FtpFile toFile = view.getFile(to);
+        return new FileCopier(channel, fromFile, toFile, executor, parallelism);
+    }
+
+    private FtpChannel channel(Authority authority) throws Exception {
+        BaseUser user = new BaseUser();
+        user.setName("user");
+        user.setHomeDirectory(homeDirectory.getAbsolutePath());
+        user.setAuthorities(Collections.singletonList(authority));
+        final FileSystemView view = new NativeFileSystemView(user, false);
+
+        final ServerFtpStatistics statistics = proxy(ServerFtpStatistics.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("setUpload") && onUpload != null) {
+                    onUpload.run();
+                }
+                return null;
+            }
+        });
+        final FtpServerContext context = proxy(FtpServerContext.class, new InvocationHandler() {
+            private final AsciiOffsetIndex asciiOffsetIndex = new AsciiOffsetIndex();
+
+            private final ChecksumStore checksumStore = new ChecksumStore(null);
+
+            private final SharedFileChannels sharedFileChannels = new SharedFileChannels();
+
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getAsciiOffsetIndex")) {
+                    return asciiOffsetIndex;
+                } else if (method.getName().equals("getChecksumStore")) {
+                    return checksumStore;
+                } else if (method.getName().equals("getSharedFileChannels")) {
+                    return sharedFileChannels;
+                } else if (method.getName().equals("getFtpStatistics")) {
+                    return statistics;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+        return proxy(FtpChannel.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getContext")) {
+                    return context;
+                } else if (method.getName().equals("getFileSystemView")) {
+                    return view;
+                } else if (method.getName().equals("getTChannel")) {
+                    return tChannel;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(FileCopierTest.class.getClassLoader(),
+                new Class<?>[] {type}, handler);
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) raf.length()];
+            raf.readFully(data);
+            return data;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
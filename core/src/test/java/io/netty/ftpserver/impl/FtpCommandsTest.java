@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+
+import org.junit.Test;
+
+/**
+ * @author Io Netty Project
+ */
+public class FtpCommandsTest {
+
+    @Test
+    public void testLookup() {
+        assertEquals("CWD", lookup("CWD"));
+        assertEquals("RETR", lookup("RETR"));
+        assertEquals("XSHA1", lookup("XSHA1"));
+        assertEquals("XSHA256", lookup("XSHA256"));
+        assertNull(lookup("FOO"));
+        assertNull(lookup("RETRX"));
+        assertNull(lookup(""));
+    }
+
+    @Test
+    public void testShorterAndLongerVerbsDoNotCollide() {
+        // the same leading characters, one byte more or less
+        assertEquals("MKD", lookup("MKD"));
+        assertNull(lookup("MK"));
+        assertNull(lookup("MKDX"));
+        assertEquals("XSHA1", lookup("XSHA1"));
+        assertNull(lookup("XSHA"));
+        assertNull(lookup("XSHA12"));
+    }
+
+    @Test
+    public void testAliases() {
+        assertEquals("CDUP", lookup("XCUP"));
+        assertEquals("CWD", lookup("XCWD"));
+        assertEquals("MKD", lookup("XMKD"));
+        assertEquals("PWD", lookup("XPWD"));
+        assertEquals("RMD", lookup("XRMD"));
+        assertEquals("XCRC", lookup("XCRC"));
+        assertEquals("XMD5", lookup("XMD5"));
+    }
+
+    @Test
+    public void testToUpperCase() {
+        assertEquals(FtpCommands.pack("RETR"), FtpCommands.toUpperCase(FtpCommands.pack("retr")));
+        assertEquals(FtpCommands.pack("XSHA256"), FtpCommands.toUpperCase(FtpCommands.pack("xSha256")));
+        assertEquals(FtpCommands.pack("A1_Z"), FtpCommands.toUpperCase(FtpCommands.pack("a1_z")));
+        assertEquals("MKD", FtpCommands.lookup(FtpCommands.toUpperCase(FtpCommands.pack("xmkd"))));
+    }
+
+    @Test
+    public void testPackBuffer() {
+        ByteBuf buffer = Unpooled.copiedBuffer("  stor file", CharsetUtil.UTF_8);
+        assertEquals(FtpCommands.pack("stor"), FtpCommands.pack(buffer, 2, 4));
+        assertEquals(0L, FtpCommands.pack(buffer, 2, 0));
+        buffer.release();
+    }
+
+    @Test
+    public void testPackLongOrNonAsciiVerb() {
+        ByteBuf buffer = Unpooled.copiedBuffer("ABCDEFGHI", CharsetUtil.UTF_8);
+        assertEquals(FtpCommands.pack("ABCDEFGH"), FtpCommands.pack(buffer, 0, 8));
+        assertEquals(-1L, FtpCommands.pack(buffer, 0, 9));
+        buffer.release();
+
+        buffer = Unpooled.copiedBuffer("ST\u00D6R", CharsetUtil.UTF_8);
+        assertEquals(-1L, FtpCommands.pack(buffer, 0, buffer.readableBytes()));
+        buffer.release();
+    }
+
+    @Test
+    public void testUnpack() {
+        assertEquals("CWD", FtpCommands.unpack(FtpCommands.pack("CWD")));
+        assertEquals("XSHA256", FtpCommands.unpack(FtpCommands.pack("XSHA256")));
+        assertEquals("ABCDEFGH", FtpCommands.unpack(FtpCommands.pack("ABCDEFGH")));
+        assertEquals("", FtpCommands.unpack(0L));
+    }
+
+    @Test
+    public void testGetCommand() {
+        assertEquals("STOR", FtpCommands.getCommand("stor"));
+        assertEquals("MKD", FtpCommands.getCommand("xMkd"));
+        assertEquals("SOMETHINGLONG", FtpCommands.getCommand("somethingLong"));
+        assertEquals("", FtpCommands.getCommand(""));
+    }
+
+    @Test
+    public void testSharedNames() {
+        assertSame(lookup("RETR"), lookup("RETR"));
+        assertSame(lookup("XCWD"), lookup("CWD"));
+    }
+
+    private static String lookup(String verb) {
+        return FtpCommands.lookup(FtpCommands.pack(verb));
+    }
+}
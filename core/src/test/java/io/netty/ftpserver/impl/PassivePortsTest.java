@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.netty.ftpserver.impl;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Io Netty Project
+ */
+public class PassivePortsTest {
+
+    private static final int BASE_PORT = 40000;
+
+    @Test
+    public void testParse() {
+        assertEquals(set(40000, 40001, 40002, 40005), reserveAll(new PassivePorts("40000-40002, 40005", false)));
+        assertEquals(set(40000), reserveAll(new PassivePorts("40000", false)));
+        assertEquals(set(65534, 65535), reserveAll(new PassivePorts("65534-", false)));
+    }
+
+    @Test
+    public void testExhaustion() {
+        PassivePorts ports = new PassivePorts("40000-40003", false);
+        Set<Integer> reserved = reserveAll(ports);
+        assertEquals(4, reserved.size());
+        assertEquals(-1, ports.reserveNextPort());
+
+        ports.releasePort(40002);
+        assertEquals(40002, ports.reserveNextPort());
+        assertEquals(-1, ports.reserveNextPort());
+    }
+
+    @Test
+    public void testAnyPort() {
+        PassivePorts ports = new PassivePorts("0", false);
+        assertEquals(0, ports.reserveNextPort());
+        assertEquals(0, ports.reserveNextPort());
+        ports.releasePort(0);
+
+        // the system picks a port once the others are reserved
+        ports = new PassivePorts("40000,0", false);
+        assertEquals(40000, ports.reserveNextPort());
+        assertEquals(0, ports.reserveNextPort());
+        ports.releasePort(40000);
+        assertEquals(40000, ports.reserveNextPort());
+    }
+
+    @Test
+    public void testReleaseUnreservedPort() {
+        PassivePorts ports = new PassivePorts("40000-40001", false);
+        ports.releasePort(40000);
+        ports.releasePort(12345);
+        assertEquals(2, reserveAll(ports).size());
+        assertEquals(-1, ports.reserveNextPort());
+
+        // released twice, reserved once
+        ports.releasePort(40001);
+        ports.releasePort(40001);
+        assertEquals(40001, ports.reserveNextPort());
+        assertEquals(-1, ports.reserveNextPort());
+    }
+
+    @Test
+    public void testWordBoundaries() {
+        // the bits of the ports span three words, the last one partly used
+        for (int count : new int[] {63, 64, 65, 130}) {
+            PassivePorts ports = new PassivePorts(BASE_PORT + "-" + (BASE_PORT + count - 1), false);
+            for (int round = 0; round < 20; round++) {
+                Set<Integer> reserved = reserveAll(ports);
+                assertEquals(count, reserved.size());
+                for (int port : reserved) {
+                    assertTrue(port >= BASE_PORT && port < BASE_PORT + count);
+                    ports.releasePort(port);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentReserveAndRelease() throws Exception {
+        // more threads than ports, so that the ports run out now and then
+        for (int count : new int[] {8, 70}) {
+            final int threads = count + 8;
+            final PassivePorts ports = new PassivePorts(BASE_PORT + "-" + (BASE_PORT + count - 1), false);
+            final AtomicIntegerArray holders = new AtomicIntegerArray(count);
+            final AtomicInteger exhausted = new AtomicInteger();
+            final AtomicReference<String> failure = new AtomicReference<String>();
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Thread> workers = new ArrayList<Thread>();
+            for (int i = 0; i < threads; i++) {
+                Thread worker = new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        for (int j = 0; j < 20000; j++) {
+                            int port = ports.reserveNextPort();
+                            if (port == -1) {
+                                exhausted.incrementAndGet();
+                                continue;
+                            }
+                            int index = port - BASE_PORT;
+                            if (index < 0 || index >= holders.length()) {
+                                failure.compareAndSet(null, "Not a passive port: " + port);
+                                return;
+                            }
+                            if (holders.incrementAndGet(index) != 1) {
+                                failure.compareAndSet(null, "Port reserved twice: " + port);
+                            }
+                            holders.decrementAndGet(index);
+                            ports.releasePort(port);
+                        }
+                    }
+                });
+                worker.start();
+                workers.add(worker);
+            }
+            start.countDown();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+
+            assertNull(failure.get());
+            // all released
+            assertEquals(count, reserveAll(ports).size());
+            assertEquals(-1, ports.reserveNextPort());
+        }
+    }
+
+    @Test
+    public void testConcurrentExhaustion() throws Exception {
+        final PassivePorts ports = new PassivePorts("40000-40099", false);
+        final List<Integer> reserved = new ArrayList<Integer>();
+        final AtomicInteger refused = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int i = 0; i < 10; i++) {
+            Thread worker = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < 20; j++) {
+                        int port = ports.reserveNextPort();
+                        if (port == -1) {
+                            refused.incrementAndGet();
+                        } else {
+                            synchronized (reserved) {
+                                reserved.add(port);
+                            }
+                        }
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        // each port handed out once, the 100 other requests refused
+        assertEquals(100, reserved.size());
+        assertEquals(100, new HashSet<Integer>(reserved).size());
+        assertEquals(100, refused.get());
+    }
+
+    private static Set<Integer> reserveAll(PassivePorts ports) {
+        Set<Integer> reserved = new HashSet<Integer>();
+        int port;
+        while ((port = ports.reserveNextPort()) != -1) {
+            assertTrue("Port reserved twice: " + port, reserved.add(port));
+        }
+        return reserved;
+    }
+
+    private static Set<Integer> set(Integer... ports) {
+        Set<Integer> set = new HashSet<Integer>();
+        for (Integer port : ports) {
+            set.add(port);
+        }
+        return set;
+    }
+}
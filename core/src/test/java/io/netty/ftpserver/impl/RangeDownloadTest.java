@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.netty.ftpserver.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Downloads byte ranges of a file set with RANG on a loopback server.
+ *
+ * @author Io Netty Project
+ */
+public class RangeDownloadTest extends AbstractLoopbackTest {
+
+    private byte[] data;
+
+    @Before
+    public void setUpFile() throws IOException {
+        data = randomBytes(1000000);
+        write(new File(homeDirectory, "file.bin"), data);
+        assertEquals(200, client.sendCommand("TYPE I"));
+    }
+
+    @Test
+    public void testFeature() throws IOException {
+        assertEquals(211, client.sendCommand("FEAT"));
+        assertTrue(client.getReplyString(), client.getReplyString().contains(" RANG STREAM"));
+    }
+
+    @Test
+    public void testRange() throws IOException {
+        assertArrayEquals(Arrays.copyOfRange(data, 1000, 2000), retrieve(client, "RANG 1000 1999"));
+
+        // both ends included
+        assertArrayEquals(Arrays.copyOfRange(data, 0, 1), retrieve(client, "RANG 0 0"));
+        assertArrayEquals(Arrays.copyOfRange(data, 999999, 1000000), retrieve(client, "RANG 999999 999999"));
+    }
+
+    @Test
+    public void testRangePastTheEndOfTheFile() throws IOException {
+        // the range ends with the file
+        assertArrayEquals(Arrays.copyOfRange(data, 999000, 1000000), retrieve(client, "RANG 999000 2000000"));
+
+        // nothing to send
+        Socket socket = openPassive(client);
+        try {
+            assertEquals(350, client.sendCommand("RANG 1000000 1000010"));
+            assertEquals(551, client.sendCommand("RETR file.bin"));
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testRangeAppliesToTheNextCommandOnly() throws IOException {
+        assertArrayEquals(Arrays.copyOfRange(data, 10, 20), retrieve(client, "RANG 10 19"));
+        assertArrayEquals(data, retrieve(client));
+
+        // like REST, reset by any other command
+        Socket socket = openPassive(client);
+        try {
+            assertEquals(350, client.sendCommand("RANG 10 19"));
+            assertEquals(257, client.sendCommand("PWD"));
+            assertEquals(150, client.sendCommand("RETR file.bin"));
+            assertArrayEquals(data, readFully(socket.getInputStream()));
+        } finally {
+            socket.close();
+        }
+        assertEquals(226, client.getReply());
+    }
+
+    @Test
+    public void testReset() throws IOException {
+        assertArrayEquals(data, retrieve(client, "RANG 10 19", "RANG 1 0"));
+    }
+
+    @Test
+    public void testRestReplacesTheRange() throws IOException {
+        assertArrayEquals(Arrays.copyOfRange(data, 500000, 1000000),
+                retrieve(client, "RANG 10 19", "REST 500000"));
+
+        // and the range the offset
+        assertArrayEquals(Arrays.copyOfRange(data, 10, 20), retrieve(client, "REST 500000", "RANG 10 19"));
+    }
+
+    @Test
+    public void testInvalidRanges() throws IOException {
+        assertEquals(501, client.sendCommand("RANG"));
+        assertEquals(501, client.sendCommand("RANG 10"));
+        assertEquals(501, client.sendCommand("RANG 10 20 30"));
+        assertEquals(501, client.sendCommand("RANG a b"));
+        assertEquals(501, client.sendCommand("RANG -1 10"));
+        assertEquals(501, client.sendCommand("RANG 20 10"));
+
+        // an invalid range replaces the range set
+        Socket socket = openPassive(client);
+        try {
+            assertEquals(350, client.sendCommand("RANG 10 19"));
+            assertEquals(501, client.sendCommand("RANG 20 10"));
+            assertEquals(150, client.sendCommand("RETR file.bin"));
+            assertArrayEquals(data, readFully(socket.getInputStream()));
+        } finally {
+            socket.close();
+        }
+        assertEquals(226, client.getReply());
+    }
+
+    @Test
+    public void testRangeInAscii() throws IOException {
+        // the ranges count file bytes, not the bytes sent in ASCII
+        assertEquals(200, client.sendCommand("TYPE A"));
+        Socket socket = openPassive(client);
+        try {
+            assertEquals(350, client.sendCommand("RANG 10 19"));
+            assertEquals(504, client.sendCommand("RETR file.bin"));
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testRangeInModeZ() throws IOException {
+        // sent by chunks read from the shared channel, not as a file region
+        assertEquals(200, client.sendCommand("MODE Z"));
+        byte[] compressed = retrieve(client, "RANG 250000 749999");
+        byte[] range = readFully(new InflaterInputStream(new ByteArrayInputStream(compressed)));
+        assertArrayEquals(Arrays.copyOfRange(data, 250000, 750000), range);
+    }
+
+    @Test
+    public void testSegmentsDownloadedInParallel() throws Exception {
+        final int segments = 8;
+        final int segmentSize = data.length / segments;
+        ExecutorService executor = Executors.newFixedThreadPool(segments);
+        try {
+            List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>();
+            for (int i = 0; i < segments; i++) {
+                final long start = (long) i * segmentSize;
+                final long end = i == segments - 1 ? data.length - 1 : start + segmentSize - 1;
+                futures.add(executor.submit(new Callable<byte[]>() {
+                    public byte[] call() throws Exception {
+                        FTPClient segmentClient = login();
+                        try {
+                            assertEquals(200, segmentClient.sendCommand("TYPE I"));
+                            return retrieve(segmentClient, "RANG " + start + ' ' + end);
+                        } finally {
+                            segmentClient.disconnect();
+                        }
+                    }
+                }));
+            }
+
+            byte[] assembled = new byte[data.length];
+            for (int i = 0; i < segments; i++) {
+                byte[] segment = futures.get(i).get(TIMEOUT, TimeUnit.MILLISECONDS);
+                System.arraycopy(segment, 0, assembled, i * segmentSize, segment.length);
+            }
+            assertArrayEquals(data, assembled);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Retrieve the file over a new passive data connection, sending the
+     * commands setting the range, each replied with 350, right before RETR.
+     */
+    private byte[] retrieve(FTPClient ftpClient, String... commands) throws IOException {
+        Socket socket = openPassive(ftpClient);
+        byte[] received;
+        try {
+            for (String command : commands) {
+                assertEquals(command, 350, ftpClient.sendCommand(command));
+            }
+            assertEquals(150, ftpClient.sendCommand("RETR file.bin"));
+            received = readFully(socket.getInputStream());
+        } finally {
+            socket.close();
+        }
+        assertEquals(226, ftpClient.getReply());
+        return received;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.netty.ftpserver.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Uploads a file in byte ranges, set with ALLO and RANG, from several
+ * sessions of a loopback server.
+ *
+ * @author Io Netty Project
+ */
+public class RangedUploadTest extends AbstractLoopbackTest {
+
+    private byte[] data;
+
+    private File target;
+
+    @Before
+    public void setUpData() throws IOException {
+        data = randomBytes(4000000);
+        target = new File(homeDirectory, "file.bin");
+        assertEquals(200, client.sendCommand("TYPE I"));
+    }
+
+    @Test
+    public void testSegmentsOfOneSession() throws IOException {
+        assertEquals(200, client.sendCommand("ALLO " + data.length));
+        assertEquals(226, store(client, 2000000, 3999999));
+        assertFalse(target.exists());
+        assertTrue(new File(homeDirectory, ".file.bin.part").exists());
+
+        // ALLO is kept between the transfers
+        assertEquals(226, store(client, 0, 1999999));
+        assertArrayEquals(data, read(target));
+        assertFalse(new File(homeDirectory, ".file.bin.part").exists());
+    }
+
+    @Test
+    public void testSegmentsOfParallelSessions() throws Exception {
+        // an existing file is replaced once all the segments arrived
+        write(target, new byte[10]);
+
+        final int segments = 8;
+        final int segmentSize = data.length / segments;
+        ExecutorService executor = Executors.newFixedThreadPool(segments);
+        try {
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < segments; i++) {
+                final long start = (long) i * segmentSize;
+                final long end = i == segments - 1 ? data.length - 1 : start + segmentSize - 1;
+                futures.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        FTPClient segmentClient = login();
+                        try {
+                            assertEquals(200, segmentClient.sendCommand("TYPE I"));
+                            assertEquals(200, segmentClient.sendCommand("ALLO " + data.length));
+                            int reply = store(segmentClient, start, end);
+                            // never seen before it is complete
+                            assertTrue(target.length() == 10 || target.length() == data.length);
+                            return reply;
+                        } finally {
+                            segmentClient.disconnect();
+                        }
+                    }
+                }));
+            }
+            for (Future<Integer> future : futures) {
+                assertEquals(Integer.valueOf(226), future.get(TIMEOUT, TimeUnit.MILLISECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertArrayEquals(data, read(target));
+    }
+
+    @Test
+    public void testOverlappingSegment() throws IOException {
+        assertEquals(200, client.sendCommand("ALLO " + data.length));
+        assertEquals(226, store(client, 0, 1999999));
+        assertEquals(551, store(client, 1000000, 2999999));
+        assertEquals(226, store(client, 2000000, 3999999));
+        assertArrayEquals(data, read(target));
+    }
+
+    @Test
+    public void testIncompleteSegment() throws IOException {
+        assertEquals(200, client.sendCommand("ALLO " + data.length));
+        Socket socket = openPassive(client);
+        try {
+            assertEquals(350, client.sendCommand("RANG 0 1999999"));
+            assertEquals(150, client.sendCommand("STOR file.bin"));
+            socket.getOutputStream().write(data, 0, 1000000);
+        } finally {
+            socket.close();
+        }
+        assertEquals(551, client.getReply());
+
+        // sent again
+        assertEquals(226, store(client, 2000000, 3999999));
+        assertFalse(target.exists());
+        assertEquals(226, store(client, 0, 1999999));
+        assertArrayEquals(data, read(target));
+    }
+
+    @Test
+    public void testRefusedSegments() throws IOException {
+        // no size
+        assertEquals(503, refused(0, 999));
+
+        // past the size
+        assertEquals(200, client.sendCommand("ALLO 1000"));
+        assertEquals(503, refused(500, 1000));
+
+        // in ASCII
+        assertEquals(200, client.sendCommand("TYPE A"));
+        assertEquals(503, refused(0, 999));
+
+        assertEquals(501, client.sendCommand("ALLO"));
+        assertEquals(501, client.sendCommand("ALLO x"));
+        assertEquals(501, client.sendCommand("ALLO -1"));
+        assertFalse(new File(homeDirectory, ".file.bin.part").exists());
+    }
+
+    @Test
+    public void testSizeDiffersFromTheUpload() throws IOException {
+        assertEquals(200, client.sendCommand("ALLO " + data.length));
+        assertEquals(226, store(client, 0, 1999999));
+        assertEquals(200, client.sendCommand("ALLO " + (data.length + 1)));
+        assertEquals(551, store(client, 2000000, 3999999));
+    }
+
+    /**
+     * Store a segment of the data, the range set right before STOR.
+     *
+     * @return The final reply code
+     */
+    private int store(FTPClient ftpClient, long start, long end) throws IOException {
+        Socket socket = openPassive(ftpClient);
+        try {
+            assertEquals(350, ftpClient.sendCommand("RANG " + start + ' ' + end));
+            assertEquals(150, ftpClient.sendCommand("STOR file.bin"));
+            try {
+                socket.getOutputStream().write(data, (int) start, (int) (end - start + 1));
+            } catch (IOException ex) {
+                // the data connection of a refused segment is closed
+            }
+        } finally {
+            socket.close();
+        }
+        return ftpClient.getReply();
+    }
+
+    /**
+     * Store a segment refused before the data connection is opened.
+     *
+     * @return The reply code
+     */
+    private int refused(long start, long end) throws IOException {
+        Socket socket = openPassive(client);
+        try {
+            assertEquals(350, client.sendCommand("RANG " + start + ' ' + end));
+            return client.sendCommand("STOR file.bin");
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.netty.ftpserver.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Io Netty Project
+ */
+public class RangedUploadsTest {
+
+    private final RangedUploads uploads = new RangedUploads();
+
+    private File directory;
+
+    private File target;
+
+    private File partFile;
+
+    private byte[] data;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("ranged", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+        target = new File(directory, "file.bin");
+        partFile = new File(directory, ".file.bin.part");
+        data = new byte[100000];
+        new Random(1L).nextBytes(data);
+    }
+
+    @After
+    public void tearDown() {
+        uploads.dispose();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testSegmentsInAnyOrder() throws IOException {
+        upload(60000, 99999);
+        assertFalse(target.exists());
+        assertTrue(partFile.exists());
+        upload(0, 29999);
+        assertFalse(target.exists());
+
+        // published by the last one
+        upload(30000, 59999);
+        assertArrayEquals(data, read(target));
+        assertFalse(partFile.exists());
+    }
+
+    @Test
+    public void testPartFileNotTruncated() throws IOException {
+        // a later segment written first, then an earlier one, leave both
+        upload(50000, 99999);
+        assertEquals(data.length, partFile.length());
+        upload(0, 49999);
+        assertArrayEquals(data, read(target));
+    }
+
+    @Test
+    public void testExistingTargetReplaced() throws IOException {
+        write(target, new byte[10]);
+        upload(0, 49999);
+        assertEquals(10, target.length());
+        upload(50000, 99999);
+        assertArrayEquals(data, read(target));
+    }
+
+    @Test
+    public void testOneSegment() throws IOException {
+        upload(0, data.length - 1);
+        assertArrayEquals(data, read(target));
+    }
+
+    @Test
+    public void testInvalidRanges() throws IOException {
+        assertRefused(-1, 10, data.length);
+        assertRefused(10, 9, data.length);
+        assertRefused(0, data.length, data.length);
+        assertFalse(partFile.exists());
+    }
+
+    @Test
+    public void testOverlappingSegments() throws IOException {
+        upload(1000, 1999);
+
+        // with a segment which arrived
+        assertRefused(1000, 1999, data.length);
+        assertRefused(0, 1000, data.length);
+        assertRefused(1999, 2999, data.length);
+        assertRefused(1500, 1600, data.length);
+        assertRefused(0, 99999, data.length);
+
+        // or one being written
+        RangedUploads.Segment segment = uploads.begin(target, data.length, 5000, 5999);
+        assertRefused(5500, 6500, data.length);
+        assertRefused(4000, 5000, data.length);
+        segment.write(data, 5000, 1000);
+        segment.close();
+
+        // the ranges next to them are free
+        upload(0, 999);
+        upload(2000, 4999);
+        upload(6000, 99999);
+        assertArrayEquals(data, read(target));
+    }
+
+    @Test
+    public void testSizeDiffersFromTheUpload() throws IOException {
+        upload(0, 999);
+        assertRefused(1000, 1999, data.length + 1);
+
+        // the upload goes on
+        upload(1000, 99999);
+        assertArrayEquals(data, read(target));
+    }
+
+    @Test
+    public void testIncompleteSegment() throws IOException {
+        RangedUploads.Segment segment = uploads.begin(target, data.length, 0, 49999);
+        segment.write(data, 0, 10000);
+        try {
+            segment.close();
+            fail("Incomplete segment closed");
+        } catch (IOException ex) {
+            // expected
+        }
+        // closed once
+        segment.close();
+
+        // not tracked, the range is uploaded again
+        upload(50000, 99999);
+        assertFalse(target.exists());
+        upload(0, 49999);
+        assertArrayEquals(data, read(target));
+    }
+
+    @Test
+    public void testDataBeyondTheRange() throws IOException {
+        RangedUploads.Segment segment = uploads.begin(target, data.length, 0, 9);
+        segment.write(data, 0, 5);
+        try {
+            segment.write(data, 5, 6);
+            fail("Data beyond the range written");
+        } catch (IOException ex) {
+            // expected
+        }
+        segment.write(ByteBuffer.wrap(data, 5, 5));
+        segment.close();
+        try {
+            segment.write(1);
+            fail("Closed segment written");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDispose() throws IOException {
+        upload(0, 999);
+        RangedUploads.Segment segment = uploads.begin(new File(directory, "other.bin"), 10, 0, 9);
+
+        // the part files being written are kept
+        uploads.dispose();
+        assertFalse(partFile.exists());
+        assertTrue(new File(directory, ".other.bin.part").exists());
+
+        segment.write(data, 0, 10);
+        segment.close();
+        assertEquals(10, new File(directory, "other.bin").length());
+
+        // the upload starts over
+        upload(0, 999);
+        upload(1000, 99999);
+        assertArrayEquals(data, read(target));
+    }
+
+    @Test
+    public void testConcurrentSegments() throws Exception {
+        final int segments = 16;
+        final int segmentSize = data.length / segments;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(segments);
+        try {
+            List<Integer> order = new ArrayList<Integer>();
+            for (int i = 0; i < segments; i++) {
+                order.add(i);
+            }
+            Collections.shuffle(order, new Random(2L));
+
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (final int i : order) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        start.await();
+                        long first = (long) i * segmentSize;
+                        long last = i == segments - 1 ? data.length - 1 : first + segmentSize - 1;
+                        RangedUploads.Segment segment = uploads.begin(target, data.length, first, last);
+                        try {
+                            // in small writes, interleaved with the others
+                            for (long position = first; position <= last; position += 100) {
+                                segment.write(data, (int) position, (int) Math.min(100, last + 1 - position));
+                            }
+                        } finally {
+                            segment.close();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Void> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertArrayEquals(data, read(target));
+        assertFalse(partFile.exists());
+    }
+
+    private void upload(long start, long end) throws IOException {
+        RangedUploads.Segment segment = uploads.begin(target, data.length, start, end);
+        segment.write(data, (int) start, (int) (end - start + 1));
+        segment.close();
+    }
+
+    private void assertRefused(long start, long end, long size) {
+        try {
+            uploads.begin(target, size, start, end).close();
+            fail("Range " + start + "-" + end + " of " + size + " bytes accepted");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    private static byte[] read(File file) throws IOException {
+        byte[] content = new byte[(int) file.length()];
+        InputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < content.length) {
+                read += in.read(content, read, content.length - read);
+            }
+        } finally {
+            in.close();
+        }
+        return content;
+    }
+
+    private static void write(File file, byte[] content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+}
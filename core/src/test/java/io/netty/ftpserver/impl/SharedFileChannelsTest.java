@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.netty.ftpserver.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.channel.DefaultFileRegion;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Io Netty Project
+ */
+public class SharedFileChannelsTest {
+
+    private final SharedFileChannels channels = new SharedFileChannels();
+
+    private File file;
+
+    private byte[] data;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("shared", ".bin");
+        data = new byte[100000];
+        new Random(1L).nextBytes(data);
+        write(data);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testChannelShared() throws IOException {
+        SharedFileChannels.Handle first = channels.acquire(file);
+        SharedFileChannels.Handle second = channels.acquire(file);
+        assertSame(first, second);
+        assertEquals(data.length, first.getLength());
+
+        // closed once released by all its users
+        first.release();
+        assertTrue(first.getChannel().isOpen());
+        second.release();
+        assertFalse(first.getChannel().isOpen());
+
+        // a new channel afterwards
+        SharedFileChannels.Handle third = channels.acquire(file);
+        assertNotSame(first, third);
+        assertTrue(third.getChannel().isOpen());
+        third.release();
+    }
+
+    @Test
+    public void testChangedFile() throws IOException {
+        SharedFileChannels.Handle first = channels.acquire(file);
+        write(Arrays.copyOf(data, 1000));
+        SharedFileChannels.Handle second = channels.acquire(file);
+        assertNotSame(first, second);
+        assertEquals(1000, second.getLength());
+
+        // the first one is still read by its users
+        assertTrue(first.getChannel().isOpen());
+        first.release();
+        assertFalse(first.getChannel().isOpen());
+        assertTrue(second.getChannel().isOpen());
+
+        // the channel of the current file is shared
+        SharedFileChannels.Handle third = channels.acquire(file);
+        assertSame(second, third);
+        second.release();
+        third.release();
+        assertFalse(second.getChannel().isOpen());
+    }
+
+    @Test
+    public void testConcurrentStreams() throws IOException {
+        SharedFileChannels.Handle handle = channels.acquire(file);
+        InputStream first = handle.newInputStream(0L, 50000L);
+        InputStream second = handle.retain().newInputStream(50000L, 50000L);
+
+        // interleaved reads of both regions
+        byte[] read = new byte[data.length];
+        int firstRead = 0;
+        int secondRead = 50000;
+        while (firstRead < 50000 || secondRead < data.length) {
+            if (firstRead < 50000) {
+                firstRead += first.read(read, firstRead, Math.min(777, 50000 - firstRead));
+            }
+            if (secondRead < data.length) {
+                secondRead += second.read(read, secondRead, Math.min(1234, data.length - secondRead));
+            }
+        }
+        assertEquals(-1, first.read());
+        assertEquals(-1, second.read(new byte[10], 0, 10));
+        assertArrayEquals(data, read);
+
+        // positional reads, the channel position is left alone
+        assertEquals(0L, handle.getChannel().position());
+
+        first.close();
+        assertTrue(handle.getChannel().isOpen());
+        second.close();
+        assertFalse(handle.getChannel().isOpen());
+    }
+
+    @Test
+    public void testStreamSkipAndClose() throws IOException {
+        SharedFileChannels.Handle handle = channels.acquire(file);
+        InputStream in = handle.newInputStream(10L, 100L);
+        assertEquals(100, in.available());
+        assertEquals(50L, in.skip(50L));
+        assertEquals(data[60] & 0xFF, in.read());
+        assertEquals(49L, in.skip(1000L));
+        assertEquals(-1, in.read());
+
+        // released once however many times it is closed
+        SharedFileChannels.Handle other = channels.acquire(file);
+        assertSame(handle, other);
+        in.close();
+        in.close();
+        assertTrue(handle.getChannel().isOpen());
+        other.release();
+        assertFalse(handle.getChannel().isOpen());
+
+        try {
+            in.read();
+            fail("Read on a closed stream");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testStreamOfAShortenedFile() throws IOException {
+        SharedFileChannels.Handle handle = channels.acquire(file);
+        InputStream in = handle.newInputStream(0L, data.length);
+
+        // the file is truncated under the download
+        write(Arrays.copyOf(data, 10));
+        byte[] read = new byte[data.length];
+        assertEquals(10, in.read(read, 0, read.length));
+        assertEquals(-1, in.read(read, 0, read.length));
+        in.close();
+    }
+
+    @Test
+    public void testRegionReleasesTheHandle() throws IOException {
+        SharedFileChannels.Handle handle = channels.acquire(file);
+        DefaultFileRegion first = handle.newRegion(0L, 100L);
+        DefaultFileRegion second = handle.retain().newRegion(100L, 100L);
+        assertEquals(100L, first.count());
+        assertEquals(100L, second.position());
+
+        // released, not closed, by the region
+        assertTrue(first.release());
+        assertTrue(handle.getChannel().isOpen());
+        assertTrue(second.release());
+        assertFalse(handle.getChannel().isOpen());
+    }
+
+    private void write(byte[] content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.netty.ftpserver.impl;
+
+import io.netty.ftpserver.DataConnectionConfigurationFactory;
+import io.netty.ftpserver.FtpServerFactory;
+import io.netty.ftpserver.listener.ListenerFactory;
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs concurrent sessions of the same client address on a listener
+ * sharing its two passive ports.
+ *
+ * @author Io Netty Project
+ */
+public class SharedPassiveListenerTest extends AbstractLoopbackTest {
+
+    private static final byte[] FIRST = randomBytes(100000);
+
+    private static final byte[] SECOND = randomBytes(200000);
+
+    private static final byte[] THIRD = randomBytes(300000);
+
+    @Override
+    protected void configure(FtpServerFactory serverFactory, ListenerFactory listenerFactory) {
+        DataConnectionConfigurationFactory factory = new DataConnectionConfigurationFactory();
+        factory.setPassiveShared(true);
+        try {
+            int first = freePort();
+            int second;
+            do {
+                second = freePort();
+            } while (second == first);
+            factory.setPassivePorts(first + "," + second);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        listenerFactory.setDataConnectionConfiguration(factory.createDataConnectionConfiguration());
+    }
+
+    @Test
+    public void testSameAddressSessionsOnPortsOfTheirOwn() throws Exception {
+        write(new File(homeDirectory, "first.bin"), FIRST);
+        write(new File(homeDirectory, "second.bin"), SECOND);
+        FTPClient second = login();
+        try {
+            String firstPasv = pasv(client);
+            String secondPasv = pasv(second);
+            assertTrue(passiveAddress(firstPasv).getPort() != passiveAddress(secondPasv).getPort());
+
+            // connected in the reverse order of the PASV commands
+            assertArrayEquals(SECOND, retrieve(second, secondPasv, "second.bin"));
+            assertArrayEquals(FIRST, retrieve(client, firstPasv, "first.bin"));
+        } finally {
+            second.disconnect();
+        }
+    }
+
+    @Test
+    public void testSameAddressSessionsSharingAPort() throws Exception {
+        write(new File(homeDirectory, "first.bin"), FIRST);
+        write(new File(homeDirectory, "second.bin"), SECOND);
+        write(new File(homeDirectory, "third.bin"), THIRD);
+        FTPClient second = login();
+        FTPClient third = login();
+        try {
+            String firstPasv = pasv(client);
+            String secondPasv = pasv(second);
+            // no port left, the third session waits with one of the others
+            String thirdPasv = pasv(third);
+            int thirdPort = passiveAddress(thirdPasv).getPort();
+            boolean withFirst = thirdPort == passiveAddress(firstPasv).getPort();
+            assertTrue(withFirst || thirdPort == passiveAddress(secondPasv).getPort());
+            FTPClient earlier = withFirst ? client : second;
+            String earlierFile = withFirst ? "first.bin" : "second.bin";
+            byte[] earlierData = withFirst ? FIRST : SECOND;
+
+            // the first connection accepted on the shared port goes to the
+            // session whose PASV came first, the next one to the third
+            assertArrayEquals(earlierData, retrieve(earlier, thirdPasv, earlierFile));
+            assertArrayEquals(THIRD, retrieve(third, thirdPasv, "third.bin"));
+
+            FTPClient other = withFirst ? second : client;
+            assertArrayEquals(withFirst ? SECOND : FIRST,
+                    retrieve(other, withFirst ? secondPasv : firstPasv, withFirst ? "second.bin" : "first.bin"));
+        } finally {
+            second.disconnect();
+            third.disconnect();
+        }
+    }
+
+    @Test
+    public void testConcurrentSessionsOfOneAddress() throws Exception {
+        // as many sessions as ports, each connecting right after its PASV
+        final int sessions = 2;
+        final byte[][] data = new byte[sessions][];
+        for (int i = 0; i < sessions; i++) {
+            data[i] = randomBytes(50000 + i);
+            write(new File(homeDirectory, "file" + i + ".bin"), data[i]);
+        }
+        final Throwable[] failures = new Throwable[sessions];
+        Thread[] threads = new Thread[sessions];
+        for (int i = 0; i < sessions; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        FTPClient session = login();
+                        try {
+                            for (int j = 0; j < 20; j++) {
+                                String reply = pasv(session);
+                                assertArrayEquals(data[index], retrieve(session, reply, "file" + index + ".bin"));
+                            }
+                        } finally {
+                            session.disconnect();
+                        }
+                    } catch (Throwable t) {
+                        failures[index] = t;
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (Throwable failure : failures) {
+            if (failure != null) {
+                throw new AssertionError(failure);
+            }
+        }
+    }
+
+    private static String pasv(FTPClient ftpClient) throws IOException {
+        assertEquals(227, ftpClient.sendCommand("PASV"));
+        return ftpClient.getReplyString();
+    }
+
+    /**
+     * Connect to the passive port and retrieve the file on it.
+     */
+    private static byte[] retrieve(FTPClient ftpClient, String pasvReply, String fileName)
+            throws IOException {
+        Socket data = connect(pasvReply);
+        try {
+            assertEquals(150, ftpClient.sendCommand("RETR " + fileName));
+            return readFully(data.getInputStream());
+        } finally {
+            data.close();
+            assertEquals(226, ftpClient.getReply());
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.netty.ftpserver.impl;
+
+import io.netty.ftpserver.ftplet.Authority;
+import io.netty.ftpserver.usermanager.impl.WritePermission;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Copies files with SITE CPFR and SITE CPTO on a loopback server, the user
+ * being allowed to write only in the allowed directory.
+ *
+ * @author Io Netty Project
+ */
+public class SiteCopyTest extends AbstractLoopbackTest {
+
+    private static final byte[] CONTENT = randomBytes(300000);
+
+    @Override
+    protected List<Authority> getAuthorities() {
+        return Collections.<Authority>singletonList(new WritePermission("/allowed"));
+    }
+
+    @Test
+    public void testCopyOverExistingFile() throws Exception {
+        write(new File(homeDirectory, "from.bin"), CONTENT);
+        File allowed = new File(homeDirectory, "allowed");
+        assertTrue(allowed.mkdirs());
+        write(new File(allowed, "to.bin"), randomBytes(CONTENT.length * 2));
+
+        assertEquals(350, client.sendCommand("SITE CPFR from.bin"));
+        assertEquals(250, client.sendCommand("SITE CPTO allowed/to.bin"));
+        assertTrue(client.getReplyString(), client.getReplyString().contains("1 files, " + CONTENT.length + " bytes"));
+        assertArrayEquals(CONTENT, read(new File(allowed, "to.bin")));
+    }
+
+    @Test
+    public void testCopyIntoMissingDirectory() throws Exception {
+        write(new File(homeDirectory, "from.bin"), CONTENT);
+        assertTrue(new File(homeDirectory, "allowed").mkdirs());
+
+        assertEquals(350, client.sendCommand("SITE CPFR from.bin"));
+        assertEquals(550, client.sendCommand("SITE CPTO allowed/missing/to.bin"));
+        assertFalse(new File(homeDirectory, "allowed/missing").exists());
+
+        // the source is consumed by the failed copy
+        assertEquals(503, client.sendCommand("SITE CPTO allowed/to.bin"));
+    }
+
+    @Test
+    public void testCopyToNewDirectory() throws Exception {
+        File from = new File(homeDirectory, "from");
+        assertTrue(new File(from, "sub").mkdirs());
+        write(new File(from, "a.bin"), CONTENT);
+        write(new File(from, "sub/b.bin"), CONTENT);
+
+        assertEquals(257, client.sendCommand("MKD allowed"));
+        assertEquals(350, client.sendCommand("SITE CPFR from"));
+        assertEquals(250, client.sendCommand("SITE CPTO allowed/to"));
+        assertArrayEquals(CONTENT, read(new File(homeDirectory, "allowed/to/a.bin")));
+        assertArrayEquals(CONTENT, read(new File(homeDirectory, "allowed/to/sub/b.bin")));
+    }
+
+    @Test
+    public void testPermissionDenied() throws Exception {
+        write(new File(homeDirectory, "from.bin"), CONTENT);
+
+        assertEquals(350, client.sendCommand("SITE CPFR from.bin"));
+        assertEquals(553, client.sendCommand("SITE CPTO to.bin"));
+        assertTrue(client.getReplyString(), client.getReplyString().contains("Permission denied"));
+        assertFalse(new File(homeDirectory, "to.bin").exists());
+    }
+
+    @Test
+    public void testInvalidCopies() throws Exception {
+        File from = new File(homeDirectory, "from");
+        assertTrue(from.mkdirs());
+
+        // a directory is not copied inside itself
+        assertEquals(350, client.sendCommand("SITE CPFR from"));
+        assertEquals(553, client.sendCommand("SITE CPTO from/copy"));
+
+        assertEquals(503, client.sendCommand("SITE CPTO allowed/copy"));
+        assertEquals(550, client.sendCommand("SITE CPFR missing.bin"));
+    }
+
+    @Test
+    public void testCopyRepliedInOrder() throws Exception {
+        write(new File(homeDirectory, "from.bin"), CONTENT);
+        assertTrue(new File(homeDirectory, "allowed").mkdirs());
+
+        // the NOOP is replied to once the copy completes
+        RawControl control = new RawControl(port);
+        try {
+            control.send("SITE CPFR from.bin\r\nSITE CPTO allowed/to.bin\r\nNOOP\r\n");
+            assertEquals(Arrays.asList(350, 250, 200), control.readReplies(3));
+        } finally {
+            control.close();
+        }
+        assertArrayEquals(CONTENT, read(new File(homeDirectory, "allowed/to.bin")));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.netty.ftpserver.impl;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Io Netty Project
+ */
+public class TokenBucketTest {
+
+    private final ManualClock clock = new ManualClock();
+
+    @Test
+    public void testBurst() {
+        // 100 milliseconds of the rate
+        TokenBucket bucket = new TokenBucket(1000, clock);
+        assertEquals(0L, bucket.take(60));
+        assertEquals(0L, bucket.take(40));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1), bucket.take(1));
+    }
+
+    @Test
+    public void testDebt() {
+        TokenBucket bucket = new TokenBucket(1000, clock);
+        // 400 bytes in debt once the 100 of the burst are taken
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(400), bucket.take(500));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(410), bucket.take(10));
+
+        // paid back at the rate
+        clock.advance(400, TimeUnit.MILLISECONDS);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(20), bucket.take(10));
+        clock.advance(20, TimeUnit.MILLISECONDS);
+        assertEquals(0L, bucket.take(0));
+    }
+
+    @Test
+    public void testRefill() {
+        TokenBucket bucket = new TokenBucket(1000, clock);
+        assertEquals(0L, bucket.take(100));
+
+        clock.advance(50, TimeUnit.MILLISECONDS);
+        assertEquals(0L, bucket.take(50));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1), bucket.take(1));
+    }
+
+    @Test
+    public void testIdleTimeNotBanked() {
+        TokenBucket bucket = new TokenBucket(1000, clock);
+        clock.advance(10, TimeUnit.SECONDS);
+        assertEquals(0L, bucket.take(100));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.take(100));
+    }
+
+    @Test
+    public void testPartialTokensKept() {
+        TokenBucket bucket = new TokenBucket(1000, clock);
+        assertEquals(0L, bucket.take(100));
+
+        // one token and a half per step, the halves add up
+        for (int i = 0; i < 100; i++) {
+            clock.advance(1500, TimeUnit.MICROSECONDS);
+            assertEquals(0L, bucket.take(1));
+        }
+        assertEquals(0L, bucket.take(50));
+        assertTrue(bucket.take(1) > 0L);
+    }
+
+    @Test
+    public void testRateOverTime() {
+        // small takes at random times get the rate, not more
+        TokenBucket bucket = new TokenBucket(1000000, clock);
+        Random random = new Random(1);
+        long taken = 0L;
+        long elapsed = 0L;
+        for (int i = 0; i < 100000; i++) {
+            long wait = bucket.take(100);
+            taken += 100;
+            long step = wait + random.nextInt(20000);
+            clock.advance(step, TimeUnit.NANOSECONDS);
+            elapsed += step;
+        }
+        // the burst of 100000 bytes on top of the rate
+        long expected = elapsed / 1000 + 100000;
+        assertTrue(taken + " > " + expected, taken <= expected + 100);
+        assertTrue(taken + " < " + expected, taken >= expected * 99 / 100);
+    }
+
+    @Test
+    public void testSmallRate() {
+        // the burst is at least one byte
+        TokenBucket bucket = new TokenBucket(3, clock);
+        assertEquals(0L, bucket.take(1));
+        assertTrue(bucket.take(1) > 0L);
+        clock.advance(300, TimeUnit.MILLISECONDS);
+        assertTrue(bucket.take(0) > 0L);
+        clock.advance(400, TimeUnit.MILLISECONDS);
+        assertEquals(0L, bucket.take(0));
+    }
+
+    @Test
+    public void testInvalidRate() {
+        try {
+            new TokenBucket(0, clock);
+            fail("Zero rate accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
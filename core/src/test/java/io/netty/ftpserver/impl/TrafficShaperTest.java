@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.netty.ftpserver.impl;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.ftpserver.ConnectionConfigFactory;
+import io.netty.ftpserver.DataConnectionConfiguration;
+import io.netty.ftpserver.DataConnectionConfigurationFactory;
+import io.netty.ftpserver.ftplet.Authority;
+import io.netty.ftpserver.ftplet.User;
+import io.netty.ftpserver.listener.Listener;
+import io.netty.ftpserver.listener.nio.channel.FtpChannel;
+import io.netty.ftpserver.usermanager.impl.BaseUser;
+import io.netty.ftpserver.usermanager.impl.TransferRatePermission;
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Shapes the data connections of sessions from several listeners, users
+ * and addresses on a manual clock, a write going through at once when all
+ * the buckets of its levels hold its bytes. The burst of a bucket is a
+ * tenth of its rate.
+ *
+ * @author Io Netty Project
+ */
+public class TrafficShaperTest {
+
+    private final ManualClock clock = new ManualClock();
+
+    private final List<EmbeddedChannel> channels = new ArrayList<EmbeddedChannel>();
+
+    private final Listener limitedListener = listener(20000);
+
+    private final Listener openListener = listener(0);
+
+    @After
+    public void tearDown() {
+        for (EmbeddedChannel channel : channels) {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    public void testNoLimit() {
+        TrafficShaper shaper = shaper(0, 0);
+        assertNull(shaper.newHandler(session(openListener, user("u1", 0), "10.0.0.1")));
+        assertNull(shaper.newHandler(session(null, null, null)));
+    }
+
+    @Test
+    public void testAllLevels() {
+        // global 4000, listener 2000, user 1000 and address 500 bytes of burst
+        TrafficShaper shaper = shaper(40000, 5000);
+        User u1 = user("u1", 10000);
+
+        assertTrue(write(shaper, limitedListener, u1, "10.0.0.1", 500));
+        assertTrue(write(shaper, limitedListener, u1, "10.0.0.2", 500));
+        assertTrue(write(shaper, limitedListener, user("u2", 10000), "10.0.0.3", 500));
+        assertTrue(write(shaper, limitedListener, user("u3", 10000), "10.0.0.4", 500));
+
+        // each level in turn is the only one out of tokens
+        assertFalse(write(shaper, limitedListener, user("u4", 10000), "10.0.0.5", 1));
+        assertFalse(write(shaper, openListener, user("u5", 10000), "10.0.0.1", 1));
+        assertFalse(write(shaper, openListener, u1, "10.0.0.6", 1));
+        assertTrue(write(shaper, openListener, user("u6", 10000), "10.0.0.7", 1));
+
+        // 1996 bytes left on the server
+        assertTrue(write(shaper, openListener, user("u7", 10000), "10.0.0.8", 500));
+        assertTrue(write(shaper, openListener, user("u8", 10000), "10.0.0.9", 500));
+        assertTrue(write(shaper, openListener, user("u9", 10000), "10.0.0.10", 500));
+        assertTrue(write(shaper, openListener, user("u10", 10000), "10.0.0.11", 496));
+        assertFalse(write(shaper, openListener, user("u11", 10000), "10.0.0.12", 1));
+    }
+
+    @Test
+    public void testLevelsShared() {
+        TrafficShaper shaper = shaper(0, 5000);
+        EmbeddedChannel first = channel(shaper, session(openListener, user("u1", 10000), "10.0.0.1"));
+        EmbeddedChannel second = channel(shaper, session(openListener, user("u1", 10000), "10.0.0.2"));
+        EmbeddedChannel third = channel(shaper, session(openListener, user("u2", 10000), "10.0.0.1"));
+        EmbeddedChannel fourth = channel(shaper, session(openListener, user("u1", 10000), "10.0.0.3"));
+
+        // the address bucket is shared by the first and the third, the user
+        // one by the first, second and fourth
+        assertTrue(write(first, 500));
+        assertTrue(write(second, 500));
+        assertFalse(write(third, 1));
+        assertFalse(write(fourth, 1));
+    }
+
+    @Test
+    public void testRefill() {
+        TrafficShaper shaper = shaper(0, 0);
+        User u1 = user("u1", 10000);
+        EmbeddedChannel first = channel(shaper, session(null, u1, "10.0.0.1"));
+        EmbeddedChannel second = channel(shaper, session(null, u1, "10.0.0.2"));
+        assertTrue(write(first, 1000));
+        assertFalse(write(second, 1));
+
+        // 500 bytes in 50 milliseconds, the debt of a byte paid back
+        clock.advance(50, TimeUnit.MILLISECONDS);
+        assertTrue(write(first, 499));
+        assertFalse(write(second, 1));
+    }
+
+    @Test
+    public void testBucketsDroppedWithTheLastConnection() {
+        TrafficShaper shaper = shaper(0, 0);
+        User u1 = user("u1", 10000);
+        EmbeddedChannel first = channel(shaper, session(null, u1, "10.0.0.1"));
+        assertTrue(write(first, 1000));
+        EmbeddedChannel second = channel(shaper, session(null, u1, "10.0.0.1"));
+        assertFalse(write(second, 1));
+
+        // a connection of the user is still open
+        first.close();
+        assertFalse(write(channel(shaper, session(null, u1, "10.0.0.1")), 1));
+
+        for (EmbeddedChannel channel : channels) {
+            channel.close();
+        }
+        assertTrue(write(channel(shaper, session(null, u1, "10.0.0.1")), 1000));
+    }
+
+    @Test
+    public void testUploadAndDownloadBuckets() {
+        TrafficShaper shaper = shaper(0, 0);
+        EmbeddedChannel channel = channel(shaper, session(null, user("u1", 10000), "10.0.0.1"));
+        assertTrue(write(channel, 1000));
+
+        // the upload has its own bucket
+        channel.writeInbound(Unpooled.buffer(1000).writerIndex(1000));
+        assertTrue(channel.config().isAutoRead());
+        channel.writeInbound(Unpooled.buffer(1).writerIndex(1));
+        assertFalse(channel.config().isAutoRead());
+    }
+
+    private boolean write(TrafficShaper shaper, Listener listener, User user, String address, int size) {
+        return write(channel(shaper, session(listener, user, address)), size);
+    }
+
+    /**
+     * Write the bytes on the channel.
+     *
+     * @return true if they were written at once, false if delayed
+     */
+    private static boolean write(EmbeddedChannel channel, int size) {
+        ChannelFuture future = channel.writeAndFlush(Unpooled.buffer(size).writerIndex(size));
+        return future.isDone();
+    }
+
+    private EmbeddedChannel channel(TrafficShaper shaper, FtpChannel session) {
+        TrafficShapingHandler handler = shaper.newHandler(session);
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+        channels.add(channel);
+        return channel;
+    }
+
+    private TrafficShaper shaper(int globalRate, int ratePerIp) {
+        ConnectionConfigFactory factory = new ConnectionConfigFactory();
+        factory.setMaxUploadRate(globalRate);
+        factory.setMaxDownloadRate(globalRate);
+        factory.setMaxUploadRatePerIp(ratePerIp);
+        factory.setMaxDownloadRatePerIp(ratePerIp);
+        return new TrafficShaper(factory.createConnectionConfig(), clock);
+    }
+
+    private static Listener listener(int rate) {
+        DataConnectionConfigurationFactory factory = new DataConnectionConfigurationFactory();
+        factory.setMaxUploadRate(rate);
+        factory.setMaxDownloadRate(rate);
+        final DataConnectionConfiguration config = factory.createDataConnectionConfiguration();
+        return proxy(Listener.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getDataConnectionConfiguration")) {
+                    return config;
+                } else if (method.getName().equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                } else if (method.getName().equals("equals")) {
+                    return proxy == args[0];
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private static User user(String name, int rate) {
+        BaseUser user = new BaseUser();
+        user.setName(name);
+        user.setAuthorities(Collections.<Authority>singletonList(new TransferRatePermission(rate, rate)));
+        return user;
+    }
+
+    private static FtpChannel session(final Listener listener, final User user, String address) {
+        final InetSocketAddress remoteAddress = address != null ? new InetSocketAddress(address, 2121) : null;
+        return proxy(FtpChannel.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getListener")) {
+                    return listener;
+                } else if (method.getName().equals("getUser")) {
+                    return user;
+                } else if (method.getName().equals("remoteAddress")) {
+                    return remoteAddress;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(TrafficShaperTest.class.getClassLoader(),
+                new Class<?>[] {type}, handler);
+    }
+}
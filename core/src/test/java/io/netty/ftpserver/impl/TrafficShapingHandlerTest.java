@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.netty.ftpserver.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Shapes an embedded channel with buckets on a manual clock. The handler
+ * timers run on the real time of the embedded event loop, but the clock
+ * alone decides what is due when they fire.
+ *
+ * @author Io Netty Project
+ */
+public class TrafficShapingHandlerTest {
+
+    /**
+     * 100000 bytes of burst, a byte per microsecond
+     */
+    private static final long RATE = 1000000L;
+
+    private final ManualClock clock = new ManualClock();
+
+    private final AtomicInteger releases = new AtomicInteger();
+
+    private EmbeddedChannel channel;
+
+    @After
+    public void tearDown() {
+        if (channel != null) {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    public void testWriteDelayedUntilDue() throws Exception {
+        channel = new EmbeddedChannel(handler(false, true));
+        writeBurst();
+
+        // 50 milliseconds in debt
+        ChannelFuture delayed = channel.writeAndFlush(buffer(50000));
+        ChannelFuture next = channel.writeAndFlush(buffer(10));
+        assertNull(channel.readOutbound());
+        assertFalse(delayed.isDone());
+        // the reads go on
+        assertTrue(channel.config().isAutoRead());
+
+        // the timer fires, but the clock did not move
+        fireTimers(50);
+        assertNull(channel.readOutbound());
+
+        clock.advance(50, TimeUnit.MILLISECONDS);
+        fireTimers(50);
+        assertTrue(delayed.isSuccess());
+        assertEquals(50000, readOutbound());
+        // the next write waits its own turn, in order
+        assertFalse(next.isDone());
+        assertNull(channel.readOutbound());
+
+        clock.advance(10, TimeUnit.MICROSECONDS);
+        fireTimers(1);
+        assertTrue(next.isSuccess());
+        assertEquals(10, readOutbound());
+    }
+
+    @Test
+    public void testReadSuspendedWhileInDebt() throws Exception {
+        channel = new EmbeddedChannel(handler(true, false));
+
+        // the data read already goes through, the next reads wait
+        assertTrue(channel.writeInbound(buffer(150000)));
+        assertEquals(150000, readInbound());
+        assertFalse(channel.config().isAutoRead());
+        assertTrue(ReadSuspension.isSuspended(channel, ReadSuspension.SHAPER));
+        assertTrue(channel.writeInbound(buffer(10)));
+        assertEquals(10, readInbound());
+
+        // the writes are not shaped by the read buckets
+        channel.writeAndFlush(buffer(200000));
+        assertEquals(200000, readOutbound());
+
+        clock.advance(50, TimeUnit.MILLISECONDS);
+        fireTimers(50);
+        assertTrue(channel.config().isAutoRead());
+        assertFalse(ReadSuspension.isSuspended(channel, ReadSuspension.SHAPER));
+    }
+
+    @Test
+    public void testWriteDelayDoesNotSuspendReads() throws Exception {
+        channel = new EmbeddedChannel(handler(true, true));
+        ChannelFuture delayed = channel.writeAndFlush(buffer(150000));
+        assertFalse(delayed.isDone());
+        assertTrue(channel.config().isAutoRead());
+
+        // the read buckets are full still
+        assertTrue(channel.writeInbound(buffer(100000)));
+        assertEquals(100000, readInbound());
+        assertTrue(channel.config().isAutoRead());
+    }
+
+    @Test
+    public void testUnwritableWhileTooMuchDelayed() throws Exception {
+        TrafficShapingHandler handler = handler(false, true);
+        channel = new EmbeddedChannel(handler);
+        writeBurst();
+
+        channel.writeAndFlush(buffer(3 * 1024 * 1024));
+        assertTrue(channel.isWritable());
+        channel.writeAndFlush(buffer(2 * 1024 * 1024));
+        assertFalse(channel.isWritable());
+
+        // removed between two MODE B transfers, the delayed data is written
+        // and the channel writable again
+        channel.pipeline().remove(handler);
+        assertTrue(channel.isWritable());
+        assertEquals(3 * 1024 * 1024, readOutbound());
+        assertEquals(2 * 1024 * 1024, readOutbound());
+        assertEquals(1, releases.get());
+    }
+
+    @Test
+    public void testUnshapedMessages() throws Exception {
+        channel = new EmbeddedChannel(handler(true, true));
+        writeBurst();
+
+        channel.writeInbound(buffer(100000));
+        assertEquals(100000, readInbound());
+
+        // empty buffers take no tokens
+        channel.writeAndFlush(Unpooled.EMPTY_BUFFER);
+        assertEquals(0, readOutbound());
+        channel.writeInbound(Unpooled.EMPTY_BUFFER);
+        assertTrue(channel.config().isAutoRead());
+    }
+
+    @Test
+    public void testReleasedOnce() {
+        channel = new EmbeddedChannel(handler(true, true));
+        channel.close();
+        assertEquals(1, releases.get());
+        channel.finishAndReleaseAll();
+        assertEquals(1, releases.get());
+    }
+
+    /**
+     * A handler with a bucket in the given directions.
+     */
+    private TrafficShapingHandler handler(boolean reads, boolean writes) {
+        TrafficShapingHandler handler = new TrafficShapingHandler(
+                reads ? new TokenBucket[] {new TokenBucket(RATE, clock)} : new TokenBucket[0],
+                writes ? new TokenBucket[] {new TokenBucket(RATE, clock)} : new TokenBucket[0],
+                clock, new Runnable() {
+                    public void run() {
+                        releases.incrementAndGet();
+                    }
+                });
+        return handler;
+    }
+
+    /**
+     * Empty the write bucket, a fresh one holding the burst.
+     */
+    private void writeBurst() {
+        channel.writeAndFlush(buffer(100000));
+        assertEquals(100000, readOutbound());
+    }
+
+    private void fireTimers(long millis) throws InterruptedException {
+        Thread.sleep(millis + 10);
+        channel.runScheduledPendingTasks();
+    }
+
+    private int readOutbound() {
+        ByteBuf buffer = channel.readOutbound();
+        int size = buffer.readableBytes();
+        buffer.release();
+        return size;
+    }
+
+    private int readInbound() {
+        ByteBuf buffer = channel.readInbound();
+        int size = buffer.readableBytes();
+        buffer.release();
+        return size;
+    }
+
+    private static ByteBuf buffer(int size) {
+        return Unpooled.buffer(size).writerIndex(size);
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.ftpserver.TransferRejectionPolicy;
+import io.netty.util.concurrent.EventExecutor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author Io Netty Project
+ */
+public class TransferExecutorGroupTest {
+
+    private static final long TIMEOUT_MILLIS = 5000L;
+
+    private TransferExecutorGroup group;
+
+    @After
+    public void tearDown() throws Exception {
+        if (group != null) {
+            group.shutdownGracefully(0, 1, TimeUnit.SECONDS).await(TIMEOUT_MILLIS);
+        }
+    }
+
+    @Test
+    public void testOrderedExecutorKeepsOrder() throws Exception {
+        group = new TransferExecutorGroup(4, 0, TransferRejectionPolicy.ABORT);
+        EventExecutor executor = group.newOrderedExecutor();
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            final int index = i;
+            executor.execute(new Runnable() {
+                public void run() {
+                    if (running.incrementAndGet() > 1) {
+                        overlaps.incrementAndGet();
+                    }
+                    order.add(index);
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(0, overlaps.get());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    public void testInEventLoop() throws Exception {
+        group = new TransferExecutorGroup(2, 0, TransferRejectionPolicy.ABORT);
+        final EventExecutor executor = group.newOrderedExecutor();
+        final boolean[] inEventLoop = new boolean[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            public void run() {
+                inEventLoop[0] = executor.inEventLoop();
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertTrue(inEventLoop[0]);
+        assertFalse(executor.inEventLoop());
+    }
+
+    @Test
+    public void testSessionsRunOnAnyFreeThread() throws Exception {
+        group = new TransferExecutorGroup(2, 0, TransferRejectionPolicy.ABORT);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        // one session holds a thread, the others still get the other one
+        group.newOrderedExecutor().execute(block(started, release));
+        assertTrue(started.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        for (int i = 0; i < 5; i++) {
+            CountDownLatch done = new CountDownLatch(1);
+            group.newOrderedExecutor().execute(count(done));
+            assertTrue(done.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        }
+        release.countDown();
+    }
+
+    @Test
+    public void testGaugesUnderLoad() throws Exception {
+        group = new TransferExecutorGroup(2, 0, TransferRejectionPolicy.ABORT);
+        assertEquals(2, group.getThreads());
+        assertEquals(0, group.getActiveThreads());
+        assertEquals(0, group.getQueueDepth());
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(2);
+        group.newOrderedExecutor().execute(block(started, release));
+        group.newOrderedExecutor().execute(block(started, release));
+        assertTrue(started.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(2, group.getActiveThreads());
+
+        // both threads are busy, the next tasks wait whether or not they are ordered
+        CountDownLatch done = new CountDownLatch(4);
+        EventExecutor session = group.newOrderedExecutor();
+        session.execute(count(done));
+        session.execute(count(done));
+        group.newOrderedExecutor().execute(count(done));
+        group.execute(count(done));
+        assertEquals(4, group.getQueueDepth());
+        assertEquals(2, group.getActiveThreads());
+
+        release.countDown();
+        assertTrue(done.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        waitForIdle();
+        assertEquals(0, group.getQueueDepth());
+    }
+
+    @Test
+    public void testAbortRefusesOnceFull() throws Exception {
+        group = new TransferExecutorGroup(1, 1, TransferRejectionPolicy.ABORT);
+        EmbeddedChannel control = new EmbeddedChannel();
+        assertTrue(group.accept(control));
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        group.newOrderedExecutor().execute(block(started, release));
+        assertTrue(started.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        CountDownLatch done = new CountDownLatch(1);
+        group.newOrderedExecutor().execute(count(done));
+
+        assertFalse(group.accept(control));
+        assertTrue(control.config().isAutoRead());
+
+        release.countDown();
+        assertTrue(done.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        waitForIdle();
+        assertTrue(group.accept(control));
+        control.finish();
+    }
+
+    @Test
+    public void testBackoffSuspendsReadsWithoutBlocking() throws Exception {
+        group = new TransferExecutorGroup(1, 1, TransferRejectionPolicy.BACKOFF);
+        EmbeddedChannel control = new EmbeddedChannel();
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        group.newOrderedExecutor().execute(block(started, release));
+        assertTrue(started.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        CountDownLatch done = new CountDownLatch(1);
+        group.newOrderedExecutor().execute(count(done));
+
+        // the command is accepted right away, the reads stop meanwhile
+        long start = System.nanoTime();
+        assertTrue(group.accept(control));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(50));
+        assertFalse(control.config().isAutoRead());
+
+        release.countDown();
+        assertTrue(done.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!control.config().isAutoRead() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(control.config().isAutoRead());
+        control.finish();
+    }
+
+    private void waitForIdle() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while ((group.getActiveThreads() > 0 || group.getQueueDepth() > 0)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, group.getActiveThreads());
+    }
+
+    private static Runnable block(final CountDownLatch started, final CountDownLatch release) {
+        return new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    release.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    private static Runnable count(final CountDownLatch done) {
+        return new Runnable() {
+            public void run() {
+                done.countDown();
+            }
+        };
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.netty.ftpserver.impl;
+
+import io.netty.ftpserver.ConnectionConfigFactory;
+import io.netty.ftpserver.FtpServerFactory;
+import io.netty.ftpserver.ftplet.FtpReply;
+import io.netty.ftpserver.ftplet.FtpRequest;
+import io.netty.ftpserver.ftplet.FtpletResult;
+import io.netty.ftpserver.ftpletcontainer.Ftplet;
+import io.netty.ftpserver.ftpletcontainer.FtpletContext;
+import io.netty.ftpserver.listener.ListenerFactory;
+import io.netty.ftpserver.listener.nio.channel.FtpChannel;
+import io.netty.ftpserver.util.VirtualThreads;
+import io.netty.util.concurrent.EventExecutor;
+import org.apache.commons.net.ftp.FTP;
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs sessions with the virtual threads enabled, each session then running
+ * its commands on a virtual thread of its own. On a JVM without virtual
+ * threads the setting is ignored and the commands run as without it.
+ *
+ * @author Io Netty Project
+ */
+public class VirtualThreadSessionTest extends AbstractLoopbackTest {
+
+    private final List<Thread> commandThreads = new CopyOnWriteArrayList<Thread>();
+
+    private final List<Boolean> inSessionExecutor = new CopyOnWriteArrayList<Boolean>();
+
+    private final List<EventExecutor> sessionExecutors = new CopyOnWriteArrayList<EventExecutor>();
+
+    @Override
+    protected void configure(FtpServerFactory serverFactory, ListenerFactory listenerFactory) {
+        ConnectionConfigFactory connectionConfigFactory = new ConnectionConfigFactory();
+        connectionConfigFactory.setVirtualThreadsEnabled(true);
+        serverFactory.setConnectionConfig(connectionConfigFactory.createConnectionConfig());
+        serverFactory.setFtplets(Collections.<String, Ftplet>singletonMap("recorder", new RecordingFtplet()));
+    }
+
+    @Test
+    public void testThreadFactory() throws Exception {
+        ThreadFactory factory = VirtualThreads.newThreadFactory("test-");
+        if (!VirtualThreads.isAvailable()) {
+            assertNull(factory);
+            return;
+        }
+        assertNotNull(factory);
+        Thread first = factory.newThread(new Runnable() {
+            public void run() {
+            }
+        });
+        Thread second = factory.newThread(new Runnable() {
+            public void run() {
+            }
+        });
+        assertTrue(isVirtual(first));
+        assertEquals("test-0", first.getName());
+        assertEquals("test-1", second.getName());
+    }
+
+    @Test
+    public void testSessionExecutor() {
+        DefaultFtpServerContext context = new DefaultFtpServerContext();
+        try {
+            // disabled by default
+            assertNull(context.newSessionExecutor());
+        } finally {
+            context.dispose();
+        }
+
+        context = new DefaultFtpServerContext();
+        try {
+            ConnectionConfigFactory connectionConfigFactory = new ConnectionConfigFactory();
+            connectionConfigFactory.setVirtualThreadsEnabled(true);
+            context.setConnectionConfig(connectionConfigFactory.createConnectionConfig());
+            EventExecutor first = context.newSessionExecutor();
+            EventExecutor second = context.newSessionExecutor();
+            if (!VirtualThreads.isAvailable()) {
+                assertNull(first);
+                assertNull(second);
+                return;
+            }
+            // one executor per session
+            assertNotNull(first);
+            assertNotNull(second);
+            assertTrue(first != second);
+            first.shutdownGracefully();
+            second.shutdownGracefully();
+        } finally {
+            context.dispose();
+        }
+    }
+
+    @Test
+    public void testCommandsOfASessionOnItsVirtualThread() throws Exception {
+        assertEquals(257, client.sendCommand("PWD"));
+        assertEquals(200, client.sendCommand("NOOP"));
+        assertEquals(257, client.sendCommand("MKD dir"));
+        assertEquals(250, client.sendCommand("CWD dir"));
+
+        if (!VirtualThreads.isAvailable()) {
+            // the setting is ignored
+            for (EventExecutor executor : sessionExecutors) {
+                assertNull(executor);
+            }
+            return;
+        }
+        assertFalse(commandThreads.isEmpty());
+        Thread thread = commandThreads.get(0);
+        assertTrue(isVirtual(thread));
+        assertTrue(thread.getName(), thread.getName().startsWith("ftp-session-"));
+        for (int i = 0; i < commandThreads.size(); i++) {
+            assertEquals(thread, commandThreads.get(i));
+            assertTrue(inSessionExecutor.get(i));
+        }
+    }
+
+    @Test
+    public void testSessionsOnThreadsOfTheirOwn() throws Exception {
+        assumeTrue(VirtualThreads.isAvailable());
+        assertEquals(200, client.sendCommand("NOOP"));
+        FTPClient other = login();
+        try {
+            assertEquals(200, other.sendCommand("NOOP"));
+        } finally {
+            other.disconnect();
+        }
+        Set<Thread> threads = new HashSet<Thread>(commandThreads);
+        assertEquals(2, threads.size());
+        assertEquals(2, new HashSet<EventExecutor>(sessionExecutors).size());
+    }
+
+    @Test
+    public void testTransfers() throws Exception {
+        byte[] data = randomBytes(1000000);
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+        client.enterLocalPassiveMode();
+        assertTrue(client.storeFile("file.bin", new ByteArrayInputStream(data)));
+        assertArrayEquals(data, read(new File(homeDirectory, "file.bin")));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(client.retrieveFile("file.bin", out));
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    @Test
+    public void testExecutorShutDownWithTheSession() throws Exception {
+        assumeTrue(VirtualThreads.isAvailable());
+        assertEquals(200, client.sendCommand("NOOP"));
+        EventExecutor executor = sessionExecutors.get(0);
+        assertFalse(executor.isShuttingDown());
+
+        client.logout();
+        client.disconnect();
+        assertTrue(executor.terminationFuture().awaitUninterruptibly(TIMEOUT));
+    }
+
+    private static boolean isVirtual(Thread thread) throws Exception {
+        return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+    }
+
+    /**
+     * Records the threads running the commands.
+     */
+    private final class RecordingFtplet implements Ftplet {
+
+        public void init(FtpletContext ftpletContext) {
+        }
+
+        public void destroy() {
+        }
+
+        public FtpletResult beforeCommand(FtpChannel channel, FtpRequest request) {
+            commandThreads.add(Thread.currentThread());
+            EventExecutor executor = channel.getSessionExecutor();
+            inSessionExecutor.add(executor != null && executor.inEventLoop());
+            return FtpletResult.DEFAULT;
+        }
+
+        public FtpletResult afterCommand(FtpChannel channel, FtpRequest request, FtpReply reply) {
+            return FtpletResult.DEFAULT;
+        }
+
+        public FtpletResult onConnect(FtpChannel channel) {
+            sessionExecutors.add(channel.getSessionExecutor());
+            return FtpletResult.DEFAULT;
+        }
+
+        public FtpletResult onDisconnect(FtpChannel channel) {
+            return FtpletResult.DEFAULT;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.netty.ftpserver.impl.reply;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.ftpserver.ftplet.DefaultFtpReply;
+import io.netty.ftpserver.message.MessageResource;
+import io.netty.util.CharsetUtil;
+import io.netty.util.IllegalReferenceCountException;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Io Netty Project
+ */
+public class ReplyCacheTest {
+
+    private ReplyCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ReplyCache(new TestMessageResource());
+    }
+
+    @After
+    public void tearDown() {
+        cache.dispose();
+    }
+
+    @Test
+    public void testConstantReplies() {
+        assertReply("200 Command okay.\r\n", cache.get(null, 200, null));
+        assertReply("226 Transfer complete.\r\n", cache.get(null, 226, "RETR"));
+        assertReply("221-Bye\r\n221 Goodbye.\r\n", cache.get(null, 221, null));
+        assertEquals("Command okay.", cache.get(null, 200, null).getMessage());
+
+        // the one of the language
+        assertReply("200 Befehl okay.\r\n", cache.get("de", 200, null));
+    }
+
+    @Test
+    public void testUtf8() {
+        ReplyCache.Reply reply = cache.get("de", 226, "RETR");
+        assertReply("226 Übertragung abgeschlossen ✓\r\n", reply);
+        assertEquals(new DefaultFtpReply(226, "Übertragung abgeschlossen ✓").toString(),
+                reply.getEncoded().toString(CharsetUtil.UTF_8));
+    }
+
+    @Test
+    public void testNotCached() {
+        // variables, unknown codes, sub ids and languages
+        assertNull(cache.get(null, 250, "CWD"));
+        assertNull(cache.get(null, 500, null));
+        assertNull(cache.get(null, 226, "STOR"));
+        assertNull(cache.get("fr", 200, null));
+    }
+
+    @Test
+    public void testReadOnly() {
+        ByteBuf encoded = cache.get(null, 200, null).getEncoded();
+        assertTrue(encoded.isReadOnly());
+        try {
+            encoded.setByte(0, 'x');
+            fail("Shared reply changed");
+        } catch (Exception ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDisposeWhileWritten() {
+        ReplyCache.Reply reply = cache.get(null, 226, "RETR");
+        ByteBuf written = reply.getEncoded().retainedDuplicate();
+        assertEquals(2, written.refCnt());
+
+        // the reply being written keeps the memory
+        cache.dispose();
+        assertEquals(1, written.refCnt());
+        assertEquals("226 Transfer complete.\r\n", written.toString(CharsetUtil.UTF_8));
+        assertTrue(written.release());
+        assertEquals(0, reply.getEncoded().refCnt());
+
+        // the replies created before no longer write the buffer
+        try {
+            reply.getEncoded().retainedDuplicate();
+            fail("Disposed reply retained");
+        } catch (IllegalReferenceCountException ex) {
+            // expected
+        }
+        assertNull(cache.get(null, 226, "RETR"));
+    }
+
+    @Test
+    public void testDuplicatesIndependent() {
+        ByteBuf encoded = cache.get(null, 200, null).getEncoded();
+        ByteBuf first = encoded.retainedDuplicate();
+        ByteBuf second = encoded.retainedDuplicate();
+        first.skipBytes(first.readableBytes());
+        assertEquals("200 Command okay.\r\n", second.toString(CharsetUtil.UTF_8));
+        assertEquals(0, encoded.readerIndex());
+        first.release();
+        second.release();
+        assertEquals(1, encoded.refCnt());
+    }
+
+    private static void assertReply(String expected, ReplyCache.Reply reply) {
+        assertNotNull(expected, reply);
+        ByteBuf encoded = reply.getEncoded();
+        assertEquals(expected, encoded.toString(CharsetUtil.UTF_8));
+        assertEquals(expected.getBytes(CharsetUtil.UTF_8).length, encoded.readableBytes());
+    }
+
+    /**
+     * The messages of the default language and of German.
+     */
+    static final class TestMessageResource implements MessageResource {
+
+        private final Map<String, Map<String, String>> messages = new HashMap<String, Map<String, String>>();
+
+        TestMessageResource() {
+            Map<String, String> defaults = new HashMap<String, String>();
+            defaults.put("200", "Command okay.");
+            defaults.put("221", "Bye\nGoodbye.");
+            defaults.put("226.RETR", "Transfer complete.");
+            defaults.put("226.STOR", "Transfer complete, {output.msg}.");
+            defaults.put("250.CWD", "Directory changed to {output.msg}");
+            defaults.put("invalid", "Not a reply.");
+            messages.put(null, defaults);
+
+            Map<String, String> german = new HashMap<String, String>();
+            german.put("200", "Befehl okay.");
+            german.put("226.RETR", "Übertragung abgeschlossen ✓");
+            messages.put("de", german);
+        }
+
+        public List<String> getAvailableLanguages() {
+            return Arrays.asList("DE");
+        }
+
+        public String getMessage(int code, String subId, String language) {
+            Map<String, String> byKey = messages.get(language);
+            return byKey == null ? null : byKey.get(subId == null ? String.valueOf(code) : code + "." + subId);
+        }
+
+        public Map<String, String> getMessages(String language) {
+            Map<String, String> byKey = messages.get(language == null ? null : language.toLowerCase());
+            return byKey == null ? null : new HashMap<String, String>(byKey);
+        }
+    }
+}
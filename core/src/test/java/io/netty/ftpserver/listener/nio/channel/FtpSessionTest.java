@@ -0,0 +1,324 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.netty.ftpserver.listener.nio.channel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.ftpserver.ftplet.DataType;
+import io.netty.ftpserver.ftplet.DefaultFtpReply;
+import io.netty.ftpserver.ftplet.FtpReply;
+import io.netty.ftpserver.ftplet.FtpRequest;
+import io.netty.ftpserver.ftplet.Structure;
+import io.netty.ftpserver.impl.DefaultFtpRequest;
+import io.netty.ftpserver.usermanager.impl.BaseUser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Io Netty Project
+ */
+public class FtpSessionTest {
+
+    private final List<Object> events = new ArrayList<Object>();
+
+    private EmbeddedChannel channel;
+
+    private FtpSession session;
+
+    @Before
+    public void setUp() {
+        channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+                events.add(evt);
+            }
+        });
+        session = FtpSession.get(channel);
+    }
+
+    @After
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testOneSessionPerChannel() throws InterruptedException {
+        long creationTime = session.getCreationTime();
+        assertTrue(creationTime <= System.currentTimeMillis());
+        assertSame(session, channel.attr(FtpSession.KEY).get());
+
+        // the state is kept, the creation time is not reset
+        Thread.sleep(5L);
+        assertSame(session, FtpSession.get(channel));
+        assertEquals(creationTime, FtpSession.get(channel).getCreationTime());
+
+        EmbeddedChannel other = new EmbeddedChannel();
+        try {
+            assertNotSame(session, FtpSession.get(other));
+        } finally {
+            other.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    public void testDefaults() {
+        assertEquals(DataType.ASCII, session.getDataType());
+        assertEquals(Structure.FILE, session.getStructure());
+        assertFalse(session.isLoggedIn());
+        assertNull(session.getUser());
+        assertNull(session.getLoginTime());
+        assertNull(session.getLastAccessTime());
+        assertEquals("", session.getUserArgument());
+        assertEquals(0L, session.getFileOffset());
+        assertEquals(-1L, session.getFileRangeEnd());
+        assertEquals(-1L, session.getAllocatedSize());
+    }
+
+    @Test
+    public void testResetState() {
+        session.setFileOffset(10L);
+        session.setFileRangeEnd(20L);
+        session.setAllocatedSize(100L);
+        session.resetState();
+        assertEquals(0L, session.getFileOffset());
+        assertEquals(-1L, session.getFileRangeEnd());
+
+        // kept until the next transfer
+        assertEquals(100L, session.getAllocatedSize());
+        assertNull(session.getRenameFrom());
+        assertNull(session.getCopyFrom());
+    }
+
+    @Test
+    public void testReinitialize() {
+        BaseUser user = new BaseUser();
+        user.setName("user");
+        session.setUserArgument("user");
+        session.setUser(user);
+        session.setLogin(null);
+        session.updateLastAccessTime();
+        session.setAllocatedSize(100L);
+        assertTrue(session.isLoggedIn());
+        assertTrue(session.getLoginTime() != null);
+        assertTrue(session.getLastAccessTime() != null);
+
+        session.reinitialize();
+        assertFalse(session.isLoggedIn());
+        assertNull(session.getLoginTime());
+        assertEquals("", session.getUserArgument());
+        assertEquals(-1L, session.getAllocatedSize());
+    }
+
+    @Test
+    public void testAttributes() {
+        assertNull(session.setAttribute("key", "value"));
+        assertEquals("value", session.getAttribute("key"));
+        assertEquals("value", session.setAttribute("key", "other"));
+
+        // removed with a null value
+        assertEquals("other", session.setAttribute("key", null));
+        assertNull(session.getAttribute("key"));
+        assertNull(session.setAttribute("missing", null));
+
+        try {
+            session.setAttribute(null, "value");
+            fail("Null key set");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        try {
+            session.getAttribute(null);
+            fail("Null key read");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDataBytesCountedFromSeveralThreads() throws InterruptedException {
+        final int threads = 8;
+        final int increments = 100000;
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] counters = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            counters[i] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    for (int j = 0; j < increments; j++) {
+                        session.increaseWrittenDataBytes(1);
+                        session.increaseReadDataBytes(2);
+                    }
+                }
+            });
+            counters[i].start();
+        }
+        start.countDown();
+        for (Thread counter : counters) {
+            counter.join();
+        }
+        assertEquals((long) threads * increments, session.getWrittenDataBytes());
+        assertEquals(2L * threads * increments, session.getReadDataBytes());
+
+        // no negative counts
+        session.increaseWrittenDataBytes(-5);
+        session.increaseReadDataBytes(0);
+        assertEquals((long) threads * increments, session.getWrittenDataBytes());
+        assertEquals(2L * threads * increments, session.getReadDataBytes());
+    }
+
+    @Test
+    public void testCommandsRunOneAfterTheOther() {
+        FtpRequest first = new DefaultFtpRequest("CWD dir");
+        FtpRequest second = new DefaultFtpRequest("PWD");
+        FtpRequest third = new DefaultFtpRequest("NOOP");
+        assertTrue(session.offerRequest(first));
+        assertFalse(session.offerRequest(second));
+        assertFalse(session.offerRequest(third));
+        assertNull(session.pollRequest());
+
+        // the command completes with its reply and its return
+        reply(250);
+        session.commandReturned();
+        assertNextRequestFired();
+        assertSame(second, session.pollRequest());
+        assertNull(session.pollRequest());
+
+        reply(257);
+        session.commandReturned();
+        assertNextRequestFired();
+        assertSame(third, session.pollRequest());
+        reply(200);
+        session.commandReturned();
+
+        // none queued, the next one runs at once
+        channel.runPendingTasks();
+        assertTrue(events.isEmpty());
+        assertNull(session.pollRequest());
+        assertTrue(session.offerRequest(first));
+    }
+
+    @Test
+    public void testTransferHoldsTheSessionUntilItsFinalReply() {
+        FtpRequest retr = new DefaultFtpRequest("RETR file");
+        FtpRequest noop = new DefaultFtpRequest("NOOP");
+        assertTrue(session.offerRequest(retr));
+        reply(150);
+        session.commandReturned();
+        assertFalse(session.offerRequest(noop));
+        channel.runPendingTasks();
+        assertTrue(events.isEmpty());
+
+        // the ftplets see the 150 reply
+        assertEquals(150, session.getCommandReply().getCode());
+
+        reply(226);
+        assertNextRequestFired();
+        assertSame(noop, session.pollRequest());
+
+        // the reply of the new command
+        assertEquals(226, session.getCommandReply().getCode());
+        reply(200);
+        assertEquals(200, session.getCommandReply().getCode());
+    }
+
+    @Test
+    public void testTransferEndedBeforeTheCommandReturned() {
+        FtpRequest retr = new DefaultFtpRequest("RETR file");
+        FtpRequest noop = new DefaultFtpRequest("NOOP");
+        assertTrue(session.offerRequest(retr));
+        reply(150);
+        reply(226);
+        assertFalse(session.offerRequest(noop));
+
+        // still the 150 reply for the ftplets
+        assertEquals(150, session.getCommandReply().getCode());
+        assertEquals(226, session.getFtpReply().getCode());
+
+        session.commandReturned();
+        assertNextRequestFired();
+        assertSame(noop, session.pollRequest());
+    }
+
+    @Test
+    public void testDeferredReply() {
+        FtpRequest abor = new DefaultFtpRequest("ABOR");
+        FtpRequest noop = new DefaultFtpRequest("NOOP");
+        assertTrue(session.offerRequest(abor));
+        session.deferReply();
+        session.commandReturned();
+        assertFalse(session.offerRequest(noop));
+        channel.runPendingTasks();
+        assertTrue(events.isEmpty());
+
+        // the 426 of the transfer and the 226 of ABOR
+        reply(426);
+        assertNextRequestFired();
+        assertSame(noop, session.pollRequest());
+    }
+
+    @Test
+    public void testWriteAside() {
+        FtpReply status = new DefaultFtpReply(213, "Status");
+        assertFalse(session.writeAside(status));
+        assertNull(channel.readOutbound());
+
+        assertTrue(session.offerRequest(new DefaultFtpRequest("RETR file")));
+        reply(150);
+        assertTrue(session.writeAside(status));
+        assertSame(status, channel.readOutbound());
+
+        // not before the queued requests
+        assertFalse(session.offerRequest(new DefaultFtpRequest("STAT")));
+        assertFalse(session.writeAside(status));
+        assertNull(channel.readOutbound());
+    }
+
+    private void reply(int code) {
+        FtpReply reply = new DefaultFtpReply(code, "Reply");
+        session.writeAndFlush(reply);
+        assertSame(reply, channel.readOutbound());
+    }
+
+    private void assertNextRequestFired() {
+        channel.runPendingTasks();
+        assertEquals(1, events.size());
+        assertSame(FtpSession.NEXT_REQUEST, events.remove(0));
+    }
+}
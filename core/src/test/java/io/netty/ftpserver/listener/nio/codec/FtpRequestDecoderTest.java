@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.ftpserver.listener.nio.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.ftpserver.impl.DefaultFtpRequest;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.CharsetUtil;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Io Netty Project
+ */
+public class FtpRequestDecoderTest {
+
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp() {
+        channel = new EmbeddedChannel(new FtpRequestDecoder(64));
+    }
+
+    @After
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testCommandAndArgument() {
+        DefaultFtpRequest request = decode("RETR dir/file.txt\r\n");
+        assertEquals("RETR", request.getCommand());
+        assertEquals("dir/file.txt", request.getArgument());
+        assertEquals("RETR dir/file.txt", request.getRequestLine());
+    }
+
+    @Test
+    public void testLowerCaseVerb() {
+        DefaultFtpRequest request = decode("stor file.txt\r\n");
+        assertEquals("STOR", request.getCommand());
+        assertEquals("stor file.txt", request.getRequestLine());
+
+        assertEquals("XSHA256", decode("xSha256 file.txt\r\n").getCommand());
+    }
+
+    @Test
+    public void testAliases() {
+        DefaultFtpRequest request = decode("XMKD dir\r\n");
+        assertEquals("MKD", request.getCommand());
+        assertEquals("XMKD dir", request.getRequestLine());
+
+        assertEquals("CDUP", decode("xcup\r\n").getCommand());
+        assertEquals("XCRC", decode("XCRC file\r\n").getCommand());
+    }
+
+    @Test
+    public void testVerbLengths() {
+        assertEquals("CWD", decode("CWD dir\r\n").getCommand());
+        assertEquals("NOOP", decode("NOOP\r\n").getCommand());
+        assertEquals("XSHA1", decode("XSHA1 file\r\n").getCommand());
+
+        // unknown verbs, packed or not
+        assertEquals("FOO", decode("foo\r\n").getCommand());
+        assertEquals("ABCDEFGH", decode("abcdefgh arg\r\n").getCommand());
+        DefaultFtpRequest request = decode("abcdefghij arg\r\n");
+        assertEquals("ABCDEFGHIJ", request.getCommand());
+        assertEquals("arg", request.getArgument());
+        assertEquals("abcdefghij arg", request.getRequestLine());
+    }
+
+    @Test
+    public void testNonAsciiVerb() {
+        DefaultFtpRequest request = decode("st\u00F6r file\r\n");
+        assertEquals("ST\u00D6R", request.getCommand());
+        assertEquals("file", request.getArgument());
+    }
+
+    @Test
+    public void testTrimmedLine() {
+        DefaultFtpRequest request = decode("  NOOP  \r\n");
+        assertEquals("NOOP", request.getCommand());
+        assertNull(request.getArgument());
+        assertFalse(request.hasArgument());
+
+        request = decode("CWD  dir \t\r\n");
+        assertEquals(" dir", request.getArgument());
+
+        assertNull(decode("USER \r\n").getArgument());
+        assertEquals("file", decode("DELE file\n").getArgument());
+    }
+
+    @Test
+    public void testEmptyLines() {
+        assertEquals("", decode("\r\n").getCommand());
+        assertEquals("", decode("   \r\n").getCommand());
+        assertEquals("", decode("\r\n").getRequestLine());
+    }
+
+    @Test
+    public void testSplitAndBatchedLines() {
+        assertFalse(channel.writeInbound(buffer("RE")));
+        assertTrue(channel.writeInbound(buffer("TR file\r\nNOOP\r\n")));
+        DefaultFtpRequest retr = channel.readInbound();
+        DefaultFtpRequest noop = channel.readInbound();
+        assertEquals("RETR", retr.getCommand());
+        assertEquals("file", retr.getArgument());
+        assertEquals("NOOP", noop.getCommand());
+        assertEquals(retr.getReceivedTime(), noop.getReceivedTime());
+        assertNull(channel.readInbound());
+    }
+
+    @Test
+    public void testReceivedTime() {
+        long before = System.currentTimeMillis();
+        DefaultFtpRequest request = decode("NOOP\r\n");
+        assertTrue(request.getReceivedTime() >= before);
+        assertTrue(request.getReceivedTime() <= System.currentTimeMillis());
+    }
+
+    @Test
+    public void testTooLongLine() {
+        StringBuilder line = new StringBuilder("STOR ");
+        while (line.length() <= 64) {
+            line.append('a');
+        }
+        try {
+            channel.writeInbound(buffer(line + "\r\n"));
+            fail("Too long line decoded");
+        } catch (TooLongFrameException ex) {
+            // expected
+        }
+        assertNull(channel.readInbound());
+
+        // the next line is decoded
+        assertEquals("NOOP", decode("NOOP\r\n").getCommand());
+    }
+
+    @Test
+    public void testBuffersReleased() {
+        ByteBuf buffer = buffer("USER anonymous\r\nPASS x\r\n");
+        channel.writeInbound(buffer);
+        assertEquals(0, buffer.refCnt());
+        assertEquals("USER", ((DefaultFtpRequest) channel.readInbound()).getCommand());
+        assertEquals("PASS", ((DefaultFtpRequest) channel.readInbound()).getCommand());
+    }
+
+    private DefaultFtpRequest decode(String line) {
+        assertTrue(channel.writeInbound(buffer(line)));
+        DefaultFtpRequest request = channel.readInbound();
+        assertNull(channel.readInbound());
+        return request;
+    }
+
+    private static ByteBuf buffer(String data) {
+        return Unpooled.copiedBuffer(data, CharsetUtil.UTF_8);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package io.netty.ftpserver.listener.nio.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.ftpserver.ftplet.DefaultFtpReply;
+import io.netty.ftpserver.impl.FtpServerContext;
+import io.netty.ftpserver.impl.reply.LocalizedFtpReply;
+import io.netty.ftpserver.impl.reply.ReplyCache;
+import io.netty.ftpserver.listener.nio.channel.FtpChannel;
+import io.netty.ftpserver.message.MessageResource;
+import io.netty.util.CharsetUtil;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Io Netty Project
+ */
+public class FtpResponseEncoderTest {
+
+    private static final String MESSAGE = "Répertoire créé ✓";
+
+    private EmbeddedChannel channel;
+
+    private ReplyCache cache;
+
+    @Before
+    public void setUp() {
+        channel = new EmbeddedChannel(new FtpResponseEncoder());
+        Map<String, String> messages = new HashMap<String, String>();
+        messages.put("257", MESSAGE);
+        cache = new ReplyCache(new FixedMessageResource(messages));
+    }
+
+    @After
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+        cache.dispose();
+    }
+
+    @Test
+    public void testUtf8() {
+        assertEquals("257 " + MESSAGE + "\r\n", write(new DefaultFtpReply(257, MESSAGE)));
+        assertEquals("257 " + MESSAGE + "\r\n", write(new LocalizedFtpReply(257, MESSAGE)));
+
+        // not the platform charset, the length of the UTF-8 bytes
+        ByteBuf written = writeBuffer(new DefaultFtpReply(200, "€"));
+        assertEquals(9, written.readableBytes());
+        assertEquals((byte) 0xE2, written.getByte(4));
+        written.release();
+    }
+
+    @Test
+    public void testMultiLine() {
+        assertEquals("211-Features:\r\n UTF8\r\n211 End\r\n",
+                write(new DefaultFtpReply(211, new String[] {"Features:", " UTF8", "End"})));
+    }
+
+    @Test
+    public void testCachedReply() {
+        LocalizedFtpReply reply = translate(257);
+        ByteBuf encoded = reply.getEncoded();
+        assertNotNull(encoded);
+        assertEquals(1, encoded.refCnt());
+
+        // written from the shared buffer, retained until written
+        ByteBuf written = writeBuffer(reply);
+        assertEquals("257 " + MESSAGE + "\r\n", written.toString(CharsetUtil.UTF_8));
+        assertEquals(2, encoded.refCnt());
+        written.release();
+        assertEquals(1, encoded.refCnt());
+        assertEquals(0, encoded.readerIndex());
+
+        // the same bytes as a reply encoded when written
+        assertEquals(write(new DefaultFtpReply(257, MESSAGE)), write(reply));
+    }
+
+    @Test
+    public void testDisposedWhileWritten() {
+        LocalizedFtpReply reply = translate(257);
+        ByteBuf written = writeBuffer(reply);
+
+        // the reply being written is not freed by the cache
+        cache.dispose();
+        assertEquals(1, written.refCnt());
+        assertEquals("257 " + MESSAGE + "\r\n", written.toString(CharsetUtil.UTF_8));
+        written.release();
+        assertEquals(0, reply.getEncoded().refCnt());
+
+        // a reply created before the cache was disposed is encoded when written
+        assertEquals("257 " + MESSAGE + "\r\n", write(reply));
+    }
+
+    private String write(DefaultFtpReply reply) {
+        ByteBuf written = writeBuffer(reply);
+        try {
+            return written.toString(CharsetUtil.UTF_8);
+        } finally {
+            written.release();
+        }
+    }
+
+    private ByteBuf writeBuffer(DefaultFtpReply reply) {
+        assertTrue(channel.writeOutbound(reply));
+        return channel.readOutbound();
+    }
+
+    private LocalizedFtpReply translate(int code) {
+        FtpServerContext context = proxy(FtpServerContext.class, "getReplyCache", cache);
+        FtpChannel<?> ftpChannel = proxy(FtpChannel.class, "getContext", context);
+        return LocalizedFtpReply.translate(ftpChannel, null, code, null, null);
+    }
+
+    /**
+     * An implementation of the interface returning the value from the method,
+     * and null from the others.
+     */
+    private static <T> T proxy(Class<T> type, final String method, final Object value) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method m, Object[] args) {
+                        return m.getName().equals(method) ? value : null;
+                    }
+                }));
+    }
+
+    /**
+     * The messages of the default language.
+     */
+    private static final class FixedMessageResource implements MessageResource {
+
+        private final Map<String, String> messages;
+
+        FixedMessageResource(Map<String, String> messages) {
+            this.messages = messages;
+        }
+
+        public List<String> getAvailableLanguages() {
+            return Collections.emptyList();
+        }
+
+        public String getMessage(int code, String subId, String language) {
+            return language == null ? messages.get(String.valueOf(code)) : null;
+        }
+
+        public Map<String, String> getMessages(String language) {
+            return language == null ? messages : null;
+        }
+    }
+}